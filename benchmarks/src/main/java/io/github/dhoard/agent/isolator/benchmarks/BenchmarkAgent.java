@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.benchmarks;
+
+import static java.lang.String.format;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Java agent that provides the JVM's {@link Instrumentation} to benchmarks, by loading the benchmarks jar
+ * as an agent into the running JVM.
+ * <p>
+ * The benchmarks jar declares this class as its {@code Agent-Class}, so the benchmarks must run from the jar.
+ * Loading an agent into the running JVM requires Java 9 or later and the
+ * {@code -Djdk.attach.allowAttachSelf=true} JVM option.
+ */
+public final class BenchmarkAgent {
+
+    private static final String VIRTUAL_MACHINE_CLASS_NAME = "com.sun.tools.attach.VirtualMachine";
+
+    private static volatile Instrumentation instrumentation;
+
+    /**
+     * Constructor for BenchmarkAgent.
+     */
+    private BenchmarkAgent() {
+        // INTENTIONALLY BLANK
+    }
+
+    /**
+     * Called by the JVM when the benchmarks jar is loaded as an agent.
+     *
+     * @param options the agent options
+     * @param instrumentation the Instrumentation instance
+     */
+    public static void agentmain(String options, Instrumentation instrumentation) {
+        BenchmarkAgent.instrumentation = instrumentation;
+    }
+
+    /**
+     * Gets the JVM's Instrumentation, loading the benchmarks jar as an agent on the first call.
+     *
+     * @return the Instrumentation instance
+     * @throws Exception if the benchmarks jar cannot be loaded as an agent
+     */
+    public static synchronized Instrumentation getInstrumentation() throws Exception {
+        if (instrumentation == null) {
+            loadAgent();
+        }
+
+        return instrumentation;
+    }
+
+    /**
+     * Loads the benchmarks jar as an agent into the running JVM.
+     *
+     * @throws Exception if the benchmarks jar cannot be loaded as an agent
+     */
+    private static void loadAgent() throws Exception {
+        Path jarPath = Paths.get(BenchmarkAgent.class
+                .getProtectionDomain()
+                .getCodeSource()
+                .getLocation()
+                .toURI());
+
+        if (!Files.isRegularFile(jarPath)) {
+            throw new IllegalStateException(format("benchmark must run from the benchmarks jar, not [%s]", jarPath));
+        }
+
+        // The process id is the part of the runtime name before the @, on Java 8 and later
+        String runtimeName = ManagementFactory.getRuntimeMXBean().getName();
+        String pid = runtimeName.substring(0, runtimeName.indexOf('@'));
+
+        // The attach API is not part of the Java 8 API the benchmarks are compiled against
+        Class<?> virtualMachineClass = Class.forName(VIRTUAL_MACHINE_CLASS_NAME);
+        Method attachMethod = virtualMachineClass.getMethod("attach", String.class);
+        Object virtualMachine = attachMethod.invoke(null, pid);
+
+        try {
+            virtualMachineClass.getMethod("loadAgent", String.class).invoke(virtualMachine, jarPath.toString());
+        } finally {
+            virtualMachineClass.getMethod("detach").invoke(virtualMachine);
+        }
+
+        if (instrumentation == null) {
+            throw new IllegalStateException(format("benchmarks jar [%s] did not start as an agent", jarPath));
+        }
+    }
+}
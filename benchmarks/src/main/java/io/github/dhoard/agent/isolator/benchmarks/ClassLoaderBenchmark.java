@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.benchmarks;
+
+import io.github.dhoard.agent.isolator.util.ChildFirstURLClassLoader;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link ChildFirstURLClassLoader#loadClass(String)} against a plain {@link URLClassLoader}.
+ * <p>
+ * Both classloaders load from the same synthetic jar, with no parent classloader, as an isolated agent's
+ * classloader does when no packages are shared. The cases are a class in the jar that has already been loaded
+ * (hit), a class in neither the jar nor the JDK (miss), and a JDK class (jdk). {@link Contended} runs the same
+ * cases on four threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class ClassLoaderBenchmark {
+
+    private static final int CLASS_COUNT = 256;
+    private static final int MISSING_CLASS_COUNT = 256;
+    private static final String[] JDK_CLASS_NAMES = {
+        "java.lang.String", "java.util.HashMap", "java.util.concurrent.ConcurrentHashMap", "java.io.InputStream"
+    };
+
+    private TemporaryDirectory temporaryDirectory;
+    private ChildFirstURLClassLoader childFirstURLClassLoader;
+    private URLClassLoader urlClassLoader;
+    private String[] classNames;
+    private String[] missingClassNames;
+
+    /**
+     * Per-thread position in the class name arrays, so threads do not contend on a shared counter.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int position;
+
+        /**
+         * Gets the next class name.
+         *
+         * @param names the class names
+         * @return the next class name
+         */
+        String next(String[] names) {
+            position = (position + 1) & (CLASS_COUNT - 1);
+            return names[position % names.length];
+        }
+    }
+
+    /**
+     * Runs the benchmarks on four threads, so the classloaders' locks are contended.
+     */
+    @Threads(4)
+    public static class Contended extends ClassLoaderBenchmark {
+        // INTENTIONALLY BLANK
+    }
+
+    /**
+     * Generates the synthetic jar, creates the classloaders, and loads the jar's classes.
+     *
+     * @throws IOException if the synthetic jar cannot be generated
+     * @throws ClassNotFoundException if a class in the synthetic jar cannot be loaded
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ClassNotFoundException {
+        temporaryDirectory = new TemporaryDirectory();
+
+        SyntheticJar syntheticJar = new SyntheticJar("benchmark.classloader", CLASS_COUNT, 0, 0);
+        URL[] urls = {syntheticJar.write(temporaryDirectory.getPath()).toUri().toURL()};
+
+        childFirstURLClassLoader = new ChildFirstURLClassLoader(urls, null);
+        urlClassLoader = new URLClassLoader(urls, null);
+
+        List<String> classNameList = syntheticJar.getClassNames();
+        classNames = classNameList.toArray(new String[0]);
+        missingClassNames = new String[MISSING_CLASS_COUNT];
+
+        for (int i = 0; i < MISSING_CLASS_COUNT; i++) {
+            missingClassNames[i] = "benchmark.classloader.Missing" + i;
+        }
+
+        for (String className : classNames) {
+            childFirstURLClassLoader.loadClass(className);
+            urlClassLoader.loadClass(className);
+        }
+    }
+
+    /**
+     * Closes the classloaders and deletes the synthetic jar.
+     *
+     * @throws IOException if a classloader cannot be closed or the jar cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        childFirstURLClassLoader.close();
+        urlClassLoader.close();
+        temporaryDirectory.close();
+    }
+
+    /**
+     * Loads a class from the jar that has already been loaded, using the child-first classloader.
+     *
+     * @param cursor the per-thread cursor
+     * @return the class
+     * @throws ClassNotFoundException never
+     */
+    @Benchmark
+    public Class<?> childFirstHit(Cursor cursor) throws ClassNotFoundException {
+        return childFirstURLClassLoader.loadClass(cursor.next(classNames));
+    }
+
+    /**
+     * Loads a class from the jar that has already been loaded, using the plain classloader.
+     *
+     * @param cursor the per-thread cursor
+     * @return the class
+     * @throws ClassNotFoundException never
+     */
+    @Benchmark
+    public Class<?> urlHit(Cursor cursor) throws ClassNotFoundException {
+        return urlClassLoader.loadClass(cursor.next(classNames));
+    }
+
+    /**
+     * Loads a class that does not exist, using the child-first classloader.
+     *
+     * @param cursor the per-thread cursor
+     * @return the exception
+     */
+    @Benchmark
+    public Object childFirstMiss(Cursor cursor) {
+        return loadMissing(childFirstURLClassLoader, cursor.next(missingClassNames));
+    }
+
+    /**
+     * Loads a class that does not exist, using the plain classloader.
+     *
+     * @param cursor the per-thread cursor
+     * @return the exception
+     */
+    @Benchmark
+    public Object urlMiss(Cursor cursor) {
+        return loadMissing(urlClassLoader, cursor.next(missingClassNames));
+    }
+
+    /**
+     * Loads a JDK class, using the child-first classloader.
+     *
+     * @param cursor the per-thread cursor
+     * @return the class
+     * @throws ClassNotFoundException never
+     */
+    @Benchmark
+    public Class<?> childFirstJdk(Cursor cursor) throws ClassNotFoundException {
+        return childFirstURLClassLoader.loadClass(cursor.next(JDK_CLASS_NAMES));
+    }
+
+    /**
+     * Loads a JDK class, using the plain classloader.
+     *
+     * @param cursor the per-thread cursor
+     * @return the class
+     * @throws ClassNotFoundException never
+     */
+    @Benchmark
+    public Class<?> urlJdk(Cursor cursor) throws ClassNotFoundException {
+        return urlClassLoader.loadClass(cursor.next(JDK_CLASS_NAMES));
+    }
+
+    /**
+     * Loads a class that does not exist.
+     *
+     * @param classLoader the classloader
+     * @param className the class name
+     * @return the exception
+     */
+    private static Object loadMissing(ClassLoader classLoader, String className) {
+        try {
+            return classLoader.loadClass(className);
+        } catch (ClassNotFoundException e) {
+            return e;
+        }
+    }
+}
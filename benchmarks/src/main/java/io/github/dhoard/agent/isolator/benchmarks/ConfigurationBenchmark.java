@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.benchmarks;
+
+import io.github.dhoard.agent.isolator.Configuration;
+import io.github.dhoard.agent.isolator.ConfigurationSnapshot;
+import io.github.dhoard.agent.isolator.util.LogFormat;
+import io.github.dhoard.agent.isolator.util.LogLevel;
+import io.github.dhoard.agent.isolator.util.LogSettings;
+import io.github.dhoard.agent.isolator.util.Logger;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link Configuration#parse(java.io.Reader)} and {@link ConfigurationSnapshot#load(Path)}, which reads
+ * the compiled snapshot of the configuration, on small and large configurations.
+ * <p>
+ * Both are measured after warmup, so the benchmarks do not include loading the SnakeYAML classes, which a
+ * snapshot also avoids on a cold start.
+ * <p>
+ * The configurations set the global settings and, for each agent, an id, options, a start order,
+ * dependencies on the previous agent, and transform include packages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigurationBenchmark {
+
+    @Param({"1", "16", "256"})
+    private int agentCount;
+
+    private String yaml;
+    private TemporaryDirectory temporaryDirectory;
+    private Path configurationPath;
+
+    /**
+     * Generates the configuration, and writes it and its snapshot.
+     *
+     * @throws IOException if the configuration or its snapshot cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Logger.configure(new LogSettings(
+                LogLevel.WARN,
+                LogFormat.TEXT,
+                null,
+                LogSettings.DEFAULT_FILE_MAX_BYTES,
+                LogSettings.DEFAULT_FILE_COUNT));
+
+        StringBuilder stringBuilder = new StringBuilder(256 * (agentCount + 1));
+
+        stringBuilder
+                .append("configurationSnapshot: enabled\n")
+                .append("parallelStartup: true\n")
+                .append("startTimeoutSeconds: 30\n")
+                .append("onFailure: skip\n")
+                .append("parentFirstPackages:\n")
+                .append("  - com.example.jdk.extension\n")
+                .append("sharedPackages:\n")
+                .append("  - io.prometheus.metrics\n")
+                .append("javaAgents:\n");
+
+        for (int i = 0; i < agentCount; i++) {
+            stringBuilder
+                    .append("  - id: agent-")
+                    .append(i)
+                    .append('\n')
+                    .append("    jarPath: /opt/agents/agent-")
+                    .append(i % 4)
+                    .append(".jar\n")
+                    .append("    className: com.example.agent.Agent\n")
+                    .append("    options: port=")
+                    .append(9000 + i)
+                    .append(",config=/etc/agent-")
+                    .append(i)
+                    .append(".yaml\n")
+                    .append("    startOrder: ")
+                    .append(i / 8)
+                    .append('\n')
+                    .append("    transformIncludes: [com.example.app, com.example.lib]\n");
+
+            if (i > 0) {
+                stringBuilder.append("    dependsOn: [agent-").append(i - 1).append("]\n");
+            }
+        }
+
+        yaml = stringBuilder.toString();
+
+        temporaryDirectory = new TemporaryDirectory();
+        configurationPath = temporaryDirectory.getPath().resolve("isolator.yaml");
+        Files.write(configurationPath, yaml.getBytes(StandardCharsets.UTF_8));
+
+        // Write the snapshot
+        ConfigurationSnapshot.load(configurationPath);
+    }
+
+    /**
+     * Deletes the configuration and its snapshot.
+     *
+     * @throws IOException if the configuration or its snapshot cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        temporaryDirectory.close();
+    }
+
+    /**
+     * Parses the configuration.
+     *
+     * @return the configuration
+     */
+    @Benchmark
+    public Configuration parse() {
+        return Configuration.parse(new StringReader(yaml));
+    }
+
+    /**
+     * Reads the configuration from its snapshot, including reading and hashing the configuration file.
+     *
+     * @return the configuration
+     * @throws IOException if the configuration or its snapshot cannot be read
+     */
+    @Benchmark
+    public Configuration snapshot() throws IOException {
+        return ConfigurationSnapshot.load(configurationPath);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.benchmarks;
+
+import io.github.dhoard.agent.isolator.Configuration;
+import io.github.dhoard.agent.isolator.IsolatedAgent;
+import io.github.dhoard.agent.isolator.JavaAgent;
+import io.github.dhoard.agent.isolator.SharedLayer;
+import io.github.dhoard.agent.isolator.TransformerMultiplexer;
+import io.github.dhoard.agent.isolator.util.LogFormat;
+import io.github.dhoard.agent.isolator.util.LogLevel;
+import io.github.dhoard.agent.isolator.util.LogSettings;
+import io.github.dhoard.agent.isolator.util.Logger;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the end-to-end isolation of N copies of a synthetic agent jar.
+ * <p>
+ * Each measurement starts N isolated agents, sequentially, as the IsolatorAgent does by default. Starting an agent
+ * creates its classloader, runs its {@code agentmain} method on the agent thread, and loads and initializes every
+ * class in the jar. The agents are stopped between measurements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 30)
+@Fork(1)
+public class IsolationBenchmark {
+
+    private static final int CLASS_COUNT = 256;
+    private static final int STATIC_INIT_ITERATIONS = 1000;
+
+    @Param({"1", "4", "16"})
+    private int copies;
+
+    private TemporaryDirectory temporaryDirectory;
+    private Instrumentation instrumentation;
+    private Configuration configuration;
+    private SharedLayer sharedLayer;
+    private TransformerMultiplexer transformerMultiplexer;
+    private List<IsolatedAgent> isolatedAgents;
+
+    /**
+     * Generates the synthetic jar and the configuration.
+     *
+     * @throws IOException if the synthetic jar cannot be generated
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Logger.configure(new LogSettings(
+                LogLevel.WARN,
+                LogFormat.TEXT,
+                null,
+                LogSettings.DEFAULT_FILE_MAX_BYTES,
+                LogSettings.DEFAULT_FILE_COUNT));
+
+        temporaryDirectory = new TemporaryDirectory();
+
+        SyntheticJar syntheticJar = new SyntheticJar("benchmark.isolation", CLASS_COUNT, STATIC_INIT_ITERATIONS, 0);
+        Path jarPath = syntheticJar.write(temporaryDirectory.getPath());
+
+        StringBuilder stringBuilder = new StringBuilder("javaAgents:\n");
+        for (int i = 0; i < copies; i++) {
+            stringBuilder
+                    .append("  - jarPath: ")
+                    .append(jarPath)
+                    .append("\n    className: ")
+                    .append(syntheticJar.getAgentClassName())
+                    .append("\n    options: copy-")
+                    .append(i)
+                    .append('\n');
+        }
+
+        instrumentation = StubInstrumentation.create(0, 0);
+        configuration = Configuration.parse(new StringReader(stringBuilder.toString()));
+        sharedLayer = SharedLayer.create(configuration);
+        transformerMultiplexer = new TransformerMultiplexer(instrumentation);
+    }
+
+    /**
+     * Creates the isolated agents for the next measurement.
+     */
+    @Setup(Level.Iteration)
+    public void createIsolatedAgents() {
+        isolatedAgents = new ArrayList<>();
+
+        int index = 1;
+        for (JavaAgent javaAgent : configuration.getJavaAgents()) {
+            isolatedAgents.add(
+                    new IsolatedAgent(index++, javaAgent, configuration, sharedLayer, transformerMultiplexer, null));
+        }
+    }
+
+    /**
+     * Stops the isolated agents of the previous measurement.
+     */
+    @TearDown(Level.Iteration)
+    public void stopIsolatedAgents() {
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            isolatedAgent.stop();
+        }
+    }
+
+    /**
+     * Deletes the synthetic jar.
+     *
+     * @throws IOException if the synthetic jar cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        temporaryDirectory.close();
+    }
+
+    /**
+     * Starts the isolated agents.
+     *
+     * @return the isolated agents
+     * @throws Exception if an agent fails to start
+     */
+    @Benchmark
+    public List<IsolatedAgent> isolate() throws Exception {
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            isolatedAgent.start(instrumentation);
+        }
+
+        return isolatedAgents;
+    }
+}
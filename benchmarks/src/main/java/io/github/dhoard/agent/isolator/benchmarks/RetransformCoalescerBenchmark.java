@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.benchmarks;
+
+import io.github.dhoard.agent.isolator.RetransformCoalescer;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.security.ProtectionDomain;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks concurrent retransform requests from 2, 4, and 8 agents, issued directly to the JVM or
+ * through a {@link RetransformCoalescer}.
+ * <p>
+ * Each measurement is one round in which every agent concurrently requests a retransform of three classes,
+ * overlapping with the classes of the other agents, and waits for it to complete. The retransforms are real
+ * JVM retransforms, through the Instrumentation of the benchmarks jar loaded as an agent into the benchmark
+ * JVM, with a retransform capable transformer registered that does not modify the classes. Each retransform
+ * pass is a safepoint operation, so the pause time is reported by running the benchmark with the JMH
+ * safepoints profiler, {@code -prof safepoints}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(
+        value = 1,
+        jvmArgsAppend = {
+            "-Djdk.attach.allowAttachSelf=true",
+            "-XX:+IgnoreUnrecognizedVMOptions",
+            "-XX:+EnableDynamicAgentLoading"
+        })
+public class RetransformCoalescerBenchmark {
+
+    private static final long WINDOW_MILLIS = 1;
+    private static final Class<?>[] CLASSES = {
+        Target0.class,
+        Target1.class,
+        Target2.class,
+        Target3.class,
+        Target4.class,
+        Target5.class,
+        Target6.class,
+        Target7.class
+    };
+
+    @Param({"2", "4", "8"})
+    private int agents;
+
+    @Param({"direct", "coalesced"})
+    private String path;
+
+    private Instrumentation instrumentation;
+    private ClassFileTransformer classFileTransformer;
+    private RetransformCoalescer retransformCoalescer;
+    private ExecutorService executorService;
+    private CompletableFuture<?>[] futures;
+
+    /**
+     * Gets the JVM's Instrumentation, registers the transformer, and creates the coalescer and one thread
+     * per agent.
+     *
+     * @throws Exception if the benchmarks jar cannot be loaded as an agent
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        instrumentation = BenchmarkAgent.getInstrumentation();
+
+        // Retransforming calls the retransform capable transformers, as it does for isolated agents
+        classFileTransformer = new ClassFileTransformer() {
+            @Override
+            public byte[] transform(
+                    ClassLoader loader,
+                    String className,
+                    Class<?> classBeingRedefined,
+                    ProtectionDomain protectionDomain,
+                    byte[] classfileBuffer) {
+                return null;
+            }
+        };
+
+        instrumentation.addTransformer(classFileTransformer, true);
+        retransformCoalescer = new RetransformCoalescer(instrumentation, WINDOW_MILLIS);
+        executorService = Executors.newFixedThreadPool(agents);
+        futures = new CompletableFuture<?>[agents];
+    }
+
+    /**
+     * Stops the agent threads and removes the transformer.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executorService.shutdownNow();
+        instrumentation.removeTransformer(classFileTransformer);
+    }
+
+    /**
+     * Runs one round of retransform requests.
+     */
+    @Benchmark
+    public void retransform() {
+        for (int i = 0; i < agents; i++) {
+            Class<?>[] classes = {
+                CLASSES[i % CLASSES.length], CLASSES[(i + 1) % CLASSES.length], CLASSES[(i + 2) % CLASSES.length]
+            };
+
+            futures[i] = CompletableFuture.runAsync(() -> retransform(classes), executorService);
+        }
+
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * Retransforms classes on behalf of one agent.
+     *
+     * @param classes the classes
+     */
+    private void retransform(Class<?>[] classes) {
+        try {
+            if ("coalesced".equals(path)) {
+                retransformCoalescer.retransformClasses(classes);
+            } else {
+                instrumentation.retransformClasses(classes);
+            }
+        } catch (UnmodifiableClassException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Class retransformed by the benchmark.
+     */
+    static final class Target0 {}
+
+    /**
+     * Class retransformed by the benchmark.
+     */
+    static final class Target1 {}
+
+    /**
+     * Class retransformed by the benchmark.
+     */
+    static final class Target2 {}
+
+    /**
+     * Class retransformed by the benchmark.
+     */
+    static final class Target3 {}
+
+    /**
+     * Class retransformed by the benchmark.
+     */
+    static final class Target4 {}
+
+    /**
+     * Class retransformed by the benchmark.
+     */
+    static final class Target5 {}
+
+    /**
+     * Class retransformed by the benchmark.
+     */
+    static final class Target6 {}
+
+    /**
+     * Class retransformed by the benchmark.
+     */
+    static final class Target7 {}
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.benchmarks;
+
+import static java.lang.String.format;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * End-to-end startup and footprint regression harness.
+ * <p>
+ * The harness generates a synthetic agent jar, then launches child JVMs with
+ * {@code -javaagent:isolator-agent.jar=<yaml>} isolating 1 to 16 copies of the synthetic agent, and a child JVM
+ * without the IsolatorAgent for reference. Each child JVM runs the {@link StartupProbe}, which records the time to
+ * {@code main}, the metaspace used, the loaded class count, the resident set size, and the peak platform thread
+ * count. The median of several runs of each instance count is written to a JSON file.
+ * <p>
+ * On Java 21 or later, running the harness with and without {@code --jvm-args -Djdk.util.jar.enableMultiRelease=false}
+ * compares the Java 21 classes of the multi-release IsolatorAgent jar with the Java 8 classes.
+ * <p>
+ * If a baseline JSON file, written by a previous run, is given, the results are compared with it and the harness
+ * fails if a metric regressed by more than its threshold, or if the baseline file does not exist.
+ * <p>
+ * Options, all optional except {@code --agent}:
+ * <ul>
+ *     <li>{@code --agent <path>} the IsolatorAgent jar</li>
+ *     <li>{@code --instances <list>} comma-separated instance counts, default {@code 0,1,2,4,8,16}</li>
+ *     <li>{@code --classes <count>} classes in the synthetic jar, default 500</li>
+ *     <li>{@code --static-init <iterations>} loop iterations in each static initializer, default 1000</li>
+ *     <li>{@code --threads <count>} threads started by each synthetic agent, default 2</li>
+ *     <li>{@code --runs <count>} runs of each instance count, default 5</li>
+ *     <li>{@code --parallel-startup <boolean>} whether the agents are started in parallel, default false</li>
+ *     <li>{@code --jvm-args <args>} space-separated arguments of the child JVMs, default none</li>
+ *     <li>{@code --output <path>} the results file, default {@code startup-results.json}</li>
+ *     <li>{@code --baseline <path>} the baseline file, default none</li>
+ *     <li>{@code --threshold <ratio>} the allowed regression of the footprint metrics, default 0.05</li>
+ *     <li>{@code --time-threshold <ratio>} the allowed regression of the time to main, default 0.25</li>
+ * </ul>
+ */
+public class StartupHarness {
+
+    private static final long CHILD_TIMEOUT_SECONDS = 120;
+    private static final String[] METRICS = {
+        "timeToMainMillis", "metaspaceUsedBytes", "loadedClassCount", "rssBytes", "peakThreadCount"
+    };
+    private static final Pattern RESULT_PATTERN = Pattern.compile("\\{[^{}]*\"instances\"\\s*:\\s*(\\d+)[^{}]*}");
+
+    private final Map<String, String> options;
+
+    /**
+     * Constructor for StartupHarness.
+     *
+     * @param options the options, keyed by name without the leading {@code --}
+     */
+    private StartupHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    /**
+     * Runs the harness.
+     *
+     * @param args the options
+     * @throws Exception if a child JVM fails, or a metric regressed
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException(format("invalid option [%s]", args[i]));
+            }
+
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        if (!options.containsKey("agent")) {
+            throw new IllegalArgumentException("--agent <path> is required");
+        }
+
+        new StartupHarness(options).run();
+    }
+
+    /**
+     * Runs the child JVMs, writes the results, and compares them with the baseline.
+     *
+     * @throws Exception if a child JVM fails, or a metric regressed
+     */
+    private void run() throws Exception {
+        Path agentJarPath = Paths.get(options.get("agent")).toAbsolutePath();
+        int classCount = Integer.parseInt(options.getOrDefault("classes", "500"));
+        int staticInitIterations = Integer.parseInt(options.getOrDefault("static-init", "1000"));
+        int threadCount = Integer.parseInt(options.getOrDefault("threads", "2"));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        boolean parallelStartup = Boolean.parseBoolean(options.getOrDefault("parallel-startup", "false"));
+        String jvmArgs = options.getOrDefault("jvm-args", "").trim();
+        Path outputPath = Paths.get(options.getOrDefault("output", "startup-results.json"));
+
+        if (!Files.isRegularFile(agentJarPath)) {
+            throw new IllegalArgumentException(format("agent jar [%s] does not exist", agentJarPath));
+        }
+
+        Map<Integer, long[]> results = new HashMap<>();
+        List<Integer> instanceCounts = new ArrayList<>();
+
+        for (String instances :
+                options.getOrDefault("instances", "0,1,2,4,8,16").split(",")) {
+            instanceCounts.add(Integer.parseInt(instances.trim()));
+        }
+
+        try (TemporaryDirectory temporaryDirectory = new TemporaryDirectory()) {
+            SyntheticJar syntheticJar =
+                    new SyntheticJar("startup.synthetic", classCount, staticInitIterations, threadCount);
+            Path syntheticJarPath = syntheticJar.write(temporaryDirectory.getPath());
+            Path probeClasspath = writeProbe(temporaryDirectory.getPath());
+
+            for (int instances : instanceCounts) {
+                Path yamlPath = writeConfiguration(
+                        temporaryDirectory.getPath(), syntheticJar, syntheticJarPath, instances, parallelStartup);
+                long[][] samples = new long[METRICS.length][runs];
+
+                for (int run = 0; run < runs; run++) {
+                    long[] sample = runChild(agentJarPath, instances > 0 ? yamlPath : null, probeClasspath, jvmArgs);
+
+                    for (int metric = 0; metric < METRICS.length; metric++) {
+                        samples[metric][run] = sample[metric];
+                    }
+                }
+
+                long[] medians = new long[METRICS.length];
+                for (int metric = 0; metric < METRICS.length; metric++) {
+                    Arrays.sort(samples[metric]);
+                    medians[metric] = samples[metric][runs / 2];
+                }
+
+                results.put(instances, medians);
+
+                System.out.printf(
+                        "instances [%d] timeToMain [%d ms] metaspaceUsed [%d KB] loadedClasses [%d] rss [%d KB]"
+                                + " peakThreads [%d]%n",
+                        instances, medians[0], medians[1] / 1024, medians[2], medians[3] / 1024, medians[4]);
+            }
+        }
+
+        writeResults(
+                outputPath,
+                classCount,
+                staticInitIterations,
+                threadCount,
+                runs,
+                parallelStartup,
+                jvmArgs,
+                instanceCounts,
+                results);
+
+        System.out.printf("results written to [%s]%n", outputPath.toAbsolutePath());
+
+        String baseline = options.get("baseline");
+        if (baseline != null) {
+            compare(Paths.get(baseline), results);
+        }
+    }
+
+    /**
+     * Writes the IsolatorAgent configuration for an instance count.
+     *
+     * @param directory the directory to write the configuration to
+     * @param syntheticJar the synthetic jar
+     * @param syntheticJarPath the path of the synthetic jar
+     * @param instances the number of copies of the synthetic agent
+     * @param parallelStartup whether the agents are started in parallel
+     * @return the path of the configuration
+     * @throws IOException if the configuration cannot be written
+     */
+    private static Path writeConfiguration(
+            Path directory, SyntheticJar syntheticJar, Path syntheticJarPath, int instances, boolean parallelStartup)
+            throws IOException {
+        StringBuilder stringBuilder = new StringBuilder("logLevel: warn\nparallelStartup: ")
+                .append(parallelStartup)
+                .append("\njavaAgents:\n");
+
+        for (int i = 0; i < instances; i++) {
+            stringBuilder
+                    .append("  - jarPath: ")
+                    .append(syntheticJarPath)
+                    .append("\n    className: ")
+                    .append(syntheticJar.getAgentClassName())
+                    .append("\n    options: instance-")
+                    .append(i)
+                    .append('\n');
+        }
+
+        Path yamlPath = directory.resolve("startup-" + instances + ".yaml");
+        Files.write(yamlPath, stringBuilder.toString().getBytes(StandardCharsets.UTF_8));
+
+        return yamlPath;
+    }
+
+    /**
+     * Writes the {@link StartupProbe} class to its own classpath directory.
+     * <p>
+     * The benchmarks jar contains the IsolatorAgent classes, which would otherwise be loaded from the
+     * benchmarks jar instead of the IsolatorAgent jar being measured.
+     *
+     * @param directory the directory to create the classpath directory in
+     * @return the classpath directory
+     * @throws IOException if the class cannot be written
+     */
+    private static Path writeProbe(Path directory) throws IOException {
+        String resourceName = StartupProbe.class.getName().replace('.', '/') + ".class";
+        Path classPath = directory.resolve("probe").resolve(resourceName);
+        Files.createDirectories(classPath.getParent());
+
+        try (InputStream inputStream = StartupProbe.class.getClassLoader().getResourceAsStream(resourceName)) {
+            if (inputStream == null) {
+                throw new IOException(format("resource [%s] not found", resourceName));
+            }
+
+            Files.copy(inputStream, classPath);
+        }
+
+        return directory.resolve("probe");
+    }
+
+    /**
+     * Runs a child JVM.
+     *
+     * @param agentJarPath the IsolatorAgent jar
+     * @param yamlPath the IsolatorAgent configuration, or null to run without the IsolatorAgent
+     * @param probeClasspath the classpath of the {@link StartupProbe}
+     * @param jvmArgs the space-separated arguments of the child JVM, or an empty string
+     * @return the measurements, in the order of {@link #METRICS}
+     * @throws IOException if the child JVM cannot be started or does not report its measurements
+     * @throws InterruptedException if the harness is interrupted
+     */
+    private static long[] runChild(Path agentJarPath, Path yamlPath, Path probeClasspath, String jvmArgs)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+
+        if (!jvmArgs.isEmpty()) {
+            command.addAll(Arrays.asList(jvmArgs.split("\\s+")));
+        }
+
+        if (yamlPath != null) {
+            command.add("-javaagent:" + agentJarPath + "=" + yamlPath);
+        }
+
+        command.add("-cp");
+        command.add(probeClasspath.toString());
+        command.add(StartupProbe.class.getName());
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> output = new ArrayList<>();
+        String measurements = null;
+
+        try (BufferedReader bufferedReader =
+                new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = bufferedReader.readLine()) != null) {
+                output.add(line);
+
+                if (line.startsWith(StartupProbe.PREFIX)) {
+                    measurements = line.substring(StartupProbe.PREFIX.length());
+                }
+            }
+        }
+
+        if (!process.waitFor(CHILD_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("child JVM did not exit");
+        }
+
+        if (process.exitValue() != 0 || measurements == null) {
+            throw new IOException(format(
+                    "child JVM failed, exit code [%d], output%n%s",
+                    process.exitValue(), String.join(System.lineSeparator(), output)));
+        }
+
+        String[] fields = measurements.split(" ");
+        long[] sample = new long[METRICS.length];
+
+        for (int metric = 0; metric < METRICS.length; metric++) {
+            sample[metric] = Long.parseLong(fields[metric]);
+        }
+
+        return sample;
+    }
+
+    /**
+     * Writes the results as JSON.
+     *
+     * @param outputPath the results file
+     * @param classCount the number of classes in the synthetic jar
+     * @param staticInitIterations the number of loop iterations in each static initializer
+     * @param threadCount the number of threads started by each synthetic agent
+     * @param runs the number of runs of each instance count
+     * @param parallelStartup whether the agents were started in parallel
+     * @param jvmArgs the space-separated arguments of the child JVMs, or an empty string
+     * @param instanceCounts the instance counts, in run order
+     * @param results the median measurements of each instance count
+     * @throws IOException if the results file cannot be written
+     */
+    private static void writeResults(
+            Path outputPath,
+            int classCount,
+            int staticInitIterations,
+            int threadCount,
+            int runs,
+            boolean parallelStartup,
+            String jvmArgs,
+            List<Integer> instanceCounts,
+            Map<Integer, long[]> results)
+            throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder
+                .append("{\n  \"java\": \"")
+                .append(System.getProperty("java.version"))
+                .append("\",\n  \"classes\": ")
+                .append(classCount)
+                .append(",\n  \"staticInitIterations\": ")
+                .append(staticInitIterations)
+                .append(",\n  \"threads\": ")
+                .append(threadCount)
+                .append(",\n  \"runs\": ")
+                .append(runs)
+                .append(",\n  \"parallelStartup\": ")
+                .append(parallelStartup)
+                .append(",\n  \"jvmArgs\": \"")
+                .append(jvmArgs.replace("\\", "\\\\").replace("\"", "\\\""))
+                .append('"')
+                .append(",\n  \"results\": [");
+
+        for (int i = 0; i < instanceCounts.size(); i++) {
+            long[] medians = results.get(instanceCounts.get(i));
+
+            stringBuilder
+                    .append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"instances\": ")
+                    .append(instanceCounts.get(i));
+
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                stringBuilder
+                        .append(", \"")
+                        .append(METRICS[metric])
+                        .append("\": ")
+                        .append(medians[metric]);
+            }
+
+            stringBuilder.append('}');
+        }
+
+        stringBuilder.append("\n  ]\n}\n");
+
+        Path parent = outputPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Files.write(outputPath, stringBuilder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Compares the results with a baseline.
+     *
+     * @param baselinePath the baseline file
+     * @param results the median measurements of each instance count
+     * @throws IOException if the baseline file cannot be read
+     * @throws IllegalArgumentException if the baseline file does not exist
+     * @throws IllegalStateException if a metric regressed by more than its threshold
+     */
+    private void compare(Path baselinePath, Map<Integer, long[]> results) throws IOException {
+        // A missing baseline fails the comparison, so that a requested regression gate never passes silently
+        if (!Files.isRegularFile(baselinePath)) {
+            throw new IllegalArgumentException(format(
+                    "baseline [%s] does not exist, record one with the startup-baseline profile",
+                    baselinePath.toAbsolutePath()));
+        }
+
+        double threshold = Double.parseDouble(options.getOrDefault("threshold", "0.05"));
+        double timeThreshold = Double.parseDouble(options.getOrDefault("time-threshold", "0.25"));
+        String baseline = new String(Files.readAllBytes(baselinePath), StandardCharsets.UTF_8);
+        List<String> regressions = new ArrayList<>();
+
+        Matcher resultMatcher = RESULT_PATTERN.matcher(baseline);
+
+        while (resultMatcher.find()) {
+            int instances = Integer.parseInt(resultMatcher.group(1));
+            long[] medians = results.get(instances);
+
+            if (medians == null) {
+                continue;
+            }
+
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                Matcher metricMatcher = Pattern.compile("\"" + METRICS[metric] + "\"\\s*:\\s*(-?\\d+)")
+                        .matcher(resultMatcher.group());
+
+                // Metrics that are not available, for example the resident set size on macOS, are not compared
+                if (!metricMatcher.find() || medians[metric] < 0) {
+                    continue;
+                }
+
+                long baselineValue = Long.parseLong(metricMatcher.group(1));
+                double allowed = metric == 0 ? timeThreshold : threshold;
+
+                if (baselineValue > 0 && medians[metric] > baselineValue * (1 + allowed)) {
+                    regressions.add(format(
+                            Locale.ENGLISH,
+                            "instances [%d] %s [%d] exceeds baseline [%d] by more than [%.0f%%]",
+                            instances,
+                            METRICS[metric],
+                            medians[metric],
+                            baselineValue,
+                            allowed * 100));
+                }
+            }
+        }
+
+        if (!regressions.isEmpty()) {
+            throw new IllegalStateException(
+                    "startup regressions" + System.lineSeparator() + String.join(System.lineSeparator(), regressions));
+        }
+
+        System.out.printf("no regressions against baseline [%s]%n", baselinePath);
+    }
+}
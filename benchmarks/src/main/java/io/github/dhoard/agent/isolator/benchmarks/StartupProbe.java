@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Main class of the child JVMs launched by the {@link StartupHarness}.
+ * <p>
+ * Prints, on entry to {@code main}, the JVM uptime, the metaspace used, the loaded class count, the resident
+ * set size, and the peak platform thread count, on one line starting with {@link #PREFIX}, then exits.
+ */
+public class StartupProbe {
+
+    /**
+     * Prefix of the line containing the measurements.
+     */
+    static final String PREFIX = "startup-probe ";
+
+    private static final String METASPACE_POOL_NAME = "Metaspace";
+    private static final Path PROC_SELF_STATUS = Paths.get("/proc/self/status");
+    private static final String VM_RSS = "VmRSS:";
+
+    /**
+     * Constructor
+     */
+    private StartupProbe() {
+        // INTENTIONALLY BLANK
+    }
+
+    /**
+     * Prints the measurements.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        // Measure the uptime first, everything after main is entered is not part of the startup
+        long timeToMainMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        long loadedClassCount = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+        long peakThreadCount = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+
+        System.out.println(PREFIX + timeToMainMillis + " " + getMetaspaceUsed() + " " + loadedClassCount + " "
+                + getResidentSetSize() + " " + peakThreadCount);
+        System.out.flush();
+
+        // Agent threads must not keep the JVM running
+        System.exit(0);
+    }
+
+    /**
+     * Gets the metaspace used.
+     *
+     * @return the metaspace used in bytes, or -1 if the metaspace usage is not available
+     */
+    private static long getMetaspaceUsed() {
+        for (MemoryPoolMXBean memoryPoolMXBean : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (METASPACE_POOL_NAME.equals(memoryPoolMXBean.getName())) {
+                return memoryPoolMXBean.getUsage().getUsed();
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Gets the resident set size.
+     *
+     * @return the resident set size in bytes, or -1 if it is not available, for example if the OS is not Linux
+     */
+    private static long getResidentSetSize() {
+        try {
+            for (String line : Files.readAllLines(PROC_SELF_STATUS, StandardCharsets.UTF_8)) {
+                if (line.startsWith(VM_RSS)) {
+                    // For example "VmRSS:     41236 kB"
+                    String[] fields = line.substring(VM_RSS.length()).trim().split("\\s+");
+                    return Long.parseLong(fields[0]) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.benchmarks;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Instrumentation stub for benchmarks that run without a Java agent.
+ * <p>
+ * Transformers are accepted and ignored. A retransform pass is serialized, as the JVM serializes
+ * retransform passes, and costs a fixed amount of CPU work plus an amount per class, modelling the
+ * safepoint and per-class costs of a JVM retransform pass.
+ */
+public class StubInstrumentation implements InvocationHandler {
+
+    private final long passTokens;
+    private final long classTokens;
+    private final Object lock;
+
+    /**
+     * Constructor for StubInstrumentation.
+     *
+     * @param passTokens the CPU work, in {@link Blackhole#consumeCPU(long)} tokens, of each retransform pass
+     * @param classTokens the CPU work, in {@link Blackhole#consumeCPU(long)} tokens, of each retransformed class
+     */
+    private StubInstrumentation(long passTokens, long classTokens) {
+        this.passTokens = passTokens;
+        this.classTokens = classTokens;
+        this.lock = new Object();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "retransformClasses":
+                synchronized (lock) {
+                    Blackhole.consumeCPU(passTokens + classTokens * ((Class<?>[]) args[0]).length);
+                }
+                return null;
+            case "isRetransformClassesSupported":
+            case "isRedefineClassesSupported":
+            case "isModifiableClass":
+                return true;
+            case "getAllLoadedClasses":
+            case "getInitiatedClasses":
+                return new Class<?>[0];
+            case "getObjectSize":
+                return 0L;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return StubInstrumentation.class.getSimpleName();
+            default:
+                // Other methods, for example addTransformer, have no effect
+                return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+        }
+    }
+
+    /**
+     * Creates an Instrumentation stub.
+     *
+     * @param passTokens the CPU work of each retransform pass
+     * @param classTokens the CPU work of each retransformed class
+     * @return the Instrumentation stub
+     */
+    public static Instrumentation create(long passTokens, long classTokens) {
+        return (Instrumentation) Proxy.newProxyInstance(
+                StubInstrumentation.class.getClassLoader(),
+                new Class<?>[] {Instrumentation.class},
+                new StubInstrumentation(passTokens, classTokens));
+    }
+}
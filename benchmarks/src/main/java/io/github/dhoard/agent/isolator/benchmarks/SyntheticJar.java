@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Synthetic Java agent jar, generated and compiled at benchmark setup so the benchmarks run offline.
+ * <p>
+ * The jar contains {@code classCount} classes whose static initializers each run a loop of
+ * {@code staticInitIterations} iterations, and an agent class whose {@code agentmain} method initializes
+ * every class and starts {@code threadCount} daemon threads that sleep until they are interrupted.
+ */
+public class SyntheticJar {
+
+    private static final String AGENT_CLASS_SIMPLE_NAME = "SyntheticAgent";
+    private static final String CLASS_SIMPLE_NAME_PREFIX = "C";
+
+    private final String packageName;
+    private final int classCount;
+    private final int staticInitIterations;
+    private final int threadCount;
+
+    /**
+     * Constructor for SyntheticJar.
+     *
+     * @param packageName the package of the generated classes
+     * @param classCount the number of generated classes, excluding the agent class
+     * @param staticInitIterations the number of loop iterations in each static initializer
+     * @param threadCount the number of threads the agent starts
+     */
+    public SyntheticJar(String packageName, int classCount, int staticInitIterations, int threadCount) {
+        this.packageName = packageName;
+        this.classCount = classCount;
+        this.staticInitIterations = staticInitIterations;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Gets the agent class name.
+     *
+     * @return the fully qualified name of the agent class
+     */
+    public String getAgentClassName() {
+        return packageName + "." + AGENT_CLASS_SIMPLE_NAME;
+    }
+
+    /**
+     * Gets the generated class names.
+     *
+     * @return the fully qualified names of the generated classes, excluding the agent class
+     */
+    public List<String> getClassNames() {
+        List<String> classNames = new ArrayList<>(classCount);
+
+        for (int i = 0; i < classCount; i++) {
+            classNames.add(packageName + "." + CLASS_SIMPLE_NAME_PREFIX + i);
+        }
+
+        return classNames;
+    }
+
+    /**
+     * Generates, compiles, and packages the jar.
+     *
+     * @param directory the directory to write the jar, and the sources and classes it is built from, to
+     * @return the path of the jar
+     * @throws IOException if the jar cannot be written or the sources do not compile
+     */
+    public Path write(Path directory) throws IOException {
+        JavaCompiler javaCompiler = ToolProvider.getSystemJavaCompiler();
+
+        if (javaCompiler == null) {
+            throw new IOException("the synthetic jar requires a JDK, no Java compiler is available");
+        }
+
+        Path sourceDirectory = Files.createDirectories(directory.resolve("sources"));
+        Path classesDirectory = Files.createDirectories(directory.resolve("classes"));
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-d");
+        arguments.add(classesDirectory.toString());
+
+        // Step 1: generate the sources
+        for (int i = 0; i < classCount; i++) {
+            arguments.add(writeSource(sourceDirectory, CLASS_SIMPLE_NAME_PREFIX + i, classSource(i))
+                    .toString());
+        }
+
+        arguments.add(writeSource(sourceDirectory, AGENT_CLASS_SIMPLE_NAME, agentSource())
+                .toString());
+
+        // Step 2: compile the sources
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+        if (javaCompiler.run(null, null, errors, arguments.toArray(new String[0])) != 0) {
+            throw new IOException("failed to compile the synthetic jar sources, "
+                    + new String(errors.toByteArray(), StandardCharsets.UTF_8));
+        }
+
+        // Step 3: package the classes
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Agent-Class", getAgentClassName());
+        manifest.getMainAttributes().putValue("Premain-Class", getAgentClassName());
+
+        Path jarPath = directory.resolve(packageName + ".jar");
+
+        try (OutputStream outputStream = Files.newOutputStream(jarPath);
+                JarOutputStream jarOutputStream = new JarOutputStream(outputStream, manifest);
+                Stream<Path> paths = Files.walk(classesDirectory)) {
+            for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                jarOutputStream.putNextEntry(new JarEntry(
+                        classesDirectory.relativize(path).toString().replace('\\', '/')));
+                Files.copy(path, jarOutputStream);
+                jarOutputStream.closeEntry();
+            }
+        }
+
+        return jarPath;
+    }
+
+    /**
+     * Gets the source of a generated class.
+     *
+     * @param index the index of the class
+     * @return the source
+     */
+    private String classSource(int index) {
+        return "package " + packageName + ";\n"
+                + "public class " + CLASS_SIMPLE_NAME_PREFIX + index + " {\n"
+                + "    public static final long VALUE;\n"
+                + "    static {\n"
+                + "        long value = " + index + "L;\n"
+                + "        for (int i = 0; i < " + staticInitIterations + "; i++) {\n"
+                + "            value = value * 31L + i;\n"
+                + "        }\n"
+                + "        VALUE = value;\n"
+                + "    }\n"
+                + "    public long getValue() {\n"
+                + "        return VALUE;\n"
+                + "    }\n"
+                + "}\n";
+    }
+
+    /**
+     * Gets the source of the agent class.
+     *
+     * @return the source
+     */
+    private String agentSource() {
+        return "package " + packageName + ";\n"
+                + "public class " + AGENT_CLASS_SIMPLE_NAME + " {\n"
+                + "    public static void premain(String options, java.lang.instrument.Instrumentation i)\n"
+                + "            throws Exception {\n"
+                + "        agentmain(options, i);\n"
+                + "    }\n"
+                + "    public static void agentmain(String options, java.lang.instrument.Instrumentation i)\n"
+                + "            throws Exception {\n"
+                + "        for (int index = 0; index < " + classCount + "; index++) {\n"
+                + "            Class.forName(\"" + packageName + "." + CLASS_SIMPLE_NAME_PREFIX + "\" + index);\n"
+                + "        }\n"
+                + "        for (int index = 0; index < " + threadCount + "; index++) {\n"
+                + "            Thread thread = new Thread(() -> {\n"
+                + "                try {\n"
+                + "                    Thread.sleep(Long.MAX_VALUE);\n"
+                + "                } catch (InterruptedException e) {\n"
+                + "                    Thread.currentThread().interrupt();\n"
+                + "                }\n"
+                + "            }, \"synthetic-agent-\" + index);\n"
+                + "            thread.setDaemon(true);\n"
+                + "            thread.start();\n"
+                + "        }\n"
+                + "    }\n"
+                + "}\n";
+    }
+
+    /**
+     * Writes a source file.
+     *
+     * @param sourceDirectory the source directory
+     * @param simpleName the simple name of the class
+     * @param source the source
+     * @return the path of the source file
+     * @throws IOException if the source file cannot be written
+     */
+    private Path writeSource(Path sourceDirectory, String simpleName, String source) throws IOException {
+        Path path = sourceDirectory.resolve(simpleName + ".java");
+
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8);
+                PrintWriter printWriter = new PrintWriter(writer)) {
+            printWriter.print(source);
+        }
+
+        return path;
+    }
+}
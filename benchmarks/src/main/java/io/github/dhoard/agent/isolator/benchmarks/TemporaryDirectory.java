@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Temporary directory that is deleted, with its contents, when closed.
+ */
+public class TemporaryDirectory implements Closeable {
+
+    private final Path path;
+
+    /**
+     * Constructor for TemporaryDirectory.
+     *
+     * @throws IOException if the directory cannot be created
+     */
+    public TemporaryDirectory() throws IOException {
+        this.path = Files.createTempDirectory("isolator-agent-benchmarks");
+    }
+
+    /**
+     * Gets the path.
+     *
+     * @return the path of the directory
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path child : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import io.github.dhoard.agent.isolator.util.ClassLoaderStatistics;
+
+/**
+ * Class loading statistics of the classloader of an isolated agent.
+ * <p>
+ * The statistics are those of the agent's current classloader, so they start from zero when the agent
+ * is restarted, and are retained after the agent is stopped. All values are 0 until the agent is started.
+ */
+public class AgentClassLoading implements AgentClassLoadingMBean {
+
+    private final String id;
+    private volatile ClassLoaderStatistics statistics;
+
+    /**
+     * Constructor for AgentClassLoading.
+     *
+     * @param id the identifier of the agent
+     */
+    public AgentClassLoading(String id) {
+        this.id = id;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public long getLoadClassCalls() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getLoadClassCalls() : 0;
+    }
+
+    @Override
+    public long getLoadedClassHits() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getLoadedClassHits() : 0;
+    }
+
+    @Override
+    public long getParentFirstHits() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getParentFirstHits() : 0;
+    }
+
+    @Override
+    public long getSharedHits() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getSharedHits() : 0;
+    }
+
+    @Override
+    public long getChildHits() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getChildHits() : 0;
+    }
+
+    @Override
+    public long getParentFallbacks() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getParentFallbacks() : 0;
+    }
+
+    @Override
+    public long getChildMisses() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getChildMisses() : 0;
+    }
+
+    @Override
+    public long getCachedChildMisses() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getCachedChildMisses() : 0;
+    }
+
+    @Override
+    public long getClassNotFoundMisses() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getClassNotFoundMisses() : 0;
+    }
+
+    @Override
+    public long getDefinedClasses() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getDefinedClasses() : 0;
+    }
+
+    @Override
+    public long getDefinedClassBytes() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getDefinedClassBytes() : 0;
+    }
+
+    @Override
+    public long getDefinedPackages() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getDefinedPackages() : 0;
+    }
+
+    @Override
+    public long getLoadClassTimeMillis() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getLoadClassNanos() / 1_000_000 : 0;
+    }
+
+    @Override
+    public long getFindClassTimeMillis() {
+        ClassLoaderStatistics statistics = this.statistics;
+        return statistics != null ? statistics.getFindClassNanos() / 1_000_000 : 0;
+    }
+
+    /**
+     * Records that a classloader was created for the agent.
+     *
+     * @param statistics the class loading statistics of the agent's new classloader
+     */
+    void classLoaderCreated(ClassLoaderStatistics statistics) {
+        this.statistics = statistics;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+/**
+ * MBean interface of {@link AgentClassLoading}.
+ * <p>
+ * Each {@code loadClass} call of the agent's classloader is counted once, in {@code LoadedClassHits},
+ * {@code ParentFirstHits}, {@code SharedHits}, {@code ChildHits}, {@code ParentFallbacks}, or
+ * {@code ClassNotFoundMisses}, depending on how the class was resolved.
+ */
+public interface AgentClassLoadingMBean {
+
+    /**
+     * Gets the agent id.
+     *
+     * @return the identifier of the agent
+     */
+    String getId();
+
+    /**
+     * Gets the number of {@code loadClass} calls.
+     *
+     * @return the number of {@code loadClass} calls
+     */
+    long getLoadClassCalls();
+
+    /**
+     * Gets the number of {@code loadClass} calls for classes already loaded by the agent's classloader.
+     *
+     * @return the number of already loaded classes returned
+     */
+    long getLoadedClassHits();
+
+    /**
+     * Gets the number of classes in parent-first packages loaded from the platform classloader.
+     *
+     * @return the number of parent-first classes loaded
+     */
+    long getParentFirstHits();
+
+    /**
+     * Gets the number of classes in shared packages loaded from the shared classloader.
+     *
+     * @return the number of shared classes loaded
+     */
+    long getSharedHits();
+
+    /**
+     * Gets the number of classes found and defined by the agent's classloader.
+     *
+     * @return the number of child hits
+     */
+    long getChildHits();
+
+    /**
+     * Gets the number of classes not found by the agent's classloader, and loaded from the system classloader.
+     *
+     * @return the number of parent fallbacks
+     */
+    long getParentFallbacks();
+
+    /**
+     * Gets the number of classes searched for, and not found, in the agent's classpath.
+     *
+     * @return the number of child misses
+     */
+    long getChildMisses();
+
+    /**
+     * Gets the number of classes not searched for again, because a previous search did not find them.
+     *
+     * @return the number of cached child misses
+     */
+    long getCachedChildMisses();
+
+    /**
+     * Gets the number of {@code loadClass} calls that threw a {@link ClassNotFoundException}.
+     *
+     * @return the number of classes not found by any classloader
+     */
+    long getClassNotFoundMisses();
+
+    /**
+     * Gets the number of classes defined by the agent's classloader.
+     *
+     * @return the number of defined classes
+     */
+    long getDefinedClasses();
+
+    /**
+     * Gets the number of class bytes defined by the agent's classloader.
+     *
+     * @return the number of defined class bytes
+     */
+    long getDefinedClassBytes();
+
+    /**
+     * Gets the number of packages defined by the agent's classloader.
+     *
+     * @return the number of defined packages
+     */
+    long getDefinedPackages();
+
+    /**
+     * Gets the time spent in {@code loadClass}, including classes loaded from other classloaders.
+     *
+     * @return the {@code loadClass} time in milliseconds
+     */
+    long getLoadClassTimeMillis();
+
+    /**
+     * Gets the time spent in {@code findClass}, finding and defining classes in the agent's classpath.
+     *
+     * @return the {@code findClass} time in milliseconds
+     */
+    long getFindClassTimeMillis();
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import io.github.dhoard.agent.isolator.util.PrefixTrie;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Per-agent Instrumentation, which registers the agent's ClassFileTransformers with a
+ * {@link TransformerMultiplexer} instead of the JVM, and, if configured, passes the agent's
+ * retransform requests to a {@link RetransformCoalescer}.
+ * <p>
+ * The Instrumentation is a dynamic proxy, so methods added to Instrumentation after Java 8
+ * are passed through to the JVM Instrumentation unchanged.
+ */
+public class AgentInstrumentation implements InvocationHandler {
+
+    private static final String ADD_TRANSFORMER_METHOD = "addTransformer";
+    private static final String REMOVE_TRANSFORMER_METHOD = "removeTransformer";
+    private static final String RETRANSFORM_CLASSES_METHOD = "retransformClasses";
+
+    private final String id;
+    private final Instrumentation instrumentation;
+    private final TransformerMultiplexer transformerMultiplexer;
+    private final RetransformCoalescer retransformCoalescer;
+    private final List<String> includePrefixes;
+    private final PrefixTrie excludePrefixes;
+    private final AgentTransforms agentTransforms;
+
+    /**
+     * Constructor for AgentInstrumentation.
+     *
+     * @param id the identifier of the agent
+     * @param instrumentation the JVM Instrumentation instance
+     * @param transformerMultiplexer the transformer multiplexer
+     * @param retransformCoalescer the retransform coalescer, or null if retransform requests are not coalesced
+     * @param includePrefixes the internal class name prefixes to transform, or an empty list to transform all classes
+     * @param excludePrefixes the internal class name prefixes not to transform
+     * @param agentTransforms the transform statistics of the agent
+     */
+    private AgentInstrumentation(
+            String id,
+            Instrumentation instrumentation,
+            TransformerMultiplexer transformerMultiplexer,
+            RetransformCoalescer retransformCoalescer,
+            List<String> includePrefixes,
+            PrefixTrie excludePrefixes,
+            AgentTransforms agentTransforms) {
+        this.id = id;
+        this.instrumentation = instrumentation;
+        this.transformerMultiplexer = transformerMultiplexer;
+        this.retransformCoalescer = retransformCoalescer;
+        this.includePrefixes = includePrefixes;
+        this.excludePrefixes = excludePrefixes;
+        this.agentTransforms = agentTransforms;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, args);
+        }
+
+        if (ADD_TRANSFORMER_METHOD.equals(method.getName())) {
+            ClassFileTransformer classFileTransformer = (ClassFileTransformer) args[0];
+            boolean canRetransform = args.length > 1 && (Boolean) args[1];
+
+            addTransformer(classFileTransformer, canRetransform);
+
+            return null;
+        }
+
+        if (REMOVE_TRANSFORMER_METHOD.equals(method.getName())) {
+            ClassFileTransformer classFileTransformer = (ClassFileTransformer) args[0];
+
+            return transformerMultiplexer.remove(
+                    agentTransforms, Objects.requireNonNull(classFileTransformer, "transformer"));
+        }
+
+        if (RETRANSFORM_CLASSES_METHOD.equals(method.getName()) && retransformCoalescer != null) {
+            retransformCoalescer.retransformClasses((Class<?>[]) args[0]);
+
+            return null;
+        }
+
+        try {
+            return method.invoke(instrumentation, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Adds a transformer to the transformer multiplexer.
+     *
+     * @param classFileTransformer the transformer
+     * @param canRetransform whether the transformer can retransform classes
+     */
+    private void addTransformer(ClassFileTransformer classFileTransformer, boolean canRetransform) {
+        Objects.requireNonNull(classFileTransformer, "transformer");
+
+        if (canRetransform && !instrumentation.isRetransformClassesSupported()) {
+            throw new UnsupportedOperationException(
+                    "adding retransformable transformers is not supported in this environment");
+        }
+
+        transformerMultiplexer.add(
+                new TransformerMultiplexer.Registration(
+                        classFileTransformer, includePrefixes, excludePrefixes, agentTransforms),
+                canRetransform);
+    }
+
+    /**
+     * Invokes a method declared by Object on the proxy.
+     *
+     * @param proxy the proxy
+     * @param method the method
+     * @param args the arguments
+     * @return the result
+     */
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "AgentInstrumentation[" + id + "]";
+        }
+    }
+
+    /**
+     * Creates the Instrumentation of an agent.
+     *
+     * @param javaAgent the Java agent configuration
+     * @param instrumentation the JVM Instrumentation instance
+     * @param transformerMultiplexer the transformer multiplexer
+     * @param retransformCoalescer the retransform coalescer, or null if retransform requests are not coalesced
+     * @param agentTransforms the transform statistics of the agent
+     * @return the Instrumentation of the agent
+     */
+    public static Instrumentation create(
+            JavaAgent javaAgent,
+            Instrumentation instrumentation,
+            TransformerMultiplexer transformerMultiplexer,
+            RetransformCoalescer retransformCoalescer,
+            AgentTransforms agentTransforms) {
+        AgentInstrumentation agentInstrumentation = new AgentInstrumentation(
+                javaAgent.getId(),
+                instrumentation,
+                transformerMultiplexer,
+                retransformCoalescer,
+                TransformerMultiplexer.toInternalPrefixes(javaAgent.getTransformIncludes()),
+                PrefixTrie.of(TransformerMultiplexer.toInternalPrefixes(javaAgent.getTransformExcludes())),
+                agentTransforms);
+
+        return (Instrumentation) Proxy.newProxyInstance(
+                AgentInstrumentation.class.getClassLoader(),
+                new Class<?>[] {Instrumentation.class},
+                agentInstrumentation);
+    }
+}
@@ -0,0 +1,612 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import static java.lang.String.format;
+
+import io.github.dhoard.agent.isolator.util.ChildFirstURLClassLoader;
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.PrefixTrie;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Low-overhead sampling profiler that attributes the CPU samples of the JVM to the isolated agents.
+ * <p>
+ * On every sample, the stacks of the live threads are captured once, and each thread running on a CPU is
+ * attributed to the agent whose classloader defined the class of the innermost agent frame, so agent code
+ * running on application threads, for example a transformer or an MBean callback, is attributed to the agent.
+ * A thread without agent frames is attributed to the agent that owns it, if any, as {@link ResourceSampler} does.
+ * <p>
+ * A runnable thread is running on a CPU if its CPU time increased since the previous sample, and it is not
+ * blocked in a known native I/O method, for example accepting a connection or waiting for a selector, which
+ * the JVM reports as runnable. If thread CPU time is not available, only the native I/O methods are excluded.
+ * <p>
+ * The classes of the frames are resolved by name, with the agents that defined them cached, because a stack
+ * trace does not include the classloader. Classes that no agent defined are only cached for one sample, since
+ * an agent may define them later. Frames of parent-first packages are never agent frames, and are skipped. If more
+ * than one agent defined the class, the outer agent frames are used to narrow the agents, and samples that
+ * still cannot be attributed to one agent are counted as ambiguous.
+ * <p>
+ * The samples are published as an MBean and, if a profile directory is configured, written as collapsed
+ * stack files when the JVM exits.
+ */
+@SuppressWarnings("PMD.AvoidThreadGroup")
+public class AgentProfiler implements AgentProfilerMBean {
+
+    private static final Logger LOGGER = Logger.getLogger(AgentProfiler.class);
+
+    private static final String PROFILER_THREAD_NAME = "isolator-agent-profiler";
+    private static final String SHUTDOWN_THREAD_NAME = "isolator-agent-profiler-shutdown";
+    private static final String COLLAPSED_FILE_SUFFIX = ".collapsed";
+    private static final String OTHER = "[other]";
+    private static final int MAXIMUM_STACK_DEPTH = 128;
+    private static final int MAXIMUM_DISTINCT_STACKS = 10_000;
+    private static final int MAXIMUM_DISTINCT_FRAMES = 10_000;
+    private static final int TOP_FRAME_COUNT = 20;
+    private static final int MAXIMUM_RESOLVED_CLASS_NAMES = 100_000;
+
+    /**
+     * Class name prefixes of native methods that block on I/O or a process, while the thread is runnable.
+     */
+    private static final List<String> BLOCKING_NATIVE_CLASS_NAME_PREFIXES = Arrays.asList(
+            "java.net.",
+            "sun.nio.ch.",
+            "java.io.FileInputStream",
+            "java.lang.ProcessHandleImpl",
+            "java.lang.ProcessImpl",
+            "java.lang.UNIXProcess");
+
+    private final long intervalMillis;
+    private final Path profileDirectory;
+    private final PrefixTrie parentFirstPrefixes;
+    private final ThreadMXBean threadMXBean;
+    private final List<IsolatedAgent> isolatedAgents;
+    private final Map<String, List<IsolatedAgent>> definingAgents;
+    private final Set<String> undefinedClassNames;
+    private final Map<String, AgentSamples> agentSamples;
+    private List<ClassLoader> classLoaders;
+    private Map<Long, Long> threadCpuTimes;
+    private long sampleCount;
+    private long agentSampleCount;
+    private long ambiguousSampleCount;
+
+    /**
+     * Constructor for AgentProfiler.
+     *
+     * @param intervalMillis the sample interval in milliseconds
+     * @param profileDirectory the directory collapsed stack files are written to, or null
+     * @param parentFirstPrefixes the class name prefixes of the parent-first packages
+     */
+    public AgentProfiler(long intervalMillis, Path profileDirectory, PrefixTrie parentFirstPrefixes) {
+        this.intervalMillis = intervalMillis;
+        this.profileDirectory = profileDirectory;
+        this.parentFirstPrefixes = parentFirstPrefixes;
+        this.threadMXBean = ManagementFactory.getThreadMXBean();
+        this.isolatedAgents = new CopyOnWriteArrayList<>();
+        this.definingAgents = new HashMap<>();
+        this.undefinedClassNames = new HashSet<>();
+        this.agentSamples = new LinkedHashMap<>();
+        this.classLoaders = Collections.emptyList();
+        this.threadCpuTimes = Collections.emptyMap();
+    }
+
+    /**
+     * Adds an isolated agent to attribute samples to.
+     *
+     * @param isolatedAgent the isolated agent
+     */
+    public synchronized void add(IsolatedAgent isolatedAgent) {
+        isolatedAgents.add(isolatedAgent);
+    }
+
+    /**
+     * Removes an isolated agent. The samples attributed to the agent are kept.
+     *
+     * @param isolatedAgent the isolated agent
+     */
+    public synchronized void remove(IsolatedAgent isolatedAgent) {
+        isolatedAgents.remove(isolatedAgent);
+    }
+
+    /**
+     * Starts sampling on a daemon thread.
+     */
+    public void start() {
+        LOGGER.info("profiling agents every [%d] ms", intervalMillis);
+
+        Threads.newDaemonThread(PROFILER_THREAD_NAME, () -> {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(intervalMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+
+                        try {
+                            sample();
+                        } catch (Throwable t) {
+                            LOGGER.error("failed to profile agents, %s", t);
+                        }
+                    }
+                })
+                .start();
+
+        if (profileDirectory != null) {
+            Runtime.getRuntime().addShutdownHook(Threads.newDaemonThread(SHUTDOWN_THREAD_NAME, () -> {
+                try {
+                    writeCollapsedStacks();
+                } catch (RuntimeException e) {
+                    LOGGER.error("failed to write collapsed stacks, %s", e.getMessage());
+                }
+            }));
+        }
+    }
+
+    @Override
+    public long getSampleIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    @Override
+    public synchronized long getAgentSampleCount() {
+        return agentSampleCount;
+    }
+
+    @Override
+    public synchronized long getAmbiguousSampleCount() {
+        return ambiguousSampleCount;
+    }
+
+    @Override
+    public synchronized String[] shares() {
+        List<String> lines = new ArrayList<>();
+
+        for (Map.Entry<String, AgentSamples> entry : agentSamples.entrySet()) {
+            AgentSamples samples = entry.getValue();
+
+            lines.add(format(
+                    Locale.ROOT,
+                    "%s samples [%d] share [%.1f%%] applicationThreadSamples [%d]",
+                    entry.getKey(),
+                    samples.count,
+                    sampleCount > 0 ? samples.count * 100.0 / sampleCount : 0.0,
+                    samples.applicationThreadCount));
+        }
+
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public synchronized String[] topFrames(String id) {
+        AgentSamples samples = agentSamples.get(id);
+
+        if (samples == null) {
+            throw new IllegalArgumentException(format("id [%s] has no samples", id));
+        }
+
+        List<Map.Entry<String, Long>> frames = new ArrayList<>(samples.frames.entrySet());
+        frames.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+        List<String> lines = new ArrayList<>();
+
+        for (Map.Entry<String, Long> frame : frames.subList(0, Math.min(TOP_FRAME_COUNT, frames.size()))) {
+            lines.add(format("%s samples [%d]", frame.getKey(), frame.getValue()));
+        }
+
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public String[] writeCollapsedStacks() {
+        if (profileDirectory == null) {
+            throw new IllegalStateException("profileDirectory is not configured");
+        }
+
+        Map<String, Map<String, Long>> collapsedStacks = new LinkedHashMap<>();
+
+        synchronized (this) {
+            for (Map.Entry<String, AgentSamples> entry : agentSamples.entrySet()) {
+                collapsedStacks.put(entry.getKey(), new HashMap<>(entry.getValue().stacks));
+            }
+        }
+
+        List<String> paths = new ArrayList<>();
+
+        try {
+            Files.createDirectories(profileDirectory);
+
+            for (Map.Entry<String, Map<String, Long>> entry : collapsedStacks.entrySet()) {
+                Path path = profileDirectory.resolve(toFileName(entry.getKey()) + COLLAPSED_FILE_SUFFIX);
+
+                try (BufferedWriter bufferedWriter = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                    for (Map.Entry<String, Long> stack : entry.getValue().entrySet()) {
+                        bufferedWriter.write(stack.getKey());
+                        bufferedWriter.write(' ');
+                        bufferedWriter.write(Long.toString(stack.getValue()));
+                        bufferedWriter.newLine();
+                    }
+                }
+
+                paths.add(path.toString());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                    format("failed to write collapsed stacks to [%s], %s", profileDirectory, e.getMessage()), e);
+        }
+
+        LOGGER.info("wrote collapsed stacks %s", paths);
+
+        return paths.toArray(new String[0]);
+    }
+
+    @Override
+    public synchronized void reset() {
+        agentSamples.clear();
+        sampleCount = 0;
+        agentSampleCount = 0;
+        ambiguousSampleCount = 0;
+    }
+
+    /**
+     * Samples the stacks of the live threads.
+     */
+    private void sample() {
+        // Capture the stacks and CPU times before locking, so the MBean is never blocked by a capture
+        Map<Thread, StackTraceElement[]> stackTraces = Thread.getAllStackTraces();
+        Thread currentThread = Thread.currentThread();
+        boolean cpuTimeEnabled = threadMXBean.isThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+        Map<Long, Long> currentThreadCpuTimes = new HashMap<>();
+        List<Map.Entry<Thread, StackTraceElement[]>> runningStackTraces = new ArrayList<>();
+
+        for (Map.Entry<Thread, StackTraceElement[]> entry : stackTraces.entrySet()) {
+            Thread thread = entry.getKey();
+            StackTraceElement[] stackTrace = entry.getValue();
+
+            if (thread != currentThread
+                    && thread.getState() == Thread.State.RUNNABLE
+                    && stackTrace.length > 0
+                    && isRunning(thread, stackTrace, cpuTimeEnabled, currentThreadCpuTimes)) {
+                runningStackTraces.add(entry);
+            }
+        }
+
+        // Threads that terminated since the previous sample are dropped
+        threadCpuTimes = currentThreadCpuTimes;
+
+        synchronized (this) {
+            List<ClassLoader> currentClassLoaders = new ArrayList<>();
+            for (IsolatedAgent isolatedAgent : isolatedAgents) {
+                currentClassLoaders.add(isolatedAgent.getClassLoader());
+            }
+
+            // A started, stopped, or restarted agent may define classes that were resolved to other agents
+            if (!currentClassLoaders.equals(classLoaders) || definingAgents.size() > MAXIMUM_RESOLVED_CLASS_NAMES) {
+                definingAgents.clear();
+                classLoaders = currentClassLoaders;
+            }
+
+            // Classes that no agent defined are only cached for one sample
+            undefinedClassNames.clear();
+
+            for (Map.Entry<Thread, StackTraceElement[]> entry : runningStackTraces) {
+                sampleCount++;
+
+                attribute(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns whether a runnable thread is running on a CPU.
+     *
+     * @param thread the runnable thread
+     * @param stackTrace the stack of the thread, innermost frame first
+     * @param cpuTimeEnabled whether thread CPU time is available
+     * @param currentThreadCpuTimes the CPU times of this sample, by thread id, which the CPU time of the thread
+     *        is added to
+     * @return true if the thread is not blocked in a known native I/O method, and its CPU time increased since
+     *         the previous sample or is not available, else false
+     */
+    private boolean isRunning(
+            Thread thread,
+            StackTraceElement[] stackTrace,
+            boolean cpuTimeEnabled,
+            Map<Long, Long> currentThreadCpuTimes) {
+        if (isBlockingNativeFrame(stackTrace[0])) {
+            return false;
+        }
+
+        // The CPU time of a virtual thread is not available
+        long cpuTime = cpuTimeEnabled ? threadMXBean.getThreadCpuTime(thread.getId()) : -1;
+
+        if (cpuTime < 0) {
+            return true;
+        }
+
+        currentThreadCpuTimes.put(thread.getId(), cpuTime);
+
+        // A thread without a previous sample is running if it has used any CPU time
+        Long previousCpuTime = threadCpuTimes.get(thread.getId());
+
+        return previousCpuTime == null ? cpuTime > 0 : cpuTime > previousCpuTime;
+    }
+
+    /**
+     * Returns whether a frame is a known native method that blocks on I/O or a process.
+     *
+     * @param stackTraceElement the innermost frame of a thread
+     * @return true if the frame is a blocking native method, else false
+     */
+    private static boolean isBlockingNativeFrame(StackTraceElement stackTraceElement) {
+        if (!stackTraceElement.isNativeMethod()) {
+            return false;
+        }
+
+        for (String classNamePrefix : BLOCKING_NATIVE_CLASS_NAME_PREFIXES) {
+            if (stackTraceElement.getClassName().startsWith(classNamePrefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Attributes the stack of a runnable thread to an agent.
+     *
+     * @param thread the thread
+     * @param stackTrace the stack of the thread, innermost frame first
+     */
+    private void attribute(Thread thread, StackTraceElement[] stackTrace) {
+        IsolatedAgent owner = getOwner(thread);
+        List<IsolatedAgent> candidates = Collections.emptyList();
+        int frame = 0;
+
+        // Find the innermost agent frame
+        while (frame < stackTrace.length
+                && (candidates = getDefiningAgents(stackTrace[frame].getClassName())).isEmpty()) {
+            frame++;
+        }
+
+        if (candidates.isEmpty()) {
+            if (owner != null) {
+                record(owner, false, stackTrace, 0);
+            }
+
+            return;
+        }
+
+        IsolatedAgent isolatedAgent;
+
+        if (candidates.size() == 1) {
+            isolatedAgent = candidates.get(0);
+        } else if (owner != null && candidates.contains(owner)) {
+            isolatedAgent = owner;
+        } else {
+            isolatedAgent = narrow(candidates, stackTrace, frame);
+
+            if (isolatedAgent == null) {
+                isolatedAgent = candidates.get(0);
+                ambiguousSampleCount++;
+            }
+        }
+
+        record(isolatedAgent, isolatedAgent != owner, stackTrace, frame);
+    }
+
+    /**
+     * Narrows the agents that defined the class of the innermost agent frame, for example a class of a jar
+     * used by more than one agent, to the agents that also defined the classes of the outer agent frames.
+     *
+     * @param candidates the agents that defined the class of the innermost agent frame
+     * @param stackTrace the stack of the thread, innermost frame first
+     * @param frame the index of the innermost agent frame
+     * @return the only remaining agent, or null if the frames do not identify one agent
+     */
+    private IsolatedAgent narrow(List<IsolatedAgent> candidates, StackTraceElement[] stackTrace, int frame) {
+        List<IsolatedAgent> remaining = candidates;
+
+        for (int i = frame + 1; i < stackTrace.length && remaining.size() > 1; i++) {
+            List<IsolatedAgent> definingAgents = getDefiningAgents(stackTrace[i].getClassName());
+
+            if (definingAgents.isEmpty() || definingAgents.containsAll(remaining)) {
+                continue;
+            }
+
+            List<IsolatedAgent> retained = new ArrayList<>(remaining);
+            retained.retainAll(definingAgents);
+
+            if (retained.isEmpty()) {
+                // The outer frame belongs to another agent, for example an agent calling into another agent
+                return null;
+            }
+
+            remaining = retained;
+        }
+
+        return remaining.size() == 1 ? remaining.get(0) : null;
+    }
+
+    /**
+     * Records a sample attributed to an agent.
+     *
+     * @param isolatedAgent the agent
+     * @param applicationThread whether the thread is not owned by the agent
+     * @param stackTrace the stack of the thread, innermost frame first
+     * @param frame the index of the innermost frame of the agent
+     */
+    private void record(
+            IsolatedAgent isolatedAgent, boolean applicationThread, StackTraceElement[] stackTrace, int frame) {
+        AgentSamples samples = agentSamples.computeIfAbsent(isolatedAgent.getId(), id -> new AgentSamples());
+
+        agentSampleCount++;
+        samples.count++;
+
+        if (applicationThread) {
+            samples.applicationThreadCount++;
+        }
+
+        increment(samples.frames, toFrame(stackTrace[frame]), MAXIMUM_DISTINCT_FRAMES);
+
+        // Collapsed stacks list the frames outermost first, separated by semicolons
+        StringBuilder stringBuilder = new StringBuilder();
+        int depth = Math.min(stackTrace.length, MAXIMUM_STACK_DEPTH);
+
+        for (int i = depth - 1; i >= 0; i--) {
+            if (stringBuilder.length() > 0) {
+                stringBuilder.append(';');
+            }
+
+            stringBuilder.append(toFrame(stackTrace[i]));
+        }
+
+        increment(samples.stacks, stringBuilder.toString(), MAXIMUM_DISTINCT_STACKS);
+    }
+
+    /**
+     * Gets the agent that owns a thread.
+     *
+     * @param thread the thread
+     * @return the agent whose thread group contains the thread, or whose classloader is the thread's context
+     *         classloader, or null if no agent owns the thread
+     */
+    private IsolatedAgent getOwner(Thread thread) {
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            ClassLoader agentClassLoader = isolatedAgent.getClassLoader();
+
+            if (Threads.isInThreadGroup(thread, isolatedAgent.getThreadGroup())
+                    || (agentClassLoader != null && contextClassLoader == agentClassLoader)) {
+                return isolatedAgent;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the agents whose classloaders defined a class.
+     *
+     * @param className the name of the class
+     * @return the agents, in the order they were added, or an empty list if no agent defined the class
+     */
+    private List<IsolatedAgent> getDefiningAgents(String className) {
+        if (parentFirstPrefixes.matches(className)) {
+            return Collections.emptyList();
+        }
+
+        List<IsolatedAgent> candidates = definingAgents.get(className);
+
+        if (candidates != null) {
+            return candidates;
+        }
+
+        if (undefinedClassNames.contains(className)) {
+            return Collections.emptyList();
+        }
+
+        candidates = new ArrayList<>(1);
+
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            ChildFirstURLClassLoader classLoader = isolatedAgent.getClassLoader();
+
+            if (classLoader != null && classLoader.isDefined(className)) {
+                candidates.add(isolatedAgent);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            // An agent may define the class later, for example when the agent loads it lazily
+            undefinedClassNames.add(className);
+            return Collections.emptyList();
+        }
+
+        definingAgents.put(className, candidates);
+
+        return candidates;
+    }
+
+    /**
+     * Increments the count of a key, counting keys beyond the maximum number of distinct keys as {@code [other]}.
+     *
+     * @param counts the counts
+     * @param key the key
+     * @param maximumDistinctKeys the maximum number of distinct keys
+     */
+    private static void increment(Map<String, Long> counts, String key, int maximumDistinctKeys) {
+        String countedKey = counts.containsKey(key) || counts.size() < maximumDistinctKeys ? key : OTHER;
+
+        counts.merge(countedKey, 1L, Long::sum);
+    }
+
+    /**
+     * Converts a stack frame to a collapsed stack frame.
+     *
+     * @param stackTraceElement the stack frame
+     * @return the class name and method name, separated by a dot
+     */
+    private static String toFrame(StackTraceElement stackTraceElement) {
+        return stackTraceElement.getClassName() + "." + stackTraceElement.getMethodName();
+    }
+
+    /**
+     * Converts an agent id to a file name.
+     *
+     * @param id the agent id
+     * @return the id, with characters that are not letters, digits, dots, dashes, or underscores replaced
+     */
+    private static String toFileName(String id) {
+        return id.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * The samples attributed to an agent.
+     */
+    private static class AgentSamples {
+
+        private final Map<String, Long> frames = new HashMap<>();
+        private final Map<String, Long> stacks = new HashMap<>();
+        private long count;
+        private long applicationThreadCount;
+    }
+}
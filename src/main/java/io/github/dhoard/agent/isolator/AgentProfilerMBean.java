@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+/**
+ * MBean interface of the {@link AgentProfiler}.
+ * <p>
+ * A sample is one runnable thread at one sample time. A sample is attributed to the agent that defined the
+ * class of the innermost agent frame of the thread's stack or, if the stack has no agent frames, to the agent
+ * that owns the thread.
+ */
+public interface AgentProfilerMBean {
+
+    /**
+     * Gets the sample interval.
+     *
+     * @return the sample interval in milliseconds
+     */
+    long getSampleIntervalMillis();
+
+    /**
+     * Gets the number of samples of runnable threads.
+     *
+     * @return the number of samples
+     */
+    long getSampleCount();
+
+    /**
+     * Gets the number of samples attributed to an agent.
+     *
+     * @return the number of attributed samples
+     */
+    long getAgentSampleCount();
+
+    /**
+     * Gets the number of samples attributed to an agent whose innermost agent frame was defined by more
+     * than one agent, for example by several isolated copies of the same jar, on a thread no agent owns.
+     * <p>
+     * These samples are attributed to the first of the agents.
+     *
+     * @return the number of ambiguous samples
+     */
+    long getAmbiguousSampleCount();
+
+    /**
+     * Gets the share of the samples attributed to each agent.
+     *
+     * @return one line per agent with the samples, the share of all samples, and the samples on
+     *         threads the agent does not own, for example transformer calls on application threads
+     */
+    String[] shares();
+
+    /**
+     * Gets the top frames of an agent.
+     *
+     * @param id the id of the agent
+     * @return one line per frame, with the number of samples in which it was the innermost frame of the agent,
+     *         most frequent first
+     */
+    String[] topFrames(String id);
+
+    /**
+     * Writes the sampled stacks of each agent to a collapsed stack file, {@code <id>.collapsed} in the profile
+     * directory, for flame graph tools.
+     *
+     * @return the paths of the files written
+     */
+    String[] writeCollapsedStacks();
+
+    /**
+     * Discards the samples.
+     */
+    void reset();
+}
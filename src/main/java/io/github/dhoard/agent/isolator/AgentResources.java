@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resource usage of the threads attributed to an isolated agent.
+ * <p>
+ * CPU time and allocated bytes are accumulated from the per-thread values reported by the JVM, so
+ * usage by a thread between the last sample and its termination is not included.
+ */
+public class AgentResources implements AgentResourcesMBean {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final String id;
+    private Map<Long, Long> lastCpuTimes;
+    private Map<Long, Long> lastAllocatedBytes;
+    private volatile int threadCount;
+    private volatile long cpuTimeNanos;
+    private volatile double cpuUsagePercent;
+    private volatile long allocatedBytes;
+    private volatile long allocationRateBytesPerSecond;
+
+    /**
+     * Constructor for AgentResources.
+     *
+     * @param id the identifier of the agent
+     */
+    public AgentResources(String id) {
+        this.id = id;
+        this.lastCpuTimes = new HashMap<>();
+        this.lastAllocatedBytes = new HashMap<>();
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    @Override
+    public long getCpuTimeMillis() {
+        return cpuTimeNanos < 0 ? -1 : cpuTimeNanos / 1_000_000;
+    }
+
+    @Override
+    public double getCpuUsagePercent() {
+        return cpuUsagePercent;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public long getAllocationRateBytesPerSecond() {
+        return allocationRateBytesPerSecond;
+    }
+
+    /**
+     * Updates the resource usage from a sample of the agent threads.
+     * <p>
+     * Called by a single sampler thread.
+     *
+     * @param threadIds the ids of the live agent threads
+     * @param cpuTimes the CPU time of each thread in nanoseconds, or null if not supported
+     * @param threadAllocatedBytes the allocated bytes of each thread, or null if not supported
+     * @param intervalNanos the time since the previous sample in nanoseconds
+     */
+    void update(long[] threadIds, long[] cpuTimes, long[] threadAllocatedBytes, long intervalNanos) {
+        threadCount = threadIds.length;
+
+        if (cpuTimes != null) {
+            Map<Long, Long> cpuTimesById = new HashMap<>();
+            long cpuTimeDelta = delta(threadIds, cpuTimes, lastCpuTimes, cpuTimesById);
+            lastCpuTimes = cpuTimesById;
+
+            cpuTimeNanos = Math.max(cpuTimeNanos, 0) + cpuTimeDelta;
+            cpuUsagePercent = intervalNanos > 0 ? cpuTimeDelta * 100.0 / intervalNanos : 0;
+        } else {
+            cpuTimeNanos = -1;
+            cpuUsagePercent = -1;
+        }
+
+        if (threadAllocatedBytes != null) {
+            Map<Long, Long> allocatedBytesById = new HashMap<>();
+            long allocatedBytesDelta = delta(threadIds, threadAllocatedBytes, lastAllocatedBytes, allocatedBytesById);
+            lastAllocatedBytes = allocatedBytesById;
+
+            allocatedBytes = Math.max(allocatedBytes, 0) + allocatedBytesDelta;
+            allocationRateBytesPerSecond =
+                    intervalNanos > 0 ? allocatedBytesDelta * NANOS_PER_SECOND / intervalNanos : 0;
+        } else {
+            allocatedBytes = -1;
+            allocationRateBytesPerSecond = -1;
+        }
+    }
+
+    /**
+     * Calculates the increase of a per-thread counter since the previous sample.
+     *
+     * @param threadIds the thread ids
+     * @param values the current counter value of each thread, -1 if not available
+     * @param lastValues the counter values of the previous sample, by thread id
+     * @param currentValues the map to store the current counter values in, by thread id
+     * @return the total increase
+     */
+    private static long delta(
+            long[] threadIds, long[] values, Map<Long, Long> lastValues, Map<Long, Long> currentValues) {
+        long delta = 0;
+
+        for (int i = 0; i < threadIds.length; i++) {
+            if (values[i] < 0) {
+                // The thread terminated during sampling
+                continue;
+            }
+
+            Long lastValue = lastValues.get(threadIds[i]);
+            delta += lastValue != null ? Math.max(0, values[i] - lastValue) : values[i];
+            currentValues.put(threadIds[i], values[i]);
+        }
+
+        return delta;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+/**
+ * MBean interface of {@link AgentResources}.
+ * <p>
+ * Values are updated by the resource sampler, and rates are calculated over the last sample interval.
+ * Values that the JVM does not support are -1.
+ */
+public interface AgentResourcesMBean {
+
+    /**
+     * Gets the agent id.
+     *
+     * @return the identifier of the agent
+     */
+    String getId();
+
+    /**
+     * Gets the number of live threads attributed to the agent.
+     *
+     * @return the number of live threads
+     */
+    int getThreadCount();
+
+    /**
+     * Gets the CPU time used by the agent threads since the agent started.
+     *
+     * @return the CPU time in milliseconds
+     */
+    long getCpuTimeMillis();
+
+    /**
+     * Gets the CPU usage of the agent threads over the last sample interval.
+     *
+     * @return the CPU usage as a percentage of one processor
+     */
+    double getCpuUsagePercent();
+
+    /**
+     * Gets the bytes allocated by the agent threads since the agent started.
+     *
+     * @return the allocated bytes
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Gets the allocation rate of the agent threads over the last sample interval.
+     *
+     * @return the allocation rate in bytes per second
+     */
+    long getAllocationRateBytesPerSecond();
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transform statistics of the ClassFileTransformers registered by an isolated agent.
+ */
+public class AgentTransforms implements AgentTransformsMBean {
+
+    private final String id;
+    private final AtomicInteger transformerCount;
+    private final LongAdder transformCalls;
+    private final LongAdder transformNanos;
+    private final LongAdder transformedClasses;
+    private final LongAdder transformErrors;
+
+    /**
+     * Constructor for AgentTransforms.
+     *
+     * @param id the identifier of the agent
+     */
+    public AgentTransforms(String id) {
+        this.id = id;
+        this.transformerCount = new AtomicInteger();
+        this.transformCalls = new LongAdder();
+        this.transformNanos = new LongAdder();
+        this.transformedClasses = new LongAdder();
+        this.transformErrors = new LongAdder();
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public int getTransformerCount() {
+        return transformerCount.get();
+    }
+
+    @Override
+    public long getTransformCalls() {
+        return transformCalls.sum();
+    }
+
+    @Override
+    public long getTransformTimeMillis() {
+        return transformNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getTransformedClasses() {
+        return transformedClasses.sum();
+    }
+
+    @Override
+    public long getTransformErrors() {
+        return transformErrors.sum();
+    }
+
+    /**
+     * Records that a transformer was added or removed.
+     *
+     * @param delta the change in the number of registered transformers
+     */
+    void transformerCountChanged(int delta) {
+        transformerCount.addAndGet(delta);
+    }
+
+    /**
+     * Records a transform call.
+     *
+     * @param nanos the time spent in the transformer in nanoseconds
+     * @param transformed whether the transformer returned transformed class bytes
+     * @param failed whether the transformer threw an exception
+     */
+    void transformed(long nanos, boolean transformed, boolean failed) {
+        transformCalls.increment();
+        transformNanos.add(nanos);
+
+        if (transformed) {
+            transformedClasses.increment();
+        }
+
+        if (failed) {
+            transformErrors.increment();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+/**
+ * MBean interface of {@link AgentTransforms}.
+ * <p>
+ * Only transform calls dispatched to the agent are counted. Classes that do not match the agent's
+ * transform includes and excludes are skipped without calling the agent's transformers.
+ */
+public interface AgentTransformsMBean {
+
+    /**
+     * Gets the agent id.
+     *
+     * @return the identifier of the agent
+     */
+    String getId();
+
+    /**
+     * Gets the number of transformers registered by the agent.
+     *
+     * @return the number of registered transformers
+     */
+    int getTransformerCount();
+
+    /**
+     * Gets the number of transform calls dispatched to the agent's transformers.
+     *
+     * @return the number of transform calls
+     */
+    long getTransformCalls();
+
+    /**
+     * Gets the time spent in the agent's transformers.
+     *
+     * @return the transform time in milliseconds
+     */
+    long getTransformTimeMillis();
+
+    /**
+     * Gets the number of transform calls that returned transformed class bytes.
+     *
+     * @return the number of transformed classes
+     */
+    long getTransformedClasses();
+
+    /**
+     * Gets the number of transform calls that threw an exception.
+     *
+     * @return the number of transform errors
+     */
+    long getTransformErrors();
+}
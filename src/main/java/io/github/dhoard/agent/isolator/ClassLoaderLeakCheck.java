@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import io.github.dhoard.agent.isolator.util.ChildFirstURLClassLoader;
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.MBeans;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
+
+/**
+ * Checks that the classloader of a stopped agent is collected.
+ * <p>
+ * The check runs on a daemon thread, requesting a garbage collection up to {@link #MAXIMUM_GC_ATTEMPTS}
+ * times. If the classloader is still reachable, the leak is reported with the suspected retainers that
+ * can be found without walking the heap: live threads whose context classloader, class, or thread group
+ * belongs to the agent, and MBeans whose classes the agent loaded. The GC root path of the classloader
+ * is only available from a heap dump, so a heap dump is written if a leak heap dump directory is configured.
+ */
+@SuppressWarnings("PMD.AvoidThreadGroup")
+public class ClassLoaderLeakCheck {
+
+    private static final Logger LOGGER = Logger.getLogger(ClassLoaderLeakCheck.class);
+
+    private static final String LEAK_CHECK_THREAD_NAME = "isolator-agent-leak-check";
+    private static final int MAXIMUM_GC_ATTEMPTS = 5;
+    private static final long GC_INTERVAL_MILLIS = 1_000;
+
+    private final IsolatedAgent isolatedAgent;
+    private final WeakReference<ClassLoader> classLoaderReference;
+    private final Path leakHeapDumpDirectory;
+    private final long metaspaceUsedBefore;
+
+    /**
+     * Constructor for ClassLoaderLeakCheck.
+     *
+     * @param isolatedAgent the stopped isolated agent
+     * @param classLoaderReference the weak reference to the agent's classloader
+     * @param leakHeapDumpDirectory the directory a heap dump is written to if the classloader leaks, or null
+     */
+    public ClassLoaderLeakCheck(
+            IsolatedAgent isolatedAgent, WeakReference<ClassLoader> classLoaderReference, Path leakHeapDumpDirectory) {
+        this.isolatedAgent = isolatedAgent;
+        this.classLoaderReference = classLoaderReference;
+        this.leakHeapDumpDirectory = leakHeapDumpDirectory;
+        this.metaspaceUsedBefore = SharedLayer.getMetaspaceUsed();
+    }
+
+    /**
+     * Starts the check, returning immediately.
+     */
+    public void start() {
+        Threads.newControlThread(LEAK_CHECK_THREAD_NAME + "-" + isolatedAgent.getIndex(), this::check)
+                .start();
+    }
+
+    /**
+     * Requests garbage collections until the classloader is collected or the attempts are exhausted.
+     */
+    private void check() {
+        try {
+            for (int attempt = 1; attempt <= MAXIMUM_GC_ATTEMPTS; attempt++) {
+                System.gc();
+                TimeUnit.MILLISECONDS.sleep(GC_INTERVAL_MILLIS);
+
+                if (classLoaderReference.get() == null) {
+                    long metaspaceUsedAfter = SharedLayer.getMetaspaceUsed();
+
+                    LOGGER.info(
+                            "agent[%d] classloader collected after [%d] GC%s metaspace used [%d KB] -> [%d KB]",
+                            isolatedAgent.getIndex(),
+                            attempt,
+                            attempt == 1 ? "" : "s",
+                            metaspaceUsedBefore / 1024,
+                            metaspaceUsedAfter / 1024);
+
+                    return;
+                }
+            }
+
+            reportLeak();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reports a classloader that was not collected.
+     */
+    private void reportLeak() {
+        List<String> retainers = findRetainers();
+
+        LOGGER.error(
+                "agent[%d] classloader not collected after [%d] GCs, suspected retainers %s",
+                isolatedAgent.getIndex(), MAXIMUM_GC_ATTEMPTS, retainers);
+
+        if (leakHeapDumpDirectory != null) {
+            dumpHeap();
+        }
+    }
+
+    /**
+     * Finds the suspected retainers of the classloader.
+     *
+     * @return descriptions of the suspected retainers
+     */
+    private List<String> findRetainers() {
+        List<String> retainers = new ArrayList<>();
+        ClassLoader classLoader = classLoaderReference.get();
+
+        if (classLoader == null) {
+            return retainers;
+        }
+
+        for (Thread thread : Threads.getAllThreads()) {
+            if (thread.getContextClassLoader() == classLoader) {
+                retainers.add("thread [" + thread.getName() + "] context classloader");
+            } else if (thread.getClass().getClassLoader() == classLoader) {
+                retainers.add("thread [" + thread.getName() + "] class ["
+                        + thread.getClass().getName() + "]");
+            } else if (Threads.isInThreadGroup(thread, isolatedAgent.getThreadGroup())) {
+                retainers.add("thread [" + thread.getName() + "] thread group");
+            }
+        }
+
+        for (ObjectName objectName : MBeans.findByClassLoader(classLoader)) {
+            retainers.add("MBean [" + objectName + "]");
+        }
+
+        return retainers;
+    }
+
+    /**
+     * Writes a heap dump of the live objects, from which the GC root path of the classloader can be found.
+     */
+    private void dumpHeap() {
+        Path path = leakHeapDumpDirectory.resolve(
+                "isolator-agent-leak-" + isolatedAgent.getId() + "-" + System.currentTimeMillis() + ".hprof");
+
+        try {
+            Files.createDirectories(leakHeapDumpDirectory);
+
+            ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class).dumpHeap(path.toString(), true);
+
+            LOGGER.error(
+                    "agent[%d] heap dump [%s] written, find the GC root path of %s",
+                    isolatedAgent.getIndex(), path, ChildFirstURLClassLoader.class.getName());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("agent[%d] failed to write heap dump [%s], %s", isolatedAgent.getIndex(), path, e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads the classes in a recorded class profile into an agent's classloader, in the background,
+ * while the agent is starting.
+ * <p>
+ * Classes are loaded and linked, including verification, but not initialized, so static initializers
+ * still run in the order the agent uses the classes. Classes that no longer exist or fail to load or
+ * link are skipped. Prefetching is stopped when the agent is stopped, so the prefetch threads do not keep
+ * loading classes from, or referencing, the agent's classloader.
+ */
+@SuppressWarnings("PMD.UselessPureMethodCall")
+public class ClassPrefetcher {
+
+    private static final Logger LOGGER = Logger.getLogger(ClassPrefetcher.class);
+
+    private static final String PREFETCH_THREAD_NAME = "isolator-agent-prefetch";
+    private static final int MAXIMUM_THREAD_COUNT = 4;
+    private static final long STOP_TIMEOUT_MILLIS = 1_000;
+
+    private final int index;
+    private final ClassLoader classLoader;
+    private final List<String> classNames;
+    private final AtomicInteger nextClassName;
+    private final AtomicInteger runningThreadCount;
+    private final LongAdder loadedClassCount;
+    private final LongAdder skippedClassCount;
+    private volatile ExecutorService executorService;
+
+    /**
+     * Constructor for ClassPrefetcher.
+     *
+     * @param index the index of the agent, used for logging
+     * @param classLoader the classloader of the agent
+     * @param classNames the class names to load, in load order
+     */
+    public ClassPrefetcher(int index, ClassLoader classLoader, List<String> classNames) {
+        this.index = index;
+        this.classLoader = classLoader;
+        this.classNames = classNames;
+        this.nextClassName = new AtomicInteger();
+        this.runningThreadCount = new AtomicInteger();
+        this.loadedClassCount = new LongAdder();
+        this.skippedClassCount = new LongAdder();
+    }
+
+    /**
+     * Starts loading the classes, returning immediately.
+     */
+    public void start() {
+        if (classNames.isEmpty()) {
+            return;
+        }
+
+        int threadCount =
+                Math.min(Math.min(MAXIMUM_THREAD_COUNT, Runtime.getRuntime().availableProcessors()), classNames.size());
+
+        LOGGER.info("agent[%d] prefetching [%d] classes...", index, classNames.size());
+
+        long startNanos = System.nanoTime();
+        ExecutorService executorService = Threads.newFixedThreadPool(PREFETCH_THREAD_NAME, threadCount);
+        this.executorService = executorService;
+
+        runningThreadCount.set(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.execute(() -> {
+                prefetch();
+
+                if (runningThreadCount.decrementAndGet() == 0) {
+                    LOGGER.info(
+                            "agent[%d] prefetched [%d] classes skipped [%d] classes in [%d] ms",
+                            index,
+                            loadedClassCount.sum(),
+                            skippedClassCount.sum(),
+                            (System.nanoTime() - startNanos) / 1_000_000);
+                }
+            });
+        }
+
+        executorService.shutdown();
+    }
+
+    /**
+     * Stops loading classes, waiting at most {@link #STOP_TIMEOUT_MILLIS} for the classes being loaded.
+     */
+    public void stop() {
+        // Skip the remaining class names
+        nextClassName.set(classNames.size());
+
+        ExecutorService executorService = this.executorService;
+
+        if (executorService == null) {
+            return;
+        }
+
+        executorService.shutdownNow();
+
+        try {
+            if (!executorService.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("agent[%d] prefetch threads still running after stop", index);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Loads and links classes until every class has been loaded.
+     * <p>
+     * The threads take class names from a shared position, so classes are loaded in approximately
+     * the recorded order and the classes the agent needs first are loaded first.
+     */
+    private void prefetch() {
+        int i;
+
+        while ((i = nextClassName.getAndIncrement()) < classNames.size()) {
+            try {
+                Class<?> clazz = Class.forName(classNames.get(i), false, classLoader);
+
+                // Java 8 has no link-only API. Reflecting on the declared fields links the class,
+                // including verification, without initializing it
+                clazz.getDeclaredFields();
+                loadedClassCount.increment();
+            } catch (ClassNotFoundException | LinkageError e) {
+                // The profile is stale or the class depends on a class that is not available
+                skippedClassCount.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import io.github.dhoard.agent.isolator.util.JarRegistry;
+import io.github.dhoard.agent.isolator.util.SharedJar;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recorded list of the classes an agent loads during startup, in load order.
+ * <p>
+ * A class profile is keyed by the agent id, the content hash of the agent classpath and the agent class name.
+ * The key is stored in the profile file, so a profile recorded for a different version of a jar is ignored, and
+ * agents that share a jar and class name, but not options, do not share a profile.
+ * <p>
+ * The content of a directory is not hashed, so an agent with a directory on its classpath has no class profile.
+ */
+public class ClassProfile {
+
+    private static final String PROFILES_DIRECTORY = "profiles";
+    private static final String PROFILE_FILE_SUFFIX = ".profile";
+    private static final String HEADER = "isolator-agent-class-profile 2";
+    private static final String UNSAFE_FILE_NAME_CHARACTERS = "[^A-Za-z0-9._-]";
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Path path;
+    private final String id;
+    private final String jarHash;
+    private final String className;
+
+    /**
+     * Constructor for ClassProfile.
+     *
+     * @param path the path of the profile file
+     * @param id the agent id
+     * @param jarHash the content hash of the agent classpath
+     * @param className the agent class name
+     */
+    private ClassProfile(Path path, String id, String jarHash, String className) {
+        this.path = path;
+        this.id = id;
+        this.jarHash = jarHash;
+        this.className = className;
+    }
+
+    /**
+     * Gets the path.
+     *
+     * @return the path of the profile file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Loads the recorded class names.
+     *
+     * @return the recorded class names, in load order, or null if no profile has been recorded
+     *         for the current agent id, agent jar and class name
+     * @throws IOException if the profile file cannot be read
+     */
+    public List<String> load() throws IOException {
+        List<String> lines;
+
+        try {
+            lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        // Ignore a stale or incomplete profile
+        if (lines.size() < 4
+                || !HEADER.equals(lines.get(0))
+                || !id.equals(lines.get(1))
+                || !jarHash.equals(lines.get(2))
+                || !className.equals(lines.get(3))) {
+            return null;
+        }
+
+        return new ArrayList<>(lines.subList(4, lines.size()));
+    }
+
+    /**
+     * Saves the recorded class names, replacing any existing profile.
+     *
+     * @param classNames the recorded class names, in load order
+     * @throws IOException if the profile file cannot be written
+     */
+    public void save(List<String> classNames) throws IOException {
+        List<String> lines = new ArrayList<>(classNames.size() + 4);
+        lines.add(HEADER);
+        lines.add(id);
+        lines.add(jarHash);
+        lines.add(className);
+        lines.addAll(classNames);
+
+        // Write a temporary file and move it into place, so a concurrent reader never sees a partial profile
+        Path temporaryPath =
+                Files.createTempFile(path.getParent(), path.getFileName().toString(), null);
+
+        try {
+            Files.write(temporaryPath, lines, StandardCharsets.UTF_8);
+
+            try {
+                Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    /**
+     * Gets the class profile of a Java agent.
+     *
+     * @param cacheDirectory the cache directory
+     * @param javaAgent the Java agent
+     * @return the class profile, or null if the agent classpath contains a directory
+     * @throws IOException if a jar on the agent classpath cannot be indexed or the profiles directory cannot be
+     *         created
+     */
+    public static ClassProfile of(Path cacheDirectory, JavaAgent javaAgent) throws IOException {
+        String id = javaAgent.getId();
+        String jarHash = getClasspathHash(javaAgent.getClasspath());
+        String className = javaAgent.getClassName();
+
+        if (jarHash == null) {
+            return null;
+        }
+
+        Path profilesDirectory = Files.createDirectories(cacheDirectory.resolve(PROFILES_DIRECTORY));
+
+        return new ClassProfile(
+                profilesDirectory.resolve(toFileName(id) + "-" + jarHash + "-" + className + PROFILE_FILE_SUFFIX),
+                id,
+                jarHash,
+                className);
+    }
+
+    /**
+     * Gets the content hash of a classpath.
+     * <p>
+     * The content hash of a classpath with a single jar is the content hash of the jar, otherwise it is a
+     * SHA-256 hash of the content hashes of the jars, in classpath order.
+     *
+     * @param classpath the classpath entries
+     * @return the hex encoded content hash, or null if the classpath contains a directory
+     * @throws IOException if a jar cannot be indexed
+     */
+    private static String getClasspathHash(List<String> classpath) throws IOException {
+        List<String> contentHashes = new ArrayList<>();
+
+        for (String classpathEntry : classpath) {
+            SharedJar sharedJar = JarRegistry.get(classpathEntry);
+
+            if (sharedJar == null) {
+                return null;
+            }
+
+            contentHashes.add(sharedJar.getContentHash());
+        }
+
+        if (contentHashes.size() == 1) {
+            return contentHashes.get(0);
+        }
+
+        MessageDigest messageDigest;
+
+        try {
+            messageDigest = MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required on every Java platform
+            throw new IllegalStateException(e);
+        }
+
+        for (String contentHash : contentHashes) {
+            messageDigest.update(contentHash.getBytes(StandardCharsets.US_ASCII));
+            messageDigest.update((byte) '\n');
+        }
+
+        byte[] digest = messageDigest.digest();
+        char[] hex = new char[digest.length * 2];
+
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
+        }
+
+        return new String(hex);
+    }
+
+    /**
+     * Converts an agent id to a string that can be used in a file name.
+     * <p>
+     * Different ids can map to the same file name, in which case the profile is recorded again,
+     * as the exact id is stored in the profile file.
+     *
+     * @param id the agent id
+     * @return the agent id, with characters that are not safe in a file name replaced
+     */
+    private static String toFileName(String id) {
+        return id.replaceAll(UNSAFE_FILE_NAME_CHARACTERS, "_");
+    }
+}
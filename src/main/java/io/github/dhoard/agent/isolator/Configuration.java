@@ -16,19 +16,33 @@
 
 package io.github.dhoard.agent.isolator;
 
+import static java.lang.String.format;
+
+import io.github.dhoard.agent.isolator.util.ChildFirstURLClassLoader;
+import io.github.dhoard.agent.isolator.util.LogFormat;
+import io.github.dhoard.agent.isolator.util.LogLevel;
+import io.github.dhoard.agent.isolator.util.LogSettings;
 import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import org.snakeyaml.engine.v2.api.Load;
 import org.snakeyaml.engine.v2.api.LoadSettings;
 
 /**
  * Configuration class for loading Java agent configurations.
  *
- * <p>This class provides a method to parse a YAML configuration file and convert it into a list of
- * {@link JavaAgent} objects.
+ * <p>This class provides a method to parse a YAML configuration file and convert it into a
+ * {@link Configuration} containing the global settings and a list of {@link JavaAgent} objects.
  */
 public class Configuration {
 
@@ -37,26 +51,439 @@ public class Configuration {
      */
     private static final String JAVA_AGENTS = "javaAgents";
 
+    private static final String PARALLEL_STARTUP = "parallelStartup";
+    private static final String START_MODE = "startMode";
+    private static final String START_TIMEOUT_SECONDS = "startTimeoutSeconds";
+    private static final String ON_FAILURE = "onFailure";
+    private static final String PARENT_FIRST_PACKAGES = "parentFirstPackages";
+    private static final String SHARED_PACKAGES = "sharedPackages";
+    private static final String SHARED_JARS = "sharedJars";
+    private static final String CACHE_DIRECTORY = "cacheDirectory";
+    private static final String CLASS_PREFETCH = "classPrefetch";
+    private static final String CLASS_PROFILE_SECONDS = "classProfileSeconds";
+    private static final String RESOURCE_SAMPLE_SECONDS = "resourceSampleSeconds";
+    private static final String PROFILE_SAMPLE_MILLIS = "profileSampleMillis";
+    private static final String PROFILE_DIRECTORY = "profileDirectory";
+    private static final String RETRANSFORM_WINDOW_MILLIS = "retransformWindowMillis";
+    private static final String WATCH_CONFIGURATION = "watchConfiguration";
+    private static final String LEAK_HEAP_DUMP_DIRECTORY = "leakHeapDumpDirectory";
+    private static final String CONTROL_PORT = "controlPort";
+    private static final String CONTROL_SECRET_FILE = "controlSecretFile";
+    private static final String METRICS_PORT = "metricsPort";
+    private static final String METRICS_CACHE_MILLIS = "metricsCacheMillis";
+    private static final String METRICS_TIMEOUT_MILLIS = "metricsTimeoutMillis";
+    private static final String LOG_LEVEL = "logLevel";
+    private static final String LOG_FORMAT = "logFormat";
+    private static final String LOG_FILE = "logFile";
+    private static final String LOG_FILE_MAX_BYTES = "logFileMaxBytes";
+    private static final String LOG_FILE_COUNT = "logFileCount";
+    private static final String CONFIGURATION_SNAPSHOT = "configurationSnapshot";
+
     private static final String JAR_PATH = "jarPath";
+    private static final String CLASSPATH = "classpath";
     private static final String CLASS_NAME = "className";
     private static final String OPTIONS = "options";
     private static final String ENABLED = "enabled";
+    private static final String ID = "id";
+    private static final String DEPENDS_ON = "dependsOn";
+    private static final String START_ORDER = "startOrder";
+    private static final String START_DELAY_SECONDS = "startDelaySeconds";
+    private static final String START_TRIGGER = "startTrigger";
+    private static final String TRANSFORM_INCLUDES = "transformIncludes";
+    private static final String TRANSFORM_EXCLUDES = "transformExcludes";
+    private static final String STOP_METHOD = "stopMethod";
+    private static final String METRICS_URL = "metricsUrl";
+
+    /**
+     * Prefix for generated agent ids.
+     */
+    private static final String DEFAULT_ID_PREFIX = "agent-";
+
+    /**
+     * Separator between the outer jar file and the name of a nested jar in a classpath entry.
+     */
+    private static final String NESTED_JAR_SEPARATOR = "!/";
+
+    /**
+     * Default number of seconds after agentmain returns that class loading is recorded.
+     */
+    private static final int DEFAULT_CLASS_PROFILE_SECONDS = 10;
+
+    /**
+     * Default number of seconds between agent resource samples, 0 to disable sampling.
+     */
+    private static final int DEFAULT_RESOURCE_SAMPLE_SECONDS = 0;
+
+    /**
+     * Default number of milliseconds an agent's scraped metrics are reused.
+     */
+    private static final int DEFAULT_METRICS_CACHE_MILLIS = 1000;
+
+    /**
+     * Default number of milliseconds to wait for an agent's metrics.
+     */
+    private static final int DEFAULT_METRICS_TIMEOUT_MILLIS = 10_000;
+
+    private final boolean parallelStartup;
+    private final int startTimeoutSeconds;
+    private final FailurePolicy onFailure;
+    private final List<String> parentFirstPackages;
+    private final List<String> sharedPackages;
+    private final List<Path> sharedJars;
+    private final Path cacheDirectory;
+    private final boolean classPrefetch;
+    private final int classProfileSeconds;
+    private final int resourceSampleSeconds;
+    private final int profileSampleMillis;
+    private final Path profileDirectory;
+    private final int retransformWindowMillis;
+    private final boolean watchConfiguration;
+    private final Path leakHeapDumpDirectory;
+    private final int controlPort;
+    private final Path controlSecretFile;
+    private final int metricsPort;
+    private final int metricsCacheMillis;
+    private final int metricsTimeoutMillis;
+    private final LogSettings logSettings;
+    private final SnapshotMode snapshotMode;
+    private final List<JavaAgent> javaAgents;
+
+    /**
+     * Constructor for Configuration, used by {@link #parse(Reader)} and {@link ConfigurationSnapshot}.
+     *
+     * @param parallelStartup whether independent agents are started concurrently
+     * @param startTimeoutSeconds the default start timeout of the agents, 0 for no limit
+     * @param onFailure the default failure policy of the agents
+     * @param parentFirstPackages the packages loaded from the platform classloader first
+     * @param sharedPackages the packages loaded once, by a classloader shared by all agents
+     * @param sharedJars the jars containing the shared packages
+     * @param cacheDirectory the class bytes cache directory, or null if class bytes are not cached
+     * @param classPrefetch whether classes are prefetched from recorded class profiles
+     * @param classProfileSeconds the number of seconds after agentmain returns that class loading is recorded
+     * @param resourceSampleSeconds the number of seconds between agent resource samples, 0 to disable sampling
+     * @param profileSampleMillis the number of milliseconds between agent profiler samples, 0 to disable profiling
+     * @param profileDirectory the directory collapsed stack files are written to, or null
+     * @param retransformWindowMillis the window in which retransform requests are coalesced, 0 to disable
+     * @param watchConfiguration whether the configuration file is watched and agent changes are applied
+     * @param leakHeapDumpDirectory the directory heap dumps are written to when an unloaded agent leaks, or null
+     * @param controlPort the loopback port of the control channel, 0 to disable
+     * @param controlSecretFile the file containing the secret required by the control port, or null if only
+     *        read-only commands are allowed on the control port
+     * @param metricsPort the port of the aggregated metrics endpoint, 0 to disable
+     * @param metricsCacheMillis the number of milliseconds an agent's scraped metrics are reused
+     * @param metricsTimeoutMillis the number of milliseconds to wait for an agent's metrics
+     * @param logSettings the log settings
+     * @param snapshotMode the configuration snapshot mode
+     * @param javaAgents the list of enabled {@link JavaAgent} objects
+     */
+    Configuration(
+            boolean parallelStartup,
+            int startTimeoutSeconds,
+            FailurePolicy onFailure,
+            List<String> parentFirstPackages,
+            List<String> sharedPackages,
+            List<Path> sharedJars,
+            Path cacheDirectory,
+            boolean classPrefetch,
+            int classProfileSeconds,
+            int resourceSampleSeconds,
+            int profileSampleMillis,
+            Path profileDirectory,
+            int retransformWindowMillis,
+            boolean watchConfiguration,
+            Path leakHeapDumpDirectory,
+            int controlPort,
+            Path controlSecretFile,
+            int metricsPort,
+            int metricsCacheMillis,
+            int metricsTimeoutMillis,
+            LogSettings logSettings,
+            SnapshotMode snapshotMode,
+            List<JavaAgent> javaAgents) {
+        this.parallelStartup = parallelStartup;
+        this.startTimeoutSeconds = startTimeoutSeconds;
+        this.onFailure = onFailure;
+        this.parentFirstPackages = Collections.unmodifiableList(parentFirstPackages);
+        this.sharedPackages = Collections.unmodifiableList(sharedPackages);
+        this.sharedJars = Collections.unmodifiableList(sharedJars);
+        this.cacheDirectory = cacheDirectory;
+        this.classPrefetch = classPrefetch;
+        this.classProfileSeconds = classProfileSeconds;
+        this.resourceSampleSeconds = resourceSampleSeconds;
+        this.profileSampleMillis = profileSampleMillis;
+        this.profileDirectory = profileDirectory;
+        this.retransformWindowMillis = retransformWindowMillis;
+        this.watchConfiguration = watchConfiguration;
+        this.leakHeapDumpDirectory = leakHeapDumpDirectory;
+        this.controlPort = controlPort;
+        this.controlSecretFile = controlSecretFile;
+        this.metricsPort = metricsPort;
+        this.metricsCacheMillis = metricsCacheMillis;
+        this.metricsTimeoutMillis = metricsTimeoutMillis;
+        this.logSettings = logSettings;
+        this.snapshotMode = snapshotMode;
+        this.javaAgents = Collections.unmodifiableList(javaAgents);
+    }
+
+    /**
+     * Returns whether independent agents are started concurrently.
+     *
+     * @return true if independent agents are started concurrently, else false
+     */
+    public boolean isParallelStartup() {
+        return parallelStartup;
+    }
+
+    /**
+     * Gets the default start timeout of the agents.
+     *
+     * @return the default start timeout in seconds, or 0 if there is no limit
+     */
+    public int getStartTimeoutSeconds() {
+        return startTimeoutSeconds;
+    }
+
+    /**
+     * Gets the default failure policy of the agents.
+     *
+     * @return the default failure policy
+     */
+    public FailurePolicy getOnFailure() {
+        return onFailure;
+    }
+
+    /**
+     * Gets the packages loaded from the platform classloader first, including the default JDK packages.
+     *
+     * @return the packages loaded from the platform classloader first
+     */
+    public List<String> getParentFirstPackages() {
+        return parentFirstPackages;
+    }
+
+    /**
+     * Gets the packages loaded once, by a classloader shared by all agents.
+     *
+     * @return the shared packages, or an empty list if classes are not shared
+     */
+    public List<String> getSharedPackages() {
+        return sharedPackages;
+    }
+
+    /**
+     * Gets the jars containing the shared packages.
+     *
+     * @return the shared jars, or an empty list if the shared packages are loaded from the agent jars
+     */
+    public List<Path> getSharedJars() {
+        return sharedJars;
+    }
+
+    /**
+     * Gets the class bytes cache directory.
+     *
+     * @return the class bytes cache directory, or null if class bytes are not cached
+     */
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Returns whether classes are prefetched from recorded class profiles.
+     *
+     * @return true if classes are prefetched, else false
+     */
+    public boolean isClassPrefetch() {
+        return classPrefetch;
+    }
+
+    /**
+     * Gets the number of seconds after agentmain returns that class loading is recorded.
+     *
+     * @return the number of seconds after agentmain returns that class loading is recorded
+     */
+    public int getClassProfileSeconds() {
+        return classProfileSeconds;
+    }
+
+    /**
+     * Gets the number of seconds between agent resource samples.
+     *
+     * @return the number of seconds between agent resource samples, or 0 if sampling is disabled
+     */
+    public int getResourceSampleSeconds() {
+        return resourceSampleSeconds;
+    }
+
+    /**
+     * Gets the number of milliseconds between agent profiler samples.
+     *
+     * @return the number of milliseconds between agent profiler samples, or 0 if profiling is disabled
+     */
+    public int getProfileSampleMillis() {
+        return profileSampleMillis;
+    }
+
+    /**
+     * Gets the directory collapsed stack files are written to.
+     *
+     * @return the directory collapsed stack files are written to, or null if they are not written
+     */
+    public Path getProfileDirectory() {
+        return profileDirectory;
+    }
 
     /**
-     * Private constructor to prevent instantiation.
+     * Gets the window in which retransform requests are coalesced.
+     *
+     * @return the window in milliseconds, or 0 if retransform requests are not coalesced
+     */
+    public int getRetransformWindowMillis() {
+        return retransformWindowMillis;
+    }
+
+    /**
+     * Returns whether the configuration file is watched and agent changes are applied without a restart.
+     *
+     * @return true if the configuration file is watched, else false
+     */
+    public boolean isWatchConfiguration() {
+        return watchConfiguration;
+    }
+
+    /**
+     * Gets the directory heap dumps are written to when the classloader of an unloaded agent is not collected.
+     *
+     * @return the leak heap dump directory, or null if no heap dump is written
+     */
+    public Path getLeakHeapDumpDirectory() {
+        return leakHeapDumpDirectory;
+    }
+
+    /**
+     * Gets the loopback port of the control channel.
+     *
+     * @return the control port, or 0 if the control channel is only available through JMX
+     */
+    public int getControlPort() {
+        return controlPort;
+    }
+
+    /**
+     * Gets the file containing the secret required by the control port.
+     *
+     * @return the control secret file, or null if only read-only commands are allowed on the control port
+     */
+    public Path getControlSecretFile() {
+        return controlSecretFile;
+    }
+
+    /**
+     * Gets the port of the aggregated metrics endpoint.
+     *
+     * @return the metrics port, or 0 if the aggregated metrics endpoint is disabled
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * Gets the number of milliseconds an agent's scraped metrics are reused by the aggregated metrics endpoint.
+     *
+     * @return the number of milliseconds an agent's scraped metrics are reused, 0 to scrape on every request
+     */
+    public int getMetricsCacheMillis() {
+        return metricsCacheMillis;
+    }
+
+    /**
+     * Gets the number of milliseconds the aggregated metrics endpoint waits for an agent's metrics.
+     *
+     * @return the number of milliseconds to wait for an agent's metrics
+     */
+    public int getMetricsTimeoutMillis() {
+        return metricsTimeoutMillis;
+    }
+
+    /**
+     * Gets the log settings.
+     *
+     * @return the log settings
+     */
+    public LogSettings getLogSettings() {
+        return logSettings;
+    }
+
+    /**
+     * Gets the configuration snapshot mode.
+     *
+     * @return the configuration snapshot mode
+     */
+    public SnapshotMode getSnapshotMode() {
+        return snapshotMode;
+    }
+
+    /**
+     * Returns whether all settings, including the Java agents, are equal to those of another configuration.
+     *
+     * @param configuration the other configuration
+     * @return true if all settings are equal, else false
+     */
+    public boolean hasSameSettings(Configuration configuration) {
+        return hasSameGlobalSettings(configuration)
+                && logSettings.equals(configuration.logSettings)
+                && snapshotMode == configuration.snapshotMode
+                && javaAgents.equals(configuration.javaAgents);
+    }
+
+    /**
+     * Returns whether the global settings, all settings except the Java agents, the log settings, and the
+     * snapshot mode, are equal to those of another configuration.
+     *
+     * @param configuration the other configuration
+     * @return true if the global settings are equal, else false
      */
-    private Configuration() {
-        // INTENTIONALLY EMPTY
+    public boolean hasSameGlobalSettings(Configuration configuration) {
+        return parallelStartup == configuration.parallelStartup
+                && startTimeoutSeconds == configuration.startTimeoutSeconds
+                && onFailure == configuration.onFailure
+                && parentFirstPackages.equals(configuration.parentFirstPackages)
+                && sharedPackages.equals(configuration.sharedPackages)
+                && sharedJars.equals(configuration.sharedJars)
+                && Objects.equals(cacheDirectory, configuration.cacheDirectory)
+                && classPrefetch == configuration.classPrefetch
+                && classProfileSeconds == configuration.classProfileSeconds
+                && resourceSampleSeconds == configuration.resourceSampleSeconds
+                && profileSampleMillis == configuration.profileSampleMillis
+                && Objects.equals(profileDirectory, configuration.profileDirectory)
+                && retransformWindowMillis == configuration.retransformWindowMillis
+                && watchConfiguration == configuration.watchConfiguration
+                && Objects.equals(leakHeapDumpDirectory, configuration.leakHeapDumpDirectory)
+                && controlPort == configuration.controlPort
+                && Objects.equals(controlSecretFile, configuration.controlSecretFile)
+                && metricsPort == configuration.metricsPort
+                && metricsCacheMillis == configuration.metricsCacheMillis
+                && metricsTimeoutMillis == configuration.metricsTimeoutMillis;
     }
 
     /**
-     * Parses a YAML configuration file and converts it into a list of {@link JavaAgent} objects.
+     * Gets the list of enabled Java agents.
+     *
+     * @return the list of enabled {@link JavaAgent} objects
+     */
+    public List<JavaAgent> getJavaAgents() {
+        return javaAgents;
+    }
+
+    /**
+     * Parses a YAML configuration file and converts it into a {@link Configuration}.
      *
      * @param reader the reader for the YAML configuration file
-     * @return a list of {@link JavaAgent} objects
+     * @return a {@link Configuration}
      */
-    public static List<JavaAgent> parse(Reader reader) {
+    public static Configuration parse(Reader reader) {
         List<JavaAgent> javaAgents = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
 
         // Create a new LoadSettings instance
         LoadSettings settings = LoadSettings.builder().build();
@@ -74,23 +501,428 @@ public class Configuration {
         List<?> javaAgentsList =
                 toList(javaAgentsMap.get(JAVA_AGENTS), "javaAgents must contain a list of java agents");
 
-        for (Object javaAgentObject : javaAgentsList) {
+        boolean parallelStartup =
+                toBoolean(javaAgentsMap.get(PARALLEL_STARTUP), false, "parallelStartup must be a boolean");
+        StartMode defaultStartMode = toStartMode(javaAgentsMap.get(START_MODE), StartMode.FOREGROUND);
+        int defaultStartTimeoutSeconds = toStartTimeoutSeconds(javaAgentsMap.get(START_TIMEOUT_SECONDS), 0);
+        FailurePolicy defaultOnFailure = toFailurePolicy(javaAgentsMap.get(ON_FAILURE), FailurePolicy.ABORT);
+        List<String> parentFirstPackages = new ArrayList<>(ChildFirstURLClassLoader.DEFAULT_PARENT_FIRST_PACKAGES);
+        parentFirstPackages.addAll(toStringList(
+                javaAgentsMap.get(PARENT_FIRST_PACKAGES), "parentFirstPackages must be a list of package names"));
+        List<String> sharedPackages =
+                toStringList(javaAgentsMap.get(SHARED_PACKAGES), "sharedPackages must be a list of package names");
+        List<Path> sharedJars = new ArrayList<>();
+        for (String sharedJar : toStringList(javaAgentsMap.get(SHARED_JARS), "sharedJars must be a list of paths")) {
+            sharedJars.add(Paths.get(sharedJar));
+        }
+
+        if (!sharedJars.isEmpty() && sharedPackages.isEmpty()) {
+            throw new ConfigurationException("sharedJars requires sharedPackages");
+        }
+
+        Path cacheDirectory = null;
+        if (javaAgentsMap.get(CACHE_DIRECTORY) != null) {
+            cacheDirectory = Paths.get(
+                    toNonEmptyString(javaAgentsMap.get(CACHE_DIRECTORY), "cacheDirectory must be a non-empty path"));
+        }
+
+        boolean classPrefetch = toBoolean(javaAgentsMap.get(CLASS_PREFETCH), false, "classPrefetch must be a boolean");
+        int classProfileSeconds = toInt(
+                javaAgentsMap.get(CLASS_PROFILE_SECONDS),
+                DEFAULT_CLASS_PROFILE_SECONDS,
+                "classProfileSeconds must be an integer");
+
+        if (classPrefetch && cacheDirectory == null) {
+            throw new ConfigurationException("classPrefetch requires cacheDirectory");
+        }
+
+        if (classProfileSeconds < 0) {
+            throw new ConfigurationException("classProfileSeconds must be greater than or equal to 0");
+        }
+
+        int resourceSampleSeconds = toInt(
+                javaAgentsMap.get(RESOURCE_SAMPLE_SECONDS),
+                DEFAULT_RESOURCE_SAMPLE_SECONDS,
+                "resourceSampleSeconds must be an integer");
+
+        if (resourceSampleSeconds < 0) {
+            throw new ConfigurationException("resourceSampleSeconds must be greater than or equal to 0");
+        }
+
+        int profileSampleMillis =
+                toInt(javaAgentsMap.get(PROFILE_SAMPLE_MILLIS), 0, "profileSampleMillis must be an integer");
+
+        if (profileSampleMillis < 0) {
+            throw new ConfigurationException("profileSampleMillis must be greater than or equal to 0");
+        }
+
+        Path profileDirectory = null;
+        if (javaAgentsMap.get(PROFILE_DIRECTORY) != null) {
+            profileDirectory = Paths.get(toNonEmptyString(
+                    javaAgentsMap.get(PROFILE_DIRECTORY), "profileDirectory must be a non-empty path"));
+        }
+
+        if (profileDirectory != null && profileSampleMillis == 0) {
+            throw new ConfigurationException("profileDirectory requires profileSampleMillis");
+        }
+
+        int retransformWindowMillis =
+                toInt(javaAgentsMap.get(RETRANSFORM_WINDOW_MILLIS), 0, "retransformWindowMillis must be an integer");
+
+        if (retransformWindowMillis < 0) {
+            throw new ConfigurationException("retransformWindowMillis must be greater than or equal to 0");
+        }
+
+        boolean watchConfiguration =
+                toBoolean(javaAgentsMap.get(WATCH_CONFIGURATION), false, "watchConfiguration must be a boolean");
+
+        Path leakHeapDumpDirectory = null;
+        if (javaAgentsMap.get(LEAK_HEAP_DUMP_DIRECTORY) != null) {
+            leakHeapDumpDirectory = Paths.get(toNonEmptyString(
+                    javaAgentsMap.get(LEAK_HEAP_DUMP_DIRECTORY), "leakHeapDumpDirectory must be a non-empty path"));
+        }
+
+        int controlPort = toInt(javaAgentsMap.get(CONTROL_PORT), 0, "controlPort must be an integer");
+
+        if (controlPort < 0 || controlPort > 65535) {
+            throw new ConfigurationException("controlPort must be between 0 and 65535");
+        }
+
+        Path controlSecretFile = null;
+        if (javaAgentsMap.get(CONTROL_SECRET_FILE) != null) {
+            controlSecretFile = Paths.get(toNonEmptyString(
+                    javaAgentsMap.get(CONTROL_SECRET_FILE), "controlSecretFile must be a non-empty path"));
+        }
+
+        int metricsPort = toInt(javaAgentsMap.get(METRICS_PORT), 0, "metricsPort must be an integer");
+
+        if (metricsPort < 0 || metricsPort > 65535) {
+            throw new ConfigurationException("metricsPort must be between 0 and 65535");
+        }
+
+        int metricsCacheMillis = toInt(
+                javaAgentsMap.get(METRICS_CACHE_MILLIS),
+                DEFAULT_METRICS_CACHE_MILLIS,
+                "metricsCacheMillis must be an integer");
+
+        if (metricsCacheMillis < 0) {
+            throw new ConfigurationException("metricsCacheMillis must be greater than or equal to 0");
+        }
+
+        int metricsTimeoutMillis = toInt(
+                javaAgentsMap.get(METRICS_TIMEOUT_MILLIS),
+                DEFAULT_METRICS_TIMEOUT_MILLIS,
+                "metricsTimeoutMillis must be an integer");
+
+        if (metricsTimeoutMillis <= 0) {
+            throw new ConfigurationException("metricsTimeoutMillis must be greater than 0");
+        }
+
+        LogSettings logSettings = toLogSettings(javaAgentsMap);
+        SnapshotMode snapshotMode = toSnapshotMode(javaAgentsMap.get(CONFIGURATION_SNAPSHOT), SnapshotMode.DISABLED);
+
+        for (int i = 0; i < javaAgentsList.size(); i++) {
+            Object javaAgentObject = javaAgentsList.get(i);
+
             // Convert each javaAgentObject to a map
             Map<?, ?> javaAgentMap = toMap(javaAgentObject, "javaAgent must be a map");
 
-            // Extract the values from the map
-            String jarPath = toNonEmptyString(javaAgentMap.get(JAR_PATH), "jarPath must be a non-empty string");
-            String className = toNonEmptyString(javaAgentMap.get(CLASS_NAME), "className must be a non-empty string");
-            String options = toString(javaAgentMap.get(OPTIONS), "options must be a string");
             boolean isEnabled = toBoolean(javaAgentMap.get(ENABLED), true, "enabled must be a boolean");
+            JavaAgent javaAgent = toJavaAgent(
+                    javaAgentMap,
+                    DEFAULT_ID_PREFIX + (i + 1),
+                    defaultStartMode,
+                    defaultStartTimeoutSeconds,
+                    defaultOnFailure);
+            String id = javaAgent.getId();
 
-            // If the Java agent is enabled, create a new JavaAgent object and add it to the list
+            // Ids must be unique, including the ids of disabled agents
+            if (!ids.add(id)) {
+                throw new ConfigurationException(format("id [%s] is not unique", id));
+            }
+
+            // If the Java agent is enabled, add it to the list
             if (isEnabled) {
-                javaAgents.add(new JavaAgent(Paths.get(jarPath), className, options));
+                javaAgents.add(javaAgent);
             }
         }
 
-        return javaAgents;
+        // Validate that dependencies reference enabled agents that are started no later than the dependent agent
+        Map<String, JavaAgent> enabledJavaAgents = new HashMap<>();
+        for (JavaAgent javaAgent : javaAgents) {
+            enabledJavaAgents.put(javaAgent.getId(), javaAgent);
+        }
+
+        for (JavaAgent javaAgent : javaAgents) {
+            for (String dependency : javaAgent.getDependsOn()) {
+                JavaAgent dependencyJavaAgent = enabledJavaAgents.get(dependency);
+
+                if (dependencyJavaAgent == null) {
+                    throw new ConfigurationException(format(
+                            "id [%s] dependsOn [%s] which is not an enabled agent", javaAgent.getId(), dependency));
+                }
+
+                if (!isStartedBefore(dependencyJavaAgent.getStartMode(), javaAgent.getStartMode())) {
+                    throw new ConfigurationException(format(
+                            "id [%s] with startMode %s cannot depend on [%s] with startMode %s",
+                            javaAgent.getId(),
+                            javaAgent.getStartMode(),
+                            dependency,
+                            dependencyJavaAgent.getStartMode()));
+                }
+            }
+        }
+
+        return new Configuration(
+                parallelStartup,
+                defaultStartTimeoutSeconds,
+                defaultOnFailure,
+                parentFirstPackages,
+                sharedPackages,
+                sharedJars,
+                cacheDirectory,
+                classPrefetch,
+                classProfileSeconds,
+                resourceSampleSeconds,
+                profileSampleMillis,
+                profileDirectory,
+                retransformWindowMillis,
+                watchConfiguration,
+                leakHeapDumpDirectory,
+                controlPort,
+                controlSecretFile,
+                metricsPort,
+                metricsCacheMillis,
+                metricsTimeoutMillis,
+                logSettings,
+                snapshotMode,
+                javaAgents);
+    }
+
+    /**
+     * Parses a single Java agent specification, a YAML map with the same keys as an entry of
+     * {@code javaAgents}, for an agent started at runtime.
+     * <p>
+     * The {@code id} key is required and the {@code enabled} key is not allowed.
+     *
+     * @param spec the YAML specification, for example a flow map on a single line
+     * @param configuration the configuration containing the default start timeout and failure policy
+     * @return the {@link JavaAgent}
+     */
+    public static JavaAgent parseJavaAgent(String spec, Configuration configuration) {
+        Load load = new Load(LoadSettings.builder().build());
+        Map<?, ?> javaAgentMap = toMap(load.loadFromString(spec), "javaAgent must be a map");
+
+        if (!javaAgentMap.containsKey(ID)) {
+            throw new ConfigurationException("id is required");
+        }
+
+        if (javaAgentMap.containsKey(ENABLED)) {
+            throw new ConfigurationException("enabled is not allowed");
+        }
+
+        return toJavaAgent(
+                javaAgentMap,
+                null,
+                StartMode.FOREGROUND,
+                configuration.getStartTimeoutSeconds(),
+                configuration.getOnFailure());
+    }
+
+    /**
+     * Converts a Java agent map to a {@link JavaAgent}.
+     *
+     * @param javaAgentMap the Java agent map
+     * @param defaultId the id used if the map has no id
+     * @param defaultStartMode the start mode used if the map has no start mode
+     * @param defaultStartTimeoutSeconds the start timeout used if the map has no start timeout
+     * @param defaultOnFailure the failure policy used if the map has no failure policy
+     * @return the {@link JavaAgent}
+     */
+    private static JavaAgent toJavaAgent(
+            Map<?, ?> javaAgentMap,
+            String defaultId,
+            StartMode defaultStartMode,
+            int defaultStartTimeoutSeconds,
+            FailurePolicy defaultOnFailure) {
+        List<String> classpath = new ArrayList<>();
+        if (javaAgentMap.get(JAR_PATH) != null || !javaAgentMap.containsKey(CLASSPATH)) {
+            classpath.add(toNonEmptyString(javaAgentMap.get(JAR_PATH), "jarPath must be a non-empty string"));
+        }
+        classpath.addAll(toStringList(
+                javaAgentMap.get(CLASSPATH), "classpath must be a list of jar files, directories, or nested jars"));
+        String className = toNonEmptyString(javaAgentMap.get(CLASS_NAME), "className must be a non-empty string");
+        String options = toString(javaAgentMap.get(OPTIONS), "options must be a string");
+        String id = javaAgentMap.containsKey(ID)
+                ? toNonEmptyString(javaAgentMap.get(ID), "id must be a non-empty string")
+                : defaultId;
+        List<String> dependsOn = toStringList(javaAgentMap.get(DEPENDS_ON), "dependsOn must be a list of ids");
+        int startOrder = toInt(javaAgentMap.get(START_ORDER), 0, "startOrder must be an integer");
+        StartMode startMode = toStartMode(javaAgentMap.get(START_MODE), defaultStartMode);
+        int startDelaySeconds = toInt(javaAgentMap.get(START_DELAY_SECONDS), 0, "startDelaySeconds must be an integer");
+        String startTrigger = javaAgentMap.containsKey(START_TRIGGER)
+                ? toNonEmptyString(javaAgentMap.get(START_TRIGGER), "startTrigger must be a non-empty string")
+                : null;
+        int startTimeoutSeconds =
+                toStartTimeoutSeconds(javaAgentMap.get(START_TIMEOUT_SECONDS), defaultStartTimeoutSeconds);
+        FailurePolicy onFailure = toFailurePolicy(javaAgentMap.get(ON_FAILURE), defaultOnFailure);
+        List<String> transformIncludes =
+                toStringList(javaAgentMap.get(TRANSFORM_INCLUDES), "transformIncludes must be a list of package names");
+        List<String> transformExcludes =
+                toStringList(javaAgentMap.get(TRANSFORM_EXCLUDES), "transformExcludes must be a list of package names");
+        String stopMethod = javaAgentMap.containsKey(STOP_METHOD)
+                ? toNonEmptyString(javaAgentMap.get(STOP_METHOD), "stopMethod must be a non-empty string")
+                : null;
+        String metricsUrl = javaAgentMap.containsKey(METRICS_URL)
+                ? toHttpUrl(javaAgentMap.get(METRICS_URL), "metricsUrl must be an http URL")
+                : null;
+
+        if (classpath.isEmpty()) {
+            throw new ConfigurationException("classpath must be a list of jar files, directories, or nested jars");
+        }
+
+        if (startDelaySeconds < 0) {
+            throw new ConfigurationException("startDelaySeconds must be greater than or equal to 0");
+        }
+
+        if (startMode != StartMode.DEFERRED && (startDelaySeconds > 0 || startTrigger != null)) {
+            throw new ConfigurationException(
+                    format("id [%s] startDelaySeconds and startTrigger require startMode deferred", id));
+        }
+
+        // The jar path is the first classpath entry or, for a nested jar, the outer jar file
+        String jarPath = classpath.get(0);
+        if (jarPath.contains(NESTED_JAR_SEPARATOR)) {
+            jarPath = jarPath.substring(0, jarPath.indexOf(NESTED_JAR_SEPARATOR));
+        }
+
+        return new JavaAgent(
+                Paths.get(jarPath),
+                classpath,
+                className,
+                options,
+                id,
+                dependsOn,
+                startOrder,
+                startMode,
+                startDelaySeconds,
+                startTrigger,
+                startTimeoutSeconds,
+                onFailure,
+                transformIncludes,
+                transformExcludes,
+                stopMethod,
+                metricsUrl);
+    }
+
+    /**
+     * Converts the log keys of the configuration map to log settings.
+     *
+     * @param javaAgentsMap the configuration map
+     * @return the log settings
+     */
+    private static LogSettings toLogSettings(Map<?, ?> javaAgentsMap) {
+        LogLevel logLevel = LogSettings.DEFAULT.getLevel();
+        if (javaAgentsMap.get(LOG_LEVEL) != null) {
+            logLevel = LogLevel.of(toNonEmptyString(
+                    javaAgentsMap.get(LOG_LEVEL), "logLevel must be trace, debug, info, warn, or error"));
+
+            if (logLevel == null) {
+                throw new ConfigurationException("logLevel must be trace, debug, info, warn, or error");
+            }
+        }
+
+        LogFormat logFormat = LogSettings.DEFAULT.getFormat();
+        if (javaAgentsMap.get(LOG_FORMAT) != null) {
+            logFormat = LogFormat.of(toNonEmptyString(javaAgentsMap.get(LOG_FORMAT), "logFormat must be text or json"));
+
+            if (logFormat == null) {
+                throw new ConfigurationException("logFormat must be text or json");
+            }
+        }
+
+        Path logFile = null;
+        if (javaAgentsMap.get(LOG_FILE) != null) {
+            logFile = Paths.get(toNonEmptyString(javaAgentsMap.get(LOG_FILE), "logFile must be a non-empty path"));
+        }
+
+        int logFileMaxBytes = toInt(
+                javaAgentsMap.get(LOG_FILE_MAX_BYTES),
+                (int) LogSettings.DEFAULT_FILE_MAX_BYTES,
+                "logFileMaxBytes must be an integer");
+
+        if (logFileMaxBytes <= 0) {
+            throw new ConfigurationException("logFileMaxBytes must be greater than 0");
+        }
+
+        int logFileCount = toInt(
+                javaAgentsMap.get(LOG_FILE_COUNT), LogSettings.DEFAULT_FILE_COUNT, "logFileCount must be an integer");
+
+        if (logFileCount < 1) {
+            throw new ConfigurationException("logFileCount must be greater than or equal to 1");
+        }
+
+        return new LogSettings(logLevel, logFormat, logFile, logFileMaxBytes, logFileCount);
+    }
+
+    /**
+     * Converts an object to a start timeout.
+     *
+     * @param object the object to convert
+     * @param defaultValue the default value to return if the object is null
+     * @return the start timeout in seconds
+     */
+    private static int toStartTimeoutSeconds(Object object, int defaultValue) {
+        int startTimeoutSeconds = toInt(object, defaultValue, "startTimeoutSeconds must be an integer");
+
+        if (startTimeoutSeconds < 0) {
+            throw new ConfigurationException("startTimeoutSeconds must be greater than or equal to 0");
+        }
+
+        return startTimeoutSeconds;
+    }
+
+    /**
+     * Converts an object to a failure policy.
+     *
+     * @param object the object to convert
+     * @param defaultValue the default value to return if the object is null
+     * @return the failure policy
+     */
+    private static FailurePolicy toFailurePolicy(Object object, FailurePolicy defaultValue) {
+        if (object == null) {
+            return defaultValue;
+        }
+
+        FailurePolicy failurePolicy =
+                FailurePolicy.of(toNonEmptyString(object, "onFailure must be abort, skip, or continue-in-background"));
+
+        if (failurePolicy == null) {
+            throw new ConfigurationException("onFailure must be abort, skip, or continue-in-background");
+        }
+
+        return failurePolicy;
+    }
+
+    /**
+     * Converts an object to an http URL string.
+     *
+     * @param object the object to convert
+     * @param errorMessage the error message to throw if the object is not an http URL
+     * @return the URL string
+     */
+    private static String toHttpUrl(Object object, String errorMessage) {
+        String string = toNonEmptyString(object, errorMessage);
+
+        try {
+            if (!"http".equals(new URL(string).getProtocol())) {
+                throw new ConfigurationException(errorMessage);
+            }
+        } catch (MalformedURLException e) {
+            throw new ConfigurationException(errorMessage);
+        }
+
+        return string;
     }
 
     /**
@@ -123,6 +955,113 @@ public class Configuration {
         return (Map<?, ?>) object;
     }
 
+    /**
+     * Returns whether an agent with the dependency start mode is guaranteed to be started
+     * before an agent with the dependent start mode is started.
+     * <p>
+     * Foreground agents are started before any other agent, background agents are scheduled
+     * together, and deferred agents are started independently of each other.
+     *
+     * @param dependencyStartMode the start mode of the dependency
+     * @param dependentStartMode the start mode of the dependent agent
+     * @return true if the dependency can be satisfied, else false
+     */
+    private static boolean isStartedBefore(StartMode dependencyStartMode, StartMode dependentStartMode) {
+        switch (dependencyStartMode) {
+            case FOREGROUND:
+                return true;
+            case BACKGROUND:
+                return dependentStartMode == StartMode.BACKGROUND;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Converts an object to a start mode.
+     *
+     * @param object the object to convert
+     * @param defaultValue the default value to return if the object is null
+     * @return the start mode
+     */
+    private static StartMode toStartMode(Object object, StartMode defaultValue) {
+        if (object == null) {
+            return defaultValue;
+        }
+
+        StartMode startMode =
+                StartMode.of(toNonEmptyString(object, "startMode must be foreground, background, or deferred"));
+
+        if (startMode == null) {
+            throw new ConfigurationException("startMode must be foreground, background, or deferred");
+        }
+
+        return startMode;
+    }
+
+    /**
+     * Converts an object to a snapshot mode.
+     *
+     * @param object the object to convert
+     * @param defaultValue the default value to return if the object is null
+     * @return the snapshot mode
+     */
+    private static SnapshotMode toSnapshotMode(Object object, SnapshotMode defaultValue) {
+        if (object == null) {
+            return defaultValue;
+        }
+
+        SnapshotMode snapshotMode = SnapshotMode.of(
+                toNonEmptyString(object, "configurationSnapshot must be disabled, enabled, or validate"));
+
+        if (snapshotMode == null) {
+            throw new ConfigurationException("configurationSnapshot must be disabled, enabled, or validate");
+        }
+
+        return snapshotMode;
+    }
+
+    /**
+     * Converts an object to a list of non-empty strings.
+     *
+     * @param object the object to convert
+     * @param errorMessage the error message to throw if the object is not a list of non-empty strings
+     * @return the list of strings, or an empty list if the object is null
+     */
+    private static List<String> toStringList(Object object, String errorMessage) {
+        if (object == null) {
+            return new ArrayList<>();
+        }
+
+        List<String> strings = new ArrayList<>();
+
+        for (Object element : toList(object, errorMessage)) {
+            strings.add(toNonEmptyString(element, errorMessage));
+        }
+
+        return strings;
+    }
+
+    /**
+     * Converts an object to an integer value.
+     *
+     * @param object the object to convert
+     * @param defaultValue the default value to return if the object is null
+     * @param errorMessage the error message to throw if the object is not an integer
+     * @return the integer value
+     */
+    private static int toInt(Object object, int defaultValue, String errorMessage) {
+        if (object == null) {
+            return defaultValue;
+        }
+
+        if (object instanceof Integer) {
+            return (Integer) object;
+        }
+
+        throw new ConfigurationException(errorMessage);
+    }
+
     /**
      * Converts an object to a boolean value.
      *
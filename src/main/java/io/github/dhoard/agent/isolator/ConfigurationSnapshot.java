@@ -0,0 +1,562 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import io.github.dhoard.agent.isolator.util.LogFormat;
+import io.github.dhoard.agent.isolator.util.LogLevel;
+import io.github.dhoard.agent.isolator.util.LogSettings;
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.Version;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled binary snapshot of a parsed configuration, written next to the configuration file, so a
+ * warm start reads the snapshot instead of loading SnakeYAML and parsing the configuration.
+ * <p>
+ * A snapshot is keyed by the SHA-256 hash of the configuration file and the IsolatorAgent version,
+ * which are stored in the snapshot file, so a snapshot of a changed configuration file, or written by
+ * a different IsolatorAgent, is ignored and replaced.
+ * <p>
+ * Snapshots are only written and used if the configuration sets {@code configurationSnapshot}. The
+ * snapshot mode of a matching snapshot is the snapshot mode of the configuration file, so the
+ * configuration file does not have to be parsed to find it.
+ */
+@SuppressWarnings("PMD.EmptyCatchBlock")
+public class ConfigurationSnapshot {
+
+    private static final Logger LOGGER = Logger.getLogger(ConfigurationSnapshot.class);
+
+    private static final String SNAPSHOT_FILE_SUFFIX = ".snapshot";
+    private static final int MAGIC = 0x49534353;
+    private static final int FORMAT_VERSION = 2;
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Constructor
+     */
+    private ConfigurationSnapshot() {
+        // INTENTIONALLY BLANK
+    }
+
+    /**
+     * Loads a configuration file, from its snapshot if the snapshot matches the configuration file,
+     * else by parsing it.
+     *
+     * @param configurationPath the configuration file
+     * @return the configuration
+     * @throws IOException if the configuration file cannot be read
+     */
+    public static Configuration load(Path configurationPath) throws IOException {
+        byte[] bytes = Files.readAllBytes(configurationPath);
+        byte[] hash = hash(bytes);
+        String isolatorVersion = getIsolatorVersion();
+        Path snapshotPath = getSnapshotPath(configurationPath);
+
+        long startNanos = System.nanoTime();
+        Configuration snapshotConfiguration = read(snapshotPath, hash, isolatorVersion);
+
+        if (snapshotConfiguration != null && snapshotConfiguration.getSnapshotMode() == SnapshotMode.ENABLED) {
+            LOGGER.info(
+                    "configuration read from snapshot [%s] in [%d us]",
+                    snapshotPath, (System.nanoTime() - startNanos) / 1000);
+
+            return snapshotConfiguration;
+        }
+
+        startNanos = System.nanoTime();
+        Configuration configuration =
+                Configuration.parse(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        long parseMicros = (System.nanoTime() - startNanos) / 1000;
+
+        if (configuration.getSnapshotMode() == SnapshotMode.DISABLED) {
+            // Remove a snapshot written before the snapshot was disabled
+            delete(snapshotPath);
+
+            return configuration;
+        }
+
+        if (snapshotConfiguration != null) {
+            // Validate mode, the configuration file matches the snapshot
+            if (snapshotConfiguration.hasSameSettings(configuration)) {
+                LOGGER.info("configuration snapshot [%s] is valid, parsed in [%d us]", snapshotPath, parseMicros);
+                return configuration;
+            }
+
+            LOGGER.warn("configuration snapshot [%s] differs from the parsed configuration, replacing", snapshotPath);
+        }
+
+        try {
+            write(snapshotPath, hash, isolatorVersion, configuration);
+            LOGGER.info("configuration parsed in [%d us], snapshot written to [%s]", parseMicros, snapshotPath);
+        } catch (IOException e) {
+            // The snapshot is optional, for example the configuration directory may be read only
+            LOGGER.warn("failed to write configuration snapshot [%s], %s", snapshotPath, e);
+        }
+
+        return configuration;
+    }
+
+    /**
+     * Gets the snapshot file of a configuration file.
+     *
+     * @param configurationPath the configuration file
+     * @return the snapshot file, next to the configuration file
+     */
+    static Path getSnapshotPath(Path configurationPath) {
+        return configurationPath.resolveSibling(configurationPath.getFileName() + SNAPSHOT_FILE_SUFFIX);
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param snapshotPath the snapshot file
+     * @param hash the hash of the configuration file
+     * @param isolatorVersion the IsolatorAgent version
+     * @return the configuration, or null if the snapshot does not exist, is for a different configuration
+     *         file or IsolatorAgent version, or cannot be read
+     */
+    private static Configuration read(Path snapshotPath, byte[] hash, String isolatorVersion) {
+        try (DataInputStream dataInputStream =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (dataInputStream.readInt() != MAGIC || dataInputStream.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            byte[] snapshotHash = new byte[dataInputStream.readInt()];
+            dataInputStream.readFully(snapshotHash);
+
+            if (!Arrays.equals(hash, snapshotHash) || !isolatorVersion.equals(readString(dataInputStream))) {
+                return null;
+            }
+
+            return readConfiguration(dataInputStream);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // A corrupt snapshot is replaced
+            LOGGER.warn("failed to read configuration snapshot [%s], %s", snapshotPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes a snapshot, if it exists.
+     * <p>
+     * A file that does not start with the snapshot magic number is not a snapshot, and is not deleted.
+     * The snapshot is optional, so a snapshot that cannot be deleted is logged.
+     *
+     * @param snapshotPath the snapshot file
+     */
+    private static void delete(Path snapshotPath) {
+        try {
+            try (DataInputStream dataInputStream = new DataInputStream(Files.newInputStream(snapshotPath))) {
+                if (dataInputStream.readInt() != MAGIC) {
+                    return;
+                }
+            }
+
+            Files.delete(snapshotPath);
+            LOGGER.info("configuration snapshot [%s] deleted, configurationSnapshot is disabled", snapshotPath);
+        } catch (NoSuchFileException | EOFException e) {
+            // INTENTIONALLY BLANK
+        } catch (IOException e) {
+            LOGGER.warn("failed to delete configuration snapshot [%s], %s", snapshotPath, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot, replacing any existing snapshot.
+     *
+     * @param snapshotPath the snapshot file
+     * @param hash the hash of the configuration file
+     * @param isolatorVersion the IsolatorAgent version
+     * @param configuration the configuration
+     * @throws IOException if the snapshot cannot be written
+     */
+    private static void write(Path snapshotPath, byte[] hash, String isolatorVersion, Configuration configuration)
+            throws IOException {
+        // Write a temporary file and move it into place, so a concurrent reader never sees a partial snapshot
+        Path temporaryPath = Files.createTempFile(
+                snapshotPath.toAbsolutePath().getParent(),
+                snapshotPath.getFileName().toString(),
+                null);
+
+        try {
+            try (DataOutputStream dataOutputStream =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+                dataOutputStream.writeInt(MAGIC);
+                dataOutputStream.writeInt(FORMAT_VERSION);
+                dataOutputStream.writeInt(hash.length);
+                dataOutputStream.write(hash);
+                writeString(dataOutputStream, isolatorVersion);
+                writeConfiguration(dataOutputStream, configuration);
+            }
+
+            try {
+                Files.move(
+                        temporaryPath,
+                        snapshotPath,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    /**
+     * Writes a configuration.
+     *
+     * @param dataOutputStream the output
+     * @param configuration the configuration
+     * @throws IOException if the configuration cannot be written
+     */
+    private static void writeConfiguration(DataOutputStream dataOutputStream, Configuration configuration)
+            throws IOException {
+        dataOutputStream.writeBoolean(configuration.isParallelStartup());
+        dataOutputStream.writeInt(configuration.getStartTimeoutSeconds());
+        writeString(dataOutputStream, configuration.getOnFailure().name());
+        writeStrings(dataOutputStream, configuration.getParentFirstPackages());
+        writeStrings(dataOutputStream, configuration.getSharedPackages());
+        writePaths(dataOutputStream, configuration.getSharedJars());
+        writePath(dataOutputStream, configuration.getCacheDirectory());
+        dataOutputStream.writeBoolean(configuration.isClassPrefetch());
+        dataOutputStream.writeInt(configuration.getClassProfileSeconds());
+        dataOutputStream.writeInt(configuration.getResourceSampleSeconds());
+        dataOutputStream.writeInt(configuration.getProfileSampleMillis());
+        writePath(dataOutputStream, configuration.getProfileDirectory());
+        dataOutputStream.writeInt(configuration.getRetransformWindowMillis());
+        dataOutputStream.writeBoolean(configuration.isWatchConfiguration());
+        writePath(dataOutputStream, configuration.getLeakHeapDumpDirectory());
+        dataOutputStream.writeInt(configuration.getControlPort());
+        writePath(dataOutputStream, configuration.getControlSecretFile());
+        dataOutputStream.writeInt(configuration.getMetricsPort());
+        dataOutputStream.writeInt(configuration.getMetricsCacheMillis());
+        dataOutputStream.writeInt(configuration.getMetricsTimeoutMillis());
+
+        LogSettings logSettings = configuration.getLogSettings();
+        writeString(dataOutputStream, logSettings.getLevel().name());
+        writeString(dataOutputStream, logSettings.getFormat().name());
+        writePath(dataOutputStream, logSettings.getFile());
+        dataOutputStream.writeLong(logSettings.getFileMaxBytes());
+        dataOutputStream.writeInt(logSettings.getFileCount());
+
+        writeString(dataOutputStream, configuration.getSnapshotMode().name());
+
+        dataOutputStream.writeInt(configuration.getJavaAgents().size());
+
+        for (JavaAgent javaAgent : configuration.getJavaAgents()) {
+            writePath(dataOutputStream, javaAgent.getJarPath());
+            writeStrings(dataOutputStream, javaAgent.getClasspath());
+            writeString(dataOutputStream, javaAgent.getClassName());
+            writeString(dataOutputStream, javaAgent.getOptions());
+            writeString(dataOutputStream, javaAgent.getId());
+            writeStrings(dataOutputStream, javaAgent.getDependsOn());
+            dataOutputStream.writeInt(javaAgent.getStartOrder());
+            writeString(dataOutputStream, javaAgent.getStartMode().name());
+            dataOutputStream.writeInt(javaAgent.getStartDelaySeconds());
+            writeString(dataOutputStream, javaAgent.getStartTrigger());
+            dataOutputStream.writeInt(javaAgent.getStartTimeoutSeconds());
+            writeString(dataOutputStream, javaAgent.getOnFailure().name());
+            writeStrings(dataOutputStream, javaAgent.getTransformIncludes());
+            writeStrings(dataOutputStream, javaAgent.getTransformExcludes());
+            writeString(dataOutputStream, javaAgent.getStopMethod());
+            writeString(dataOutputStream, javaAgent.getMetricsUrl());
+        }
+    }
+
+    /**
+     * Reads a configuration, in the order written by {@link #writeConfiguration(DataOutputStream, Configuration)}.
+     *
+     * @param dataInputStream the input
+     * @return the configuration
+     * @throws IOException if the configuration cannot be read
+     */
+    private static Configuration readConfiguration(DataInputStream dataInputStream) throws IOException {
+        boolean parallelStartup = dataInputStream.readBoolean();
+        int startTimeoutSeconds = dataInputStream.readInt();
+        FailurePolicy onFailure = FailurePolicy.valueOf(readString(dataInputStream));
+        List<String> parentFirstPackages = readStrings(dataInputStream);
+        List<String> sharedPackages = readStrings(dataInputStream);
+        List<Path> sharedJars = readPaths(dataInputStream);
+        Path cacheDirectory = readPath(dataInputStream);
+        boolean classPrefetch = dataInputStream.readBoolean();
+        int classProfileSeconds = dataInputStream.readInt();
+        int resourceSampleSeconds = dataInputStream.readInt();
+        int profileSampleMillis = dataInputStream.readInt();
+        Path profileDirectory = readPath(dataInputStream);
+        int retransformWindowMillis = dataInputStream.readInt();
+        boolean watchConfiguration = dataInputStream.readBoolean();
+        Path leakHeapDumpDirectory = readPath(dataInputStream);
+        int controlPort = dataInputStream.readInt();
+        Path controlSecretFile = readPath(dataInputStream);
+        int metricsPort = dataInputStream.readInt();
+        int metricsCacheMillis = dataInputStream.readInt();
+        int metricsTimeoutMillis = dataInputStream.readInt();
+
+        LogSettings logSettings = new LogSettings(
+                LogLevel.valueOf(readString(dataInputStream)),
+                LogFormat.valueOf(readString(dataInputStream)),
+                readPath(dataInputStream),
+                dataInputStream.readLong(),
+                dataInputStream.readInt());
+
+        SnapshotMode snapshotMode = SnapshotMode.valueOf(readString(dataInputStream));
+
+        int javaAgentCount = dataInputStream.readInt();
+        List<JavaAgent> javaAgents = new ArrayList<>(javaAgentCount);
+
+        for (int i = 0; i < javaAgentCount; i++) {
+            javaAgents.add(new JavaAgent(
+                    readPath(dataInputStream),
+                    readStrings(dataInputStream),
+                    readString(dataInputStream),
+                    readString(dataInputStream),
+                    readString(dataInputStream),
+                    readStrings(dataInputStream),
+                    dataInputStream.readInt(),
+                    StartMode.valueOf(readString(dataInputStream)),
+                    dataInputStream.readInt(),
+                    readString(dataInputStream),
+                    dataInputStream.readInt(),
+                    FailurePolicy.valueOf(readString(dataInputStream)),
+                    readStrings(dataInputStream),
+                    readStrings(dataInputStream),
+                    readString(dataInputStream),
+                    readString(dataInputStream)));
+        }
+
+        return new Configuration(
+                parallelStartup,
+                startTimeoutSeconds,
+                onFailure,
+                parentFirstPackages,
+                sharedPackages,
+                sharedJars,
+                cacheDirectory,
+                classPrefetch,
+                classProfileSeconds,
+                resourceSampleSeconds,
+                profileSampleMillis,
+                profileDirectory,
+                retransformWindowMillis,
+                watchConfiguration,
+                leakHeapDumpDirectory,
+                controlPort,
+                controlSecretFile,
+                metricsPort,
+                metricsCacheMillis,
+                metricsTimeoutMillis,
+                logSettings,
+                snapshotMode,
+                javaAgents);
+    }
+
+    /**
+     * Writes a string, which may be null.
+     *
+     * @param dataOutputStream the output
+     * @param string the string, or null
+     * @throws IOException if the string cannot be written
+     */
+    private static void writeString(DataOutputStream dataOutputStream, String string) throws IOException {
+        if (string == null) {
+            dataOutputStream.writeInt(-1);
+            return;
+        }
+
+        // Not writeUTF, which is limited to 65535 bytes
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        dataOutputStream.writeInt(bytes.length);
+        dataOutputStream.write(bytes);
+    }
+
+    /**
+     * Reads a string, which may be null.
+     *
+     * @param dataInputStream the input
+     * @return the string, or null
+     * @throws IOException if the string cannot be read
+     */
+    private static String readString(DataInputStream dataInputStream) throws IOException {
+        int length = dataInputStream.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        dataInputStream.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a list of strings.
+     *
+     * @param dataOutputStream the output
+     * @param strings the strings
+     * @throws IOException if the strings cannot be written
+     */
+    private static void writeStrings(DataOutputStream dataOutputStream, List<String> strings) throws IOException {
+        dataOutputStream.writeInt(strings.size());
+
+        for (String string : strings) {
+            writeString(dataOutputStream, string);
+        }
+    }
+
+    /**
+     * Reads a list of strings.
+     *
+     * @param dataInputStream the input
+     * @return the strings
+     * @throws IOException if the strings cannot be read
+     */
+    private static List<String> readStrings(DataInputStream dataInputStream) throws IOException {
+        int size = dataInputStream.readInt();
+        List<String> strings = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            strings.add(readString(dataInputStream));
+        }
+
+        return strings;
+    }
+
+    /**
+     * Writes a path, which may be null.
+     *
+     * @param dataOutputStream the output
+     * @param path the path, or null
+     * @throws IOException if the path cannot be written
+     */
+    private static void writePath(DataOutputStream dataOutputStream, Path path) throws IOException {
+        writeString(dataOutputStream, path != null ? path.toString() : null);
+    }
+
+    /**
+     * Reads a path, which may be null.
+     *
+     * @param dataInputStream the input
+     * @return the path, or null
+     * @throws IOException if the path cannot be read
+     */
+    private static Path readPath(DataInputStream dataInputStream) throws IOException {
+        String string = readString(dataInputStream);
+
+        return string != null ? Paths.get(string) : null;
+    }
+
+    /**
+     * Writes a list of paths.
+     *
+     * @param dataOutputStream the output
+     * @param paths the paths
+     * @throws IOException if the paths cannot be written
+     */
+    private static void writePaths(DataOutputStream dataOutputStream, List<Path> paths) throws IOException {
+        dataOutputStream.writeInt(paths.size());
+
+        for (Path path : paths) {
+            writePath(dataOutputStream, path);
+        }
+    }
+
+    /**
+     * Reads a list of paths.
+     *
+     * @param dataInputStream the input
+     * @return the paths
+     * @throws IOException if the paths cannot be read
+     */
+    private static List<Path> readPaths(DataInputStream dataInputStream) throws IOException {
+        int size = dataInputStream.readInt();
+        List<Path> paths = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            paths.add(readPath(dataInputStream));
+        }
+
+        return paths;
+    }
+
+    /**
+     * Hashes the content of a configuration file.
+     *
+     * @param bytes the content of the configuration file
+     * @return the SHA-256 hash
+     */
+    private static byte[] hash(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM).digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets the IsolatorAgent version a snapshot is keyed by.
+     * <p>
+     * The version includes the last modified time of the IsolatorAgent jar, so a snapshot written by a
+     * different build of the same version is ignored.
+     *
+     * @return the IsolatorAgent version
+     */
+    private static String getIsolatorVersion() {
+        String version = Version.getVersion();
+        CodeSource codeSource =
+                ConfigurationSnapshot.class.getProtectionDomain().getCodeSource();
+        URL location = codeSource != null ? codeSource.getLocation() : null;
+
+        if (location == null) {
+            return version;
+        }
+
+        try {
+            return version + "@"
+                    + Files.getLastModifiedTime(Paths.get(location.toURI())).toMillis();
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            return version;
+        }
+    }
+}
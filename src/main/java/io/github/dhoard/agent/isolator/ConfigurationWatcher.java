@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the configuration file and applies changes to the isolator.
+ * <p>
+ * The directory containing the configuration file is watched using a {@link WatchService}, since a file
+ * cannot be watched directly and editors often replace a file instead of writing it in place. After a change,
+ * the watcher waits until no further changes occur for {@link #SETTLE_MILLIS}, then parses the configuration
+ * and reloads the isolator. A configuration that cannot be read or parsed is logged and ignored, so the
+ * running agents are left unchanged.
+ */
+public class ConfigurationWatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(ConfigurationWatcher.class);
+
+    private static final String WATCHER_THREAD_NAME = "isolator-agent-config-watcher";
+    private static final long SETTLE_MILLIS = 500;
+
+    private final Path path;
+    private final Isolator isolator;
+
+    /**
+     * Constructor for ConfigurationWatcher.
+     *
+     * @param path the path of the configuration file
+     * @param isolator the isolator to apply configuration changes to
+     */
+    public ConfigurationWatcher(Path path, Isolator isolator) {
+        this.path = path.toAbsolutePath();
+        this.isolator = isolator;
+    }
+
+    /**
+     * Starts watching the configuration file, returning immediately.
+     *
+     * @throws IOException if the directory containing the configuration file cannot be watched
+     */
+    public void start() throws IOException {
+        Path directory = path.getParent();
+        WatchService watchService = directory.getFileSystem().newWatchService();
+
+        try {
+            directory.register(
+                    watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | RuntimeException e) {
+            watchService.close();
+            throw e;
+        }
+
+        LOGGER.info("watching configuration [%s]", path);
+
+        Threads.newDaemonThread(WATCHER_THREAD_NAME, () -> watch(watchService)).start();
+    }
+
+    /**
+     * Waits for changes to the configuration file and reloads the isolator after each change.
+     *
+     * @param watchService the watch service the directory is registered with
+     */
+    private void watch(WatchService watchService) {
+        try {
+            while (true) {
+                WatchKey watchKey = watchService.take();
+                boolean changed = isChanged(watchKey);
+
+                if (!watchKey.reset()) {
+                    LOGGER.error("configuration directory [%s] is no longer accessible", path.getParent());
+                    return;
+                }
+
+                if (changed) {
+                    // Wait for the writes to settle, since a file is often written in several steps
+                    while ((watchKey = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                        watchKey.pollEvents();
+                        watchKey.reset();
+                    }
+
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            LOGGER.error("configuration watch service closed");
+        }
+    }
+
+    /**
+     * Returns whether the events of a watch key include a change to the configuration file.
+     *
+     * @param watchKey the watch key
+     * @return true if the configuration file may have changed, else false
+     */
+    private boolean isChanged(WatchKey watchKey) {
+        boolean changed = false;
+
+        for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+            // An overflow means events were lost, so the configuration file may have changed
+            if (watchEvent.kind() == StandardWatchEventKinds.OVERFLOW
+                    || path.getFileName().equals(watchEvent.context())) {
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Parses the configuration file and reloads the isolator.
+     */
+    private void reload() {
+        Configuration configuration;
+
+        try (Reader reader = Files.newBufferedReader(path)) {
+            configuration = Configuration.parse(reader);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("failed to reload configuration [%s], %s", path, e.getMessage());
+            return;
+        }
+
+        LOGGER.info("reloading configuration [%s]", path);
+
+        isolator.reload(configuration);
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import static java.lang.String.format;
+
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Loopback control port of the {@link IsolatorControl}.
+ * <p>
+ * Each connection sends one command line, receives the command output, followed by a newline, and is closed.
+ * A failed command is answered with a line starting with {@code ERROR}. The port is bound to the loopback
+ * address only, for example:
+ * <pre>
+ * echo list | nc 127.0.0.1 7070
+ * </pre>
+ * <p>
+ * Any local process can connect to the port, so without a secret file only the read-only commands are
+ * allowed. With a secret file, which must be owned by the user running the JVM and only be accessible by
+ * its owner, each connection sends the secret on the line before the command, and every command is allowed.
+ * <p>
+ * Read-only commands are executed on the accept thread. Commands that start, stop, or load agents may wait
+ * for agents, so they are executed one at a time on a command thread, and do not delay other connections.
+ */
+@SuppressWarnings("PMD.EmptyCatchBlock")
+public class ControlServer {
+
+    private static final Logger LOGGER = Logger.getLogger(ControlServer.class);
+
+    private static final String CONTROL_THREAD_NAME = "isolator-agent-control";
+    private static final String COMMAND_THREAD_NAME = "isolator-agent-control-command";
+    private static final int READ_TIMEOUT_MILLIS = 10_000;
+    private static final int MAXIMUM_COMMAND_LENGTH = 64 * 1024;
+    private static final long AUTHENTICATION_FAILURE_DELAY_MILLIS = 1_000;
+
+    private final int port;
+    private final Path secretFile;
+    private final IsolatorControl isolatorControl;
+    private byte[] secret;
+    private ExecutorService commandExecutorService;
+
+    /**
+     * Constructor for ControlServer.
+     *
+     * @param port the loopback port
+     * @param secretFile the file containing the secret, or null if only read-only commands are allowed
+     * @param isolatorControl the isolator control that executes the commands
+     */
+    public ControlServer(int port, Path secretFile, IsolatorControl isolatorControl) {
+        this.port = port;
+        this.secretFile = secretFile;
+        this.isolatorControl = isolatorControl;
+    }
+
+    /**
+     * Starts accepting connections, returning immediately.
+     *
+     * @throws IOException if the secret file cannot be read or is accessible by other users, or the port
+     *         cannot be bound
+     */
+    public void start() throws IOException {
+        if (secretFile != null) {
+            secret = readSecret(secretFile);
+        }
+
+        ServerSocket serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+
+        LOGGER.info("control port listening on [%s]", serverSocket.getLocalSocketAddress());
+
+        // Commands that start, stop, or load agents must run on a daemon thread, not a control thread
+        commandExecutorService = Threads.newFixedThreadPool(COMMAND_THREAD_NAME, 1);
+
+        Threads.newDaemonThread(CONTROL_THREAD_NAME, () -> accept(serverSocket)).start();
+    }
+
+    /**
+     * Accepts connections, reading one connection at a time.
+     *
+     * @param serverSocket the server socket
+     */
+    private void accept(ServerSocket serverSocket) {
+        while (true) {
+            Socket socket;
+
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                LOGGER.error("control port connection failed, %s", e.getMessage());
+                continue;
+            }
+
+            try {
+                handle(socket);
+            } catch (IOException e) {
+                LOGGER.error("control port connection failed, %s", e.getMessage());
+                close(socket);
+            }
+        }
+    }
+
+    /**
+     * Reads a command from a connection, and executes it, on the accept thread if it is a read-only
+     * command, else on the command thread.
+     *
+     * @param socket the connection, which is closed once the command output is written
+     * @throws IOException if the connection fails
+     */
+    private void handle(Socket socket) throws IOException {
+        socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+
+        Reader reader = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+        Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+
+        if (secret != null && !isAuthenticated(readLine(reader))) {
+            LOGGER.warn("control port authentication failed from [%s]", socket.getRemoteSocketAddress());
+
+            // Slow down guessing, connections are read one at a time
+            try {
+                Thread.sleep(AUTHENTICATION_FAILURE_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            writer.write("ERROR authentication failed\n");
+            writer.flush();
+            close(socket);
+            return;
+        }
+
+        String command = readLine(reader);
+
+        if (command != null && secret != null && !IsolatorControl.isReadOnlyCommand(command)) {
+            commandExecutorService.execute(() -> execute(socket, writer, command));
+        } else {
+            execute(socket, writer, command);
+        }
+    }
+
+    /**
+     * Executes a command, writes the output, and closes the connection.
+     *
+     * @param socket the connection
+     * @param writer the writer of the connection
+     * @param command the command, or null if the command is too long
+     */
+    private void execute(Socket socket, Writer writer, String command) {
+        String output;
+
+        try {
+            if (command == null) {
+                output = "ERROR command is too long";
+            } else if (secret == null && !IsolatorControl.isReadOnlyCommand(command)) {
+                output = "ERROR only read-only commands are allowed without controlSecretFile";
+            } else {
+                output = isolatorControl.execute(command);
+            }
+        } catch (RuntimeException e) {
+            output = "ERROR " + e.getMessage();
+        }
+
+        try {
+            writer.write(output);
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            LOGGER.error("control port connection failed, %s", e.getMessage());
+        } finally {
+            close(socket);
+        }
+    }
+
+    /**
+     * Closes a connection, ignoring any failure.
+     *
+     * @param socket the connection
+     */
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // INTENTIONALLY BLANK
+        }
+    }
+
+    /**
+     * Returns whether a line is the secret, comparing in constant time.
+     *
+     * @param line the line, or null if the line is too long
+     * @return true if the line is the secret, else false
+     */
+    private boolean isAuthenticated(String line) {
+        return line != null && MessageDigest.isEqual(secret, line.trim().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the secret, the first line of the secret file.
+     * <p>
+     * On a POSIX file system, the file must be owned by the user running the JVM and only be accessible by
+     * its owner. On other file systems, access to the file is controlled by the file system's access control
+     * lists.
+     *
+     * @param secretFile the secret file
+     * @return the secret
+     * @throws IOException if the secret file cannot be read, is accessible by other users, or is empty
+     */
+    private static byte[] readSecret(Path secretFile) throws IOException {
+        try {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(secretFile);
+            String owner = Files.getOwner(secretFile).getName();
+
+            if (!owner.equals(System.getProperty("user.name"))) {
+                throw new IOException(format("control secret file [%s] is owned by [%s]", secretFile, owner));
+            }
+
+            permissions.removeAll(EnumSet.of(
+                    PosixFilePermission.OWNER_READ,
+                    PosixFilePermission.OWNER_WRITE,
+                    PosixFilePermission.OWNER_EXECUTE));
+
+            if (!permissions.isEmpty()) {
+                throw new IOException(
+                        format("control secret file [%s] is accessible by other users %s", secretFile, permissions));
+            }
+        } catch (UnsupportedOperationException e) {
+            LOGGER.debug("control secret file [%s] permissions are not checked, not a POSIX file system", secretFile);
+        }
+
+        List<String> lines = Files.readAllLines(secretFile, StandardCharsets.UTF_8);
+        String secret = lines.isEmpty() ? "" : lines.get(0).trim();
+
+        if (secret.isEmpty()) {
+            throw new IOException(format("control secret file [%s] is empty", secretFile));
+        }
+
+        return secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a line, up to {@link #MAXIMUM_COMMAND_LENGTH} characters.
+     *
+     * @param reader the reader
+     * @return the line, without the line terminator, or null if the line is too long
+     * @throws IOException if the connection fails
+     */
+    private static String readLine(Reader reader) throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        int c;
+
+        while ((c = reader.read()) != -1 && c != '\n') {
+            if (stringBuilder.length() == MAXIMUM_COMMAND_LENGTH) {
+                return null;
+            }
+
+            stringBuilder.append((char) c);
+        }
+
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Deferred start of an isolated agent.
+ * <p>
+ * The agent is started on a daemon thread once its start trigger class has been loaded (if configured)
+ * and its start delay has elapsed (if configured). The trigger is detected using a
+ * {@link ClassFileTransformer} that never modifies classes and is removed as soon as the trigger fires.
+ * The agent is skipped if an agent it lists in {@code dependsOn} failed to start or was skipped.
+ */
+public class DeferredStart {
+
+    private static final Logger LOGGER = Logger.getLogger(DeferredStart.class);
+
+    private static final String DEFERRED_THREAD_NAME = "isolator-agent-deferred";
+
+    private final IsolatedAgent isolatedAgent;
+    private final Instrumentation instrumentation;
+    private final Function<String, IsolatedAgent> isolatedAgentLookup;
+    private final CountDownLatch triggerCountDownLatch;
+    private volatile ClassFileTransformer triggerClassFileTransformer;
+    private volatile Thread thread;
+
+    /**
+     * Constructor for DeferredStart.
+     *
+     * @param isolatedAgent   the isolated agent to start
+     * @param instrumentation the Instrumentation instance
+     * @param isolatedAgentLookup the lookup of the agents the agent depends on, by id
+     */
+    public DeferredStart(
+            IsolatedAgent isolatedAgent,
+            Instrumentation instrumentation,
+            Function<String, IsolatedAgent> isolatedAgentLookup) {
+        this.isolatedAgent = isolatedAgent;
+        this.instrumentation = instrumentation;
+        this.isolatedAgentLookup = isolatedAgentLookup;
+        this.triggerCountDownLatch = new CountDownLatch(1);
+    }
+
+    /**
+     * Schedules the start of the agent, returning immediately.
+     */
+    public void schedule() {
+        JavaAgent javaAgent = isolatedAgent.getJavaAgent();
+        String startTrigger = javaAgent.getStartTrigger();
+
+        LOGGER.info(
+                "agent[%d] deferred, startTrigger [%s] startDelaySeconds [%d]",
+                isolatedAgent.getIndex(), startTrigger == null ? "" : startTrigger, javaAgent.getStartDelaySeconds());
+
+        if (startTrigger == null) {
+            triggerCountDownLatch.countDown();
+        } else {
+            registerTrigger(startTrigger);
+        }
+
+        thread = Threads.newDaemonThread(DEFERRED_THREAD_NAME + "-" + isolatedAgent.getIndex(), this::awaitAndStart);
+        thread.start();
+    }
+
+    /**
+     * Cancels the start of the agent, if the agent has not started yet.
+     */
+    public void cancel() {
+        ClassFileTransformer classFileTransformer = triggerClassFileTransformer;
+        if (classFileTransformer != null) {
+            instrumentation.removeTransformer(classFileTransformer);
+        }
+
+        Thread deferredThread = thread;
+        if (deferredThread != null) {
+            deferredThread.interrupt();
+        }
+    }
+
+    /**
+     * Registers a transformer that fires the trigger when the trigger class is loaded.
+     *
+     * @param startTrigger the name of the trigger class
+     */
+    private void registerTrigger(String startTrigger) {
+        String internalClassName = startTrigger.replace('.', '/');
+
+        triggerClassFileTransformer = new ClassFileTransformer() {
+            @Override
+            public byte[] transform(
+                    ClassLoader classLoader,
+                    String className,
+                    Class<?> classBeingRedefined,
+                    ProtectionDomain protectionDomain,
+                    byte[] classfileBuffer) {
+                if (classBeingRedefined == null && internalClassName.equals(className)) {
+                    triggerCountDownLatch.countDown();
+                }
+
+                // Never modify the class
+                return null;
+            }
+        };
+
+        instrumentation.addTransformer(triggerClassFileTransformer);
+
+        // The trigger class may have been loaded before the transformer was registered
+        if (triggerCountDownLatch.getCount() > 0) {
+            for (Class<?> loadedClass : instrumentation.getAllLoadedClasses()) {
+                if (startTrigger.equals(loadedClass.getName())) {
+                    triggerCountDownLatch.countDown();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the trigger and delay, then starts the agent.
+     */
+    private void awaitAndStart() {
+        try {
+            triggerCountDownLatch.await();
+
+            // Remove the transformer once the trigger has fired
+            if (triggerClassFileTransformer != null) {
+                instrumentation.removeTransformer(triggerClassFileTransformer);
+            }
+
+            TimeUnit.SECONDS.sleep(isolatedAgent.getJavaAgent().getStartDelaySeconds());
+
+            // The scheduler checks the agent's dependencies and applies its failure policy
+            new StartupScheduler(Collections.singletonList(isolatedAgent), isolatedAgentLookup)
+                    .startSequential(instrumentation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            LOGGER.error("%s, %s", t.getMessage(), t.getCause());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import java.util.Locale;
+
+/**
+ * Policy applied when a Java agent fails to start or does not start within its start timeout.
+ */
+public enum FailurePolicy {
+
+    /**
+     * The failure is propagated, so a failure of a foreground agent fails the IsolatorAgent.
+     */
+    ABORT,
+
+    /**
+     * The agent, and any agent that depends on it, is skipped, and the other agents are started.
+     */
+    SKIP,
+
+    /**
+     * An agent that does not start within its start timeout continues to start in the background, and the
+     * other agents are started. An agent that fails to start is skipped.
+     */
+    CONTINUE_IN_BACKGROUND;
+
+    /**
+     * Gets the failure policy for a configuration value.
+     *
+     * @param value the configuration value
+     * @return the failure policy, or null if the value is not a valid failure policy
+     */
+    public static FailurePolicy of(String value) {
+        for (FailurePolicy failurePolicy : values()) {
+            if (failurePolicy.toString().equalsIgnoreCase(value)) {
+                return failurePolicy;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+    }
+}
@@ -0,0 +1,759 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import static java.lang.String.format;
+
+import io.github.dhoard.agent.isolator.util.ChildFirstURLClassLoader;
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.MBeans;
+import io.github.dhoard.agent.isolator.util.PrefixTrie;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.ObjectName;
+
+/**
+ * Represents a Java agent running in isolation.
+ * <p>
+ * This class is responsible for creating the isolated classloader for a {@link JavaAgent}
+ * and executing the agent's main method, and for stopping the agent so that its classloader can be collected.
+ */
+@SuppressWarnings({"PMD.EmptyCatchBlock", "PMD.AvoidThreadGroup"})
+public class IsolatedAgent {
+
+    private static final Logger LOGGER = Logger.getLogger(IsolatedAgent.class);
+
+    private static final String ISOLATOR_AGENT_THREAD_NAME = "isolator-agent";
+    private static final String AGENT_MAIN_METHOD = "agentmain";
+    private static final String PROFILE_THREAD_NAME = "isolator-agent-profile";
+    private static final String THREAD_GROUP_NAME_PREFIX = "isolator-agent-";
+    private static final String STOP_THREAD_NAME = "isolator-agent-stop";
+    private static final String WATCHDOG_THREAD_NAME = "isolator-agent-watchdog";
+    private static final long STOP_METHOD_TIMEOUT_MILLIS = 10_000;
+    private static final long STOP_THREADS_TIMEOUT_MILLIS = 5_000;
+
+    private final int index;
+    private final JavaAgent javaAgent;
+    private final Configuration configuration;
+    private final SharedLayer sharedLayer;
+    private final TransformerMultiplexer transformerMultiplexer;
+    private final RetransformCoalescer retransformCoalescer;
+    private final StartupTimeline startupTimeline;
+    private final AgentResources agentResources;
+    private final AgentTransforms agentTransforms;
+    private final AgentClassLoading agentClassLoading;
+    private final ThreadGroup threadGroup;
+    private volatile ChildFirstURLClassLoader classLoader;
+    private volatile ClassPrefetcher classPrefetcher;
+    private volatile Thread classProfileThread;
+    private CountDownLatch startLatch;
+    private boolean stopped;
+
+    /**
+     * Constructor for IsolatedAgent.
+     *
+     * @param index         the index of the agent, starting at 1, used for logging
+     * @param javaAgent     the Java agent configuration
+     * @param configuration the configuration containing the global settings
+     * @param sharedLayer   the shared classloader layer
+     * @param transformerMultiplexer the transformer multiplexer the agent's transformers are registered with
+     * @param retransformCoalescer the retransform coalescer, or null if retransform requests are not coalesced
+     */
+    public IsolatedAgent(
+            int index,
+            JavaAgent javaAgent,
+            Configuration configuration,
+            SharedLayer sharedLayer,
+            TransformerMultiplexer transformerMultiplexer,
+            RetransformCoalescer retransformCoalescer) {
+        this.index = index;
+        this.javaAgent = javaAgent;
+        this.configuration = configuration;
+        this.sharedLayer = sharedLayer;
+        this.transformerMultiplexer = transformerMultiplexer;
+        this.retransformCoalescer = retransformCoalescer;
+        this.startupTimeline = new StartupTimeline(javaAgent.getId());
+        this.agentResources = new AgentResources(javaAgent.getId());
+        this.agentTransforms = new AgentTransforms(javaAgent.getId());
+        this.agentClassLoading = new AgentClassLoading(javaAgent.getId());
+        this.threadGroup = new ThreadGroup(THREAD_GROUP_NAME_PREFIX + javaAgent.getId());
+    }
+
+    /**
+     * Gets the index.
+     *
+     * @return the index of the agent, starting at 1
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the id.
+     *
+     * @return the identifier of the agent
+     */
+    public String getId() {
+        return javaAgent.getId();
+    }
+
+    /**
+     * Gets the Java agent configuration.
+     *
+     * @return the Java agent configuration
+     */
+    public JavaAgent getJavaAgent() {
+        return javaAgent;
+    }
+
+    /**
+     * Gets the startup timeline.
+     *
+     * @return the startup timeline of the agent
+     */
+    public StartupTimeline getStartupTimeline() {
+        return startupTimeline;
+    }
+
+    /**
+     * Gets the resource usage.
+     *
+     * @return the resource usage of the agent threads
+     */
+    public AgentResources getAgentResources() {
+        return agentResources;
+    }
+
+    /**
+     * Gets the transform statistics.
+     *
+     * @return the transform statistics of the agent's transformers
+     */
+    public AgentTransforms getAgentTransforms() {
+        return agentTransforms;
+    }
+
+    /**
+     * Gets the class loading statistics.
+     *
+     * @return the class loading statistics of the agent's classloader
+     */
+    public AgentClassLoading getAgentClassLoading() {
+        return agentClassLoading;
+    }
+
+    /**
+     * Gets the thread group.
+     * <p>
+     * The agent main thread is created in this thread group, so threads created by the agent belong
+     * to it unless the agent creates them in another thread group.
+     *
+     * @return the thread group of the agent
+     */
+    public ThreadGroup getThreadGroup() {
+        return threadGroup;
+    }
+
+    /**
+     * Gets the classloader.
+     *
+     * @return the classloader of the agent, or null if the agent has not been started
+     */
+    public ChildFirstURLClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * Starts the Java agent, blocking until the agent's main method returns or the agent's start timeout expires.
+     * <p>
+     * If the start timeout expires, a thread dump of the agent's threads is logged. If the agent's failure
+     * policy is {@link FailurePolicy#CONTINUE_IN_BACKGROUND}, a watchdog thread waits for the agent's main
+     * method to return and this method returns, otherwise the agent's threads are interrupted and the start fails.
+     * <p>
+     * The agent's monitor is not held while waiting for the agent's main method, so the agent can be stopped,
+     * which interrupts the start, while it is starting.
+     *
+     * @param instrumentation the Instrumentation instance
+     * @throws Exception if an error occurs during agent execution or the agent does not start in time
+     */
+    public void start(Instrumentation instrumentation) throws Exception {
+        synchronized (this) {
+            if (stopped) {
+                throw new JavaAgentException(format("agent[%d] has been stopped", index));
+            }
+        }
+
+        LOGGER.info("agent[%d] starting...", index);
+
+        startupTimeline.starting();
+
+        List<String> classpath = javaAgent.getClasspath();
+        String className = javaAgent.getClassName();
+        String options = javaAgent.getOptions();
+
+        LOGGER.info("agent[%d].id [%s]", index, javaAgent.getId());
+        LOGGER.info("agent[%d].classpath %s", index, classpath);
+        LOGGER.info("agent[%d].className [%s]", index, className);
+        LOGGER.info("agent[%d].options [%s]", index, options);
+
+        URL[] urls = new URL[classpath.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = ChildFirstURLClassLoader.toUrl(classpath.get(i));
+        }
+
+        // Create a new URLClassLoader with the classpath URLs, using the shared classloader (if any) as the parent
+        ChildFirstURLClassLoader urlClassLoader = new ChildFirstURLClassLoader(
+                urls,
+                sharedLayer.getSharedClassLoader(),
+                PrefixTrie.ofPackages(configuration.getParentFirstPackages()),
+                sharedLayer.getSharedPrefixes());
+
+        agentClassLoading.classLoaderCreated(urlClassLoader.getStatistics());
+
+        // Prefetch the classes in the recorded class profile, or record a class profile if there is none
+        ClassProfile classProfile = configuration.isClassPrefetch() ? getClassProfile() : null;
+        List<String> prefetchClassNames = classProfile != null ? loadClassProfile(classProfile) : null;
+
+        if (prefetchClassNames != null) {
+            classPrefetcher = new ClassPrefetcher(index, urlClassLoader, prefetchClassNames);
+            classPrefetcher.start();
+        } else if (classProfile != null) {
+            urlClassLoader.startRecording();
+        }
+
+        startupTimeline.classLoaderCreated();
+
+        final AtomicReference<Throwable> throwableAtomicReference = new AtomicReference<>();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+
+        // Step 1: run the agent's main method, unless the agent was stopped while its classloader was created
+        synchronized (this) {
+            if (stopped) {
+                failed(urlClassLoader);
+                throw new JavaAgentException(format("agent[%d] stopped before it started", index));
+            }
+
+            try {
+                // The agent registers its transformers through its own Instrumentation
+                Instrumentation agentInstrumentation = AgentInstrumentation.create(
+                        javaAgent, instrumentation, transformerMultiplexer, retransformCoalescer, agentTransforms);
+
+                runJavaAgent(
+                        threadGroup,
+                        urlClassLoader,
+                        className,
+                        options,
+                        agentInstrumentation,
+                        startupTimeline,
+                        throwableAtomicReference,
+                        startLatch);
+            } catch (Throwable t) {
+                failed(urlClassLoader);
+                throw new JavaAgentException(format("agent[%d] failed to start", index), t);
+            }
+
+            this.startLatch = startLatch;
+        }
+
+        // Step 2: wait for the agent's main method to return, or the agent to be stopped, without holding
+        // the monitor, so the agent can be stopped while it is starting
+        boolean interrupted = false;
+
+        try {
+            // A start timeout of 0 waits until the agent's main method returns
+            if (javaAgent.getStartTimeoutSeconds() == 0) {
+                startLatch.await();
+            } else {
+                startLatch.await(javaAgent.getStartTimeoutSeconds(), TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+
+        // Step 3: complete the start, or decide why it failed
+        JavaAgentException startException;
+
+        synchronized (this) {
+            if (stopped || interrupted) {
+                this.startLatch = null;
+                startException = new JavaAgentException(format("agent[%d] stopped before it started", index));
+            } else if (startLatch.getCount() > 0) {
+                LOGGER.error(
+                        "agent[%d] did not start within [%d] seconds, onFailure [%s], thread dump%n%s",
+                        index,
+                        javaAgent.getStartTimeoutSeconds(),
+                        javaAgent.getOnFailure(),
+                        Threads.dump(getThreads(urlClassLoader)));
+
+                if (javaAgent.getOnFailure() == FailurePolicy.CONTINUE_IN_BACKGROUND) {
+                    watch(startLatch, throwableAtomicReference, urlClassLoader, classProfile, prefetchClassNames);
+                    return;
+                }
+
+                this.startLatch = null;
+                startException = new JavaAgentException(format(
+                        "agent[%d] did not start within [%d] seconds", index, javaAgent.getStartTimeoutSeconds()));
+            } else {
+                this.startLatch = null;
+
+                if (throwableAtomicReference.get() != null) {
+                    failed(urlClassLoader);
+                    throw new JavaAgentException(
+                            format("agent[%d] failed to start", index), throwableAtomicReference.get());
+                }
+
+                started(urlClassLoader, classProfile, prefetchClassNames);
+                return;
+            }
+        }
+
+        // Step 4: interrupt the agent's threads without holding the monitor, since waiting for them to
+        // terminate would block the agent's readers and stop
+        stopThreads(urlClassLoader);
+        failed(urlClassLoader);
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        throw startException;
+    }
+
+    /**
+     * Waits, on a daemon watchdog thread, for the main method of an agent that is continuing to start in the
+     * background to return, then completes the start of the agent.
+     * <p>
+     * If the agent has been stopped in the meantime, its start is treated as failed.
+     *
+     * @param startLatch the latch released when the agent's main method returns or the agent is stopped
+     * @param throwableAtomicReference the failure of the agent's main method, if any
+     * @param urlClassLoader the agent's classloader
+     * @param classProfile the class profile, or null if class prefetch is disabled
+     * @param prefetchClassNames the prefetched class names, or null if no class profile was recorded
+     */
+    private void watch(
+            CountDownLatch startLatch,
+            AtomicReference<Throwable> throwableAtomicReference,
+            ChildFirstURLClassLoader urlClassLoader,
+            ClassProfile classProfile,
+            List<String> prefetchClassNames) {
+        LOGGER.info("agent[%d] continuing to start in the background", index);
+
+        Threads.newDaemonThread(WATCHDOG_THREAD_NAME + "-" + index, () -> {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    synchronized (this) {
+                        this.startLatch = null;
+
+                        if (!stopped) {
+                            if (throwableAtomicReference.get() != null) {
+                                LOGGER.error(
+                                        "agent[%d] failed to start in the background, %s",
+                                        index, throwableAtomicReference.get());
+                                failed(urlClassLoader);
+                            } else {
+                                started(urlClassLoader, classProfile, prefetchClassNames);
+                            }
+
+                            return;
+                        }
+                    }
+
+                    // Interrupt the agent's threads without holding the monitor
+                    LOGGER.error("agent[%d] stopped before it started", index);
+                    stopThreads(urlClassLoader);
+                    failed(urlClassLoader);
+                })
+                .start();
+    }
+
+    /**
+     * Completes the start of the agent after its main method has returned.
+     *
+     * @param urlClassLoader the agent's classloader
+     * @param classProfile the class profile, or null if class prefetch is disabled
+     * @param prefetchClassNames the prefetched class names, or null if no class profile was recorded
+     */
+    private void started(
+            ChildFirstURLClassLoader urlClassLoader, ClassProfile classProfile, List<String> prefetchClassNames) {
+        classLoader = urlClassLoader;
+
+        startupTimeline.started(urlClassLoader);
+
+        LOGGER.info("agent[%d] started", index);
+        LOGGER.info("agent[%d] %s", index, startupTimeline.getSummary());
+
+        if (classProfile != null && prefetchClassNames == null) {
+            saveClassProfile(classProfile, urlClassLoader);
+        }
+    }
+
+    /**
+     * Releases the resources of an agent that failed to start.
+     *
+     * @param urlClassLoader the agent's classloader
+     */
+    private void failed(ChildFirstURLClassLoader urlClassLoader) {
+        startupTimeline.failed();
+
+        LOGGER.info("agent[%d] %s", index, startupTimeline.getSummary());
+
+        stopBackgroundThreads();
+
+        // Remove any transformers the agent registered before it failed
+        transformerMultiplexer.removeAll(agentTransforms);
+
+        // Close the URLClassLoader to release resources
+        try {
+            urlClassLoader.close();
+        } catch (Throwable t) {
+            // INTENTIONALLY BLANK
+        }
+    }
+
+    /**
+     * Stops the Java agent.
+     * <p>
+     * The agent's stop method (if configured) is called, its transformers are removed, its threads are
+     * interrupted, the MBeans whose classes it loaded are unregistered, and its classloader is closed.
+     * An agent that has not been started is never started after it has been stopped.
+     * <p>
+     * The agent's monitor is only held while the agent is marked stopped, not while waiting for the agent's
+     * stop method and threads, so a slow stop does not block the agent's readers.
+     *
+     * @return a weak reference to the agent's classloader, used to check that the classloader is collected,
+     *         or null if the agent was not started or has already been stopped
+     */
+    public WeakReference<ClassLoader> stop() {
+        ChildFirstURLClassLoader urlClassLoader;
+
+        synchronized (this) {
+            if (stopped) {
+                return null;
+            }
+
+            stopped = true;
+
+            // Remove any transformers, including those of an agent that failed to start
+            transformerMultiplexer.removeAll(agentTransforms);
+
+            urlClassLoader = classLoader;
+            classLoader = null;
+
+            if (urlClassLoader == null) {
+                // Release the thread waiting for an agent that is still starting, which interrupts the agent's
+                // threads and releases its resources
+                if (startLatch != null) {
+                    LOGGER.info("agent[%d] interrupting start...", index);
+                    startLatch.countDown();
+                }
+
+                return null;
+            }
+        }
+
+        LOGGER.info("agent[%d] stopping...", index);
+
+        // Step 1: stop the isolator's threads that reference the classloader
+        stopBackgroundThreads();
+
+        // Step 2: let the agent release its resources
+        if (javaAgent.getStopMethod() != null) {
+            runStopMethod(urlClassLoader);
+        }
+
+        // Step 3: interrupt the agent's threads and wait for them to terminate
+        stopThreads(urlClassLoader);
+
+        // Step 4: unregister the MBeans the agent registered, which the MBean server would otherwise retain
+        for (ObjectName objectName : MBeans.findByClassLoader(urlClassLoader)) {
+            LOGGER.info("agent[%d] unregistering MBean [%s]", index, objectName);
+            MBeans.unregister(objectName);
+        }
+
+        // Step 5: close the classloader
+        try {
+            urlClassLoader.close();
+        } catch (IOException e) {
+            LOGGER.error("agent[%d] failed to close classloader, %s", index, e);
+        }
+
+        LOGGER.info("agent[%d] stopped", index);
+
+        return new WeakReference<>(urlClassLoader);
+    }
+
+    /**
+     * Gets the live threads attributed to the agent.
+     * <p>
+     * A thread is attributed to the agent if it belongs to the agent's thread group or its context
+     * classloader is the agent's classloader.
+     *
+     * @param urlClassLoader the agent's classloader
+     * @return the live threads of the agent, excluding the current thread
+     */
+    List<Thread> getThreads(ClassLoader urlClassLoader) {
+        List<Thread> threads = new ArrayList<>();
+
+        for (Thread thread : Threads.getAllThreads()) {
+            if (thread != Thread.currentThread()
+                    && (Threads.isInThreadGroup(thread, threadGroup)
+                            || thread.getContextClassLoader() == urlClassLoader)) {
+                threads.add(thread);
+            }
+        }
+
+        return threads;
+    }
+
+    /**
+     * Calls the agent's static stop method on a thread in the agent's thread group, waiting at most
+     * {@link #STOP_METHOD_TIMEOUT_MILLIS} for it to return.
+     *
+     * @param urlClassLoader the agent's classloader
+     */
+    private void runStopMethod(ChildFirstURLClassLoader urlClassLoader) {
+        final AtomicReference<Throwable> throwableAtomicReference = new AtomicReference<>();
+
+        Thread thread = new Thread(threadGroup, () -> {
+            try {
+                Thread.currentThread().setContextClassLoader(urlClassLoader);
+
+                Class<?> javaAgentClass = urlClassLoader.loadClass(javaAgent.getClassName());
+                javaAgentClass.getMethod(javaAgent.getStopMethod()).invoke(null);
+            } catch (Throwable t) {
+                throwableAtomicReference.set(t);
+            }
+        });
+
+        thread.setName(STOP_THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+
+        try {
+            thread.join(STOP_METHOD_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (thread.isAlive()) {
+            LOGGER.error(
+                    "agent[%d] stopMethod [%s] did not return within [%d] ms",
+                    index, javaAgent.getStopMethod(), STOP_METHOD_TIMEOUT_MILLIS);
+        } else if (throwableAtomicReference.get() != null) {
+            LOGGER.error(
+                    "agent[%d] stopMethod [%s] failed, %s",
+                    index, javaAgent.getStopMethod(), throwableAtomicReference.get());
+        }
+    }
+
+    /**
+     * Interrupts the agent's threads, waiting at most {@link #STOP_THREADS_TIMEOUT_MILLIS} for them
+     * to terminate.
+     *
+     * @param urlClassLoader the agent's classloader
+     */
+    private void stopThreads(ChildFirstURLClassLoader urlClassLoader) {
+        List<Thread> threads = getThreads(urlClassLoader);
+
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STOP_THREADS_TIMEOUT_MILLIS);
+        List<String> aliveThreadNames = new ArrayList<>();
+
+        for (Thread thread : threads) {
+            try {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+
+                if (remainingMillis > 0) {
+                    thread.join(remainingMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (thread.isAlive()) {
+                aliveThreadNames.add(thread.getName());
+            }
+        }
+
+        if (!aliveThreadNames.isEmpty()) {
+            LOGGER.error("agent[%d] threads still running after interrupt %s", index, aliveThreadNames);
+        }
+    }
+
+    /**
+     * Gets the class profile of the agent.
+     *
+     * @return the class profile, or null if the class profile is not available
+     */
+    private ClassProfile getClassProfile() {
+        try {
+            ClassProfile classProfile = ClassProfile.of(configuration.getCacheDirectory(), javaAgent);
+
+            if (classProfile == null) {
+                LOGGER.info("agent[%d] class profile not available, the classpath contains a directory", index);
+            }
+
+            return classProfile;
+        } catch (IOException e) {
+            LOGGER.error("agent[%d] class profile not available, %s", index, e);
+            return null;
+        }
+    }
+
+    /**
+     * Loads the class names from a class profile.
+     *
+     * @param classProfile the class profile
+     * @return the class names, or null if no class profile has been recorded
+     */
+    private List<String> loadClassProfile(ClassProfile classProfile) {
+        try {
+            return classProfile.load();
+        } catch (IOException e) {
+            LOGGER.error("agent[%d] failed to load class profile [%s], %s", index, classProfile.getPath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the classes loaded by the agent to a class profile, after the configured class profile
+     * period, on a daemon thread.
+     *
+     * @param classProfile the class profile
+     * @param urlClassLoader the classloader that is recording the classes loaded by the agent
+     */
+    private void saveClassProfile(ClassProfile classProfile, ChildFirstURLClassLoader urlClassLoader) {
+        classProfileThread = Threads.newDaemonThread(PROFILE_THREAD_NAME, () -> {
+            try {
+                TimeUnit.SECONDS.sleep(configuration.getClassProfileSeconds());
+
+                List<String> classNames = urlClassLoader.stopRecording();
+                classProfile.save(classNames);
+
+                LOGGER.info(
+                        "agent[%d] recorded [%d] classes to class profile [%s]",
+                        index, classNames.size(), classProfile.getPath());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                LOGGER.error("agent[%d] failed to save class profile [%s], %s", index, classProfile.getPath(), e);
+            }
+        });
+        classProfileThread.start();
+    }
+
+    /**
+     * Stops the class prefetch threads and the class profile thread of the agent, if any, which reference the
+     * agent's classloader, so they neither use the classloader after it is closed nor delay its collection.
+     * <p>
+     * The class profile is not saved if the agent is stopped before the class profile period has elapsed.
+     */
+    private void stopBackgroundThreads() {
+        ClassPrefetcher classPrefetcher = this.classPrefetcher;
+
+        if (classPrefetcher != null) {
+            this.classPrefetcher = null;
+            classPrefetcher.stop();
+        }
+
+        Thread classProfileThread = this.classProfileThread;
+
+        if (classProfileThread != null) {
+            this.classProfileThread = null;
+            classProfileThread.interrupt();
+
+            try {
+                classProfileThread.join(STOP_THREADS_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Run the Java agent, returning immediately.
+     *
+     * @param threadGroup     the thread group to run the Java agent in
+     * @param urlClassLoader  the URLClassLoader to use for loading the Java agent
+     * @param className       the name of the Java agent class
+     * @param options         the options to pass to the Java agent
+     * @param instrumentation the Instrumentation instance
+     * @param startupTimeline the startup timeline to record the startup phases to
+     * @param throwableAtomicReference the reference set to the failure of the Java agent main method, if any
+     * @param startLatch the latch released when the Java agent main method returns
+     */
+    private static void runJavaAgent(
+            ThreadGroup threadGroup,
+            URLClassLoader urlClassLoader,
+            String className,
+            String options,
+            Instrumentation instrumentation,
+            StartupTimeline startupTimeline,
+            AtomicReference<Throwable> throwableAtomicReference,
+            CountDownLatch startLatch) {
+        Thread thread = new Thread(threadGroup, () -> {
+            try {
+                // Set the context class loader to the new URLClassLoader
+                // so that any spawned threads have the correct classloader
+                Thread.currentThread().setContextClassLoader(urlClassLoader);
+
+                // Load the Java agent class
+                Class<?> javaAgentClass = urlClassLoader.loadClass(className);
+                startupTimeline.mainClassLoaded();
+
+                // Resolve the Java agent main method
+                Method javaAgentMainMethod =
+                        javaAgentClass.getMethod(AGENT_MAIN_METHOD, String.class, Instrumentation.class);
+                startupTimeline.agentMainResolved();
+
+                // Invoke the Java agent main method
+                javaAgentMainMethod.invoke(null, options, instrumentation);
+                startupTimeline.agentMainReturned();
+            } catch (Throwable t) {
+                throwableAtomicReference.set(t);
+            } finally {
+                startLatch.countDown();
+            }
+        });
+
+        thread.setName(ISOLATOR_AGENT_THREAD_NAME);
+
+        // Threads spawned by the agent inherit the daemon status, which must not
+        // depend on whether the agent is started from a daemon startup thread
+        thread.setDaemon(false);
+        thread.start();
+    }
+}
@@ -0,0 +1,570 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import static java.lang.String.format;
+
+import io.github.dhoard.agent.isolator.util.ClassBytesCache;
+import io.github.dhoard.agent.isolator.util.JarRegistry;
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.MBeans;
+import io.github.dhoard.agent.isolator.util.PrefixTrie;
+import io.github.dhoard.agent.isolator.util.SharedJar;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runtime of the isolated agents of a configuration.
+ * <p>
+ * The isolator owns the services shared by all agents (the shared classloader layer, the transformer
+ * multiplexer, the retransform coalescer, the resource sampler, and the profiler) and the isolated agents themselves,
+ * keyed by id. A reloaded configuration is applied by diffing its agents against the running agents:
+ * added agents are started, and removed or changed agents are stopped and their classloaders checked
+ * for leaks. Changed agents are then started with their new settings.
+ * <p>
+ * Agents can also be started and stopped at runtime, through the control channel. Agents started at runtime
+ * are not part of the configuration, so a reloaded configuration never stops them.
+ * <p>
+ * The global settings are applied once, when the isolator is created, so changing them requires a restart.
+ */
+public class Isolator {
+
+    private static final Logger LOGGER = Logger.getLogger(Isolator.class);
+
+    private static final String BACKGROUND_THREAD_NAME = "isolator-agent-background";
+    private static final String AGENT_MBEAN_TYPE = "Agent";
+    private static final String AGENT_CLASS_LOADING_MBEAN_TYPE = "AgentClassLoading";
+    private static final String AGENT_PROFILER_MBEAN_TYPE = "AgentProfiler";
+    private static final String AGENT_RESOURCES_MBEAN_TYPE = "AgentResources";
+    private static final String AGENT_TRANSFORMS_MBEAN_TYPE = "AgentTransforms";
+    private static final String RETRANSFORM_COALESCER_MBEAN_TYPE = "RetransformCoalescer";
+
+    /**
+     * Start timeout, in seconds, of agents started at runtime without a start timeout.
+     */
+    private static final int RUNTIME_START_TIMEOUT_SECONDS = 60;
+
+    private final Instrumentation instrumentation;
+    private final Configuration configuration;
+    private final SharedLayer sharedLayer;
+    private final TransformerMultiplexer transformerMultiplexer;
+    private final RetransformCoalescer retransformCoalescer;
+    private final ResourceSampler resourceSampler;
+    private final AgentProfiler agentProfiler;
+    private final Map<String, IsolatedAgent> isolatedAgents;
+    private final Map<String, DeferredStart> deferredStarts;
+    private final Set<String> runtimeIds;
+    private int nextIndex;
+
+    /**
+     * Constructor for Isolator.
+     *
+     * @param instrumentation the Instrumentation instance
+     * @param configuration the configuration containing the global settings and the initial agents
+     * @throws IOException if the shared layer cannot be created
+     */
+    public Isolator(Instrumentation instrumentation, Configuration configuration) throws IOException {
+        this.instrumentation = instrumentation;
+        this.configuration = configuration;
+
+        if (configuration.getCacheDirectory() != null) {
+            try {
+                JarRegistry.setClassBytesCache(
+                        ClassBytesCache.open(configuration.getCacheDirectory(), getJarHashes(configuration)));
+            } catch (IOException e) {
+                // The cache is an optimization, so continue without it
+                LOGGER.error("failed to open class bytes cache [%s], %s", configuration.getCacheDirectory(), e);
+            }
+        }
+
+        this.sharedLayer = SharedLayer.create(configuration);
+
+        this.resourceSampler = configuration.getResourceSampleSeconds() > 0
+                ? new ResourceSampler(configuration.getResourceSampleSeconds())
+                : null;
+
+        if (configuration.getProfileSampleMillis() > 0) {
+            this.agentProfiler = new AgentProfiler(
+                    configuration.getProfileSampleMillis(),
+                    configuration.getProfileDirectory(),
+                    PrefixTrie.ofPackages(configuration.getParentFirstPackages()));
+            MBeans.register(MBeans.objectName(AGENT_PROFILER_MBEAN_TYPE), agentProfiler);
+        } else {
+            this.agentProfiler = null;
+        }
+
+        this.transformerMultiplexer = new TransformerMultiplexer(instrumentation);
+
+        if (configuration.getRetransformWindowMillis() > 0) {
+            this.retransformCoalescer =
+                    new RetransformCoalescer(instrumentation, configuration.getRetransformWindowMillis());
+            MBeans.register(MBeans.objectName(RETRANSFORM_COALESCER_MBEAN_TYPE), retransformCoalescer);
+        } else {
+            this.retransformCoalescer = null;
+        }
+
+        this.isolatedAgents = new LinkedHashMap<>();
+        this.deferredStarts = new HashMap<>();
+        this.runtimeIds = new HashSet<>();
+        this.nextIndex = 1;
+    }
+
+    /**
+     * Gets the configuration.
+     *
+     * @return the configuration containing the global settings
+     */
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Gets the isolated agents.
+     *
+     * @return the isolated agents, in the order they were created
+     */
+    public synchronized List<IsolatedAgent> getIsolatedAgents() {
+        return Collections.unmodifiableList(new ArrayList<>(isolatedAgents.values()));
+    }
+
+    /**
+     * Gets an isolated agent.
+     *
+     * @param id the id of the agent
+     * @return the isolated agent, or null if there is no agent with the id
+     */
+    public synchronized IsolatedAgent getIsolatedAgent(String id) {
+        return isolatedAgents.get(id);
+    }
+
+    /**
+     * Starts the agents of the configuration, blocking until the foreground agents have started.
+     *
+     * @throws Exception if a foreground agent fails to start
+     */
+    public void start() throws Exception {
+        List<IsolatedAgent> createdIsolatedAgents;
+
+        synchronized (this) {
+            createdIsolatedAgents = createIsolatedAgents(configuration.getJavaAgents());
+        }
+
+        startIsolatedAgentsByStartMode(createdIsolatedAgents);
+
+        if (resourceSampler != null) {
+            resourceSampler.start();
+        }
+
+        if (agentProfiler != null) {
+            agentProfiler.start();
+        }
+    }
+
+    /**
+     * Starts an agent at runtime, blocking until the agent has started if it is a foreground agent.
+     * <p>
+     * The isolator's monitor is not held while the agent starts, and an agent without a start timeout is
+     * started with a start timeout of {@link #RUNTIME_START_TIMEOUT_SECONDS}, so a runtime start that does not
+     * return does not block the control channel indefinitely.
+     *
+     * @param javaAgent the Java agent
+     * @throws ConfigurationException if an agent with the same id exists or a dependency is not running
+     * @throws Exception if the agent fails to start
+     */
+    public void start(JavaAgent javaAgent) throws Exception {
+        JavaAgent runtimeJavaAgent = javaAgent.getStartTimeoutSeconds() > 0
+                ? javaAgent
+                : javaAgent.withStartTimeoutSeconds(RUNTIME_START_TIMEOUT_SECONDS);
+
+        List<IsolatedAgent> createdIsolatedAgents;
+
+        synchronized (this) {
+            if (isolatedAgents.containsKey(runtimeJavaAgent.getId())) {
+                throw new ConfigurationException(format("id [%s] is not unique", runtimeJavaAgent.getId()));
+            }
+
+            for (String dependency : runtimeJavaAgent.getDependsOn()) {
+                IsolatedAgent dependencyIsolatedAgent = isolatedAgents.get(dependency);
+
+                if (dependencyIsolatedAgent == null || dependencyIsolatedAgent.getClassLoader() == null) {
+                    throw new ConfigurationException(format(
+                            "id [%s] dependsOn [%s] which is not a started agent",
+                            runtimeJavaAgent.getId(), dependency));
+                }
+            }
+
+            runtimeIds.add(runtimeJavaAgent.getId());
+            createdIsolatedAgents = createIsolatedAgents(Collections.singletonList(runtimeJavaAgent));
+        }
+
+        startIsolatedAgentsByStartMode(createdIsolatedAgents);
+    }
+
+    /**
+     * Stops an agent at runtime.
+     *
+     * @param id the id of the agent
+     * @return true if the agent was stopped, false if there is no agent with the id
+     */
+    public boolean stop(String id) {
+        IsolatedAgent isolatedAgent;
+
+        synchronized (this) {
+            isolatedAgent = isolatedAgents.get(id);
+
+            if (isolatedAgent == null) {
+                return false;
+            }
+
+            remove(isolatedAgent);
+        }
+
+        stop(isolatedAgent);
+
+        return true;
+    }
+
+    /**
+     * Applies a reloaded configuration, blocking until the removed and changed agents have stopped and
+     * the added and changed foreground agents have started.
+     *
+     * @param reloadedConfiguration the reloaded configuration
+     */
+    public void reload(Configuration reloadedConfiguration) {
+        // The log settings are applied without a restart
+        Logger.configure(reloadedConfiguration.getLogSettings());
+
+        List<IsolatedAgent> stoppedIsolatedAgents = new ArrayList<>();
+        List<IsolatedAgent> createdIsolatedAgents;
+
+        synchronized (this) {
+            createdIsolatedAgents = reloadIsolatedAgents(reloadedConfiguration, stoppedIsolatedAgents);
+        }
+
+        // Stop the removed and changed agents without holding the monitor, so a slow stop does not block
+        // the readers of the isolated agents
+        for (IsolatedAgent isolatedAgent : stoppedIsolatedAgents) {
+            stop(isolatedAgent);
+        }
+
+        if (createdIsolatedAgents.isEmpty()) {
+            return;
+        }
+
+        try {
+            startIsolatedAgentsByStartMode(createdIsolatedAgents);
+        } catch (Throwable t) {
+            LOGGER.error("%s, %s", t.getMessage(), t.getCause());
+        }
+    }
+
+    /**
+     * Removes the removed and changed agents of a reloaded configuration, and creates the added and changed agents.
+     * <p>
+     * Called while holding the isolator's monitor.
+     *
+     * @param reloadedConfiguration the reloaded configuration
+     * @param stoppedIsolatedAgents receives the removed isolated agents, which have not been stopped, in the
+     *        order to stop them
+     * @return the created isolated agents, which have not been started
+     */
+    private List<IsolatedAgent> reloadIsolatedAgents(
+            Configuration reloadedConfiguration, List<IsolatedAgent> stoppedIsolatedAgents) {
+        if (!configuration.hasSameGlobalSettings(reloadedConfiguration)) {
+            LOGGER.error("global settings changed, a restart is required to apply them");
+        }
+
+        Map<String, JavaAgent> reloadedJavaAgents = new HashMap<>();
+        for (JavaAgent javaAgent : reloadedConfiguration.getJavaAgents()) {
+            reloadedJavaAgents.put(javaAgent.getId(), javaAgent);
+        }
+
+        // Remove the removed and changed agents
+        for (IsolatedAgent isolatedAgent : isolatedAgents.values()) {
+            if (!runtimeIds.contains(isolatedAgent.getId())
+                    && !isolatedAgent.getJavaAgent().equals(reloadedJavaAgents.get(isolatedAgent.getId()))) {
+                stoppedIsolatedAgents.add(isolatedAgent);
+            }
+        }
+
+        // Start the added and changed agents
+        List<JavaAgent> startedJavaAgents = new ArrayList<>();
+        for (JavaAgent javaAgent : reloadedConfiguration.getJavaAgents()) {
+            IsolatedAgent isolatedAgent = isolatedAgents.get(javaAgent.getId());
+
+            if (runtimeIds.contains(javaAgent.getId())) {
+                LOGGER.error("id [%s] is used by an agent started at runtime, not starting it", javaAgent.getId());
+            } else if (isolatedAgent == null || !isolatedAgent.getJavaAgent().equals(javaAgent)) {
+                startedJavaAgents.add(javaAgent);
+            }
+        }
+
+        if (stoppedIsolatedAgents.isEmpty() && startedJavaAgents.isEmpty()) {
+            LOGGER.info("configuration reloaded, no agent changes");
+            return Collections.emptyList();
+        }
+
+        LOGGER.info(
+                "configuration reloaded, stopping %d agent%s, starting %d agent%s",
+                stoppedIsolatedAgents.size(),
+                stoppedIsolatedAgents.size() == 1 ? "" : "s",
+                startedJavaAgents.size(),
+                startedJavaAgents.size() == 1 ? "" : "s");
+
+        // Stop the agents in the reverse of the order they were created, so dependents stop first
+        Collections.reverse(stoppedIsolatedAgents);
+
+        for (IsolatedAgent isolatedAgent : stoppedIsolatedAgents) {
+            remove(isolatedAgent);
+        }
+
+        return createIsolatedAgents(startedJavaAgents);
+    }
+
+    /**
+     * Creates isolated agents for Java agents and publishes their MBeans.
+     * <p>
+     * Called while holding the isolator's monitor.
+     *
+     * @param javaAgents the Java agents
+     * @return the isolated agents, which have not been started
+     */
+    private List<IsolatedAgent> createIsolatedAgents(List<JavaAgent> javaAgents) {
+        List<IsolatedAgent> createdIsolatedAgents = new ArrayList<>();
+
+        for (JavaAgent javaAgent : javaAgents) {
+            IsolatedAgent isolatedAgent = new IsolatedAgent(
+                    nextIndex++, javaAgent, configuration, sharedLayer, transformerMultiplexer, retransformCoalescer);
+
+            isolatedAgents.put(isolatedAgent.getId(), isolatedAgent);
+
+            // Publish the startup timeline before the agent starts, so pending agents are visible
+            MBeans.register(
+                    MBeans.objectName(AGENT_MBEAN_TYPE, isolatedAgent.getId()), isolatedAgent.getStartupTimeline());
+            MBeans.register(
+                    MBeans.objectName(AGENT_TRANSFORMS_MBEAN_TYPE, isolatedAgent.getId()),
+                    isolatedAgent.getAgentTransforms());
+            MBeans.register(
+                    MBeans.objectName(AGENT_CLASS_LOADING_MBEAN_TYPE, isolatedAgent.getId()),
+                    isolatedAgent.getAgentClassLoading());
+
+            if (resourceSampler != null) {
+                resourceSampler.add(isolatedAgent);
+                MBeans.register(
+                        MBeans.objectName(AGENT_RESOURCES_MBEAN_TYPE, isolatedAgent.getId()),
+                        isolatedAgent.getAgentResources());
+            }
+
+            if (agentProfiler != null) {
+                agentProfiler.add(isolatedAgent);
+            }
+
+            createdIsolatedAgents.add(isolatedAgent);
+        }
+
+        return createdIsolatedAgents;
+    }
+
+    /**
+     * Starts isolated agents according to their start modes, blocking until the foreground agents have started.
+     * <p>
+     * Called without holding the isolator's monitor, so the agents can be listed and stopped while they start.
+     *
+     * @param createdIsolatedAgents the isolated agents
+     * @throws Exception if a foreground agent fails to start
+     */
+    private void startIsolatedAgentsByStartMode(List<IsolatedAgent> createdIsolatedAgents) throws Exception {
+        List<IsolatedAgent> foregroundIsolatedAgents = new ArrayList<>();
+        List<IsolatedAgent> backgroundIsolatedAgents = new ArrayList<>();
+        List<IsolatedAgent> deferredIsolatedAgents = new ArrayList<>();
+
+        for (IsolatedAgent isolatedAgent : createdIsolatedAgents) {
+            switch (isolatedAgent.getJavaAgent().getStartMode()) {
+                case BACKGROUND:
+                    backgroundIsolatedAgents.add(isolatedAgent);
+                    break;
+                case DEFERRED:
+                    deferredIsolatedAgents.add(isolatedAgent);
+                    break;
+                default:
+                    foregroundIsolatedAgents.add(isolatedAgent);
+                    break;
+            }
+        }
+
+        // Start the foreground agents, blocking until they have started
+        startIsolatedAgents(foregroundIsolatedAgents);
+
+        // Skipped agents and agents continuing to start in the background have no classloader yet
+        int startedCount = 0;
+        for (IsolatedAgent isolatedAgent : foregroundIsolatedAgents) {
+            if (isolatedAgent.getClassLoader() != null) {
+                startedCount++;
+            }
+        }
+
+        LOGGER.info("%d agent%s started successfully", startedCount, startedCount == 1 ? "" : "s");
+
+        sharedLayer.report(getIsolatedAgents());
+
+        // Start the background agents on a daemon thread
+        if (!backgroundIsolatedAgents.isEmpty()) {
+            LOGGER.info(
+                    "starting %d agent%s in the background...",
+                    backgroundIsolatedAgents.size(), backgroundIsolatedAgents.size() == 1 ? "" : "s");
+
+            Threads.newDaemonThread(BACKGROUND_THREAD_NAME, () -> {
+                        try {
+                            startIsolatedAgents(backgroundIsolatedAgents);
+                            sharedLayer.report(getIsolatedAgents());
+                        } catch (Throwable t) {
+                            LOGGER.error("%s, %s", t.getMessage(), t.getCause());
+                        }
+                    })
+                    .start();
+        }
+
+        // Schedule the deferred agents that have not been stopped in the meantime
+        synchronized (this) {
+            for (IsolatedAgent isolatedAgent : deferredIsolatedAgents) {
+                if (isolatedAgents.get(isolatedAgent.getId()) == isolatedAgent) {
+                    DeferredStart deferredStart =
+                            new DeferredStart(isolatedAgent, instrumentation, this::getIsolatedAgent);
+                    deferredStarts.put(isolatedAgent.getId(), deferredStart);
+                    deferredStart.schedule();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the content hashes of the jars of the agents and the shared jars of a configuration.
+     * <p>
+     * Jars that cannot be read are skipped, as their agents fail to start.
+     *
+     * @param configuration the configuration
+     * @return the content hashes of the jars
+     */
+    private static Set<String> getJarHashes(Configuration configuration) {
+        List<String> classpath = new ArrayList<>();
+
+        for (JavaAgent javaAgent : configuration.getJavaAgents()) {
+            classpath.addAll(javaAgent.getClasspath());
+        }
+
+        for (Path sharedJar : configuration.getSharedJars()) {
+            classpath.add(sharedJar.toString());
+        }
+
+        Set<String> jarHashes = new HashSet<>();
+
+        for (String classpathEntry : classpath) {
+            try {
+                SharedJar sharedJar = JarRegistry.get(classpathEntry);
+
+                if (sharedJar != null) {
+                    jarHashes.add(sharedJar.getContentHash());
+                }
+            } catch (IOException e) {
+                LOGGER.debug("failed to hash classpath entry [%s], %s", classpathEntry, e.getMessage());
+            }
+        }
+
+        return jarHashes;
+    }
+
+    /**
+     * Starts a group of isolated agents, blocking until they have started.
+     *
+     * @param isolatedAgents the isolated agents to start
+     * @throws Exception if an agent fails to start
+     */
+    private void startIsolatedAgents(List<IsolatedAgent> isolatedAgents) throws Exception {
+        if (isolatedAgents.isEmpty()) {
+            return;
+        }
+
+        StartupScheduler startupScheduler = new StartupScheduler(isolatedAgents, this::getIsolatedAgent);
+
+        if (configuration.isParallelStartup()) {
+            startupScheduler.startParallel(instrumentation);
+        } else {
+            startupScheduler.startSequential(instrumentation);
+        }
+    }
+
+    /**
+     * Removes an isolated agent that is to be stopped, and unregisters its MBeans, so an agent with the same id
+     * can be created before it has stopped.
+     * <p>
+     * Called while holding the isolator's monitor.
+     *
+     * @param isolatedAgent the isolated agent
+     */
+    private void remove(IsolatedAgent isolatedAgent) {
+        String id = isolatedAgent.getId();
+
+        isolatedAgents.remove(id);
+        runtimeIds.remove(id);
+
+        DeferredStart deferredStart = deferredStarts.remove(id);
+        if (deferredStart != null) {
+            deferredStart.cancel();
+        }
+
+        MBeans.unregister(MBeans.objectName(AGENT_MBEAN_TYPE, id));
+        MBeans.unregister(MBeans.objectName(AGENT_TRANSFORMS_MBEAN_TYPE, id));
+        MBeans.unregister(MBeans.objectName(AGENT_CLASS_LOADING_MBEAN_TYPE, id));
+
+        if (resourceSampler != null) {
+            resourceSampler.remove(isolatedAgent);
+            MBeans.unregister(MBeans.objectName(AGENT_RESOURCES_MBEAN_TYPE, id));
+        }
+
+        if (agentProfiler != null) {
+            agentProfiler.remove(isolatedAgent);
+        }
+    }
+
+    /**
+     * Stops an isolated agent that has been removed, and checks that its classloader is collected.
+     * <p>
+     * Called without holding the isolator's monitor, since stopping an agent waits for its stop method
+     * and threads.
+     *
+     * @param isolatedAgent the isolated agent
+     */
+    private void stop(IsolatedAgent isolatedAgent) {
+        WeakReference<ClassLoader> classLoaderReference = isolatedAgent.stop();
+
+        if (classLoaderReference != null) {
+            new ClassLoaderLeakCheck(isolatedAgent, classLoaderReference, configuration.getLeakHeapDumpDirectory())
+                    .start();
+        }
+    }
+}
@@ -16,20 +16,20 @@
 
 package io.github.dhoard.agent.isolator;
 
-import static java.lang.String.format;
-
-import io.github.dhoard.agent.isolator.util.ChildFirstURLClassLoader;
 import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.MBeans;
+import io.github.dhoard.agent.isolator.util.Threads;
 import io.github.dhoard.agent.isolator.util.Version;
+import java.io.IOException;
 import java.lang.instrument.Instrumentation;
-import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.nio.file.Files;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.RuntimeMBeanException;
 
 /**
  * Isolator agent for loading and running Java agents.
@@ -37,13 +37,11 @@ import java.util.concurrent.atomic.AtomicReference;
  * This class is responsible for loading Java agents from specified jar files and executing their main methods.
  * It uses a custom classloader to ensure that the agent classes are loaded correctly.
  */
-@SuppressWarnings("PMD.EmptyCatchBlock")
 public class IsolatorAgent {
 
     private static final Logger LOGGER = Logger.getLogger(IsolatorAgent.class);
 
-    private static final String ISOLATOR_AGENT_THREAD_NAME = "isolator-agent";
-    private static final String AGENT_MAIN_METHOD = "agentmain";
+    private static final String ISOLATOR_MBEAN_TYPE = "Isolator";
 
     /**
      * Default constructor for IsolatorAgent.
@@ -73,98 +71,118 @@ public class IsolatorAgent {
      * @throws Exception if an error occurs during agent execution
      */
     public static void premain(String agentArgument, Instrumentation instrumentation) throws Exception {
+        try {
+            start(agentArgument, instrumentation);
+        } finally {
+            // Write the startup messages before the application starts, or the JVM aborts if the start failed
+            Logger.flush();
+        }
+    }
+
+    /**
+     * Starts the isolator, or forwards the agent argument to an isolator already running in this JVM.
+     *
+     * @param agentArgument agentArgument
+     * @param instrumentation instrumentation
+     * @throws Exception if an error occurs during agent execution
+     */
+    private static void start(String agentArgument, Instrumentation instrumentation) throws Exception {
         LOGGER.info("IsolatorAgent %s (https://github.com/dhoard/isolator-agent)", Version.getVersion());
         LOGGER.info("agent arguments [%s]", agentArgument);
+        LOGGER.info("control threads [%s]", Threads.isControlThreadVirtual() ? "virtual" : "platform");
 
         if (agentArgument == null || agentArgument.isEmpty()) {
             throw new IllegalArgumentException("agent argument cannot be null or empty");
         }
 
-        // TODO: Validate the agentArgument if a file that exists
-
-        List<JavaAgent> javaAgents = Configuration.parse(Files.newBufferedReader(Paths.get(agentArgument)));
+        // Forward the agent argument to an isolator already running in this JVM, for example after a dynamic attach
+        if (forwardToRunningIsolator(agentArgument)) {
+            return;
+        }
 
-        if (!javaAgents.isEmpty()) {
-            LOGGER.info("starting %d agent%s...", javaAgents.size(), javaAgents.size() == 1 ? "" : "s");
+        // TODO: Validate the agentArgument if a file that exists
 
-            for (int i = 0; i < javaAgents.size(); i++) {
-                JavaAgent javaAgent = javaAgents.get(i);
+        Path configurationPath = Paths.get(agentArgument);
+        Configuration configuration = ConfigurationSnapshot.load(configurationPath);
+        Logger.configure(configuration.getLogSettings());
 
-                LOGGER.info("agent[%d] starting...", i + 1);
+        List<JavaAgent> javaAgents = configuration.getJavaAgents();
 
-                Path jarPath = javaAgent.getJarPath();
-                String className = javaAgent.getClassName();
-                String options = javaAgent.getOptions();
+        if (javaAgents.isEmpty()) {
+            LOGGER.info("no agents to start");
+        } else {
+            LOGGER.info("starting %d agent%s...", javaAgents.size(), javaAgents.size() == 1 ? "" : "s");
+        }
 
-                LOGGER.info("agent[%d].jarPath [%s]", i + 1, jarPath);
-                LOGGER.info("agent[%d].className [%s]", i + 1, className);
-                LOGGER.info("agent[%d].options [%s]", i + 1, options);
+        Isolator isolator = new Isolator(instrumentation, configuration);
+        IsolatorControl isolatorControl = new IsolatorControl(isolator);
 
-                URL jarUrl = jarPath.toUri().toURL();
+        // Publish the control surface before the agents start, so a concurrent attach finds this isolator
+        MBeans.register(MBeans.objectName(ISOLATOR_MBEAN_TYPE), isolatorControl);
 
-                // Create a new URLClassLoader with the jar URL
-                URLClassLoader urlClassLoader = new ChildFirstURLClassLoader(new URL[] {jarUrl}, null);
+        isolator.start();
 
-                try {
-                    runJavaAgent(urlClassLoader, className, options, instrumentation);
-                } catch (Throwable t) {
-                    // Close the URLClassLoader to release resources
-                    try {
-                        urlClassLoader.close();
-                    } catch (Throwable t2) {
-                        // INTENTIONALLY BLANK
-                    }
+        if (configuration.getControlPort() > 0) {
+            try {
+                new ControlServer(configuration.getControlPort(), configuration.getControlSecretFile(), isolatorControl)
+                        .start();
+            } catch (IOException e) {
+                // The control port is optional, the control surface is still available through JMX
+                LOGGER.error("failed to start control port [%d], %s", configuration.getControlPort(), e);
+            }
+        }
 
-                    throw new JavaAgentException(format("agent[%d] failed to start", i + 1), t);
-                }
+        if (configuration.getMetricsPort() > 0) {
+            try {
+                new MetricsAggregator(isolator, configuration).start();
+            } catch (IOException e) {
+                // The metrics endpoint is optional, the agents' own metrics endpoints are still available
+                LOGGER.error("failed to start metrics endpoint [%d], %s", configuration.getMetricsPort(), e);
             }
+        }
 
-            LOGGER.info("%d agent%s started successfully", javaAgents.size(), javaAgents.size() == 1 ? "" : "s");
-        } else {
-            LOGGER.info("no agents to start");
+        if (configuration.isWatchConfiguration()) {
+            new ConfigurationWatcher(configurationPath, isolator).start();
         }
     }
 
     /**
-     * Run the Java agent.
+     * Forwards an agent argument to an isolator already running in this JVM.
+     * <p>
+     * The running isolator is found through its MBean, so it is found even if it was loaded by another
+     * classloader. An agent argument that is not a command is the path of a configuration file, whose
+     * agents are started by the running isolator.
      *
-     * @param urlClassLoader  the URLClassLoader to use for loading the Java agent
-     * @param className       the name of the Java agent class
-     * @param options         the options to pass to the Java agent
-     * @param instrumentation the Instrumentation instance
-     * @throws Throwable if an error occurs during Java agent execution
+     * @param agentArgument the agent argument
+     * @return true if the agent argument was forwarded, false if no isolator is running
+     * @throws JMException if the command fails
      */
-    private static void runJavaAgent(
-            URLClassLoader urlClassLoader, String className, String options, Instrumentation instrumentation)
-            throws Throwable {
-        final AtomicReference<Throwable> throwableAtomicReference = new AtomicReference<>();
+    private static boolean forwardToRunningIsolator(String agentArgument) throws JMException {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = MBeans.objectName(ISOLATOR_MBEAN_TYPE);
 
-        Thread thread = new Thread(() -> {
-            try {
-                // Set the context class loader to the new URLClassLoader
-                // so that any spawned threads have the correct classloader
-                Thread.currentThread().setContextClassLoader(urlClassLoader);
+        if (!mbeanServer.isRegistered(objectName)) {
+            return false;
+        }
 
-                // Load the Java agent class
-                Class<?> javaAgentClass = urlClassLoader.loadClass(className);
+        String command = IsolatorControl.isCommand(agentArgument) ? agentArgument : "load " + agentArgument;
 
-                // Resolve the Java agent main method
-                Method javaAgentMainMethod =
-                        javaAgentClass.getMethod(AGENT_MAIN_METHOD, String.class, Instrumentation.class);
+        LOGGER.info("isolator already running, executing [%s]", command);
 
-                // Invoke the Java agent main method
-                javaAgentMainMethod.invoke(null, options, instrumentation);
-            } catch (Throwable t) {
-                throwableAtomicReference.set(t);
-            }
-        });
+        String output;
 
-        thread.setName(ISOLATOR_AGENT_THREAD_NAME);
-        thread.start();
-        thread.join();
+        try {
+            output = (String) mbeanServer.invoke(
+                    objectName, "execute", new Object[] {command}, new String[] {String.class.getName()});
+        } catch (RuntimeMBeanException e) {
+            LOGGER.error("command [%s] failed, %s", command, e.getCause().getMessage());
+            return true;
+        }
 
-        if (throwableAtomicReference.get() != null) {
-            throw new JavaAgentException("agent failed to start", throwableAtomicReference.get());
+        for (String line : output.split("\n")) {
+            LOGGER.info(line);
         }
+
+        return true;
     }
 }
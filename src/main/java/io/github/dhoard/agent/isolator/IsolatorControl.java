@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Control surface of the {@link Isolator}, to list, start, and stop agents at runtime.
+ * <p>
+ * The control surface is published as an MBean and, if a control port is configured, as a line-based text
+ * protocol on a loopback port. A dynamic attach of the IsolatorAgent to a JVM that is already running an
+ * isolator executes its agent argument as a command on the existing isolator instead of creating a second one.
+ */
+public class IsolatorControl implements IsolatorControlMBean {
+
+    private static final String LIST = "list";
+    private static final String STATS = "stats";
+    private static final String START = "start";
+    private static final String STOP = "stop";
+    private static final String LOAD = "load";
+
+    private static final List<String> COMMANDS = Arrays.asList(LIST, STATS, START, STOP, LOAD);
+    private static final List<String> READ_ONLY_COMMANDS = Arrays.asList(LIST, STATS);
+
+    private final Isolator isolator;
+
+    /**
+     * Constructor for IsolatorControl.
+     *
+     * @param isolator the isolator
+     */
+    public IsolatorControl(Isolator isolator) {
+        this.isolator = isolator;
+    }
+
+    @Override
+    public int getAgentCount() {
+        return isolator.getIsolatedAgents().size();
+    }
+
+    @Override
+    public String[] list() {
+        List<String> lines = new ArrayList<>();
+
+        for (IsolatedAgent isolatedAgent : isolator.getIsolatedAgents()) {
+            JavaAgent javaAgent = isolatedAgent.getJavaAgent();
+
+            lines.add(format(
+                    "%s state [%s] className [%s] jarPath [%s]",
+                    isolatedAgent.getId(),
+                    isolatedAgent.getStartupTimeline().getState(),
+                    javaAgent.getClassName(),
+                    javaAgent.getJarPath()));
+        }
+
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public void start(String spec) {
+        start(parseSpec(spec));
+    }
+
+    @Override
+    public void stop(String id) {
+        if (!isolator.stop(id)) {
+            throw new IllegalArgumentException(format("id [%s] is not an agent", id));
+        }
+    }
+
+    @Override
+    public String[] stats() {
+        List<String> lines = new ArrayList<>();
+
+        for (IsolatedAgent isolatedAgent : isolator.getIsolatedAgents()) {
+            StartupTimeline startupTimeline = isolatedAgent.getStartupTimeline();
+            AgentResources agentResources = isolatedAgent.getAgentResources();
+            AgentTransforms agentTransforms = isolatedAgent.getAgentTransforms();
+            AgentClassLoading agentClassLoading = isolatedAgent.getAgentClassLoading();
+
+            lines.add(format(
+                    "%s state [%s] totalMillis [%d] definedClasses [%d] threads [%d] cpuTimeMillis [%d]"
+                            + " allocatedBytes [%d] transformers [%d] transformCalls [%d] transformTimeMillis [%d]"
+                            + " childHits [%d] parentFallbacks [%d] classNotFoundMisses [%d] loadClassTimeMillis [%d]",
+                    isolatedAgent.getId(),
+                    startupTimeline.getState(),
+                    startupTimeline.getTotalMillis(),
+                    startupTimeline.getDefinedClasses(),
+                    agentResources.getThreadCount(),
+                    agentResources.getCpuTimeMillis(),
+                    agentResources.getAllocatedBytes(),
+                    agentTransforms.getTransformerCount(),
+                    agentTransforms.getTransformCalls(),
+                    agentTransforms.getTransformTimeMillis(),
+                    agentClassLoading.getChildHits(),
+                    agentClassLoading.getParentFallbacks(),
+                    agentClassLoading.getClassNotFoundMisses(),
+                    agentClassLoading.getLoadClassTimeMillis()));
+        }
+
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public String execute(String command) {
+        String trimmedCommand = command.trim();
+        int index = indexOfWhitespace(trimmedCommand);
+        String name = index < 0 ? trimmedCommand : trimmedCommand.substring(0, index);
+        String argument = index < 0 ? "" : trimmedCommand.substring(index + 1).trim();
+
+        switch (name) {
+            case LIST:
+                return String.join("\n", list());
+            case STATS:
+                return String.join("\n", stats());
+            case START:
+                JavaAgent javaAgent = parseSpec(requireArgument(name, argument));
+                start(javaAgent);
+                return format("started [%s]", javaAgent.getId());
+            case STOP:
+                stop(requireArgument(name, argument));
+                return format("stopped [%s]", argument);
+            case LOAD:
+                return String.join("\n", load(requireArgument(name, argument)));
+            default:
+                throw new IllegalArgumentException(format("unknown command [%s], expected one of %s", name, COMMANDS));
+        }
+    }
+
+    /**
+     * Returns whether an agent argument is a command, rather than the path of a configuration file.
+     *
+     * @param agentArgument the agent argument
+     * @return true if the agent argument is a command, else false
+     */
+    public static boolean isCommand(String agentArgument) {
+        String trimmedArgument = agentArgument.trim();
+        int index = indexOfWhitespace(trimmedArgument);
+
+        return COMMANDS.contains(index < 0 ? trimmedArgument : trimmedArgument.substring(0, index));
+    }
+
+    /**
+     * Returns whether a command only reads the state of the isolator.
+     *
+     * @param command the command
+     * @return true if the command is a read-only command, else false
+     */
+    public static boolean isReadOnlyCommand(String command) {
+        String trimmedCommand = command.trim();
+        int index = indexOfWhitespace(trimmedCommand);
+
+        return READ_ONLY_COMMANDS.contains(index < 0 ? trimmedCommand : trimmedCommand.substring(0, index));
+    }
+
+    /**
+     * Starts the agents of a configuration file that are not already running.
+     * <p>
+     * Only the {@code javaAgents} of the configuration file are used, the global settings of the
+     * running isolator are not changed.
+     *
+     * @param path the path of the configuration file
+     * @return one line per agent with the result of starting the agent
+     */
+    private List<String> load(String path) {
+        Configuration configuration;
+
+        try (Reader reader = Files.newBufferedReader(Paths.get(path))) {
+            configuration = Configuration.parse(reader);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException(format("failed to load configuration [%s], %s", path, e.getMessage()));
+        }
+
+        List<String> lines = new ArrayList<>();
+
+        for (JavaAgent javaAgent : configuration.getJavaAgents()) {
+            if (isolator.getIsolatedAgent(javaAgent.getId()) != null) {
+                lines.add(format("skipped [%s], already running", javaAgent.getId()));
+                continue;
+            }
+
+            try {
+                start(javaAgent);
+                lines.add(format("started [%s]", javaAgent.getId()));
+            } catch (RuntimeException e) {
+                lines.add(format("failed [%s], %s", javaAgent.getId(), e.getMessage()));
+            }
+        }
+
+        return lines;
+    }
+
+    /**
+     * Parses an agent specification.
+     *
+     * @param spec the agent specification
+     * @return the Java agent
+     */
+    private JavaAgent parseSpec(String spec) {
+        try {
+            return Configuration.parseJavaAgent(spec, isolator.getConfiguration());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(format("invalid spec [%s], %s", spec, e.getMessage()));
+        }
+    }
+
+    /**
+     * Starts an agent at runtime.
+     *
+     * @param javaAgent the Java agent
+     */
+    private void start(JavaAgent javaAgent) {
+        try {
+            isolator.start(javaAgent);
+        } catch (ConfigurationException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                    e.getCause() != null ? e.getMessage() + ", " + e.getCause() : e.getMessage());
+        }
+    }
+
+    /**
+     * Returns a required command argument.
+     *
+     * @param name the command name
+     * @param argument the command argument
+     * @return the command argument
+     */
+    private static String requireArgument(String name, String argument) {
+        if (argument.isEmpty()) {
+            throw new IllegalArgumentException(format("command [%s] requires an argument", name));
+        }
+
+        return argument;
+    }
+
+    /**
+     * Gets the index of the first whitespace character of a string.
+     *
+     * @param string the string
+     * @return the index of the first whitespace character, or -1 if there is none
+     */
+    private static int indexOfWhitespace(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (Character.isWhitespace(string.charAt(i))) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
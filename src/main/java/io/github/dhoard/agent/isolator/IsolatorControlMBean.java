@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+/**
+ * MBean interface of the {@link IsolatorControl}.
+ * <p>
+ * Operations only use JDK types, and failures are reported as {@link IllegalArgumentException} or
+ * {@link IllegalStateException} with a descriptive message, so any JMX client can use them.
+ */
+public interface IsolatorControlMBean {
+
+    /**
+     * Gets the number of agents.
+     *
+     * @return the number of agents, in any state
+     */
+    int getAgentCount();
+
+    /**
+     * Lists the agents.
+     *
+     * @return one line per agent with the id, state, class name, and jar path
+     */
+    String[] list();
+
+    /**
+     * Starts an agent, blocking until the agent has started if it is a foreground agent.
+     *
+     * @param spec the agent specification, a YAML map with the same keys as an entry of {@code javaAgents},
+     *        including a unique {@code id}
+     */
+    void start(String spec);
+
+    /**
+     * Stops an agent.
+     *
+     * @param id the id of the agent
+     */
+    void stop(String id);
+
+    /**
+     * Gets the agent statistics.
+     *
+     * @return one line per agent with the startup, resource, and transform statistics
+     */
+    String[] stats();
+
+    /**
+     * Executes a text command, as used by the control port and by a dynamic attach.
+     *
+     * @param command the command, one of {@code list}, {@code stats}, {@code start <spec>}, {@code stop <id>},
+     *        or {@code load <path>}
+     * @return the command output
+     */
+    String execute(String command);
+}
@@ -17,30 +17,92 @@
 package io.github.dhoard.agent.isolator;
 
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * Represents a Java agent configuration.
  * <p>
  * This class contains the information needed to load and run a Java agent, including the jar file,
- * the class name, and any arguments to be passed to the agent.
+ * the class name, and any arguments to be passed to the agent, as well as the startup ordering constraints.
+ * <p>
+ * Two JavaAgent objects are equal if all of their settings are equal, which is how a reloaded configuration
+ * detects a changed agent.
  */
 public class JavaAgent {
 
     private final Path jarPath;
+    private final List<String> classpath;
     private final String className;
     private final String options;
+    private final String id;
+    private final List<String> dependsOn;
+    private final int startOrder;
+    private final StartMode startMode;
+    private final int startDelaySeconds;
+    private final String startTrigger;
+    private final int startTimeoutSeconds;
+    private final FailurePolicy onFailure;
+    private final List<String> transformIncludes;
+    private final List<String> transformExcludes;
+    private final String stopMethod;
+    private final String metricsUrl;
 
     /**
      * Constructor for JavaAgent.
      *
-     * @param jarPath   Path to the jar file
-     * @param className Name of the class to be loaded
-     * @param options   Options to be passed to the agent
+     * @param jarPath    Path to the jar file, or the outer jar file of a nested jar
+     * @param classpath  Classpath entries, the jar file path first, each a jar file, a directory,
+     *                   or a jar nested in a jar file ({@code outer.jar!/inner.jar})
+     * @param className  Name of the class to be loaded
+     * @param options    Options to be passed to the agent
+     * @param id         Identifier of the agent
+     * @param dependsOn  Identifiers of the agents that must be started before this agent
+     * @param startOrder Start order of the agent
+     * @param startMode  Start mode of the agent
+     * @param startDelaySeconds Delay, in seconds, before a deferred agent is started
+     * @param startTrigger Name of the class whose first load starts a deferred agent, may be null
+     * @param startTimeoutSeconds Time, in seconds, the agent main method may take to return, 0 for no limit
+     * @param onFailure Policy applied when the agent fails to start or does not start within its start timeout
+     * @param transformIncludes Packages whose classes are passed to the agent's transformers, empty for all packages
+     * @param transformExcludes Packages whose classes are not passed to the agent's transformers
+     * @param stopMethod Name of the static method called before the agent is unloaded, may be null
+     * @param metricsUrl URL of the agent's metrics endpoint, scraped by the metrics aggregator, may be null
      */
-    public JavaAgent(Path jarPath, String className, String options) {
+    public JavaAgent(
+            Path jarPath,
+            List<String> classpath,
+            String className,
+            String options,
+            String id,
+            List<String> dependsOn,
+            int startOrder,
+            StartMode startMode,
+            int startDelaySeconds,
+            String startTrigger,
+            int startTimeoutSeconds,
+            FailurePolicy onFailure,
+            List<String> transformIncludes,
+            List<String> transformExcludes,
+            String stopMethod,
+            String metricsUrl) {
         this.jarPath = jarPath;
+        this.classpath = Collections.unmodifiableList(classpath);
         this.className = className;
         this.options = options;
+        this.id = id;
+        this.dependsOn = Collections.unmodifiableList(dependsOn);
+        this.startOrder = startOrder;
+        this.startMode = startMode;
+        this.startDelaySeconds = startDelaySeconds;
+        this.startTrigger = startTrigger;
+        this.startTimeoutSeconds = startTimeoutSeconds;
+        this.onFailure = onFailure;
+        this.transformIncludes = Collections.unmodifiableList(transformIncludes);
+        this.transformExcludes = Collections.unmodifiableList(transformExcludes);
+        this.stopMethod = stopMethod;
+        this.metricsUrl = metricsUrl;
     }
 
     /**
@@ -52,6 +114,16 @@ public class JavaAgent {
         return jarPath;
     }
 
+    /**
+     * Gets the classpath.
+     *
+     * @return classpath entries, each a jar file, a directory, or a jar nested in a jar file
+     *         ({@code outer.jar!/inner.jar})
+     */
+    public List<String> getClasspath() {
+        return classpath;
+    }
+
     /**
      * Gets the class name.
      *
@@ -69,4 +141,175 @@ public class JavaAgent {
     public String getOptions() {
         return options;
     }
+
+    /**
+     * Gets the id.
+     *
+     * @return identifier of the agent
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the ids of the agents this agent depends on.
+     *
+     * @return identifiers of the agents that must be started before this agent
+     */
+    public List<String> getDependsOn() {
+        return dependsOn;
+    }
+
+    /**
+     * Gets the start order.
+     * <p>
+     * Agents with a lower start order are started before agents with a higher start order.
+     *
+     * @return start order of the agent
+     */
+    public int getStartOrder() {
+        return startOrder;
+    }
+
+    /**
+     * Gets the start mode.
+     *
+     * @return start mode of the agent
+     */
+    public StartMode getStartMode() {
+        return startMode;
+    }
+
+    /**
+     * Gets the start delay.
+     *
+     * @return delay, in seconds, before a deferred agent is started
+     */
+    public int getStartDelaySeconds() {
+        return startDelaySeconds;
+    }
+
+    /**
+     * Gets the start trigger.
+     *
+     * @return name of the class whose first load starts a deferred agent, or null if there is no trigger
+     */
+    public String getStartTrigger() {
+        return startTrigger;
+    }
+
+    /**
+     * Gets the start timeout.
+     *
+     * @return time, in seconds, the agent main method may take to return, or 0 if there is no limit
+     */
+    public int getStartTimeoutSeconds() {
+        return startTimeoutSeconds;
+    }
+
+    /**
+     * Gets the failure policy.
+     *
+     * @return policy applied when the agent fails to start or does not start within its start timeout
+     */
+    public FailurePolicy getOnFailure() {
+        return onFailure;
+    }
+
+    /**
+     * Gets the transform include packages.
+     *
+     * @return packages whose classes are passed to the agent's transformers, or an empty list for all packages
+     */
+    public List<String> getTransformIncludes() {
+        return transformIncludes;
+    }
+
+    /**
+     * Gets the transform exclude packages.
+     *
+     * @return packages whose classes are not passed to the agent's transformers
+     */
+    public List<String> getTransformExcludes() {
+        return transformExcludes;
+    }
+
+    /**
+     * Gets the stop method.
+     *
+     * @return name of the static method called before the agent is unloaded, or null if there is no stop method
+     */
+    public String getStopMethod() {
+        return stopMethod;
+    }
+
+    /**
+     * Gets the metrics URL.
+     *
+     * @return URL of the agent's metrics endpoint, or null if the agent's metrics are not aggregated
+     */
+    public String getMetricsUrl() {
+        return metricsUrl;
+    }
+
+    /**
+     * Returns a copy of this Java agent with a different start timeout.
+     *
+     * @param startTimeoutSeconds Time, in seconds, the agent main method may take to return, 0 for no limit
+     * @return a copy of this Java agent with the start timeout
+     */
+    public JavaAgent withStartTimeoutSeconds(int startTimeoutSeconds) {
+        return new JavaAgent(
+                jarPath,
+                classpath,
+                className,
+                options,
+                id,
+                dependsOn,
+                startOrder,
+                startMode,
+                startDelaySeconds,
+                startTrigger,
+                startTimeoutSeconds,
+                onFailure,
+                transformIncludes,
+                transformExcludes,
+                stopMethod,
+                metricsUrl);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+
+        if (object == null || getClass() != object.getClass()) {
+            return false;
+        }
+
+        JavaAgent javaAgent = (JavaAgent) object;
+
+        return startOrder == javaAgent.startOrder
+                && startDelaySeconds == javaAgent.startDelaySeconds
+                && jarPath.equals(javaAgent.jarPath)
+                && classpath.equals(javaAgent.classpath)
+                && className.equals(javaAgent.className)
+                && Objects.equals(options, javaAgent.options)
+                && id.equals(javaAgent.id)
+                && dependsOn.equals(javaAgent.dependsOn)
+                && startMode == javaAgent.startMode
+                && Objects.equals(startTrigger, javaAgent.startTrigger)
+                && startTimeoutSeconds == javaAgent.startTimeoutSeconds
+                && onFailure == javaAgent.onFailure
+                && transformIncludes.equals(javaAgent.transformIncludes)
+                && transformExcludes.equals(javaAgent.transformExcludes)
+                && Objects.equals(stopMethod, javaAgent.stopMethod)
+                && Objects.equals(metricsUrl, javaAgent.metricsUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(jarPath, className, options, id);
+    }
 }
@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.MetricsExposition;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Aggregated metrics endpoint for the metrics endpoints of the isolated agents.
+ * <p>
+ * Each request scrapes the {@code metricsUrl} of every started agent concurrently and merges the metrics,
+ * writing each metric family once with the samples of every agent and an {@code isolator_agent} label
+ * identifying the agent. The response is streamed from the scraped metrics, without building it in memory.
+ * <p>
+ * The metrics of each agent are reused for {@code metricsCacheMillis}, and concurrent requests share a scrape
+ * that is in progress, so several Prometheus servers scraping the endpoint cause at most one scrape of each
+ * agent per cache period.
+ */
+public class MetricsAggregator {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsAggregator.class);
+
+    private static final String HANDLER_THREAD_NAME = "isolator-agent-metrics";
+    private static final String SCRAPE_THREAD_NAME = "isolator-agent-metrics-scrape";
+    private static final int HANDLER_THREAD_COUNT = 2;
+    private static final int SCRAPE_THREAD_COUNT = 4;
+    private static final String METRICS_PATH = "/metrics";
+    private static final String AGENT_LABEL_NAME = "isolator_agent";
+    private static final String ACCEPT = "text/plain; version=0.0.4";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int MAXIMUM_RESPONSE_SIZE = 64 * 1024 * 1024;
+
+    private final Isolator isolator;
+    private final int port;
+    private final long cacheNanos;
+    private final int timeoutMillis;
+    private final Map<IsolatedAgent, Upstream> upstreams;
+    private ExecutorService scrapeExecutorService;
+
+    /**
+     * Constructor for MetricsAggregator.
+     *
+     * @param isolator the isolator whose agents are scraped
+     * @param configuration the configuration containing the metrics settings
+     */
+    public MetricsAggregator(Isolator isolator, Configuration configuration) {
+        this.isolator = isolator;
+        this.port = configuration.getMetricsPort();
+        this.cacheNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getMetricsCacheMillis());
+        this.timeoutMillis = configuration.getMetricsTimeoutMillis();
+        this.upstreams = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Starts the metrics endpoint, returning immediately.
+     *
+     * @throws IOException if the port cannot be bound
+     */
+    public void start() throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.createContext(METRICS_PATH, this::handle);
+        httpServer.setExecutor(Threads.newControlThreadPool(HANDLER_THREAD_NAME, HANDLER_THREAD_COUNT));
+
+        scrapeExecutorService = Threads.newControlThreadPool(SCRAPE_THREAD_NAME, SCRAPE_THREAD_COUNT);
+
+        httpServer.start();
+
+        LOGGER.info("metrics endpoint listening on [%s%s]", httpServer.getAddress(), METRICS_PATH);
+    }
+
+    /**
+     * Handles a metrics request.
+     *
+     * @param httpExchange the HTTP exchange
+     * @throws IOException if the response cannot be written
+     */
+    private void handle(HttpExchange httpExchange) throws IOException {
+        try {
+            String method = httpExchange.getRequestMethod();
+            boolean head = "HEAD".equals(method);
+
+            if (!head && !"GET".equals(method)) {
+                httpExchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            List<Scrape> scrapes = scrape();
+
+            String acceptEncoding = httpExchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = acceptEncoding != null
+                    && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+
+            httpExchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (gzip) {
+                httpExchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+
+            // A response length of 0 streams the response using chunked transfer encoding
+            httpExchange.sendResponseHeaders(200, head ? -1 : 0);
+
+            if (head) {
+                return;
+            }
+
+            OutputStream responseBody = httpExchange.getResponseBody();
+            try (OutputStream outputStream =
+                    new BufferedOutputStream(gzip ? new GZIPOutputStream(responseBody) : responseBody)) {
+                write(scrapes, outputStream);
+            }
+        } finally {
+            httpExchange.close();
+        }
+    }
+
+    /**
+     * Scrapes the started agents that have a metrics URL, waiting at most the metrics timeout.
+     *
+     * @return the scrapes, in agent order
+     */
+    private List<Scrape> scrape() {
+        List<Upstream> currentUpstreams = getUpstreams();
+        List<CompletableFuture<Scrape>> futures = new ArrayList<>(currentUpstreams.size());
+
+        // Start every scrape before waiting for any of them
+        for (Upstream upstream : currentUpstreams) {
+            futures.add(upstream.scrape());
+        }
+
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<Scrape> scrapes = new ArrayList<>(futures.size());
+
+        for (int i = 0; i < futures.size(); i++) {
+            Upstream upstream = currentUpstreams.get(i);
+
+            try {
+                scrapes.add(futures.get(i).get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                // The scrape continues in the background, and is reused by the next request
+                scrapes.add(new Scrape(upstream, null, "timed out", timeoutMillis * 1_000_000L));
+            } catch (ExecutionException e) {
+                scrapes.add(new Scrape(upstream, null, String.valueOf(e.getCause()), 0));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                scrapes.add(new Scrape(upstream, null, "interrupted", 0));
+            }
+        }
+
+        return scrapes;
+    }
+
+    /**
+     * Gets the upstreams of the started agents that have a metrics URL, removing the upstreams of
+     * stopped agents.
+     *
+     * @return the upstreams, in agent order
+     */
+    private List<Upstream> getUpstreams() {
+        List<Upstream> currentUpstreams = new ArrayList<>();
+        Set<IsolatedAgent> currentIsolatedAgents = new HashSet<>();
+
+        for (IsolatedAgent isolatedAgent : isolator.getIsolatedAgents()) {
+            if (isolatedAgent.getJavaAgent().getMetricsUrl() != null && isolatedAgent.getClassLoader() != null) {
+                currentUpstreams.add(upstreams.computeIfAbsent(isolatedAgent, Upstream::new));
+                currentIsolatedAgents.add(isolatedAgent);
+            }
+        }
+
+        upstreams.keySet().retainAll(currentIsolatedAgents);
+
+        return currentUpstreams;
+    }
+
+    /**
+     * Writes the merged metrics of the scrapes, followed by the scrape metrics.
+     *
+     * @param scrapes the scrapes
+     * @param outputStream the output stream
+     * @throws IOException if the output stream cannot be written
+     */
+    private static void write(List<Scrape> scrapes, OutputStream outputStream) throws IOException {
+        List<MetricsExposition> metricsExpositions = new ArrayList<>();
+        List<byte[]> labels = new ArrayList<>();
+
+        for (Scrape scrape : scrapes) {
+            if (scrape.metricsExposition != null) {
+                metricsExpositions.add(scrape.metricsExposition);
+                labels.add(scrape.upstream.label);
+            }
+        }
+
+        // Write each metric family once, since a family must not be split, with the samples of every agent
+        MetricsExposition.writeMerged(metricsExpositions, labels, outputStream);
+
+        StringBuilder stringBuilder = new StringBuilder();
+
+        stringBuilder.append("# HELP isolator_agent_scrape_up Whether the agent's metrics were scraped.\n");
+        stringBuilder.append("# TYPE isolator_agent_scrape_up gauge\n");
+        for (Scrape scrape : scrapes) {
+            stringBuilder
+                    .append("isolator_agent_scrape_up{")
+                    .append(new String(scrape.upstream.label, StandardCharsets.UTF_8))
+                    .append("} ")
+                    .append(scrape.metricsExposition != null ? 1 : 0)
+                    .append('\n');
+        }
+
+        stringBuilder.append(
+                "# HELP isolator_agent_scrape_duration_seconds Duration of the scrape of the agent's metrics.\n");
+        stringBuilder.append("# TYPE isolator_agent_scrape_duration_seconds gauge\n");
+        for (Scrape scrape : scrapes) {
+            stringBuilder
+                    .append("isolator_agent_scrape_duration_seconds{")
+                    .append(new String(scrape.upstream.label, StandardCharsets.UTF_8))
+                    .append("} ")
+                    .append(scrape.durationNanos / 1e9)
+                    .append('\n');
+        }
+
+        outputStream.write(stringBuilder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Metrics endpoint of an isolated agent.
+     */
+    private final class Upstream {
+
+        private final IsolatedAgent isolatedAgent;
+        private final byte[] label;
+        private CompletableFuture<Scrape> scrapeFuture;
+
+        /**
+         * Constructor for Upstream.
+         *
+         * @param isolatedAgent the isolated agent
+         */
+        private Upstream(IsolatedAgent isolatedAgent) {
+            this.isolatedAgent = isolatedAgent;
+            this.label = MetricsExposition.label(AGENT_LABEL_NAME, isolatedAgent.getId());
+        }
+
+        /**
+         * Gets the current scrape, starting a new scrape if there is no scrape in progress and the last
+         * scrape has expired.
+         *
+         * @return the scrape
+         */
+        private synchronized CompletableFuture<Scrape> scrape() {
+            if (scrapeFuture == null
+                    || (scrapeFuture.isDone() && scrapeFuture.join().isExpired())) {
+                scrapeFuture = CompletableFuture.supplyAsync(this::fetch, scrapeExecutorService);
+            }
+
+            return scrapeFuture;
+        }
+
+        /**
+         * Fetches and parses the agent's metrics.
+         *
+         * @return the scrape
+         */
+        private Scrape fetch() {
+            String metricsUrl = isolatedAgent.getJavaAgent().getMetricsUrl();
+            long startNanos = System.nanoTime();
+
+            try {
+                HttpURLConnection httpURLConnection = (HttpURLConnection) new URL(metricsUrl).openConnection();
+                httpURLConnection.setConnectTimeout(timeoutMillis);
+                httpURLConnection.setReadTimeout(timeoutMillis);
+                httpURLConnection.setRequestProperty("Accept", ACCEPT);
+
+                int responseCode = httpURLConnection.getResponseCode();
+
+                if (responseCode != 200) {
+                    httpURLConnection.disconnect();
+                    throw new IOException("HTTP response code " + responseCode);
+                }
+
+                byte[] bytes;
+                try (InputStream inputStream = httpURLConnection.getInputStream()) {
+                    bytes = readFully(inputStream);
+                }
+
+                return new Scrape(this, MetricsExposition.parse(bytes), null, System.nanoTime() - startNanos);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("agent[%d] failed to scrape [%s], %s", isolatedAgent.getIndex(), metricsUrl, e);
+
+                return new Scrape(this, null, e.toString(), System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * Reads an input stream, up to {@link #MAXIMUM_RESPONSE_SIZE} bytes.
+     *
+     * @param inputStream the input stream
+     * @return the bytes
+     * @throws IOException if the input stream cannot be read or is too large
+     */
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+
+        while ((count = inputStream.read(buffer)) != -1) {
+            if (byteArrayOutputStream.size() + count > MAXIMUM_RESPONSE_SIZE) {
+                throw new IOException("response is larger than " + MAXIMUM_RESPONSE_SIZE + " bytes");
+            }
+
+            byteArrayOutputStream.write(buffer, 0, count);
+        }
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Result of scraping an agent's metrics.
+     */
+    private final class Scrape {
+
+        private final Upstream upstream;
+        private final MetricsExposition metricsExposition;
+        private final String error;
+        private final long durationNanos;
+        private final long completedNanos;
+
+        /**
+         * Constructor for Scrape.
+         *
+         * @param upstream the upstream that was scraped
+         * @param metricsExposition the metrics, or null if the scrape failed
+         * @param error the error, or null if the scrape succeeded
+         * @param durationNanos the duration of the scrape
+         */
+        private Scrape(Upstream upstream, MetricsExposition metricsExposition, String error, long durationNanos) {
+            this.upstream = upstream;
+            this.metricsExposition = metricsExposition;
+            this.error = error;
+            this.durationNanos = durationNanos;
+            this.completedNanos = System.nanoTime();
+        }
+
+        /**
+         * Returns whether the scrape has expired, a failed scrape expires immediately.
+         *
+         * @return true if the scrape has expired, else false
+         */
+        private boolean isExpired() {
+            return error != null || System.nanoTime() - completedNanos >= cacheNanos;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically samples the CPU time and allocated bytes of the threads attributed to each isolated agent.
+ * <p>
+ * A thread is attributed to an agent if it belongs to the agent's thread group, or if its context
+ * classloader is the agent's classloader. Each sample enumerates the live threads once, without
+ * capturing stack traces.
+ */
+@SuppressWarnings("PMD.AvoidThreadGroup")
+public class ResourceSampler {
+
+    private static final Logger LOGGER = Logger.getLogger(ResourceSampler.class);
+
+    private static final String SAMPLER_THREAD_NAME = "isolator-agent-resources";
+
+    private final long intervalSeconds;
+    private final List<IsolatedAgent> isolatedAgents;
+    private final ThreadMXBean threadMXBean;
+    private final com.sun.management.ThreadMXBean extendedThreadMXBean;
+
+    /**
+     * Constructor for ResourceSampler.
+     *
+     * @param intervalSeconds the sample interval in seconds
+     */
+    public ResourceSampler(long intervalSeconds) {
+        this.intervalSeconds = intervalSeconds;
+        this.isolatedAgents = new CopyOnWriteArrayList<>();
+        this.threadMXBean = ManagementFactory.getThreadMXBean();
+        this.extendedThreadMXBean = threadMXBean instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threadMXBean
+                : null;
+    }
+
+    /**
+     * Adds an isolated agent to sample.
+     *
+     * @param isolatedAgent the isolated agent
+     */
+    public void add(IsolatedAgent isolatedAgent) {
+        isolatedAgents.add(isolatedAgent);
+    }
+
+    /**
+     * Removes an isolated agent.
+     *
+     * @param isolatedAgent the isolated agent
+     */
+    public void remove(IsolatedAgent isolatedAgent) {
+        isolatedAgents.remove(isolatedAgent);
+    }
+
+    /**
+     * Starts sampling on a daemon thread.
+     */
+    public void start() {
+        LOGGER.info("sampling agent resources every [%d] seconds", intervalSeconds);
+
+        Threads.newDaemonThread(SAMPLER_THREAD_NAME, () -> {
+                    long lastNanos = System.nanoTime();
+
+                    while (!Thread.currentThread().isInterrupted()) {
+                        try {
+                            TimeUnit.SECONDS.sleep(intervalSeconds);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+
+                        long nowNanos = System.nanoTime();
+
+                        try {
+                            sample(nowNanos - lastNanos);
+                        } catch (Throwable t) {
+                            LOGGER.error("failed to sample agent resources, %s", t);
+                        }
+
+                        lastNanos = nowNanos;
+                    }
+                })
+                .start();
+    }
+
+    /**
+     * Samples the threads of every isolated agent.
+     *
+     * @param intervalNanos the time since the previous sample in nanoseconds
+     */
+    private void sample(long intervalNanos) {
+        Thread[] threads = Threads.getAllThreads();
+        boolean cpuTimeEnabled = threadMXBean.isThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+        boolean allocatedBytesEnabled = extendedThreadMXBean != null
+                && extendedThreadMXBean.isThreadAllocatedMemorySupported()
+                && extendedThreadMXBean.isThreadAllocatedMemoryEnabled();
+
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            long[] threadIds = getThreadIds(isolatedAgent, threads);
+
+            long[] cpuTimes = cpuTimeEnabled ? getThreadCpuTimes(threadIds) : null;
+            long[] allocatedBytes =
+                    allocatedBytesEnabled ? extendedThreadMXBean.getThreadAllocatedBytes(threadIds) : null;
+
+            isolatedAgent.getAgentResources().update(threadIds, cpuTimes, allocatedBytes, intervalNanos);
+        }
+    }
+
+    /**
+     * Gets the CPU times of threads.
+     *
+     * @param threadIds the thread ids
+     * @return the CPU time of each thread in nanoseconds, or -1 if the thread is not alive
+     */
+    private long[] getThreadCpuTimes(long[] threadIds) {
+        if (extendedThreadMXBean != null) {
+            return extendedThreadMXBean.getThreadCpuTime(threadIds);
+        }
+
+        long[] cpuTimes = new long[threadIds.length];
+
+        for (int i = 0; i < threadIds.length; i++) {
+            cpuTimes[i] = threadMXBean.getThreadCpuTime(threadIds[i]);
+        }
+
+        return cpuTimes;
+    }
+
+    /**
+     * Gets the ids of the threads attributed to an isolated agent.
+     *
+     * @param isolatedAgent the isolated agent
+     * @param threads the live threads
+     * @return the thread ids
+     */
+    private static long[] getThreadIds(IsolatedAgent isolatedAgent, Thread[] threads) {
+        ThreadGroup agentThreadGroup = isolatedAgent.getThreadGroup();
+        ClassLoader agentClassLoader = isolatedAgent.getClassLoader();
+        List<Long> threadIds = new ArrayList<>();
+
+        for (Thread thread : threads) {
+            if (Threads.isInThreadGroup(thread, agentThreadGroup)
+                    || (agentClassLoader != null && thread.getContextClassLoader() == agentClassLoader)) {
+                threadIds.add(thread.getId());
+            }
+        }
+
+        long[] result = new long[threadIds.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = threadIds.get(i);
+        }
+
+        return result;
+    }
+}
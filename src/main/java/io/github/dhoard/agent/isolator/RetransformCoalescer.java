@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces the retransform requests of the isolated agents.
+ * <p>
+ * Requests made within the coalescing window are combined into one batch, and the classes in the batch
+ * are retransformed by one JVM retransform pass, each class once. Each caller blocks until the batch
+ * containing its request has been retransformed, so retransformClasses remains synchronous.
+ * <p>
+ * If the batch fails, for example because one class cannot be modified, each request in the batch is
+ * retransformed separately, so each caller receives the result of its own request.
+ */
+public class RetransformCoalescer implements RetransformCoalescerMBean {
+
+    private static final String RETRANSFORM_THREAD_NAME = "isolator-agent-retransform";
+
+    private final Instrumentation instrumentation;
+    private final long windowMillis;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final LongAdder requests;
+    private final LongAdder retransformPasses;
+    private final LongAdder requestedClasses;
+    private final LongAdder retransformedClasses;
+    private volatile Thread retransformThread;
+    private List<Request> batch;
+
+    /**
+     * Constructor for RetransformCoalescer.
+     *
+     * @param instrumentation the JVM Instrumentation instance
+     * @param windowMillis the coalescing window in milliseconds
+     */
+    public RetransformCoalescer(Instrumentation instrumentation, long windowMillis) {
+        this.instrumentation = instrumentation;
+        this.windowMillis = windowMillis;
+        this.scheduledExecutorService =
+                Executors.newSingleThreadScheduledExecutor(Threads.newDaemonThreadFactory(RETRANSFORM_THREAD_NAME));
+        this.requests = new LongAdder();
+        this.retransformPasses = new LongAdder();
+        this.requestedClasses = new LongAdder();
+        this.retransformedClasses = new LongAdder();
+    }
+
+    @Override
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getRetransformPasses() {
+        return retransformPasses.sum();
+    }
+
+    @Override
+    public long getRequestedClasses() {
+        return requestedClasses.sum();
+    }
+
+    @Override
+    public long getRetransformedClasses() {
+        return retransformedClasses.sum();
+    }
+
+    /**
+     * Retransforms classes, blocking until the batch containing the request has been retransformed.
+     *
+     * @param classes the classes to retransform
+     * @throws UnmodifiableClassException if a class cannot be modified
+     */
+    public void retransformClasses(Class<?>... classes) throws UnmodifiableClassException {
+        Objects.requireNonNull(classes, "classes");
+
+        for (Class<?> clazz : classes) {
+            Objects.requireNonNull(clazz, "class");
+        }
+
+        if (classes.length == 0) {
+            return;
+        }
+
+        requests.increment();
+        requestedClasses.add(classes.length);
+
+        // A transformer that retransforms classes during a batch is retransformed directly,
+        // since waiting for the next batch would deadlock
+        if (Thread.currentThread() == retransformThread) {
+            retransform(classes);
+            return;
+        }
+
+        Request request = new Request(classes);
+
+        synchronized (this) {
+            if (batch == null) {
+                batch = new ArrayList<>();
+                scheduledExecutorService.schedule(this::retransformBatch, windowMillis, TimeUnit.MILLISECONDS);
+            }
+
+            batch.add(request);
+        }
+
+        try {
+            request.future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof UnmodifiableClassException) {
+                throw (UnmodifiableClassException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Retransforms the current batch.
+     */
+    private void retransformBatch() {
+        retransformThread = Thread.currentThread();
+
+        List<Request> requests;
+
+        synchronized (this) {
+            requests = batch;
+            batch = null;
+        }
+
+        Set<Class<?>> classes = new LinkedHashSet<>();
+
+        for (Request request : requests) {
+            Collections.addAll(classes, request.classes);
+        }
+
+        try {
+            retransform(classes.toArray(new Class<?>[0]));
+
+            for (Request request : requests) {
+                request.future.complete(null);
+            }
+        } catch (Throwable t) {
+            if (requests.size() == 1) {
+                requests.get(0).future.completeExceptionally(t);
+                return;
+            }
+
+            // Retransform each request separately, so each caller receives its own result
+            for (Request request : requests) {
+                try {
+                    retransform(request.classes);
+                    request.future.complete(null);
+                } catch (Throwable t2) {
+                    request.future.completeExceptionally(t2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retransforms classes in one JVM retransform pass.
+     *
+     * @param classes the classes to retransform
+     * @throws UnmodifiableClassException if a class cannot be modified
+     */
+    private void retransform(Class<?>[] classes) throws UnmodifiableClassException {
+        retransformPasses.increment();
+        instrumentation.retransformClasses(classes);
+        retransformedClasses.add(classes.length);
+    }
+
+    /**
+     * A retransform request made by an agent.
+     */
+    private static class Request {
+
+        private final Class<?>[] classes;
+        private final CompletableFuture<Void> future;
+
+        /**
+         * Constructor for Request.
+         *
+         * @param classes the classes to retransform
+         */
+        private Request(Class<?>[] classes) {
+            this.classes = classes.clone();
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+/**
+ * MBean interface of the {@link RetransformCoalescer}.
+ */
+public interface RetransformCoalescerMBean {
+
+    /**
+     * Gets the coalescing window.
+     *
+     * @return the coalescing window in milliseconds
+     */
+    long getWindowMillis();
+
+    /**
+     * Gets the number of retransform requests made by the agents.
+     *
+     * @return the number of retransform requests
+     */
+    long getRequests();
+
+    /**
+     * Gets the number of retransform passes made by the JVM.
+     *
+     * @return the number of retransform passes
+     */
+    long getRetransformPasses();
+
+    /**
+     * Gets the number of classes in the retransform requests made by the agents.
+     *
+     * @return the number of requested classes
+     */
+    long getRequestedClasses();
+
+    /**
+     * Gets the number of classes retransformed by the JVM, after removing duplicates.
+     *
+     * @return the number of retransformed classes
+     */
+    long getRetransformedClasses();
+}
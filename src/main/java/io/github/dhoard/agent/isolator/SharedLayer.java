@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import io.github.dhoard.agent.isolator.util.ChildFirstURLClassLoader;
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.PrefixTrie;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Shared classloader layer between the system classloader and the isolated agent classloaders.
+ * <p>
+ * Classes in the shared packages are defined once, by the shared classloader, instead of once per agent.
+ * The shared classloader loads classes from the shared jars or, if no shared jars are configured, from the
+ * agent jars. All other classes are still loaded child-first by each agent's classloader.
+ */
+public class SharedLayer {
+
+    private static final Logger LOGGER = Logger.getLogger(SharedLayer.class);
+
+    private static final String METASPACE_POOL_NAME = "Metaspace";
+
+    private final ChildFirstURLClassLoader sharedClassLoader;
+    private final PrefixTrie sharedPrefixes;
+    private final long metaspaceUsedBefore;
+
+    /**
+     * Constructor for SharedLayer.
+     *
+     * @param sharedClassLoader the shared classloader, or null if classes are not shared
+     * @param sharedPrefixes the shared class name prefixes
+     */
+    private SharedLayer(ChildFirstURLClassLoader sharedClassLoader, PrefixTrie sharedPrefixes) {
+        this.sharedClassLoader = sharedClassLoader;
+        this.sharedPrefixes = sharedPrefixes;
+        this.metaspaceUsedBefore = sharedClassLoader != null ? getMetaspaceUsed() : -1;
+    }
+
+    /**
+     * Gets the shared classloader.
+     *
+     * @return the shared classloader, or null if classes are not shared
+     */
+    public ClassLoader getSharedClassLoader() {
+        return sharedClassLoader;
+    }
+
+    /**
+     * Gets the shared class name prefixes.
+     *
+     * @return the shared class name prefixes
+     */
+    public PrefixTrie getSharedPrefixes() {
+        return sharedPrefixes;
+    }
+
+    /**
+     * Logs the metaspace used since the shared layer was created and an estimate of the metaspace saved.
+     * <p>
+     * The estimate assumes that each class in the shared classloader would otherwise have been defined
+     * once per started agent, at the average metaspace cost of all classes defined since the shared
+     * layer was created.
+     *
+     * @param isolatedAgents the isolated agents that have been started
+     */
+    public void report(List<IsolatedAgent> isolatedAgents) {
+        if (sharedClassLoader == null) {
+            return;
+        }
+
+        long metaspaceUsedAfter = getMetaspaceUsed();
+        long sharedClassCount = sharedClassLoader.getDefinedClassCount();
+        long totalClassCount = sharedClassCount;
+        int startedAgentCount = 0;
+
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            if (isolatedAgent.getClassLoader() != null) {
+                totalClassCount += isolatedAgent.getClassLoader().getDefinedClassCount();
+                startedAgentCount++;
+            }
+        }
+
+        if (metaspaceUsedBefore < 0 || metaspaceUsedAfter < 0 || totalClassCount == 0) {
+            LOGGER.info("shared classes [%d] (metaspace usage not available)", sharedClassCount);
+            return;
+        }
+
+        long metaspaceUsed = metaspaceUsedAfter - metaspaceUsedBefore;
+        long metaspaceSaved = Math.max(0, startedAgentCount - 1) * sharedClassCount * metaspaceUsed / totalClassCount;
+
+        LOGGER.info(
+                "shared classes [%d] agent classes [%d] metaspace used [%d KB] estimated metaspace saved [%d KB]",
+                sharedClassCount, totalClassCount - sharedClassCount, metaspaceUsed / 1024, metaspaceSaved / 1024);
+    }
+
+    /**
+     * Creates the shared layer.
+     *
+     * @param configuration the configuration
+     * @return the shared layer
+     * @throws IOException if a classpath entry cannot be converted to a URL
+     */
+    public static SharedLayer create(Configuration configuration) throws IOException {
+        PrefixTrie sharedPrefixes = PrefixTrie.ofPackages(configuration.getSharedPackages());
+
+        if (sharedPrefixes.isEmpty()) {
+            return new SharedLayer(null, sharedPrefixes);
+        }
+
+        // Load the shared classes from the shared jars or, if there are none, the agent classpaths
+        Set<String> classpath = new LinkedHashSet<>();
+        for (Path sharedJar : configuration.getSharedJars()) {
+            classpath.add(sharedJar.toString());
+        }
+
+        if (classpath.isEmpty()) {
+            for (JavaAgent javaAgent : configuration.getJavaAgents()) {
+                classpath.addAll(javaAgent.getClasspath());
+            }
+        }
+
+        List<URL> urls = new ArrayList<>();
+        for (String classpathEntry : classpath) {
+            LOGGER.info("shared classpath entry [%s]", classpathEntry);
+            urls.add(ChildFirstURLClassLoader.toUrl(classpathEntry));
+        }
+
+        LOGGER.info("shared packages %s", configuration.getSharedPackages());
+
+        ChildFirstURLClassLoader sharedClassLoader = new ChildFirstURLClassLoader(
+                urls.toArray(new URL[0]),
+                null,
+                PrefixTrie.ofPackages(configuration.getParentFirstPackages()),
+                PrefixTrie.of(new ArrayList<>()));
+
+        return new SharedLayer(sharedClassLoader, sharedPrefixes);
+    }
+
+    /**
+     * Gets the metaspace used.
+     *
+     * @return the metaspace used in bytes, or -1 if the metaspace usage is not available
+     */
+    static long getMetaspaceUsed() {
+        for (MemoryPoolMXBean memoryPoolMXBean : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (METASPACE_POOL_NAME.equals(memoryPoolMXBean.getName())) {
+                return memoryPoolMXBean.getUsage().getUsed();
+            }
+        }
+
+        return -1;
+    }
+}
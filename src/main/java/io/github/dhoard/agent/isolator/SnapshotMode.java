@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import java.util.Locale;
+
+/**
+ * Mode of the compiled configuration snapshot written next to the configuration file.
+ */
+public enum SnapshotMode {
+
+    /**
+     * The configuration is always parsed, and no snapshot is written.
+     */
+    DISABLED,
+
+    /**
+     * The configuration is read from the snapshot if it matches the configuration file, else parsed
+     * and written to the snapshot.
+     */
+    ENABLED,
+
+    /**
+     * The configuration is always parsed, and compared with the snapshot if it matches the configuration
+     * file. A snapshot that differs from the parsed configuration is replaced.
+     */
+    VALIDATE;
+
+    /**
+     * Gets the snapshot mode for a configuration value.
+     *
+     * @param value the configuration value
+     * @return the snapshot mode, or null if the value is not a valid snapshot mode
+     */
+    public static SnapshotMode of(String value) {
+        for (SnapshotMode snapshotMode : values()) {
+            if (snapshotMode.name().equalsIgnoreCase(value)) {
+                return snapshotMode;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+}
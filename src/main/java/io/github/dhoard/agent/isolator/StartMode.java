@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import java.util.Locale;
+
+/**
+ * Start mode of a Java agent.
+ */
+public enum StartMode {
+
+    /**
+     * The agent is started before premain returns.
+     */
+    FOREGROUND,
+
+    /**
+     * The agent is started on a daemon thread after all foreground agents have started.
+     */
+    BACKGROUND,
+
+    /**
+     * The agent is started after a delay and/or when a trigger class is first loaded.
+     */
+    DEFERRED;
+
+    /**
+     * Gets the start mode for a configuration value.
+     *
+     * @param value the configuration value
+     * @return the start mode, or null if the value is not a valid start mode
+     */
+    public static StartMode of(String value) {
+        for (StartMode startMode : values()) {
+            if (startMode.name().equalsIgnoreCase(value)) {
+                return startMode;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+}
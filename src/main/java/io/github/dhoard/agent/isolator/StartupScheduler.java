@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import static java.lang.String.format;
+
+import io.github.dhoard.agent.isolator.util.Logger;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * Scheduler for starting isolated agents.
+ * <p>
+ * The scheduler builds a dependency graph from each agent's {@code dependsOn} ids and {@code startOrder}.
+ * An agent depends on every scheduled agent listed in {@code dependsOn} and on every agent with the next
+ * lower {@code startOrder}. Agents are either started sequentially in a stable topological order or
+ * concurrently on a bounded thread pool, where an agent is started as soon as all of its dependencies
+ * have started.
+ * <p>
+ * An agent whose failure policy is {@link FailurePolicy#ABORT} fails the startup when it fails to start. Any
+ * other agent that fails to start is skipped, together with every agent that lists it in {@code dependsOn},
+ * and the remaining agents are started. Dependencies that are not scheduled together with an agent, for
+ * example the foreground agents of a background or deferred agent, are checked by their startup state, so
+ * an agent whose dependency failed or was skipped in an earlier startup is skipped as well.
+ */
+public class StartupScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(StartupScheduler.class);
+
+    private static final String STARTUP_THREAD_NAME = "isolator-agent-startup";
+
+    private final List<IsolatedAgent> isolatedAgents;
+    private final Map<String, IsolatedAgent> isolatedAgentsById;
+    private final Function<String, IsolatedAgent> isolatedAgentLookup;
+    private final Map<IsolatedAgent, List<IsolatedAgent>> dependencies;
+    private final List<IsolatedAgent> startOrder;
+
+    /**
+     * Constructor for StartupScheduler.
+     *
+     * @param isolatedAgents the isolated agents to start
+     * @param isolatedAgentLookup the lookup of the agents that are not scheduled, by id, returning null if there
+     *        is no agent with the id
+     * @throws ConfigurationException if the dependencies contain a cycle
+     */
+    public StartupScheduler(List<IsolatedAgent> isolatedAgents, Function<String, IsolatedAgent> isolatedAgentLookup) {
+        this.isolatedAgents = new ArrayList<>(isolatedAgents);
+        this.isolatedAgentsById = new HashMap<>();
+        for (IsolatedAgent isolatedAgent : this.isolatedAgents) {
+            isolatedAgentsById.put(isolatedAgent.getId(), isolatedAgent);
+        }
+        this.isolatedAgentLookup = isolatedAgentLookup;
+        this.dependencies = buildDependencies(this.isolatedAgents, isolatedAgentsById);
+        this.startOrder = sort(this.isolatedAgents, dependencies);
+    }
+
+    /**
+     * Gets the sequential start order.
+     *
+     * @return the isolated agents in a stable topological order
+     */
+    public List<IsolatedAgent> getStartOrder() {
+        return Collections.unmodifiableList(startOrder);
+    }
+
+    /**
+     * Starts the agents sequentially on the calling thread, stopping at the first failure of an agent
+     * whose failure policy is {@link FailurePolicy#ABORT}.
+     *
+     * @param instrumentation the Instrumentation instance
+     * @throws Exception if an agent fails to start
+     */
+    public void startSequential(Instrumentation instrumentation) throws Exception {
+        for (IsolatedAgent isolatedAgent : startOrder) {
+            if (hasSkippedDependency(isolatedAgent)) {
+                continue;
+            }
+
+            try {
+                isolatedAgent.start(instrumentation);
+            } catch (Exception e) {
+                if (isolatedAgent.getJavaAgent().getOnFailure() == FailurePolicy.ABORT) {
+                    throw e;
+                }
+
+                skip(isolatedAgent, e);
+            }
+        }
+    }
+
+    /**
+     * Starts the agents concurrently, blocking until every agent has either started or failed.
+     * <p>
+     * Agents whose dependencies failed or were skipped are not started.
+     *
+     * @param instrumentation the Instrumentation instance
+     * @throws Exception the failure of the first agent, in configuration order, that failed to start
+     */
+    public void startParallel(Instrumentation instrumentation) throws Exception {
+        int threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), isolatedAgents.size()));
+
+        LOGGER.info("starting agents in parallel using %d thread%s", threadCount, threadCount == 1 ? "" : "s");
+
+        Map<IsolatedAgent, Throwable> failures = new ConcurrentHashMap<>();
+        Map<IsolatedAgent, CompletableFuture<Void>> futures = new HashMap<>();
+
+        ExecutorService executorService = Threads.newFixedThreadPool(STARTUP_THREAD_NAME, threadCount);
+
+        try {
+            // The start order guarantees that the futures of all dependencies already exist
+            for (IsolatedAgent isolatedAgent : startOrder) {
+                List<IsolatedAgent> isolatedAgentDependencies = dependencies.get(isolatedAgent);
+                CompletableFuture<?>[] dependencyFutures = new CompletableFuture<?>[isolatedAgentDependencies.size()];
+
+                for (int i = 0; i < dependencyFutures.length; i++) {
+                    dependencyFutures[i] = futures.get(isolatedAgentDependencies.get(i));
+                }
+
+                CompletableFuture<Void> future = CompletableFuture.allOf(dependencyFutures)
+                        .thenRunAsync(
+                                () -> {
+                                    if (hasSkippedDependency(isolatedAgent)) {
+                                        return;
+                                    }
+
+                                    try {
+                                        isolatedAgent.start(instrumentation);
+                                    } catch (Throwable t) {
+                                        if (isolatedAgent.getJavaAgent().getOnFailure() != FailurePolicy.ABORT) {
+                                            skip(isolatedAgent, t);
+                                            return;
+                                        }
+
+                                        failures.put(isolatedAgent, t);
+                                        throw new JavaAgentException(t);
+                                    }
+                                },
+                                executorService);
+
+                futures.put(isolatedAgent, future);
+            }
+
+            // Wait for all agents to either start or fail
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                    .handle((result, throwable) -> null)
+                    .join();
+        } finally {
+            executorService.shutdown();
+        }
+
+        // Report the failures in configuration order
+        Throwable firstFailure = null;
+
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            Throwable failure = failures.get(isolatedAgent);
+
+            if (failure != null) {
+                LOGGER.error(failure.getMessage());
+
+                if (firstFailure == null) {
+                    firstFailure = failure;
+                }
+            } else if (futures.get(isolatedAgent).isCompletedExceptionally()) {
+                LOGGER.error("agent[%d] not started, a dependency failed to start", isolatedAgent.getIndex());
+            }
+        }
+
+        if (firstFailure instanceof Exception) {
+            throw (Exception) firstFailure;
+        } else if (firstFailure != null) {
+            throw new JavaAgentException(firstFailure);
+        }
+    }
+
+    /**
+     * Returns whether an agent lists an agent in {@code dependsOn} that failed to start, was skipped, or no
+     * longer exists, recording and logging the agent as skipped.
+     * <p>
+     * Scheduled dependencies have either started, failed, or been skipped when this is called. Dependencies
+     * that are not scheduled are checked by their current startup state.
+     *
+     * @param isolatedAgent the isolated agent
+     * @return true if the agent was skipped, else false
+     */
+    private boolean hasSkippedDependency(IsolatedAgent isolatedAgent) {
+        for (String id : isolatedAgent.getJavaAgent().getDependsOn()) {
+            IsolatedAgent dependency = isolatedAgentsById.get(id);
+
+            if (dependency == null) {
+                dependency = isolatedAgentLookup.apply(id);
+            }
+
+            if (dependency == null) {
+                LOGGER.error("agent[%d] skipped, dependency [%s] is not an agent", isolatedAgent.getIndex(), id);
+                isolatedAgent.getStartupTimeline().skipped();
+                return true;
+            }
+
+            if (dependency.getStartupTimeline().isFailedOrSkipped()) {
+                LOGGER.error(
+                        "agent[%d] skipped, dependency [%s] %s",
+                        isolatedAgent.getIndex(),
+                        id,
+                        dependency.getStartupTimeline().getState());
+                isolatedAgent.getStartupTimeline().skipped();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Records an agent that failed to start as skipped, unless its startup state is already failed, so the
+     * agents that depend on it are skipped.
+     *
+     * @param isolatedAgent the isolated agent
+     * @param throwable the failure
+     */
+    private static void skip(IsolatedAgent isolatedAgent, Throwable throwable) {
+        LOGGER.error(
+                "agent[%d] skipped, onFailure [%s], %s",
+                isolatedAgent.getIndex(), isolatedAgent.getJavaAgent().getOnFailure(), throwable.getMessage());
+
+        // An agent that was stopped before it started has no failed startup state
+        if (!isolatedAgent.getStartupTimeline().isFailedOrSkipped()) {
+            isolatedAgent.getStartupTimeline().skipped();
+        }
+    }
+
+    /**
+     * Builds the direct dependencies of each agent.
+     *
+     * @param isolatedAgents the isolated agents
+     * @param isolatedAgentsById the isolated agents by id
+     * @return a map of each agent to the agents it depends on
+     */
+    private static Map<IsolatedAgent, List<IsolatedAgent>> buildDependencies(
+            List<IsolatedAgent> isolatedAgents, Map<String, IsolatedAgent> isolatedAgentsById) {
+        Map<IsolatedAgent, List<IsolatedAgent>> dependencies = new HashMap<>();
+
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            Set<IsolatedAgent> isolatedAgentDependencies = new LinkedHashSet<>();
+
+            // Explicit dependencies
+            for (String id : isolatedAgent.getJavaAgent().getDependsOn()) {
+                IsolatedAgent dependency = isolatedAgentsById.get(id);
+
+                // Dependencies that are not scheduled together with this agent are checked when it starts
+                if (dependency != null) {
+                    isolatedAgentDependencies.add(dependency);
+                }
+            }
+
+            // Implicit dependencies on the agents with the next lower start order
+            int previousStartOrder = Integer.MIN_VALUE;
+            int startOrder = isolatedAgent.getJavaAgent().getStartOrder();
+
+            for (IsolatedAgent other : isolatedAgents) {
+                int otherStartOrder = other.getJavaAgent().getStartOrder();
+                if (otherStartOrder < startOrder && otherStartOrder > previousStartOrder) {
+                    previousStartOrder = otherStartOrder;
+                }
+            }
+
+            for (IsolatedAgent other : isolatedAgents) {
+                if (previousStartOrder != Integer.MIN_VALUE
+                        && other.getJavaAgent().getStartOrder() == previousStartOrder) {
+                    isolatedAgentDependencies.add(other);
+                }
+            }
+
+            dependencies.put(isolatedAgent, new ArrayList<>(isolatedAgentDependencies));
+        }
+
+        return dependencies;
+    }
+
+    /**
+     * Sorts the agents topologically, preferring the lowest start order and then configuration order.
+     *
+     * @param isolatedAgents the isolated agents
+     * @param dependencies the dependencies of each agent
+     * @return the sorted agents
+     * @throws ConfigurationException if the dependencies contain a cycle
+     */
+    private static List<IsolatedAgent> sort(
+            List<IsolatedAgent> isolatedAgents, Map<IsolatedAgent, List<IsolatedAgent>> dependencies) {
+        Map<IsolatedAgent, Integer> remainingDependencyCounts = new HashMap<>();
+        Map<IsolatedAgent, List<IsolatedAgent>> dependents = new HashMap<>();
+
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            remainingDependencyCounts.put(
+                    isolatedAgent, dependencies.get(isolatedAgent).size());
+            dependents.put(isolatedAgent, new ArrayList<>());
+        }
+
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            for (IsolatedAgent dependency : dependencies.get(isolatedAgent)) {
+                dependents.get(dependency).add(isolatedAgent);
+            }
+        }
+
+        PriorityQueue<IsolatedAgent> ready =
+                new PriorityQueue<>(Comparator.comparingInt((IsolatedAgent isolatedAgent) ->
+                                isolatedAgent.getJavaAgent().getStartOrder())
+                        .thenComparingInt(IsolatedAgent::getIndex));
+
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            if (remainingDependencyCounts.get(isolatedAgent) == 0) {
+                ready.add(isolatedAgent);
+            }
+        }
+
+        List<IsolatedAgent> sorted = new ArrayList<>();
+
+        while (!ready.isEmpty()) {
+            IsolatedAgent isolatedAgent = ready.poll();
+            sorted.add(isolatedAgent);
+
+            for (IsolatedAgent dependent : dependents.get(isolatedAgent)) {
+                int remainingDependencyCount = remainingDependencyCounts.get(dependent) - 1;
+                remainingDependencyCounts.put(dependent, remainingDependencyCount);
+
+                if (remainingDependencyCount == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        if (sorted.size() != isolatedAgents.size()) {
+            for (IsolatedAgent isolatedAgent : isolatedAgents) {
+                if (!sorted.contains(isolatedAgent)) {
+                    throw new ConfigurationException(
+                            format("agent[%d] is part of a dependsOn cycle", isolatedAgent.getIndex()));
+                }
+            }
+        }
+
+        return sorted;
+    }
+}
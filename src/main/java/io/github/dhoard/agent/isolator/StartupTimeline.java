@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import static java.lang.String.format;
+
+import io.github.dhoard.agent.isolator.util.ChildFirstURLClassLoader;
+
+/**
+ * Startup timeline of an isolated agent.
+ * <p>
+ * Records the time spent in each startup phase and the classes defined by the agent classloader
+ * during startup. Each phase is recorded as the time since the previous phase completed.
+ */
+public class StartupTimeline implements StartupTimelineMBean {
+
+    private static final String PENDING = "pending";
+    private static final String STARTING = "starting";
+    private static final String STARTED = "started";
+    private static final String FAILED = "failed";
+    private static final String SKIPPED = "skipped";
+
+    private final String id;
+    private volatile String state;
+    private volatile long startNanos;
+    private volatile long lastNanos;
+    private volatile long createClassLoaderNanos;
+    private volatile long loadMainClassNanos;
+    private volatile long resolveAgentMainNanos;
+    private volatile long runAgentMainNanos;
+    private volatile long totalNanos;
+    private volatile long definedClasses;
+    private volatile long definedClassBytes;
+
+    /**
+     * Constructor for StartupTimeline.
+     *
+     * @param id the identifier of the agent
+     */
+    public StartupTimeline(String id) {
+        this.id = id;
+        this.state = PENDING;
+        reset();
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getState() {
+        return state;
+    }
+
+    @Override
+    public long getCreateClassLoaderMillis() {
+        return toMillis(createClassLoaderNanos);
+    }
+
+    @Override
+    public long getLoadMainClassMillis() {
+        return toMillis(loadMainClassNanos);
+    }
+
+    @Override
+    public long getResolveAgentMainMillis() {
+        return toMillis(resolveAgentMainNanos);
+    }
+
+    @Override
+    public long getRunAgentMainMillis() {
+        return toMillis(runAgentMainNanos);
+    }
+
+    @Override
+    public long getTotalMillis() {
+        return toMillis(totalNanos);
+    }
+
+    @Override
+    public long getDefinedClasses() {
+        return definedClasses;
+    }
+
+    @Override
+    public long getDefinedClassBytes() {
+        return definedClassBytes;
+    }
+
+    /**
+     * Records the start of startup.
+     */
+    public void starting() {
+        reset();
+        startNanos = System.nanoTime();
+        lastNanos = startNanos;
+        state = STARTING;
+    }
+
+    /**
+     * Records that the agent classloader has been created.
+     */
+    public void classLoaderCreated() {
+        createClassLoaderNanos = lap();
+    }
+
+    /**
+     * Records that the agent main class has been loaded.
+     */
+    public void mainClassLoaded() {
+        loadMainClassNanos = lap();
+    }
+
+    /**
+     * Records that the agentmain method has been resolved.
+     */
+    public void agentMainResolved() {
+        resolveAgentMainNanos = lap();
+    }
+
+    /**
+     * Records that the agentmain method has returned.
+     */
+    public void agentMainReturned() {
+        runAgentMainNanos = lap();
+    }
+
+    /**
+     * Records that the agent has started.
+     *
+     * @param classLoader the agent classloader
+     */
+    public void started(ChildFirstURLClassLoader classLoader) {
+        totalNanos = System.nanoTime() - startNanos;
+        definedClasses = classLoader.getDefinedClassCount();
+        definedClassBytes = classLoader.getDefinedClassBytes();
+        state = STARTED;
+    }
+
+    /**
+     * Records that the agent failed to start.
+     */
+    public void failed() {
+        totalNanos = System.nanoTime() - startNanos;
+        state = FAILED;
+    }
+
+    /**
+     * Records that the agent was skipped, because an agent it depends on failed to start or was skipped.
+     */
+    public void skipped() {
+        state = SKIPPED;
+    }
+
+    /**
+     * Returns whether the agent failed to start or was skipped, in which case the agents that depend on it
+     * are skipped.
+     *
+     * @return true if the agent failed to start or was skipped, else false
+     */
+    public boolean isFailedOrSkipped() {
+        String currentState = state;
+        return FAILED.equals(currentState) || SKIPPED.equals(currentState);
+    }
+
+    /**
+     * Gets a one line summary of the timeline, with {@code n/a} for phases that did not run.
+     *
+     * @return the summary
+     */
+    public String getSummary() {
+        return format(
+                "startup [%s] createClassLoader [%s] loadMainClass [%s] resolveAgentMain [%s]"
+                        + " runAgentMain [%s] total [%s] definedClasses [%d] definedClassBytes [%d]",
+                state,
+                formatMillis(getCreateClassLoaderMillis()),
+                formatMillis(getLoadMainClassMillis()),
+                formatMillis(getResolveAgentMainMillis()),
+                formatMillis(getRunAgentMainMillis()),
+                formatMillis(getTotalMillis()),
+                definedClasses,
+                definedClassBytes);
+    }
+
+    /**
+     * Formats the time of a phase for the summary.
+     *
+     * @param millis the time of the phase in milliseconds, or -1 if the phase did not run
+     * @return the time of the phase, or {@code n/a} if the phase did not run
+     */
+    private static String formatMillis(long millis) {
+        return millis < 0 ? "n/a" : millis + " ms";
+    }
+
+    /**
+     * Resets the recorded phases.
+     */
+    private void reset() {
+        createClassLoaderNanos = -1;
+        loadMainClassNanos = -1;
+        resolveAgentMainNanos = -1;
+        runAgentMainNanos = -1;
+        totalNanos = -1;
+        definedClasses = 0;
+        definedClassBytes = 0;
+    }
+
+    /**
+     * Gets the time since the previous phase completed, and starts the next phase.
+     *
+     * @return the time since the previous phase completed in nanoseconds
+     */
+    private long lap() {
+        long nowNanos = System.nanoTime();
+        long lapNanos = nowNanos - lastNanos;
+        lastNanos = nowNanos;
+        return lapNanos;
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds, preserving -1.
+     *
+     * @param nanos the nanoseconds, or -1
+     * @return the milliseconds, or -1
+     */
+    private static long toMillis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1_000_000;
+    }
+}
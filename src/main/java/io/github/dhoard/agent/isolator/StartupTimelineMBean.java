@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+/**
+ * MBean interface of a {@link StartupTimeline}.
+ * <p>
+ * Durations are in milliseconds and are -1 until the phase has completed.
+ */
+public interface StartupTimelineMBean {
+
+    /**
+     * Gets the agent id.
+     *
+     * @return the identifier of the agent
+     */
+    String getId();
+
+    /**
+     * Gets the startup state.
+     *
+     * @return the startup state, one of pending, starting, started, failed, or skipped
+     */
+    String getState();
+
+    /**
+     * Gets the time to create the agent classloader.
+     *
+     * @return the time to create the agent classloader in milliseconds
+     */
+    long getCreateClassLoaderMillis();
+
+    /**
+     * Gets the time to load the agent main class.
+     *
+     * @return the time to load the agent main class in milliseconds
+     */
+    long getLoadMainClassMillis();
+
+    /**
+     * Gets the time to resolve the agentmain method.
+     *
+     * @return the time to resolve the agentmain method in milliseconds
+     */
+    long getResolveAgentMainMillis();
+
+    /**
+     * Gets the time to run the agentmain method.
+     *
+     * @return the time to run the agentmain method in milliseconds
+     */
+    long getRunAgentMainMillis();
+
+    /**
+     * Gets the total startup time.
+     *
+     * @return the total startup time in milliseconds
+     */
+    long getTotalMillis();
+
+    /**
+     * Gets the number of classes defined by the agent classloader during startup.
+     *
+     * @return the number of classes defined during startup
+     */
+    long getDefinedClasses();
+
+    /**
+     * Gets the number of class bytes defined by the agent classloader during startup.
+     *
+     * @return the number of class bytes defined during startup
+     */
+    long getDefinedClassBytes();
+}
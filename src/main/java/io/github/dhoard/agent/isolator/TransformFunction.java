@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import java.security.ProtectionDomain;
+
+/**
+ * A class file transform, with the module of the class passed as an {@code Object}, so it can be declared
+ * by the Java 8 classes.
+ */
+interface TransformFunction {
+
+    /**
+     * Transforms a class file.
+     *
+     * @param module the {@code java.lang.Module} of the class, or null on Java 8 or if the module is not known
+     * @param loader the defining loader of the class, or null for the bootstrap loader
+     * @param className the internal name of the class, or null
+     * @param classBeingRedefined the class being redefined or retransformed, or null for a class being loaded
+     * @param protectionDomain the protection domain of the class
+     * @param classfileBuffer the class file bytes, which must not be modified
+     * @return the transformed class file bytes, or null if the class was not transformed
+     */
+    byte[] transform(
+            Object module,
+            ClassLoader loader,
+            String className,
+            Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain,
+            byte[] classfileBuffer);
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import io.github.dhoard.agent.isolator.util.PrefixTrie;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Multiplexes the ClassFileTransformers registered by the isolated agents through two composite
+ * transformers, one that can retransform and one that cannot.
+ * <p>
+ * Each agent can limit its transformers to classes in its transform include packages, and exclude
+ * classes in its transform exclude packages. The composite transformers find the transformers for a
+ * class with one lookup in a prefix index of every include package, so transformers that do not
+ * match a class are skipped without being called.
+ * <p>
+ * On Java 9 or later, the composite transformers receive the module of a class from the JVM and pass it
+ * to the agent transformers, see {@code TransformerSupport}.
+ */
+public class TransformerMultiplexer {
+
+    private static final int[] NO_REGISTRATIONS = new int[0];
+
+    private final Instrumentation instrumentation;
+    private final CompositeTransformer transformer;
+    private final CompositeTransformer retransformTransformer;
+
+    /**
+     * Constructor for TransformerMultiplexer.
+     *
+     * @param instrumentation the Instrumentation instance
+     */
+    public TransformerMultiplexer(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+        this.transformer = new CompositeTransformer(false);
+        this.retransformTransformer = new CompositeTransformer(true);
+    }
+
+    /**
+     * Adds a transformer.
+     *
+     * @param registration the transformer registration
+     * @param canRetransform whether the transformer can retransform classes
+     */
+    public void add(Registration registration, boolean canRetransform) {
+        (canRetransform ? retransformTransformer : transformer).add(registration);
+        registration.agentTransforms.transformerCountChanged(1);
+    }
+
+    /**
+     * Removes a transformer.
+     *
+     * @param agentTransforms the transform statistics of the agent that registered the transformer
+     * @param classFileTransformer the transformer
+     * @return true if the transformer was registered, else false
+     */
+    public boolean remove(AgentTransforms agentTransforms, ClassFileTransformer classFileTransformer) {
+        // Remove the most recently added registration, like Instrumentation.removeTransformer
+        boolean removed = transformer.remove(agentTransforms, classFileTransformer)
+                || retransformTransformer.remove(agentTransforms, classFileTransformer);
+
+        if (removed) {
+            agentTransforms.transformerCountChanged(-1);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Removes every transformer registered by an agent.
+     *
+     * @param agentTransforms the transform statistics of the agent
+     */
+    public void removeAll(AgentTransforms agentTransforms) {
+        int removed = transformer.removeAll(agentTransforms) + retransformTransformer.removeAll(agentTransforms);
+        agentTransforms.transformerCountChanged(-removed);
+    }
+
+    /**
+     * Converts package names to internal class name prefixes.
+     *
+     * @param packageNames the package names
+     * @return the internal class name prefixes
+     */
+    public static List<String> toInternalPrefixes(List<String> packageNames) {
+        List<String> prefixes = new ArrayList<>();
+
+        for (String packageName : packageNames) {
+            String prefix = packageName.replace('.', '/');
+            prefixes.add(prefix.endsWith("/") ? prefix : prefix + "/");
+        }
+
+        return prefixes;
+    }
+
+    /**
+     * A transformer registered by an agent.
+     */
+    public static class Registration {
+
+        private final ClassFileTransformer classFileTransformer;
+        private final List<String> includePrefixes;
+        private final PrefixTrie excludePrefixes;
+        private final AgentTransforms agentTransforms;
+
+        /**
+         * Constructor for Registration.
+         *
+         * @param classFileTransformer the transformer
+         * @param includePrefixes the internal class name prefixes to transform, or an empty list to transform all classes
+         * @param excludePrefixes the internal class name prefixes not to transform
+         * @param agentTransforms the transform statistics of the agent
+         */
+        public Registration(
+                ClassFileTransformer classFileTransformer,
+                List<String> includePrefixes,
+                PrefixTrie excludePrefixes,
+                AgentTransforms agentTransforms) {
+            this.classFileTransformer = classFileTransformer;
+            this.includePrefixes = includePrefixes;
+            this.excludePrefixes = excludePrefixes;
+            this.agentTransforms = agentTransforms;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the registrations of a composite transformer, indexed for dispatch.
+     */
+    private static class Dispatch {
+
+        private final Registration[] registrations;
+        private final int[] unfilteredRegistrations;
+        private final PrefixTrie includePrefixes;
+        private final int[] includePrefixRegistrations;
+
+        /**
+         * Constructor for Dispatch.
+         *
+         * @param registrations the registrations, in registration order
+         */
+        private Dispatch(List<Registration> registrations) {
+            this.registrations = registrations.toArray(new Registration[0]);
+
+            List<Integer> unfiltered = new ArrayList<>();
+            List<String> prefixes = new ArrayList<>();
+            List<Integer> prefixRegistrations = new ArrayList<>();
+
+            for (int i = 0; i < this.registrations.length; i++) {
+                if (this.registrations[i].includePrefixes.isEmpty()) {
+                    unfiltered.add(i);
+                }
+
+                for (String prefix : this.registrations[i].includePrefixes) {
+                    prefixes.add(prefix);
+                    prefixRegistrations.add(i);
+                }
+            }
+
+            this.unfilteredRegistrations = toIntArray(unfiltered);
+            this.includePrefixes = PrefixTrie.of(prefixes);
+            this.includePrefixRegistrations = toIntArray(prefixRegistrations);
+        }
+
+        /**
+         * Selects the registrations that include a class.
+         *
+         * @param className the internal class name, or null if the class has no name
+         * @return the indexes of the selected registrations, in registration order
+         */
+        private int[] select(String className) {
+            int[] prefixIds = className != null ? includePrefixes.findMatches(className) : NO_REGISTRATIONS;
+
+            if (prefixIds.length == 0) {
+                return unfilteredRegistrations;
+            }
+
+            int[] selected = Arrays.copyOf(unfilteredRegistrations, unfilteredRegistrations.length + prefixIds.length);
+
+            for (int i = 0; i < prefixIds.length; i++) {
+                selected[unfilteredRegistrations.length + i] = includePrefixRegistrations[prefixIds[i]];
+            }
+
+            Arrays.sort(selected);
+
+            // Remove duplicates, for registrations with more than one matching include prefix
+            int count = 0;
+            for (int i = 0; i < selected.length; i++) {
+                if (i == 0 || selected[i] != selected[i - 1]) {
+                    selected[count++] = selected[i];
+                }
+            }
+
+            return count == selected.length ? selected : Arrays.copyOf(selected, count);
+        }
+
+        /**
+         * Converts a list of integers to an array.
+         *
+         * @param list the list
+         * @return the array
+         */
+        private static int[] toIntArray(List<Integer> list) {
+            int[] array = new int[list.size()];
+
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+
+            return array;
+        }
+    }
+
+    /**
+     * Composite transformer registered with the JVM, which calls the selected agent transformers in
+     * registration order, passing the output of each transformer to the next transformer.
+     */
+    private class CompositeTransformer implements TransformFunction {
+
+        private final boolean canRetransform;
+        private final List<Registration> registrations;
+        private volatile Dispatch dispatch;
+        private boolean registered;
+
+        /**
+         * Constructor for CompositeTransformer.
+         *
+         * @param canRetransform whether the transformer can retransform classes
+         */
+        private CompositeTransformer(boolean canRetransform) {
+            this.canRetransform = canRetransform;
+            this.registrations = new ArrayList<>();
+            this.dispatch = new Dispatch(registrations);
+        }
+
+        @Override
+        public byte[] transform(
+                Object module,
+                ClassLoader loader,
+                String className,
+                Class<?> classBeingRedefined,
+                ProtectionDomain protectionDomain,
+                byte[] classfileBuffer) {
+            Dispatch dispatch = this.dispatch;
+            int[] selected = dispatch.select(className);
+
+            if (selected.length == 0) {
+                return null;
+            }
+
+            byte[] bytes = classfileBuffer;
+            boolean transformed = false;
+
+            for (int index : selected) {
+                Registration registration = dispatch.registrations[index];
+
+                if (className != null && registration.excludePrefixes.matches(className)) {
+                    continue;
+                }
+
+                long startNanos = System.nanoTime();
+                byte[] result = null;
+                boolean failed = false;
+
+                try {
+                    result = TransformerSupport.transform(
+                            registration.classFileTransformer,
+                            module,
+                            loader,
+                            className,
+                            classBeingRedefined,
+                            protectionDomain,
+                            bytes);
+                } catch (Throwable t) {
+                    // The JVM ignores exceptions thrown by transformers, so ignore them too
+                    failed = true;
+                }
+
+                registration.agentTransforms.transformed(System.nanoTime() - startNanos, result != null, failed);
+
+                if (result != null) {
+                    bytes = result;
+                    transformed = true;
+                }
+            }
+
+            return transformed ? bytes : null;
+        }
+
+        /**
+         * Adds a registration, registering this transformer with the JVM if required.
+         *
+         * @param registration the registration
+         */
+        private synchronized void add(Registration registration) {
+            registrations.add(registration);
+            dispatch = new Dispatch(registrations);
+
+            if (!registered) {
+                instrumentation.addTransformer(TransformerSupport.newTransformer(this), canRetransform);
+                registered = true;
+            }
+        }
+
+        /**
+         * Removes the most recently added registration of a transformer by an agent.
+         *
+         * @param agentTransforms the transform statistics of the agent
+         * @param classFileTransformer the transformer
+         * @return true if a registration was removed, else false
+         */
+        private synchronized boolean remove(
+                AgentTransforms agentTransforms, ClassFileTransformer classFileTransformer) {
+            for (int i = registrations.size() - 1; i >= 0; i--) {
+                Registration registration = registrations.get(i);
+
+                if (registration.agentTransforms == agentTransforms
+                        && registration.classFileTransformer == classFileTransformer) {
+                    registrations.remove(i);
+                    dispatch = new Dispatch(registrations);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Removes every registration by an agent.
+         *
+         * @param agentTransforms the transform statistics of the agent
+         * @return the number of registrations removed
+         */
+        private synchronized int removeAll(AgentTransforms agentTransforms) {
+            int size = registrations.size();
+
+            registrations.removeIf(registration -> registration.agentTransforms == agentTransforms);
+            dispatch = new Dispatch(registrations);
+
+            return size - registrations.size();
+        }
+    }
+}
@@ -16,15 +16,89 @@
 
 package io.github.dhoard.agent.isolator.util;
 
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * A custom URLClassLoader that loads classes from the child classloader first.
+ * <p>
+ * Classes in parent-first packages (by default the JDK packages) are loaded from the platform classloader
+ * first, avoiding a jar lookup and a {@link ClassNotFoundException} for every JDK class. Class names that
+ * are not found in the child classloader are cached, so repeated misses never search the jar again.
+ * <p>
+ * Classes in shared packages are loaded from the parent classloader first, so that a parent
+ * classloader shared by several child classloaders defines them once.
+ * <p>
+ * When every URL is a local jar file, a jar nested in a local jar file, or a local directory, classes are
+ * defined from {@link SharedJar} instances obtained from the {@link JarRegistry}, so a jar loaded by many
+ * classloaders is mapped and indexed once. The entries of the jars are merged into a {@link ClasspathIndex},
+ * so a class is found with one lookup however many jars are on the classpath. Directories are searched
+ * directly, in classpath order, because their content may change. Signed jars are not verified by the
+ * {@link JarIndex}, so a classpath containing a signed jar uses the {@link URLClassLoader} implementation.
+ * <p>
+ * A nested jar is identified by a {@code jar:} URL, for example {@code jar:file:/bundle.jar!/lib/agent.jar},
+ * and is read in place from the outer jar file, without being extracted.
+ * <p>
+ * Resources are resolved in the same order as classes, so an agent always sees its own copy of a resource
+ * first. Resources of shared jars are found using the jar index instead of searching the URLs, and the
+ * resources of {@code META-INF/services} provider configuration files are cached, so repeated
+ * {@link java.util.ServiceLoader} lookups do not search again.
+ * <p>
+ * The classloader is parallel capable, so classes with different names are loaded concurrently.
+ * <p>
+ * Class loading is counted and timed in the {@link ClassLoaderStatistics} of the classloader.
  */
 public class ChildFirstURLClassLoader extends URLClassLoader {
 
+    static {
+        // Use a lock per class name instead of locking the classloader
+        registerAsParallelCapable();
+    }
+
+    /**
+     * Packages that are loaded from the platform classloader first.
+     */
+    public static final List<String> DEFAULT_PARENT_FIRST_PACKAGES = Collections.unmodifiableList(
+            Arrays.asList("java", "javax", "jdk", "sun", "com.sun", "org.ietf.jgss", "org.w3c.dom", "org.xml.sax"));
+
+    private static final PrefixTrie DEFAULT_PARENT_FIRST_PREFIXES =
+            PrefixTrie.ofPackages(DEFAULT_PARENT_FIRST_PACKAGES);
+
+    private static final String SERVICES_DIRECTORY = "META-INF/services/";
+    private static final String CLASS_FILE_SUFFIX = ".class";
+    private static final String NESTED_JAR_SEPARATOR = "!/";
+
     private final ClassLoader system;
+    private final ClassLoader platform;
+    private final PrefixTrie parentFirstPrefixes;
+    private final PrefixTrie sharedPrefixes;
+    private final Set<String> missingClassNames;
+    private final SharedJar[] sharedJars;
+    private final Path[] directories;
+    private final ClasspathIndex classpathIndex;
+    private final CodeSource[] codeSources;
+    private final Map<String, List<URL>> serviceResources;
+    private final ClassLoaderStatistics statistics;
+    private volatile Queue<String> recordedClassNames;
 
     /**
      * Constructor for ChildFirstURLClassLoader.
@@ -33,44 +107,580 @@ public class ChildFirstURLClassLoader extends URLClassLoader {
      * @param parent Parent classloader
      */
     public ChildFirstURLClassLoader(URL[] urls, ClassLoader parent) {
+        this(urls, parent, DEFAULT_PARENT_FIRST_PREFIXES, PrefixTrie.of(Collections.emptyList()));
+    }
+
+    /**
+     * Constructor for ChildFirstURLClassLoader.
+     *
+     * @param urls URLs to load classes from
+     * @param parent Parent classloader
+     * @param parentFirstPrefixes Class name prefixes that are loaded from the platform classloader first
+     * @param sharedPrefixes Class name prefixes that are loaded from the parent classloader first
+     */
+    public ChildFirstURLClassLoader(
+            URL[] urls, ClassLoader parent, PrefixTrie parentFirstPrefixes, PrefixTrie sharedPrefixes) {
         super(urls, parent);
 
         system = getSystemClassLoader();
+
+        // The parent of the system classloader is the extension classloader (Java 8)
+        // or the platform classloader (Java 9+), which only load JDK classes
+        platform = system.getParent() != null ? system.getParent() : system;
+
+        this.parentFirstPrefixes = parentFirstPrefixes;
+        this.sharedPrefixes = sharedPrefixes;
+        this.statistics = new ClassLoaderStatistics();
+        this.missingClassNames = ConcurrentHashMap.newKeySet();
+        this.serviceResources = new ConcurrentHashMap<>();
+
+        SharedJar[] sharedJars = new SharedJar[urls.length];
+        Path[] directories = new Path[urls.length];
+
+        if (getSources(urls, sharedJars, directories)) {
+            JarIndex[] jarIndexes = new JarIndex[urls.length];
+            codeSources = new CodeSource[urls.length];
+            for (int i = 0; i < urls.length; i++) {
+                jarIndexes[i] = sharedJars[i] != null ? sharedJars[i].getJarIndex() : null;
+                codeSources[i] = new CodeSource(urls[i], (CodeSigner[]) null);
+            }
+
+            this.sharedJars = sharedJars;
+            this.directories = directories;
+            this.classpathIndex = ClasspathIndex.of(jarIndexes);
+        } else {
+            this.sharedJars = null;
+            this.directories = null;
+            this.classpathIndex = null;
+            this.codeSources = null;
+        }
     }
 
     @Override
     protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
         synchronized (getClassLoadingLock(name)) {
-            // Check if already loaded
-            Class<?> clazz = findLoadedClass(name);
+            long startNanos = statistics.loadClassStarted();
 
-            if (clazz == null) {
-                try {
-                    // Ensure the package is defined
-                    ensurePackageDefined(name);
-
-                    // Load from this classloader first
-                    clazz = findClass(name);
-                } catch (ClassNotFoundException e) {
-                    // If not found, delegate to system or parent
-                    try {
-                        clazz = system.loadClass(name);
-                    } catch (ClassNotFoundException ex) {
-                        clazz = super.loadClass(name, resolve);
-                    }
+            try {
+                Class<?> clazz = loadClassChildFirst(name);
+
+                if (resolve) {
+                    resolveClass(clazz);
                 }
-            }
 
-            if (resolve) {
-                resolveClass(clazz);
+                return clazz;
+            } catch (ClassNotFoundException e) {
+                statistics.classNotFoundMiss();
+                throw e;
+            } finally {
+                statistics.loadClassFinished(startNanos);
             }
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        long startNanos = statistics.findClassStarted();
+        Class<?> clazz;
 
+        try {
+            clazz = findClassBytes(name);
+        } finally {
+            statistics.findClassFinished(startNanos);
+        }
+
+        statistics.classDefined();
+
+        Queue<String> recordedClassNames = this.recordedClassNames;
+        if (recordedClassNames != null) {
+            recordedClassNames.add(name);
+        }
+
+        return clazz;
+    }
+
+    /**
+     * Loads a class, from this classloader first, counting how the class was resolved.
+     * <p>
+     * Must be called holding the class loading lock of the class.
+     *
+     * @param name The name of the class
+     * @return the class
+     * @throws ClassNotFoundException if the class is not found
+     */
+    private Class<?> loadClassChildFirst(String name) throws ClassNotFoundException {
+        // Check if already loaded
+        Class<?> clazz = findLoadedClass(name);
+
+        if (clazz != null) {
+            statistics.loadedClassHit();
             return clazz;
         }
+
+        if (parentFirstPrefixes.matches(name)) {
+            // Load parent-first classes from the platform classloader first
+            clazz = findPlatformClass(name);
+
+            if (clazz != null) {
+                statistics.parentFirstHit();
+                return clazz;
+            }
+        }
+
+        if (getParent() != null && sharedPrefixes.matches(name)) {
+            // Load shared classes from the parent classloader first
+            clazz = findParentClass(name);
+
+            if (clazz != null) {
+                statistics.sharedHit();
+                return clazz;
+            }
+        }
+
+        if (missingClassNames.contains(name)) {
+            statistics.cachedChildMiss();
+        } else {
+            try {
+                // Ensure the package is defined
+                ensurePackageDefined(name);
+
+                // Load from this classloader first
+                clazz = findClass(name);
+                statistics.childHit();
+
+                return clazz;
+            } catch (ClassNotFoundException e) {
+                // Cache the miss so the jar is not searched again
+                missingClassNames.add(name);
+                statistics.childMiss();
+            }
+        }
+
+        // If not found, delegate to system, as for resources. The system classloader also
+        // delegates to the bootstrap classloader, so URLClassLoader.loadClass is not used, as it
+        // would search this classloader's jars again
+        clazz = system.loadClass(name);
+
+        statistics.parentFallback();
+
+        return clazz;
+    }
+
+    /**
+     * Starts recording the names of the classes defined by this classloader, in definition order.
+     */
+    public void startRecording() {
+        recordedClassNames = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Stops recording the names of the classes defined by this classloader.
+     *
+     * @return the names of the classes defined since recording started, in definition order,
+     *         or an empty list if recording was not started
+     */
+    public List<String> stopRecording() {
+        Queue<String> recordedClassNames = this.recordedClassNames;
+        this.recordedClassNames = null;
+
+        return recordedClassNames != null ? new ArrayList<>(recordedClassNames) : Collections.emptyList();
+    }
+
+    /**
+     * Returns whether a class has been defined by this classloader.
+     *
+     * @param name The name of the class
+     * @return true if this classloader has defined the class, else false
+     */
+    public boolean isDefined(String name) {
+        Class<?> clazz = findLoadedClass(name);
+
+        // findLoadedClass also returns classes that this classloader delegated to another classloader
+        return clazz != null && clazz.getClassLoader() == this;
+    }
+
+    /**
+     * Gets the number of classes defined by this classloader.
+     *
+     * @return the number of classes defined by this classloader
+     */
+    public long getDefinedClassCount() {
+        return statistics.getDefinedClasses();
+    }
+
+    /**
+     * Gets the number of class bytes defined by this classloader.
+     * <p>
+     * Only classes defined from shared jars are counted, because the size of classes defined by
+     * {@link URLClassLoader} is not available.
+     *
+     * @return the number of class bytes defined by this classloader
+     */
+    public long getDefinedClassBytes() {
+        return statistics.getDefinedClassBytes();
+    }
+
+    /**
+     * Gets the class loading statistics.
+     *
+     * @return the class loading statistics of this classloader
+     */
+    public ClassLoaderStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Finds and defines a class from the shared jars, or the URLs if the jars are not shared.
+     *
+     * @param name The name of the class
+     * @return the class
+     * @throws ClassNotFoundException if the class is not found
+     */
+    private Class<?> findClassBytes(String name) throws ClassNotFoundException {
+        if (sharedJars == null) {
+            return super.findClass(name);
+        }
+
+        String entryName = name.replace('.', '/').concat(CLASS_FILE_SUFFIX);
+        long found = classpathIndex.find(entryName);
+        int jar = found != -1 ? (int) (found >>> 32) : sharedJars.length;
+
+        try {
+            // Directories before the first jar containing the class take precedence
+            for (int i = 0; i < jar; i++) {
+                Path path = resolveDirectoryEntry(i, entryName);
+
+                if (path != null && Files.isRegularFile(path)) {
+                    ByteBuffer classBytes = ByteBuffer.wrap(Files.readAllBytes(path));
+                    statistics.classBytesDefined(classBytes.remaining());
+
+                    return defineClass(name, classBytes, codeSources[i]);
+                }
+            }
+
+            if (found == -1) {
+                throw new ClassNotFoundException(name);
+            }
+
+            ByteBuffer classBytes = sharedJars[jar].getClassBytes(name, (int) found);
+            statistics.classBytesDefined(classBytes.remaining());
+
+            // Define the class in this classloader, from the shared bytes
+            return defineClass(name, classBytes, codeSources[jar]);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    @Override
+    public URL getResource(String name) {
+        URL url = null;
+        String dottedName = name.replace('/', '.');
+
+        if (parentFirstPrefixes.matches(dottedName)) {
+            // Find parent-first resources in the platform classloader first
+            url = platform.getResource(name);
+        }
+
+        if (url == null && getParent() != null && sharedPrefixes.matches(dottedName)) {
+            // Find shared resources in the parent classloader first
+            url = getParent().getResource(name);
+        }
+
+        if (url == null) {
+            // Find in this classloader first
+            url = findResource(name);
+        }
+
+        if (url == null) {
+            // If not found, delegate to system, as for classes
+            url = system.getResource(name);
+        }
+
+        return url;
+    }
+
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+        if (!name.startsWith(SERVICES_DIRECTORY)) {
+            return Collections.enumeration(findAllResources(name));
+        }
+
+        // The URLs never change, so provider configuration files are only searched once
+        List<URL> urls = serviceResources.get(name);
+
+        if (urls == null) {
+            urls = Collections.unmodifiableList(findAllResources(name));
+            serviceResources.putIfAbsent(name, urls);
+        }
+
+        return Collections.enumeration(urls);
+    }
+
+    @Override
+    public URL findResource(String name) {
+        if (sharedJars == null) {
+            return super.findResource(name);
+        }
+
+        long found = classpathIndex.find(name);
+        int jar = found != -1 ? (int) (found >>> 32) : sharedJars.length;
+
+        // Directories before the first jar containing the resource take precedence
+        for (int i = 0; i < jar; i++) {
+            URL url = findDirectoryResource(i, name);
+
+            if (url != null) {
+                return url;
+            }
+        }
+
+        return found != -1 ? sharedJars[jar].getEntryUrl(name) : null;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        if (sharedJars == null) {
+            return super.findResources(name);
+        }
+
+        List<URL> urls = new ArrayList<>();
+        int fromJar = 0;
+
+        while (fromJar < sharedJars.length) {
+            long found = classpathIndex.find(name, fromJar);
+            int jar = found != -1 ? (int) (found >>> 32) : sharedJars.length;
+
+            for (int i = fromJar; i < jar; i++) {
+                URL url = findDirectoryResource(i, name);
+
+                if (url != null) {
+                    urls.add(url);
+                }
+            }
+
+            if (found != -1) {
+                URL url = sharedJars[jar].getEntryUrl(name);
+
+                if (url != null) {
+                    urls.add(url);
+                }
+            }
+
+            fromJar = jar + 1;
+        }
+
+        return Collections.enumeration(urls);
+    }
+
+    @Override
+    protected void addURL(URL url) {
+        super.addURL(url);
+
+        // A new URL may contain previously missing classes and resources
+        missingClassNames.clear();
+        serviceResources.clear();
+    }
+
+    /**
+     * Finds all resources with a name, in the same order as {@link #getResource(String)}.
+     * <p>
+     * Resources of the system classloader are not included, so a {@link java.util.ServiceLoader} used by
+     * an agent never finds the providers of the application or of another agent.
+     *
+     * @param name The name of the resource
+     * @return the resource URLs
+     * @throws IOException if the resources cannot be searched
+     */
+    private List<URL> findAllResources(String name) throws IOException {
+        List<URL> urls = new ArrayList<>();
+        String dottedName = name.replace('/', '.');
+
+        if (parentFirstPrefixes.matches(dottedName)) {
+            urls.addAll(Collections.list(platform.getResources(name)));
+        }
+
+        if (getParent() != null && sharedPrefixes.matches(dottedName)) {
+            urls.addAll(Collections.list(getParent().getResources(name)));
+        }
+
+        urls.addAll(Collections.list(findResources(name)));
+
+        if (!parentFirstPrefixes.matches(dottedName)) {
+            urls.addAll(Collections.list(platform.getResources(name)));
+        }
+
+        return urls;
+    }
+
+    /**
+     * Finds a resource in a directory on the classpath.
+     *
+     * @param index The position of the classpath entry
+     * @param name The name of the resource
+     * @return the URL of the resource, or null if the classpath entry is not a directory or does not contain
+     *         the resource
+     */
+    private URL findDirectoryResource(int index, String name) {
+        Path path = resolveDirectoryEntry(index, name);
+
+        try {
+            return path != null && Files.exists(path) ? path.toUri().toURL() : null;
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the name of an entry against a directory on the classpath.
+     * <p>
+     * As for {@link URLClassLoader}, a leading {@code /} is ignored, and a name that resolves outside the
+     * directory, for example with {@code ../}, is not found.
+     *
+     * @param index The position of the classpath entry
+     * @param name The name of the entry
+     * @return the path of the entry, or null if the classpath entry is not a directory or the name is not a
+     *         valid path inside it
+     */
+    private Path resolveDirectoryEntry(int index, String name) {
+        Path directory = directories[index];
+
+        if (directory == null) {
+            return null;
+        }
+
+        try {
+            Path path = directory
+                    .resolve(name.startsWith("/") ? name.substring(1) : name)
+                    .normalize();
+
+            return path.startsWith(directory) ? path : null;
+        } catch (IllegalArgumentException e) {
+            // The name is not a valid path
+            return null;
+        }
+    }
+
+    /**
+     * Loads a class from the platform classloader.
+     *
+     * @param name The name of the class
+     * @return the class, or null if the platform classloader does not contain the class
+     */
+    private Class<?> findPlatformClass(String name) {
+        try {
+            return platform.loadClass(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Loads a class from the parent classloader.
+     *
+     * @param name The name of the class
+     * @return the class, or null if the parent classloader does not contain the class
+     */
+    private Class<?> findParentClass(String name) {
+        try {
+            return getParent().loadClass(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the shared jars and directories for the URLs.
+     *
+     * @param urls URLs to load classes from
+     * @param sharedJars The shared jar of each URL that is a jar, populated by this method
+     * @param directories The directory of each URL that is a directory, populated by this method
+     * @return true if every URL is a local jar file that is not signed, a jar nested in a local jar file that
+     *         is not signed, or a local directory, else false
+     */
+    private static boolean getSources(URL[] urls, SharedJar[] sharedJars, Path[] directories) {
+        for (int i = 0; i < urls.length; i++) {
+            try {
+                if ("jar".equals(urls[i].getProtocol())) {
+                    // A nested jar, jar:file:/outer.jar!/inner.jar
+                    String file = urls[i].getFile();
+                    int separator = file.indexOf(NESTED_JAR_SEPARATOR);
+
+                    if (separator == -1 || separator + NESTED_JAR_SEPARATOR.length() == file.length()) {
+                        return false;
+                    }
+
+                    URL outerUrl = new URL(file.substring(0, separator));
+
+                    if (!"file".equals(outerUrl.getProtocol())) {
+                        return false;
+                    }
+
+                    sharedJars[i] = JarRegistry.get(
+                            Paths.get(outerUrl.toURI()), file.substring(separator + NESTED_JAR_SEPARATOR.length()));
+
+                    // Signers are only verified and set by URLClassLoader
+                    if (sharedJars[i].getJarIndex().isSigned()) {
+                        return false;
+                    }
+
+                    continue;
+                }
+
+                if (!"file".equals(urls[i].getProtocol())) {
+                    return false;
+                }
+
+                Path path = Paths.get(urls[i].toURI());
+
+                if (Files.isDirectory(path)) {
+                    directories[i] = path.normalize();
+                } else if (Files.isRegularFile(path)) {
+                    sharedJars[i] = JarRegistry.get(path);
+
+                    if (sharedJars[i].getJarIndex().isSigned()) {
+                        return false;
+                    }
+                } else {
+                    return false;
+                }
+            } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+                // Fall back to the URLClassLoader implementation
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Converts a classpath entry to a URL.
+     * <p>
+     * A classpath entry is the path of a jar file or directory, or the path of a jar file followed by
+     * {@code !/} and the name of a jar nested in it, for example {@code bundle.jar!/lib/agent.jar}.
+     *
+     * @param classpathEntry The classpath entry
+     * @return the URL of the classpath entry
+     * @throws MalformedURLException if the classpath entry cannot be converted to a URL
+     */
+    public static URL toUrl(String classpathEntry) throws MalformedURLException {
+        int separator = classpathEntry.indexOf(NESTED_JAR_SEPARATOR);
+
+        if (separator == -1) {
+            return Paths.get(classpathEntry).toUri().toURL();
+        }
+
+        return new URL("jar:"
+                + Paths.get(classpathEntry.substring(0, separator)).toUri()
+                + NESTED_JAR_SEPARATOR
+                + classpathEntry.substring(separator + NESTED_JAR_SEPARATOR.length()));
     }
 
     /**
      * Ensures that the package for the given class name is defined.
+     * <p>
+     * Classes in the same package may be loaded concurrently, so another thread
+     * may define the package between the check and the definition.
      *
      * @param className The name of the class
      */
@@ -79,7 +689,15 @@ public class ChildFirstURLClassLoader extends URLClassLoader {
         if (lastDot != -1) {
             String packageName = className.substring(0, lastDot);
             if (getPackage(packageName) == null) {
-                definePackage(packageName, null, null, null, null, null, null, null);
+                try {
+                    definePackage(packageName, null, null, null, null, null, null, null);
+                    statistics.packageDefined();
+                } catch (IllegalArgumentException e) {
+                    // The package was defined concurrently by another thread
+                    if (getPackage(packageName) == null) {
+                        throw e;
+                    }
+                }
             }
         }
     }
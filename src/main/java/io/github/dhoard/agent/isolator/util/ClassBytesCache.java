@@ -0,0 +1,468 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of decompressed class bytes.
+ * <p>
+ * Class bytes are stored in a single append-only file, keyed by jar content hash and class name. At startup
+ * the file is memory-mapped and scanned once to build an offset index, and cached class bytes are served
+ * directly from the mapped region. Class bytes that are not cached are appended by a background thread, so
+ * they are available to the next JVM start. Because the key includes the jar content hash, a changed jar
+ * never matches stale records.
+ * <p>
+ * Each record is protected by a CRC-32, which is verified when the record is read. The file is locked while
+ * it is validated and appended to, so it can be shared by several JVMs.
+ * <p>
+ * Records of jars that are no longer in use are removed when the cache is opened, by rewriting the file, if
+ * they make up at least half of the file or the file is more than half full. A JVM that opened the cache
+ * before it was rewritten keeps using the previous file, and its appends are discarded. Once the file
+ * reaches its maximum size, new class bytes are no longer cached.
+ */
+public class ClassBytesCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ClassBytesCache.class);
+
+    private static final String FILE_NAME = "class-bytes.cache";
+    private static final String COMPACT_FILE_NAME = "class-bytes.cache.compact";
+    private static final String WRITER_THREAD_NAME = "isolator-agent-cache-writer";
+
+    private static final int FILE_MAGIC = 0x49534243;
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_MAGIC = 0x52454331;
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final long MAXIMUM_FILE_SIZE = 256L * 1024 * 1024;
+
+    private final Path path;
+    private final FileChannel fileChannel;
+    private final ByteBuffer mappedByteBuffer;
+    private final Map<String, Long> records;
+    private final Set<String> appendedKeys;
+    private final AtomicBoolean full;
+    private final ExecutorService writerExecutorService;
+
+    /**
+     * Constructor for ClassBytesCache.
+     *
+     * @param path the path of the cache file
+     * @param fileChannel the channel of the cache file
+     * @param mappedByteBuffer the memory-mapped, validated part of the cache file
+     * @param records the index of record key to record position and length
+     */
+    private ClassBytesCache(
+            Path path, FileChannel fileChannel, ByteBuffer mappedByteBuffer, Map<String, Long> records) {
+        this.path = path;
+        this.fileChannel = fileChannel;
+        this.mappedByteBuffer = mappedByteBuffer;
+        this.records = records;
+        this.appendedKeys = ConcurrentHashMap.newKeySet();
+        this.full = new AtomicBoolean();
+        this.writerExecutorService = Threads.newFixedThreadPool(WRITER_THREAD_NAME, 1);
+    }
+
+    /**
+     * Gets cached class bytes.
+     *
+     * @param jarHash the content hash of the jar
+     * @param className the name of the class
+     * @return a read-only buffer containing the class bytes, or null if the class bytes are not cached
+     */
+    public ByteBuffer get(String jarHash, String className) {
+        Long record = records.get(key(jarHash, className));
+
+        if (record == null) {
+            return null;
+        }
+
+        int position = (int) (record >>> 32);
+        int length = (int) (long) record;
+
+        int crc = mappedByteBuffer.getInt(position - 4);
+        ByteBuffer classBytes = JarIndex.slice(mappedByteBuffer, position, length);
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(classBytes.duplicate());
+
+        if ((int) crc32.getValue() != crc) {
+            // Ignore the corrupt record, the class bytes are read from the jar
+            return null;
+        }
+
+        return classBytes.asReadOnlyBuffer();
+    }
+
+    /**
+     * Appends class bytes to the cache, asynchronously.
+     *
+     * @param jarHash the content hash of the jar
+     * @param className the name of the class
+     * @param classBytes the class bytes
+     */
+    public void put(String jarHash, String className, ByteBuffer classBytes) {
+        String key = key(jarHash, className);
+
+        if (records.containsKey(key) || !appendedKeys.add(key)) {
+            return;
+        }
+
+        ByteBuffer data = classBytes.duplicate();
+
+        writerExecutorService.execute(() -> append(key, data));
+    }
+
+    /**
+     * Opens the cache in a directory, creating the directory and cache file if required.
+     *
+     * @param directory the cache directory
+     * @param jarHashes the content hashes of the jars in use, whose records are kept if the cache file is
+     *        compacted, or null to keep every record
+     * @return the cache
+     * @throws IOException if the cache cannot be opened
+     */
+    public static ClassBytesCache open(Path directory, Set<String> jarHashes) throws IOException {
+        Files.createDirectories(directory);
+
+        Path path = directory.resolve(FILE_NAME);
+        FileChannel fileChannel = openChannel(path);
+
+        try {
+            Map<String, Long> records = new ConcurrentHashMap<>();
+            long validSize;
+            boolean compacted = false;
+
+            FileLock fileLock = fileChannel.lock();
+            try {
+                validSize = validate(fileChannel, records);
+
+                if (jarHashes != null && isCompactable(records, jarHashes, validSize)) {
+                    int recordCount = records.size();
+                    validSize = compact(directory, fileChannel, records, jarHashes);
+                    compacted = true;
+
+                    LOGGER.info(
+                            "class bytes cache [%s] compacted, removed [%d] records of jars not in use",
+                            path, recordCount - records.size());
+                }
+            } finally {
+                fileLock.release();
+            }
+
+            if (compacted) {
+                // The compacted file replaced the cache file
+                fileChannel.close();
+                fileChannel = openChannel(path);
+            }
+
+            ByteBuffer mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, validSize);
+
+            LOGGER.info("class bytes cache [%s] records [%d]", path, records.size());
+
+            return new ClassBytesCache(path, fileChannel, mappedByteBuffer, records);
+        } catch (IOException | RuntimeException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the channel of a cache file, creating the file if required.
+     *
+     * @param path the path of the cache file
+     * @return the channel of the cache file
+     * @throws IOException if the cache file cannot be opened
+     */
+    private static FileChannel openChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Validates the cache file and indexes its records, resetting the cache file if it is invalid or too large
+     * and truncating a partially written last record.
+     *
+     * @param fileChannel the channel of the cache file
+     * @param records the index to populate
+     * @return the size of the valid part of the cache file
+     * @throws IOException if the cache file cannot be read or written
+     */
+    private static long validate(FileChannel fileChannel, Map<String, Long> records) throws IOException {
+        long size = fileChannel.size();
+
+        if (size < FILE_HEADER_SIZE || size > MAXIMUM_FILE_SIZE || !hasValidHeader(fileChannel)) {
+            return reset(fileChannel);
+        }
+
+        ByteBuffer byteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int position = FILE_HEADER_SIZE;
+
+        while (position + RECORD_HEADER_SIZE <= size) {
+            int magic = byteBuffer.getInt(position);
+            int keyLength = byteBuffer.getInt(position + 4);
+
+            if (magic != RECORD_MAGIC || keyLength <= 0 || position + RECORD_HEADER_SIZE + (long) keyLength > size) {
+                break;
+            }
+
+            int dataLength = byteBuffer.getInt(position + 8 + keyLength);
+            long dataPosition = position + RECORD_HEADER_SIZE + (long) keyLength;
+
+            if (dataLength < 0 || dataPosition + dataLength > size) {
+                break;
+            }
+
+            byte[] keyBytes = new byte[keyLength];
+            JarIndex.slice(byteBuffer, position + 8, keyLength).get(keyBytes);
+
+            records.put(new String(keyBytes, StandardCharsets.UTF_8), (dataPosition << 32) | dataLength);
+
+            position = (int) (dataPosition + dataLength);
+        }
+
+        // Truncate a partially written last record, so that new records are appended after the valid records
+        if (position != size) {
+            fileChannel.truncate(position);
+        }
+
+        return position;
+    }
+
+    /**
+     * Returns whether the cache file should be compacted.
+     *
+     * @param records the index of the cache file
+     * @param jarHashes the content hashes of the jars in use
+     * @param size the size of the cache file
+     * @return true if the records of jars not in use make up at least half of the records, or the cache
+     *         file is more than half full and contains records of jars not in use, else false
+     */
+    private static boolean isCompactable(Map<String, Long> records, Set<String> jarHashes, long size) {
+        long staleSize = 0;
+
+        for (Map.Entry<String, Long> record : records.entrySet()) {
+            if (!jarHashes.contains(jarHash(record.getKey()))) {
+                staleSize += recordSize(record.getKey(), record.getValue());
+            }
+        }
+
+        return staleSize > 0 && (staleSize * 2 >= size - FILE_HEADER_SIZE || size > MAXIMUM_FILE_SIZE / 2);
+    }
+
+    /**
+     * Compacts the cache file, writing the records of the jars in use to a new file that replaces the cache file.
+     *
+     * @param directory the cache directory
+     * @param fileChannel the channel of the cache file, locked by the caller
+     * @param records the index of the cache file, updated to the index of the compacted file
+     * @param jarHashes the content hashes of the jars in use
+     * @return the size of the compacted file
+     * @throws IOException if the cache file cannot be read or the compacted file cannot be written
+     */
+    private static long compact(
+            Path directory, FileChannel fileChannel, Map<String, Long> records, Set<String> jarHashes)
+            throws IOException {
+        Path compactPath = directory.resolve(COMPACT_FILE_NAME);
+        ByteBuffer byteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        Map<String, Long> compactRecords = new ConcurrentHashMap<>();
+        long position;
+
+        try (FileChannel compactFileChannel = FileChannel.open(
+                compactPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            position = reset(compactFileChannel);
+
+            for (Map.Entry<String, Long> record : records.entrySet()) {
+                if (!jarHashes.contains(jarHash(record.getKey()))) {
+                    continue;
+                }
+
+                // Copy the whole record, which starts before the key and ends after the class bytes
+                long dataPosition = record.getValue() >>> 32;
+                int dataLength = (int) (long) record.getValue();
+                int recordSize = recordSize(record.getKey(), record.getValue());
+                int recordPosition = (int) (dataPosition + dataLength - recordSize);
+
+                write(compactFileChannel, JarIndex.slice(byteBuffer, recordPosition, recordSize), position);
+
+                compactRecords.put(record.getKey(), ((position + recordSize - dataLength) << 32) | dataLength);
+                position += recordSize;
+            }
+
+            compactFileChannel.force(true);
+        }
+
+        // Replace the cache file, so a JVM that has mapped the previous file can continue to read it
+        Files.move(
+                compactPath,
+                directory.resolve(FILE_NAME),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        records.clear();
+        records.putAll(compactRecords);
+
+        return position;
+    }
+
+    /**
+     * Returns whether the cache file has a valid header.
+     *
+     * @param fileChannel the channel of the cache file
+     * @return true if the header is valid, else false
+     * @throws IOException if the cache file cannot be read
+     */
+    private static boolean hasValidHeader(FileChannel fileChannel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+
+        while (header.hasRemaining()) {
+            if (fileChannel.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+
+        return header.getInt(0) == FILE_MAGIC && header.getInt(4) == FILE_VERSION;
+    }
+
+    /**
+     * Resets the cache file to an empty cache.
+     *
+     * @param fileChannel the channel of the cache file
+     * @return the size of the empty cache file
+     * @throws IOException if the cache file cannot be written
+     */
+    private static long reset(FileChannel fileChannel) throws IOException {
+        fileChannel.truncate(0);
+
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(0, FILE_MAGIC);
+        header.putInt(4, FILE_VERSION);
+
+        write(fileChannel, header, 0);
+
+        return FILE_HEADER_SIZE;
+    }
+
+    /**
+     * Appends a record to the cache file.
+     *
+     * @param key the record key
+     * @param data the class bytes
+     */
+    private void append(String key, ByteBuffer data) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(data.duplicate());
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length + data.remaining());
+        record.putInt(RECORD_MAGIC);
+        record.putInt(keyBytes.length);
+        record.put(keyBytes);
+        record.putInt(data.remaining());
+        record.putInt((int) crc32.getValue());
+        record.put(data.duplicate());
+
+        // Use the Buffer method, which is not overridden by ByteBuffer on Java 8
+        ((Buffer) record).flip();
+
+        try {
+            FileLock fileLock = fileChannel.lock();
+            try {
+                long size = fileChannel.size();
+
+                if (size + record.remaining() <= MAXIMUM_FILE_SIZE) {
+                    write(fileChannel, record, size);
+                } else if (full.compareAndSet(false, true)) {
+                    LOGGER.warn(
+                            "class bytes cache [%s] is full at [%d] MB, new class bytes are no longer cached",
+                            path, MAXIMUM_FILE_SIZE / (1024 * 1024));
+                }
+            } finally {
+                fileLock.release();
+            }
+        } catch (IOException e) {
+            LOGGER.error("failed to append to class bytes cache, %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a buffer to the cache file.
+     *
+     * @param fileChannel the channel of the cache file
+     * @param byteBuffer the buffer to write
+     * @param position the position to write at
+     * @throws IOException if the cache file cannot be written
+     */
+    private static void write(FileChannel fileChannel, ByteBuffer byteBuffer, long position) throws IOException {
+        long offset = position;
+
+        while (byteBuffer.hasRemaining()) {
+            offset += fileChannel.write(byteBuffer, offset);
+        }
+    }
+
+    /**
+     * Gets the size of a record.
+     *
+     * @param key the record key
+     * @param record the position and length of the class bytes of the record
+     * @return the size of the record, including its header and key
+     */
+    private static int recordSize(String key, long record) {
+        return RECORD_HEADER_SIZE + key.getBytes(StandardCharsets.UTF_8).length + (int) record;
+    }
+
+    /**
+     * Gets the content hash of the jar of a record key.
+     *
+     * @param key the record key
+     * @return the content hash of the jar
+     */
+    private static String jarHash(String key) {
+        int separator = key.indexOf('/');
+        return separator == -1 ? key : key.substring(0, separator);
+    }
+
+    /**
+     * Gets the record key for class bytes.
+     *
+     * @param jarHash the content hash of the jar
+     * @param className the name of the class
+     * @return the record key
+     */
+    private static String key(String jarHash, String className) {
+        return jarHash + "/" + className;
+    }
+}
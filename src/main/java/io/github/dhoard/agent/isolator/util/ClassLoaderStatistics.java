@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class loading statistics of a {@link ChildFirstURLClassLoader}.
+ * <p>
+ * Counters are striped {@link LongAdder} instances, so concurrent class loading threads do not contend
+ * on a shared counter. Each {@code loadClass} call is counted once, by the way the class was resolved.
+ * <p>
+ * Times are only measured for the outermost {@code loadClass} and {@code findClass} call of a thread,
+ * so classes loaded while defining another class, for example its superclass, are not counted twice.
+ */
+public class ClassLoaderStatistics {
+
+    private static final int LOAD_CLASS = 0;
+    private static final int FIND_CLASS = 1;
+
+    private final LongAdder loadClassCalls;
+    private final LongAdder loadedClassHits;
+    private final LongAdder parentFirstHits;
+    private final LongAdder sharedHits;
+    private final LongAdder childHits;
+    private final LongAdder parentFallbacks;
+    private final LongAdder childMisses;
+    private final LongAdder cachedChildMisses;
+    private final LongAdder classNotFoundMisses;
+    private final LongAdder definedClasses;
+    private final LongAdder definedClassBytes;
+    private final LongAdder definedPackages;
+    private final LongAdder loadClassNanos;
+    private final LongAdder findClassNanos;
+    private final ThreadLocal<int[]> depths;
+
+    /**
+     * Constructor for ClassLoaderStatistics.
+     */
+    ClassLoaderStatistics() {
+        this.loadClassCalls = new LongAdder();
+        this.loadedClassHits = new LongAdder();
+        this.parentFirstHits = new LongAdder();
+        this.sharedHits = new LongAdder();
+        this.childHits = new LongAdder();
+        this.parentFallbacks = new LongAdder();
+        this.childMisses = new LongAdder();
+        this.cachedChildMisses = new LongAdder();
+        this.classNotFoundMisses = new LongAdder();
+        this.definedClasses = new LongAdder();
+        this.definedClassBytes = new LongAdder();
+        this.definedPackages = new LongAdder();
+        this.loadClassNanos = new LongAdder();
+        this.findClassNanos = new LongAdder();
+        this.depths = ThreadLocal.withInitial(() -> new int[2]);
+    }
+
+    /**
+     * Gets the number of {@code loadClass} calls.
+     *
+     * @return the number of {@code loadClass} calls
+     */
+    public long getLoadClassCalls() {
+        return loadClassCalls.sum();
+    }
+
+    /**
+     * Gets the number of {@code loadClass} calls for classes already loaded by the classloader.
+     *
+     * @return the number of already loaded classes returned
+     */
+    public long getLoadedClassHits() {
+        return loadedClassHits.sum();
+    }
+
+    /**
+     * Gets the number of classes in parent-first packages loaded from the platform classloader.
+     *
+     * @return the number of parent-first classes loaded
+     */
+    public long getParentFirstHits() {
+        return parentFirstHits.sum();
+    }
+
+    /**
+     * Gets the number of classes in shared packages loaded from the parent classloader.
+     *
+     * @return the number of shared classes loaded
+     */
+    public long getSharedHits() {
+        return sharedHits.sum();
+    }
+
+    /**
+     * Gets the number of classes found and defined by the classloader.
+     *
+     * @return the number of child hits
+     */
+    public long getChildHits() {
+        return childHits.sum();
+    }
+
+    /**
+     * Gets the number of classes not found by the classloader, and loaded from the system or parent classloader.
+     *
+     * @return the number of parent fallbacks
+     */
+    public long getParentFallbacks() {
+        return parentFallbacks.sum();
+    }
+
+    /**
+     * Gets the number of classes searched for, and not found, by the classloader.
+     *
+     * @return the number of child misses
+     */
+    public long getChildMisses() {
+        return childMisses.sum();
+    }
+
+    /**
+     * Gets the number of classes not searched for again, because a previous search did not find them.
+     *
+     * @return the number of cached child misses
+     */
+    public long getCachedChildMisses() {
+        return cachedChildMisses.sum();
+    }
+
+    /**
+     * Gets the number of {@code loadClass} calls that threw a {@link ClassNotFoundException}.
+     *
+     * @return the number of classes not found by any classloader
+     */
+    public long getClassNotFoundMisses() {
+        return classNotFoundMisses.sum();
+    }
+
+    /**
+     * Gets the number of classes defined by the classloader.
+     *
+     * @return the number of defined classes
+     */
+    public long getDefinedClasses() {
+        return definedClasses.sum();
+    }
+
+    /**
+     * Gets the number of class bytes defined by the classloader.
+     * <p>
+     * Only classes defined from shared jars and directories are counted, because the size of classes
+     * defined by {@link java.net.URLClassLoader} is not available.
+     *
+     * @return the number of defined class bytes
+     */
+    public long getDefinedClassBytes() {
+        return definedClassBytes.sum();
+    }
+
+    /**
+     * Gets the number of packages defined by the classloader.
+     *
+     * @return the number of defined packages
+     */
+    public long getDefinedPackages() {
+        return definedPackages.sum();
+    }
+
+    /**
+     * Gets the time spent in {@code loadClass}.
+     *
+     * @return the {@code loadClass} time in nanoseconds
+     */
+    public long getLoadClassNanos() {
+        return loadClassNanos.sum();
+    }
+
+    /**
+     * Gets the time spent in {@code findClass}, finding and defining classes.
+     *
+     * @return the {@code findClass} time in nanoseconds
+     */
+    public long getFindClassNanos() {
+        return findClassNanos.sum();
+    }
+
+    /**
+     * Records the start of a {@code loadClass} call.
+     *
+     * @return the start time in nanoseconds, or -1 if the call is nested in another {@code loadClass} call
+     */
+    long loadClassStarted() {
+        loadClassCalls.increment();
+        return started(LOAD_CLASS);
+    }
+
+    /**
+     * Records the end of a {@code loadClass} call.
+     *
+     * @param startNanos the start time returned by {@link #loadClassStarted()}
+     */
+    void loadClassFinished(long startNanos) {
+        finished(LOAD_CLASS, startNanos, loadClassNanos);
+    }
+
+    /**
+     * Records the start of a {@code findClass} call.
+     *
+     * @return the start time in nanoseconds, or -1 if the call is nested in another {@code findClass} call
+     */
+    long findClassStarted() {
+        return started(FIND_CLASS);
+    }
+
+    /**
+     * Records the end of a {@code findClass} call.
+     *
+     * @param startNanos the start time returned by {@link #findClassStarted()}
+     */
+    void findClassFinished(long startNanos) {
+        finished(FIND_CLASS, startNanos, findClassNanos);
+    }
+
+    /**
+     * Records that an already loaded class was returned.
+     */
+    void loadedClassHit() {
+        loadedClassHits.increment();
+    }
+
+    /**
+     * Records that a parent-first class was loaded from the platform classloader.
+     */
+    void parentFirstHit() {
+        parentFirstHits.increment();
+    }
+
+    /**
+     * Records that a shared class was loaded from the parent classloader.
+     */
+    void sharedHit() {
+        sharedHits.increment();
+    }
+
+    /**
+     * Records that a class was found and defined by the classloader.
+     */
+    void childHit() {
+        childHits.increment();
+    }
+
+    /**
+     * Records that a class was loaded from the system or parent classloader.
+     */
+    void parentFallback() {
+        parentFallbacks.increment();
+    }
+
+    /**
+     * Records that a class was searched for, and not found, by the classloader.
+     */
+    void childMiss() {
+        childMisses.increment();
+    }
+
+    /**
+     * Records that a class was not searched for, because a previous search did not find it.
+     */
+    void cachedChildMiss() {
+        cachedChildMisses.increment();
+    }
+
+    /**
+     * Records that a class was not found by any classloader.
+     */
+    void classNotFoundMiss() {
+        classNotFoundMisses.increment();
+    }
+
+    /**
+     * Records that a class was defined.
+     */
+    void classDefined() {
+        definedClasses.increment();
+    }
+
+    /**
+     * Records the bytes of a defined class.
+     *
+     * @param bytes the number of class bytes
+     */
+    void classBytesDefined(long bytes) {
+        definedClassBytes.add(bytes);
+    }
+
+    /**
+     * Records that a package was defined.
+     */
+    void packageDefined() {
+        definedPackages.increment();
+    }
+
+    /**
+     * Records the start of a call, tracking the nesting depth of the call on the current thread.
+     *
+     * @param call the call, {@link #LOAD_CLASS} or {@link #FIND_CLASS}
+     * @return the start time in nanoseconds, or -1 if the call is nested
+     */
+    private long started(int call) {
+        return depths.get()[call]++ == 0 ? System.nanoTime() : -1;
+    }
+
+    /**
+     * Records the end of a call, adding the elapsed time of an outermost call.
+     *
+     * @param call the call, {@link #LOAD_CLASS} or {@link #FIND_CLASS}
+     * @param startNanos the start time returned by {@link #started(int)}
+     * @param nanos the time counter of the call
+     */
+    private void finished(int call, long startNanos, LongAdder nanos) {
+        depths.get()[call]--;
+
+        if (startNanos != -1) {
+            nanos.add(System.nanoTime() - startNanos);
+        }
+    }
+}
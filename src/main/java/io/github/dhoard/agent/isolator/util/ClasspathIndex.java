@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+/**
+ * A merged, read-only index of the entries of the jars on a classpath.
+ * <p>
+ * The entries of every jar are merged into one open-addressing hash table, each slot holding an entry's name
+ * hash and merged position, so a name is hashed once and found with an expected constant number of probes
+ * instead of one lookup per jar. Entries are inserted in classpath order, so among entries with equal names
+ * the first one probed is the entry a classpath search would find.
+ * <p>
+ * A classpath with a single jar uses the jar's own index, which is already a hash table.
+ */
+public class ClasspathIndex {
+
+    private final JarIndex[] jarIndexes;
+    private final long[] table;
+    private final int[] jars;
+    private final int[] positions;
+
+    /**
+     * Constructor for ClasspathIndex.
+     *
+     * @param jarIndexes the index of each jar, in classpath order, with null for classpath entries that are not jars
+     */
+    private ClasspathIndex(JarIndex[] jarIndexes) {
+        this.jarIndexes = jarIndexes;
+
+        int jarCount = 0;
+        int entryCount = 0;
+
+        for (JarIndex jarIndex : jarIndexes) {
+            if (jarIndex != null) {
+                jarCount++;
+                entryCount += jarIndex.size();
+            }
+        }
+
+        if (jarCount <= 1) {
+            table = null;
+            jars = null;
+            positions = null;
+            return;
+        }
+
+        // Keep each merged entry's jar and position in its jar's index, which compares the name
+        table = new long[JarIndex.tableCapacity(entryCount)];
+        jars = new int[entryCount];
+        positions = new int[entryCount];
+
+        int merged = 0;
+
+        for (int jar = 0; jar < jarIndexes.length; jar++) {
+            JarIndex jarIndex = jarIndexes[jar];
+
+            if (jarIndex == null) {
+                continue;
+            }
+
+            for (int i = 0; i < jarIndex.size(); i++) {
+                // Pack the name hash and the merged position, plus one so an empty slot is zero, into a long
+                int hash = jarIndex.hashAt(i);
+                int slot = JarIndex.tableSlot(hash, table.length);
+
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & (table.length - 1);
+                }
+
+                table[slot] = ((long) hash << 32) | (merged + 1);
+                jars[merged] = jar;
+                positions[merged] = i;
+                merged++;
+            }
+        }
+    }
+
+    /**
+     * Finds the first entry with a name on the classpath.
+     *
+     * @param name the name of the entry
+     * @return the position of the jar on the classpath in the upper 32 bits and the entry in the lower 32 bits,
+     *         or -1 if no jar contains the entry
+     */
+    public long find(String name) {
+        return find(name, 0);
+    }
+
+    /**
+     * Finds the first entry with a name in a jar at or after a position on the classpath.
+     *
+     * @param name the name of the entry
+     * @param fromJar the position on the classpath to start at
+     * @return the position of the jar on the classpath in the upper 32 bits and the entry in the lower 32 bits,
+     *         or -1 if no jar at or after the position contains the entry
+     */
+    public long find(String name, int fromJar) {
+        if (table == null) {
+            for (int jar = fromJar; jar < jarIndexes.length; jar++) {
+                if (jarIndexes[jar] != null) {
+                    int entry = jarIndexes[jar].find(name);
+                    return entry == -1 ? -1 : ((long) jar << 32) | entry;
+                }
+            }
+
+            return -1;
+        }
+
+        byte[] nameBytes = JarIndex.toNameBytes(name);
+        int hash = JarIndex.hash(name, nameBytes);
+
+        // Probe from the hash's slot to the first empty slot, comparing the names of the entries with the hash
+        for (int slot = JarIndex.tableSlot(hash, table.length);
+                table[slot] != 0;
+                slot = (slot + 1) & (table.length - 1)) {
+            if ((int) (table[slot] >> 32) != hash) {
+                continue;
+            }
+
+            int merged = (int) table[slot] - 1;
+            int jar = jars[merged];
+
+            if (jar >= fromJar && jarIndexes[jar].nameEquals(positions[merged], name, nameBytes)) {
+                return ((long) jar << 32) | jarIndexes[jar].entryAt(positions[merged]);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Creates a new ClasspathIndex.
+     *
+     * @param jarIndexes the index of each jar, in classpath order, with null for classpath entries that are not jars
+     * @return a new ClasspathIndex
+     */
+    public static ClasspathIndex of(JarIndex[] jarIndexes) {
+        return new ClasspathIndex(jarIndexes);
+    }
+}
@@ -0,0 +1,726 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A compact, read-only index of the entries of a zip (jar) file held in a {@link ByteBuffer}.
+ * <p>
+ * The central directory is parsed once into two primitive arrays (entry name hashes and central directory
+ * record offsets) and an open-addressing hash table of their positions, so an entry is found with an expected
+ * constant number of probes. Entry names and attributes are read from the buffer itself, so the index costs
+ * 16 to 24 bytes per entry. Entry data is read directly from the buffer, slicing stored entries without copying
+ * and inflating deflated entries.
+ * <p>
+ * In a multi-release jar, the versioned entries in {@code META-INF/versions/<N>/} are also indexed by
+ * their unversioned names, with the entry of the highest version not newer than the running Java feature
+ * version found first, so entries resolve as they do for {@link java.util.jar.JarFile} on the running JVM.
+ * <p>
+ * Zip64 archives are not supported.
+ */
+public class JarIndex {
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAXIMUM_COMMENT_LENGTH = 0xFFFF;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final byte[] META_INF = ascii("META-INF/");
+    private static final byte[] MANIFEST = ascii("META-INF/MANIFEST.MF");
+    private static final byte[] VERSIONS = ascii("META-INF/versions/");
+    private static final byte[] SIGNATURE_FILE_SUFFIX = ascii(".SF");
+    private static final String MULTI_RELEASE = "Multi-Release";
+    private static final int BASE_VERSION = 8;
+    private static final int RUNTIME_VERSION = getRuntimeVersion();
+
+    private final ByteBuffer buffer;
+    private final int baseOffset;
+    private final int centralDirectoryOffset;
+    private final int centralDirectorySize;
+    private final int[] hashes;
+    private final int[] offsets;
+    private final int[] nameSkips;
+    private final int[] table;
+    private final boolean signed;
+
+    /**
+     * Constructor for JarIndex.
+     *
+     * @param buffer the buffer containing the zip file
+     * @throws IOException if the buffer does not contain a supported zip file
+     */
+    private JarIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        int endOfCentralDirectoryOffset = findEndOfCentralDirectory(this.buffer);
+
+        int entryCount = getUnsignedShort(this.buffer, endOfCentralDirectoryOffset + 10);
+        long size = getUnsignedInt(this.buffer, endOfCentralDirectoryOffset + 12);
+        long offset = getUnsignedInt(this.buffer, endOfCentralDirectoryOffset + 16);
+
+        if (entryCount == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) {
+            throw new IOException("zip64 is not supported");
+        }
+
+        // Data may be prepended to the zip file, in which case offsets are relative to the start of the zip file
+        long base = endOfCentralDirectoryOffset - size - offset;
+
+        if (base < 0) {
+            throw new IOException("invalid central directory");
+        }
+
+        this.baseOffset = (int) base;
+        this.centralDirectoryOffset = (int) (base + offset);
+        this.centralDirectorySize = (int) size;
+
+        // Read the central directory, hashing each entry's name
+        int[] entryHashes = new int[entryCount];
+        int[] entryOffsets = new int[entryCount];
+        int manifestEntry = -1;
+        boolean versioned = false;
+        boolean signed = false;
+        int position = centralDirectoryOffset;
+
+        for (int i = 0; i < entryCount; i++) {
+            if (position + CENTRAL_DIRECTORY_HEADER_SIZE > centralDirectoryOffset + centralDirectorySize
+                    || this.buffer.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new IOException("invalid central directory");
+            }
+
+            int nameLength = getUnsignedShort(this.buffer, position + 28);
+            int extraLength = getUnsignedShort(this.buffer, position + 30);
+            int commentLength = getUnsignedShort(this.buffer, position + 32);
+            int nameOffset = position + CENTRAL_DIRECTORY_HEADER_SIZE;
+
+            entryHashes[i] = hash(this.buffer, nameOffset, nameLength);
+            entryOffsets[i] = position;
+
+            if (startsWith(this.buffer, nameOffset, nameLength, META_INF)) {
+                if (nameLength == MANIFEST.length && startsWith(this.buffer, nameOffset, nameLength, MANIFEST)) {
+                    manifestEntry = position;
+                } else if (startsWith(this.buffer, nameOffset, nameLength, VERSIONS)) {
+                    versioned = true;
+                } else if (isSignatureFile(this.buffer, nameOffset, nameLength)) {
+                    signed = true;
+                }
+            }
+
+            position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        this.signed = signed;
+
+        // Versioned entries are only used if the manifest declares a multi-release jar
+        int[][] aliases = versioned && RUNTIME_VERSION > BASE_VERSION && isMultiRelease(manifestEntry)
+                ? findVersionedEntries(entryOffsets)
+                : new int[0][];
+
+        // Position versioned entries first, then entries in central directory order
+        int count = aliases.length + entryCount;
+
+        hashes = new int[count];
+        offsets = new int[count];
+        nameSkips = aliases.length > 0 ? new int[count] : null;
+
+        for (int i = 0; i < aliases.length; i++) {
+            hashes[i] = aliases[i][0];
+            offsets[i] = aliases[i][1];
+            nameSkips[i] = aliases[i][2];
+        }
+
+        System.arraycopy(entryHashes, 0, hashes, aliases.length, entryCount);
+        System.arraycopy(entryOffsets, 0, offsets, aliases.length, entryCount);
+
+        // Insert the positions in order, so entries with equal names are probed in position order
+        table = new int[tableCapacity(count)];
+
+        for (int i = 0; i < count; i++) {
+            int slot = tableSlot(hashes[i], table.length);
+
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (table.length - 1);
+            }
+
+            table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Returns whether the jar is signed.
+     * <p>
+     * Signatures are not verified by the index, so classes of signed jars must be defined by a
+     * {@link java.net.URLClassLoader}, which verifies them and sets their signers.
+     *
+     * @return true if the jar contains a signature file, else false
+     */
+    public boolean isSigned() {
+        return signed;
+    }
+
+    /**
+     * Gets the central directory bytes.
+     * <p>
+     * The central directory contains the name, sizes, and CRC-32 of every entry.
+     *
+     * @return a read-only buffer containing the central directory
+     */
+    public ByteBuffer getCentralDirectory() {
+        return slice(buffer, centralDirectoryOffset, centralDirectorySize).asReadOnlyBuffer();
+    }
+
+    /**
+     * Finds an entry.
+     *
+     * @param name the name of the entry
+     * @return the entry, or -1 if the entry does not exist
+     */
+    public int find(String name) {
+        byte[] nameBytes = toNameBytes(name);
+        int hash = hash(name, nameBytes);
+
+        // Probe from the hash's slot to the first empty slot, comparing the names of the entries with the hash
+        for (int slot = tableSlot(hash, table.length); table[slot] != 0; slot = (slot + 1) & (table.length - 1)) {
+            int position = table[slot] - 1;
+
+            if (hashes[position] == hash && nameEquals(position, name, nameBytes)) {
+                return offsets[position];
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Gets the name hash of the entry at a position.
+     *
+     * @param position the position, from 0 to {@link #size()} - 1
+     * @return the name hash
+     */
+    int hashAt(int position) {
+        return hashes[position];
+    }
+
+    /**
+     * Gets the entry at a position.
+     * <p>
+     * A versioned entry of a multi-release jar is at two positions, one for its versioned name and one for
+     * its unversioned name.
+     *
+     * @param position the position, from 0 to {@link #size()} - 1
+     * @return the entry
+     */
+    int entryAt(int position) {
+        return offsets[position];
+    }
+
+    /**
+     * Returns whether an entry is stored without compression.
+     *
+     * @param entry the entry
+     * @return true if the entry is stored, else false
+     */
+    public boolean isStored(int entry) {
+        return getUnsignedShort(buffer, entry + 10) == STORED;
+    }
+
+    /**
+     * Reads the data of an entry.
+     *
+     * @param entry the entry
+     * @return a read-only buffer containing the uncompressed data of the entry
+     * @throws IOException if the entry is corrupt or uses an unsupported compression method
+     */
+    public ByteBuffer read(int entry) throws IOException {
+        try {
+            return readEntry(entry);
+        } catch (InternalError e) {
+            // Accessing a mapping of a jar file truncated in place faults
+            throw new IOException("jar file was modified while mapped", e);
+        }
+    }
+
+    /**
+     * Reads the data of an entry from the buffer.
+     *
+     * @param entry the entry
+     * @return a read-only buffer containing the uncompressed data of the entry
+     * @throws IOException if the entry is corrupt or uses an unsupported compression method
+     */
+    private ByteBuffer readEntry(int entry) throws IOException {
+        int method = getUnsignedShort(buffer, entry + 10);
+        long compressedSize = getUnsignedInt(buffer, entry + 20);
+        long uncompressedSize = getUnsignedInt(buffer, entry + 24);
+        long localHeaderOffset = baseOffset + getUnsignedInt(buffer, entry + 42);
+
+        if (localHeaderOffset + LOCAL_HEADER_SIZE > buffer.limit()
+                || buffer.getInt((int) localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("invalid local header");
+        }
+
+        long dataOffset = localHeaderOffset
+                + LOCAL_HEADER_SIZE
+                + getUnsignedShort(buffer, (int) localHeaderOffset + 26)
+                + getUnsignedShort(buffer, (int) localHeaderOffset + 28);
+
+        if (dataOffset + compressedSize > buffer.limit() || uncompressedSize > Integer.MAX_VALUE) {
+            throw new IOException("invalid entry size");
+        }
+
+        ByteBuffer data = slice(buffer, (int) dataOffset, (int) compressedSize);
+
+        switch (method) {
+            case STORED:
+                return data.asReadOnlyBuffer();
+            case DEFLATED:
+                return inflate(data, (int) uncompressedSize);
+            default:
+                throw new IOException("unsupported compression method " + method);
+        }
+    }
+
+    /**
+     * Creates a new JarIndex for a buffer containing a zip file.
+     *
+     * @param buffer the buffer containing the zip file
+     * @return a new JarIndex
+     * @throws IOException if the buffer does not contain a supported zip file
+     */
+    public static JarIndex of(ByteBuffer buffer) throws IOException {
+        return new JarIndex(buffer);
+    }
+
+    /**
+     * Inflates deflated data.
+     *
+     * @param data the deflated data
+     * @param uncompressedSize the uncompressed size
+     * @return a read-only buffer containing the inflated data
+     * @throws IOException if the data is corrupt
+     */
+    private static ByteBuffer inflate(ByteBuffer data, int uncompressedSize) throws IOException {
+        byte[] input = new byte[data.remaining()];
+        data.get(input);
+
+        byte[] output = new byte[uncompressedSize];
+
+        Inflater inflater = new Inflater(true);
+
+        try {
+            inflater.setInput(input);
+
+            int length = 0;
+            while (length < uncompressedSize && !inflater.finished()) {
+                int inflated = inflater.inflate(output, length, uncompressedSize - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+
+            if (length != uncompressedSize) {
+                throw new IOException("invalid deflated entry");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("invalid deflated entry", e);
+        } finally {
+            inflater.end();
+        }
+
+        return ByteBuffer.wrap(output).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns whether the name of the entry at a position equals a name.
+     *
+     * @param position the position, from 0 to {@link #size()} - 1
+     * @param name the name
+     * @param nameBytes the UTF-8 bytes of the name, or null if the name is ASCII
+     * @return true if the names are equal, else false
+     */
+    boolean nameEquals(int position, String name, byte[] nameBytes) {
+        int entry = offsets[position];
+        int nameSkip = nameSkips != null ? nameSkips[position] : 0;
+        int nameLength = getUnsignedShort(buffer, entry + 28) - nameSkip;
+        int nameOffset = entry + CENTRAL_DIRECTORY_HEADER_SIZE + nameSkip;
+
+        if (nameBytes == null) {
+            if (nameLength != name.length()) {
+                return false;
+            }
+
+            for (int i = 0; i < nameLength; i++) {
+                if ((buffer.get(nameOffset + i) & 0xFF) != name.charAt(i)) {
+                    return false;
+                }
+            }
+        } else {
+            if (nameLength != nameBytes.length) {
+                return false;
+            }
+
+            for (int i = 0; i < nameLength; i++) {
+                if (buffer.get(nameOffset + i) != nameBytes[i]) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns whether the manifest declares a multi-release jar.
+     *
+     * @param manifestEntry the manifest entry, or -1 if the jar has no manifest
+     * @return true if the manifest contains {@code Multi-Release: true}, else false
+     * @throws IOException if the manifest cannot be read
+     */
+    private boolean isMultiRelease(int manifestEntry) throws IOException {
+        if (manifestEntry == -1) {
+            return false;
+        }
+
+        ByteBuffer data = read(manifestEntry);
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+
+        Attributes attributes = new Manifest(new ByteArrayInputStream(bytes)).getMainAttributes();
+
+        return "true"
+                .equalsIgnoreCase(
+                        String.valueOf(attributes.getValue(MULTI_RELEASE)).trim());
+    }
+
+    /**
+     * Finds the versioned entries used on the running JVM.
+     * <p>
+     * For each unversioned name, the entry of the highest version not newer than the running Java feature
+     * version is used.
+     *
+     * @param entryOffsets the entries
+     * @return the unversioned name hash, the entry, and the length of the version prefix of each versioned entry
+     */
+    private int[][] findVersionedEntries(int[] entryOffsets) {
+        Map<String, int[]> versionedEntries = new HashMap<>();
+
+        for (int entry : entryOffsets) {
+            int nameOffset = entry + CENTRAL_DIRECTORY_HEADER_SIZE;
+            int nameLength = getUnsignedShort(buffer, entry + 28);
+
+            if (!startsWith(buffer, nameOffset, nameLength, VERSIONS)) {
+                continue;
+            }
+
+            // Parse META-INF/versions/<version>/<name>
+            int version = 0;
+            int index = VERSIONS.length;
+
+            while (index < nameLength && index < VERSIONS.length + 4) {
+                int digit = buffer.get(nameOffset + index) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                version = version * 10 + digit;
+                index++;
+            }
+
+            if (index == VERSIONS.length
+                    || index + 1 >= nameLength
+                    || buffer.get(nameOffset + index) != '/'
+                    || version <= BASE_VERSION
+                    || version > RUNTIME_VERSION) {
+                continue;
+            }
+
+            int nameSkip = index + 1;
+            byte[] nameBytes = new byte[nameLength - nameSkip];
+            for (int i = 0; i < nameBytes.length; i++) {
+                nameBytes[i] = buffer.get(nameOffset + nameSkip + i);
+            }
+
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            int[] versionedEntry = versionedEntries.get(name);
+
+            if (versionedEntry == null || versionedEntry[3] < version) {
+                versionedEntries.put(name, new int[] {hash(nameBytes), entry, nameSkip, version});
+            }
+        }
+
+        return versionedEntries.values().toArray(new int[0][]);
+    }
+
+    /**
+     * Finds the end of central directory record.
+     *
+     * @param buffer the buffer containing the zip file
+     * @return the offset of the end of central directory record
+     * @throws IOException if the end of central directory record is not found
+     */
+    private static int findEndOfCentralDirectory(ByteBuffer buffer) throws IOException {
+        int limit = Math.max(0, buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE - MAXIMUM_COMMENT_LENGTH);
+
+        for (int offset = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; offset >= limit; offset--) {
+            if (buffer.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return offset;
+            }
+        }
+
+        throw new IOException("end of central directory not found");
+    }
+
+    /**
+     * Returns whether a name in a buffer starts with a prefix.
+     *
+     * @param buffer the buffer
+     * @param offset the offset of the name
+     * @param length the length of the name
+     * @param prefix the ASCII bytes of the prefix
+     * @return true if the name starts with the prefix, else false
+     */
+    private static boolean startsWith(ByteBuffer buffer, int offset, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns whether a name in a buffer is the name of a signature file, {@code META-INF/<name>.SF}.
+     *
+     * @param buffer the buffer
+     * @param offset the offset of the name
+     * @param length the length of the name
+     * @return true if the name is the name of a signature file, else false
+     */
+    private static boolean isSignatureFile(ByteBuffer buffer, int offset, int length) {
+        if (length <= META_INF.length + SIGNATURE_FILE_SUFFIX.length) {
+            return false;
+        }
+
+        for (int i = META_INF.length; i < length; i++) {
+            if (buffer.get(offset + i) == '/') {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < SIGNATURE_FILE_SUFFIX.length; i++) {
+            int b = buffer.get(offset + length - SIGNATURE_FILE_SUFFIX.length + i);
+            if (Character.toUpperCase(b) != SIGNATURE_FILE_SUFFIX[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the Java feature version used to select the versioned entries of multi-release jars.
+     *
+     * @return the running Java feature version, or 8 if multi-release jars are disabled
+     */
+    private static int getRuntimeVersion() {
+        // Multi-release jars can be disabled for the JVM, as for JarFile
+        if ("false".equalsIgnoreCase(System.getProperty("jdk.util.jar.enableMultiRelease"))) {
+            return BASE_VERSION;
+        }
+
+        // 1.8 on Java 8, the feature version on Java 9 and later
+        String specificationVersion = System.getProperty("java.specification.version", "1.8");
+
+        try {
+            return specificationVersion.startsWith("1.")
+                    ? BASE_VERSION
+                    : Integer.parseInt(specificationVersion.split("\\.")[0]);
+        } catch (NumberFormatException e) {
+            return BASE_VERSION;
+        }
+    }
+
+    /**
+     * Gets the bytes of an ASCII string.
+     *
+     * @param string the string
+     * @return the bytes
+     */
+    private static byte[] ascii(String string) {
+        return string.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Gets the UTF-8 bytes of an entry name, for {@link #hash(String, byte[])} and
+     * {@link #nameEquals(int, String, byte[])}.
+     *
+     * @param name the name
+     * @return the UTF-8 bytes of the name, or null if the name is ASCII
+     */
+    static byte[] toNameBytes(String name) {
+        return isAscii(name) ? null : name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Hashes an entry name.
+     *
+     * @param name the name
+     * @param nameBytes the UTF-8 bytes of the name, or null if the name is ASCII
+     * @return the hash
+     */
+    static int hash(String name, byte[] nameBytes) {
+        return nameBytes == null ? name.hashCode() : hash(nameBytes);
+    }
+
+    /**
+     * Gets the capacity of an open-addressing hash table, the smallest power of two that keeps the table at
+     * most half full.
+     *
+     * @param size the number of entries in the table
+     * @return the capacity
+     */
+    static int tableCapacity(int size) {
+        return Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1;
+    }
+
+    /**
+     * Gets the slot of a hash in an open-addressing hash table, spreading the upper bits of the hash into the
+     * lower bits, as {@link java.util.HashMap} does.
+     *
+     * @param hash the hash
+     * @param capacity the capacity of the table, a power of two
+     * @return the slot
+     */
+    static int tableSlot(int hash, int capacity) {
+        return (hash ^ (hash >>> 16)) & (capacity - 1);
+    }
+
+    /**
+     * Returns whether a string only contains ASCII characters.
+     *
+     * @param string the string
+     * @return true if the string only contains ASCII characters, else false
+     */
+    private static boolean isAscii(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Hashes bytes, matching {@link String#hashCode()} for ASCII strings.
+     *
+     * @param bytes the bytes
+     * @return the hash
+     */
+    private static int hash(byte[] bytes) {
+        int hash = 0;
+        for (byte b : bytes) {
+            hash = 31 * hash + (b & 0xFF);
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes bytes in a buffer, matching {@link String#hashCode()} for ASCII strings.
+     *
+     * @param buffer the buffer
+     * @param offset the offset of the bytes
+     * @param length the number of bytes
+     * @return the hash
+     */
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + (buffer.get(offset + i) & 0xFF);
+        }
+        return hash;
+    }
+
+    /**
+     * Slices a buffer.
+     *
+     * @param buffer the buffer
+     * @param offset the offset of the slice
+     * @param length the length of the slice
+     * @return the slice
+     */
+    static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        // Use the Buffer methods, which are not overridden by ByteBuffer on Java 8
+        ByteBuffer duplicate = buffer.duplicate();
+        Buffer view = duplicate;
+        view.limit(offset + length);
+        view.position(offset);
+        return duplicate.slice();
+    }
+
+    /**
+     * Reads an unsigned little endian short.
+     *
+     * @param buffer the buffer
+     * @param offset the offset
+     * @return the value
+     */
+    private static int getUnsignedShort(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    /**
+     * Reads an unsigned little endian int.
+     *
+     * @param buffer the buffer
+     * @param offset the offset
+     * @return the value
+     */
+    private static long getUnsignedInt(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset) & 0xFFFFFFFFL;
+    }
+}
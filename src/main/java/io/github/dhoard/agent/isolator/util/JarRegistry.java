@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide registry of {@link SharedJar} instances.
+ * <p>
+ * Jars are keyed by canonical path, size, and last modified time, so a jar that is isolated
+ * many times is mapped and indexed once, and a jar that changes on disk is mapped and indexed again.
+ * <p>
+ * A jar nested in another jar is indexed in place, inside the mapping of the outer jar, when the nested jar
+ * is stored without compression. A compressed nested jar is inflated into memory once.
+ * <p>
+ * The registry references jars weakly, so the mapping of a jar is released once no classloader uses it.
+ * <p>
+ * A jar file must not be rewritten in place while it is mapped, as for any jar file in use by the JVM.
+ * Replace it instead, for example by renaming a new file over it. Reading a mapping of a truncated jar file
+ * fails with an {@link IOException}, but defining a class directly from a stored entry of the mapping may
+ * crash the JVM.
+ * <p>
+ * The class bytes cache applies to every jar, including jars registered before the cache is set.
+ */
+public class JarRegistry {
+
+    private static final Map<String, WeakReference<SharedJar>> SHARED_JARS = new HashMap<>();
+
+    private static final String NESTED_JAR_SEPARATOR = "!/";
+
+    private static volatile ClassBytesCache classBytesCache;
+
+    /**
+     * Constructor
+     */
+    private JarRegistry() {
+        // INTENTIONALLY BLANK
+    }
+
+    /**
+     * Sets the class bytes cache.
+     *
+     * @param classBytesCache the class bytes cache, or null to disable caching
+     */
+    public static void setClassBytesCache(ClassBytesCache classBytesCache) {
+        JarRegistry.classBytesCache = classBytesCache;
+    }
+
+    /**
+     * Gets the class bytes cache.
+     *
+     * @return the class bytes cache, or null if class bytes are not cached
+     */
+    static ClassBytesCache getClassBytesCache() {
+        return classBytesCache;
+    }
+
+    /**
+     * Gets the shared jar for a classpath entry, mapping and indexing the jar file if required.
+     * <p>
+     * A classpath entry is the path of a jar file or directory, or the path of a jar file followed by
+     * {@code !/} and the name of a jar nested in it, as for {@link ChildFirstURLClassLoader#toUrl(String)}.
+     *
+     * @param classpathEntry the classpath entry
+     * @return the shared jar, or null if the classpath entry is a directory
+     * @throws IOException if the jar files cannot be read or are not supported zip files
+     */
+    public static SharedJar get(String classpathEntry) throws IOException {
+        int separator = classpathEntry.indexOf(NESTED_JAR_SEPARATOR);
+
+        if (separator != -1) {
+            return get(
+                    Paths.get(classpathEntry.substring(0, separator)),
+                    classpathEntry.substring(separator + NESTED_JAR_SEPARATOR.length()));
+        }
+
+        Path path = Paths.get(classpathEntry);
+
+        return Files.isDirectory(path) ? null : get(path);
+    }
+
+    /**
+     * Gets the shared jar for a jar file, mapping and indexing the jar file if required.
+     *
+     * @param path the path of the jar file
+     * @return the shared jar
+     * @throws IOException if the jar file cannot be read or is not a supported zip file
+     */
+    public static synchronized SharedJar get(Path path) throws IOException {
+        Path canonicalPath = path.toRealPath();
+        String key = key(canonicalPath);
+
+        SharedJar sharedJar = find(key);
+
+        if (sharedJar == null) {
+            sharedJar = new SharedJar(canonicalPath, canonicalPath.toUri().toURL(), index(canonicalPath));
+
+            // Remove stale entries for previous versions of the jar file, and entries of collected jars
+            String prefix = canonicalPath + "|";
+            SHARED_JARS
+                    .entrySet()
+                    .removeIf(entry -> entry.getKey().startsWith(prefix)
+                            || entry.getValue().get() == null);
+
+            SHARED_JARS.put(key, new WeakReference<>(sharedJar));
+        }
+
+        return sharedJar;
+    }
+
+    /**
+     * Gets the shared jar for a jar nested in a jar file, indexing the nested jar if required.
+     *
+     * @param path the path of the outer jar file
+     * @param name the name of the nested jar entry in the outer jar file
+     * @return the shared jar
+     * @throws IOException if the jar files cannot be read, the outer jar file does not contain the nested jar,
+     *         or either is not a supported zip file
+     */
+    public static synchronized SharedJar get(Path path, String name) throws IOException {
+        SharedJar outerSharedJar = get(path);
+
+        // Nested jar keys start with the outer jar key, so they are removed with a previous version of the jar file
+        String key = key(outerSharedJar.getPath()) + "!/" + name;
+        SharedJar sharedJar = find(key);
+
+        if (sharedJar == null) {
+            JarIndex outerJarIndex = outerSharedJar.getJarIndex();
+            int entry = outerJarIndex.find(name);
+
+            if (entry == -1) {
+                throw new NoSuchFileException(outerSharedJar.getPath() + "!/" + name);
+            }
+
+            // A stored entry is a slice of the outer jar file mapping, so the nested jar is not copied
+            JarIndex jarIndex = JarIndex.of(outerJarIndex.read(entry));
+            URL url = new URL("jar:" + outerSharedJar.getUrl().toExternalForm() + "!/" + name);
+
+            sharedJar = new SharedJar(outerSharedJar.getPath(), url, jarIndex);
+
+            SHARED_JARS.put(key, new WeakReference<>(sharedJar));
+        }
+
+        return sharedJar;
+    }
+
+    /**
+     * Finds a registered jar.
+     *
+     * @param key the key of the jar
+     * @return the shared jar, or null if the jar is not registered or has been collected
+     */
+    private static SharedJar find(String key) {
+        WeakReference<SharedJar> reference = SHARED_JARS.get(key);
+        return reference != null ? reference.get() : null;
+    }
+
+    /**
+     * Gets the key of a jar file.
+     *
+     * @param canonicalPath the canonical path of the jar file
+     * @return the key of the jar file
+     * @throws IOException if the attributes of the jar file cannot be read
+     */
+    private static String key(Path canonicalPath) throws IOException {
+        BasicFileAttributes basicFileAttributes = Files.readAttributes(canonicalPath, BasicFileAttributes.class);
+
+        return canonicalPath + "|" + basicFileAttributes.size() + "|"
+                + basicFileAttributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * Memory-maps and indexes a jar file.
+     *
+     * @param path the path of the jar file
+     * @return the index of the jar file
+     * @throws IOException if the jar file cannot be read or is not a supported zip file
+     */
+    private static JarIndex index(Path path) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = fileChannel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("jar file is too large to map");
+            }
+
+            // The mapping remains valid after the channel is closed
+            ByteBuffer byteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            return JarIndex.of(byteBuffer);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.util.Locale;
+
+/**
+ * Output formats of log messages.
+ */
+public enum LogFormat {
+
+    /**
+     * One line of text per message, with the timestamp, thread, level, logger, and message separated by {@code |}.
+     */
+    TEXT,
+
+    /**
+     * One JSON object per line, with {@code timestamp}, {@code thread}, {@code level}, {@code logger},
+     * and {@code message} fields.
+     */
+    JSON;
+
+    /**
+     * Gets the log format for a configuration value.
+     *
+     * @param value the configuration value
+     * @return the log format, or null if the value is not a valid log format
+     */
+    public static LogFormat of(String value) {
+        for (LogFormat logFormat : values()) {
+            if (logFormat.toString().equalsIgnoreCase(value)) {
+                return logFormat;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+}
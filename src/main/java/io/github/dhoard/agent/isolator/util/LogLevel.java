@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+/**
+ * Log levels, in increasing order of severity.
+ */
+public enum LogLevel {
+
+    /**
+     * Fine-grained diagnostic messages.
+     */
+    TRACE,
+
+    /**
+     * Diagnostic messages.
+     */
+    DEBUG,
+
+    /**
+     * Informational messages.
+     */
+    INFO,
+
+    /**
+     * Messages about unexpected conditions the IsolatorAgent recovered from.
+     */
+    WARN,
+
+    /**
+     * Messages about failures.
+     */
+    ERROR;
+
+    /**
+     * Gets the log level for a configuration value.
+     *
+     * @param value the configuration value
+     * @return the log level, or null if the value is not a valid log level
+     */
+    public static LogLevel of(String value) {
+        for (LogLevel logLevel : values()) {
+            if (logLevel.name().equalsIgnoreCase(value)) {
+                return logLevel;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Settings of the IsolatorAgent log.
+ */
+public class LogSettings {
+
+    /**
+     * Default maximum size, in bytes, of the log file before it is rotated.
+     */
+    public static final long DEFAULT_FILE_MAX_BYTES = 10L * 1024 * 1024;
+
+    /**
+     * Default number of rotated log files that are kept.
+     */
+    public static final int DEFAULT_FILE_COUNT = 5;
+
+    /**
+     * Settings used until the configuration has been parsed.
+     */
+    public static final LogSettings DEFAULT =
+            new LogSettings(LogLevel.INFO, LogFormat.TEXT, null, DEFAULT_FILE_MAX_BYTES, DEFAULT_FILE_COUNT);
+
+    private final LogLevel level;
+    private final LogFormat format;
+    private final Path file;
+    private final long fileMaxBytes;
+    private final int fileCount;
+
+    /**
+     * Constructor for LogSettings.
+     *
+     * @param level the lowest level that is logged
+     * @param format the output format
+     * @param file the log file, or null to log to the console
+     * @param fileMaxBytes the maximum size, in bytes, of the log file before it is rotated
+     * @param fileCount the number of rotated log files that are kept
+     */
+    public LogSettings(LogLevel level, LogFormat format, Path file, long fileMaxBytes, int fileCount) {
+        this.level = level;
+        this.format = format;
+        this.file = file;
+        this.fileMaxBytes = fileMaxBytes;
+        this.fileCount = fileCount;
+    }
+
+    /**
+     * Gets the level.
+     *
+     * @return the lowest level that is logged
+     */
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Gets the format.
+     *
+     * @return the output format
+     */
+    public LogFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Gets the log file.
+     *
+     * @return the log file, or null if messages are logged to the console
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the maximum log file size.
+     *
+     * @return the maximum size, in bytes, of the log file before it is rotated
+     */
+    public long getFileMaxBytes() {
+        return fileMaxBytes;
+    }
+
+    /**
+     * Gets the log file count.
+     *
+     * @return the number of rotated log files that are kept
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+
+        if (object == null || getClass() != object.getClass()) {
+            return false;
+        }
+
+        LogSettings logSettings = (LogSettings) object;
+
+        return level == logSettings.level
+                && format == logSettings.format
+                && Objects.equals(file, logSettings.file)
+                && fileMaxBytes == logSettings.fileMaxBytes
+                && fileCount == logSettings.fileCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(level, format, file, fileMaxBytes, fileCount);
+    }
+}
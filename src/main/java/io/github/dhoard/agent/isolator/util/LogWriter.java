@@ -0,0 +1,695 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.IllegalFormatException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous writer of log messages.
+ * <p>
+ * Logging threads publish messages to a bounded, lock-free ring buffer of preallocated events, and a single
+ * daemon writer thread formats, renders, and writes them. A message whose arguments are all immutable is
+ * formatted by the writer thread, otherwise it is formatted by the logging thread so that later changes to
+ * the arguments are not logged. If the ring buffer is full, messages are dropped and the number of dropped
+ * messages is logged, except for {@link LogLevel#ERROR} messages, which wait for space.
+ * <p>
+ * {@link LogLevel#ERROR} messages are written before the logging thread returns, so they are not lost if the
+ * JVM aborts, for example because the IsolatorAgent failed to start.
+ */
+@SuppressWarnings("PMD.EmptyCatchBlock")
+class LogWriter {
+
+    private static final String WRITER_THREAD_NAME = "isolator-agent-log-writer";
+    private static final String SHUTDOWN_THREAD_NAME = "isolator-agent-log-shutdown";
+    private static final String LOGGER_NAME = Logger.class.getName();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int mask;
+    private final LogEvent[] logEvents;
+    private final AtomicLongArray sequences;
+    private final AtomicLong producerPosition;
+    private final AtomicLong droppedCount;
+    private final StringBuilder stringBuilder;
+    private final char[] timestamp;
+    private final AtomicReference<LogSettings> pendingLogSettings;
+    private volatile long writtenPosition;
+    private volatile boolean waiting;
+    private Thread writerThread;
+    private LogFormat logFormat;
+    private LogFile logFile;
+    private long timestampMillis;
+    private long timestampSecond;
+
+    /**
+     * Constructor for LogWriter.
+     *
+     * @param capacity the capacity of the ring buffer, a power of 2
+     */
+    LogWriter(int capacity) {
+        this.mask = capacity - 1;
+        this.logEvents = new LogEvent[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.producerPosition = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+        this.stringBuilder = new StringBuilder(256);
+        this.timestamp = new char[23];
+        this.pendingLogSettings = new AtomicReference<>();
+        this.logFormat = LogFormat.TEXT;
+        this.timestampMillis = Long.MIN_VALUE;
+        this.timestampSecond = Long.MIN_VALUE;
+
+        for (int i = 0; i < capacity; i++) {
+            logEvents[i] = new LogEvent();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Starts the writer thread and registers a shutdown hook that writes the pending messages.
+     */
+    void start() {
+        writerThread = Threads.newDaemonThread(WRITER_THREAD_NAME, this::run);
+        writerThread.start();
+
+        Runtime.getRuntime().addShutdownHook(Threads.newDaemonThread(SHUTDOWN_THREAD_NAME, this::flush));
+    }
+
+    /**
+     * Applies log settings, before the next messages are written.
+     *
+     * @param logSettings the log settings
+     */
+    void configure(LogSettings logSettings) {
+        pendingLogSettings.set(logSettings);
+        LockSupport.unpark(writerThread);
+    }
+
+    /**
+     * Publishes a message.
+     *
+     * @param level the level of the message
+     * @param loggerName the name of the logger
+     * @param format the format string, or the message if there are no arguments
+     * @param arguments the arguments, or null if the format string is the message
+     */
+    void publish(LogLevel level, String loggerName, String format, Object[] arguments) {
+        long timeMillis = System.currentTimeMillis();
+        String threadName = Thread.currentThread().getName();
+        boolean isError = level == LogLevel.ERROR;
+
+        // Format messages with mutable arguments now, the arguments may change before they are written
+        String message = null;
+        if (arguments != null && !isImmutable(arguments)) {
+            message = format(format, arguments);
+        }
+
+        long position = claim(isError);
+
+        if (position < 0) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        LogEvent logEvent = logEvents[(int) position & mask];
+        logEvent.level = level;
+        logEvent.timeMillis = timeMillis;
+        logEvent.threadName = threadName;
+        logEvent.loggerName = loggerName;
+        logEvent.format = message != null ? message : format;
+        logEvent.arguments = message != null ? null : arguments;
+
+        // The volatile write orders the event before the sequence and the read of the waiting flag
+        sequences.set((int) position & mask, position + 1);
+
+        if (waiting) {
+            LockSupport.unpark(writerThread);
+        }
+
+        if (isError) {
+            awaitWritten(position + 1);
+        }
+    }
+
+    /**
+     * Waits until every message published before this call has been written, or at most one second.
+     */
+    void flush() {
+        awaitWritten(producerPosition.get());
+    }
+
+    /**
+     * Claims the next position in the ring buffer.
+     *
+     * @param wait whether to wait, for at most one second, for space if the ring buffer is full
+     * @return the claimed position, or -1 if the ring buffer is full
+     */
+    private long claim(boolean wait) {
+        long deadlineNanos = 0;
+
+        while (true) {
+            long position = producerPosition.get();
+            long sequence = sequences.get((int) position & mask);
+
+            if (sequence == position) {
+                if (producerPosition.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+            } else if (sequence < position) {
+                // The writer has not yet released the slot, the ring buffer is full
+                if (!wait) {
+                    return -1;
+                }
+
+                if (deadlineNanos == 0) {
+                    deadlineNanos = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+                } else if (System.nanoTime() - deadlineNanos > 0) {
+                    return -1;
+                }
+
+                LockSupport.unpark(writerThread);
+                LockSupport.parkNanos(WAIT_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Waits until the messages before a position have been written, or at most one second.
+     *
+     * @param position the position
+     */
+    private void awaitWritten(long position) {
+        if (Thread.currentThread() == writerThread) {
+            return;
+        }
+
+        long deadlineNanos = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+
+        while (writtenPosition < position && System.nanoTime() - deadlineNanos < 0) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Writes the published messages until the JVM exits.
+     */
+    private void run() {
+        long position = 0;
+
+        while (true) {
+            try {
+                LogSettings logSettings = pendingLogSettings.getAndSet(null);
+                if (logSettings != null) {
+                    apply(logSettings);
+                }
+
+                long drainedPosition = drain(position);
+
+                if (drainedPosition == position) {
+                    waiting = true;
+
+                    // Check again after setting the waiting flag, so a concurrently published message is not missed
+                    if (sequences.get((int) position & mask) != position + 1 && pendingLogSettings.get() == null) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+
+                    waiting = false;
+                }
+
+                position = drainedPosition;
+            } catch (Throwable t) {
+                // INTENTIONALLY BLANK, the writer thread must never terminate
+            }
+        }
+    }
+
+    /**
+     * Writes the published messages starting at a position, then flushes the output.
+     *
+     * @param position the position of the first message to write
+     * @return the position after the last message written
+     */
+    private long drain(long position) {
+        long current = position;
+        boolean wroteOut = false;
+        boolean wroteErr = false;
+
+        while (sequences.get((int) current & mask) == current + 1) {
+            LogEvent logEvent = logEvents[(int) current & mask];
+
+            try {
+                render(logEvent);
+
+                if (logEvent.level.compareTo(LogLevel.WARN) >= 0) {
+                    wroteErr |= write(System.err);
+                } else {
+                    wroteOut |= write(System.out);
+                }
+            } catch (RuntimeException e) {
+                // INTENTIONALLY BLANK, for example a toString() method of an argument failed
+            }
+
+            // Release the event and the slot
+            logEvent.threadName = null;
+            logEvent.loggerName = null;
+            logEvent.format = null;
+            logEvent.arguments = null;
+            sequences.set((int) current & mask, current + mask + 1);
+            current++;
+        }
+
+        long dropped = droppedCount.get();
+        if (dropped > 0 && droppedCount.compareAndSet(dropped, 0)) {
+            render(
+                    LogLevel.WARN,
+                    System.currentTimeMillis(),
+                    WRITER_THREAD_NAME,
+                    LOGGER_NAME,
+                    format("dropped [%d] log messages, the log buffer is full", dropped));
+            wroteErr |= write(System.err);
+        }
+
+        if (current != position || dropped > 0) {
+            if (wroteOut) {
+                System.out.flush();
+            }
+
+            if (wroteErr) {
+                System.err.flush();
+            }
+
+            if (logFile != null) {
+                logFile.flush();
+            }
+
+            writtenPosition = current;
+        }
+
+        return current;
+    }
+
+    /**
+     * Writes the rendered message to the log file or, if there is no log file, a console stream.
+     *
+     * @param printStream the console stream
+     * @return true if the message was written to the console stream, else false
+     */
+    private boolean write(PrintStream printStream) {
+        if (logFile != null && logFile.write(stringBuilder)) {
+            return false;
+        }
+
+        printStream.append(stringBuilder);
+
+        return true;
+    }
+
+    /**
+     * Applies log settings.
+     *
+     * @param logSettings the log settings
+     */
+    private void apply(LogSettings logSettings) {
+        logFormat = logSettings.getFormat();
+        timestampMillis = Long.MIN_VALUE;
+        timestampSecond = Long.MIN_VALUE;
+
+        Path path = logSettings.getFile();
+
+        if (logFile != null
+                && (!logFile.path.equals(path)
+                        || logFile.maxBytes != logSettings.getFileMaxBytes()
+                        || logFile.count != logSettings.getFileCount())) {
+            logFile.close();
+            logFile = null;
+        }
+
+        if (path != null && logFile == null) {
+            try {
+                logFile = new LogFile(path, logSettings.getFileMaxBytes(), logSettings.getFileCount());
+            } catch (IOException e) {
+                System.err.printf("failed to open log file [%s], logging to the console, %s%n", path, e);
+            }
+        }
+    }
+
+    /**
+     * Renders an event to the string builder.
+     *
+     * @param logEvent the event
+     */
+    private void render(LogEvent logEvent) {
+        String message = logEvent.arguments != null ? format(logEvent.format, logEvent.arguments) : logEvent.format;
+
+        render(logEvent.level, logEvent.timeMillis, logEvent.threadName, logEvent.loggerName, message);
+    }
+
+    /**
+     * Renders a message to the string builder.
+     *
+     * @param level the level
+     * @param timeMillis the time the message was logged
+     * @param threadName the name of the thread that logged the message
+     * @param loggerName the name of the logger
+     * @param message the message
+     */
+    private void render(LogLevel level, long timeMillis, String threadName, String loggerName, String message) {
+        stringBuilder.setLength(0);
+
+        if (logFormat == LogFormat.JSON) {
+            stringBuilder
+                    .append("{\"timestamp\":\"")
+                    .append(timestamp(timeMillis))
+                    .append("\",\"thread\":\"");
+            appendJson(threadName);
+            stringBuilder.append("\",\"level\":\"").append(level.name()).append("\",\"logger\":\"");
+            appendJson(loggerName);
+            stringBuilder.append("\",\"message\":\"");
+            appendJson(message);
+            stringBuilder.append("\"}");
+        } else {
+            stringBuilder
+                    .append(timestamp(timeMillis))
+                    .append(" | ")
+                    .append(threadName)
+                    .append(" | ")
+                    .append(level.name())
+                    .append(" | ")
+                    .append(loggerName)
+                    .append(" | ")
+                    .append(message);
+        }
+
+        stringBuilder.append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Renders a timestamp, reusing the timestamp of the previous message if it was logged in the same millisecond
+     * and the date and time of the previous message if it was logged in the same second.
+     *
+     * @param timeMillis the time
+     * @return the rendered timestamp, valid until the next call
+     */
+    private char[] timestamp(long timeMillis) {
+        if (timeMillis == timestampMillis) {
+            return timestamp;
+        }
+
+        long second = Math.floorDiv(timeMillis, 1000);
+
+        if (second != timestampSecond) {
+            LocalDateTime localDateTime =
+                    LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault());
+
+            putDigits(localDateTime.getYear(), 0, 4);
+            timestamp[4] = '-';
+            putDigits(localDateTime.getMonthValue(), 5, 2);
+            timestamp[7] = '-';
+            putDigits(localDateTime.getDayOfMonth(), 8, 2);
+            timestamp[10] = logFormat == LogFormat.JSON ? 'T' : ' ';
+            putDigits(localDateTime.getHour(), 11, 2);
+            timestamp[13] = ':';
+            putDigits(localDateTime.getMinute(), 14, 2);
+            timestamp[16] = ':';
+            putDigits(localDateTime.getSecond(), 17, 2);
+            timestamp[19] = '.';
+
+            timestampSecond = second;
+        }
+
+        putDigits((int) Math.floorMod(timeMillis, 1000L), 20, 3);
+
+        timestampMillis = timeMillis;
+
+        return timestamp;
+    }
+
+    /**
+     * Writes a zero-padded number to the timestamp.
+     *
+     * @param value the number
+     * @param offset the offset in the timestamp
+     * @param length the number of digits
+     */
+    private void putDigits(int value, int offset, int length) {
+        int remaining = value;
+
+        for (int i = offset + length - 1; i >= offset; i--) {
+            timestamp[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+    }
+
+    /**
+     * Appends a string to the string builder, escaped as the content of a JSON string.
+     *
+     * @param value the string
+     */
+    private void appendJson(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '"':
+                    stringBuilder.append("\\\"");
+                    break;
+                case '\\':
+                    stringBuilder.append("\\\\");
+                    break;
+                case '\n':
+                    stringBuilder.append("\\n");
+                    break;
+                case '\r':
+                    stringBuilder.append("\\r");
+                    break;
+                case '\t':
+                    stringBuilder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        stringBuilder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        stringBuilder.append(c);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Formats a message, never failing.
+     *
+     * @param format the format string
+     * @param arguments the arguments
+     * @return the formatted message, or the format string and the arguments if the format string is invalid
+     */
+    private static String format(String format, Object... arguments) {
+        try {
+            return String.format(format, arguments);
+        } catch (IllegalFormatException e) {
+            return format + " " + Arrays.toString(arguments);
+        }
+    }
+
+    /**
+     * Returns whether all arguments are immutable, so the message can be formatted later.
+     *
+     * @param arguments the arguments
+     * @return true if all arguments are immutable, else false
+     */
+    private static boolean isImmutable(Object[] arguments) {
+        for (Object argument : arguments) {
+            if (argument != null
+                    && !(argument instanceof String
+                            || argument instanceof Integer
+                            || argument instanceof Long
+                            || argument instanceof Double
+                            || argument instanceof Float
+                            || argument instanceof Short
+                            || argument instanceof Byte
+                            || argument instanceof Boolean
+                            || argument instanceof Character
+                            || argument instanceof Enum
+                            || argument instanceof Path
+                            || argument instanceof Throwable)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Slot of the ring buffer.
+     */
+    private static class LogEvent {
+
+        private LogLevel level;
+        private long timeMillis;
+        private String threadName;
+        private String loggerName;
+        private String format;
+        private Object[] arguments;
+    }
+
+    /**
+     * Log file that is rotated when it reaches its maximum size.
+     * <p>
+     * When the log file is rotated, {@code <file>.1} is renamed to {@code <file>.2} and so on,
+     * the oldest rotated file is deleted, and the log file is renamed to {@code <file>.1}.
+     */
+    private static class LogFile {
+
+        private final Path path;
+        private final long maxBytes;
+        private final int count;
+        private OutputStream outputStream;
+        private long size;
+
+        /**
+         * Constructor for LogFile.
+         *
+         * @param path the path of the log file
+         * @param maxBytes the maximum size of the log file before it is rotated
+         * @param count the number of rotated log files that are kept
+         * @throws IOException if the log file cannot be opened
+         */
+        private LogFile(Path path, long maxBytes, int count) throws IOException {
+            this.path = path;
+            this.maxBytes = maxBytes;
+            this.count = count;
+
+            open();
+        }
+
+        /**
+         * Writes a rendered message, rotating the log file first if the message does not fit.
+         *
+         * @param charSequence the rendered message
+         * @return true if the message was written, else false
+         */
+        private boolean write(CharSequence charSequence) {
+            byte[] bytes = charSequence.toString().getBytes(StandardCharsets.UTF_8);
+
+            try {
+                if (size > 0 && size + bytes.length > maxBytes) {
+                    rotate();
+                }
+
+                outputStream.write(bytes);
+                size += bytes.length;
+
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Flushes the log file.
+         */
+        private void flush() {
+            try {
+                outputStream.flush();
+            } catch (IOException e) {
+                // INTENTIONALLY BLANK
+            }
+        }
+
+        /**
+         * Closes the log file.
+         */
+        private void close() {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                // INTENTIONALLY BLANK
+            }
+        }
+
+        /**
+         * Opens the log file for appending.
+         *
+         * @throws IOException if the log file cannot be opened
+         */
+        private void open() throws IOException {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+
+            outputStream = new BufferedOutputStream(Files.newOutputStream(
+                    path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+            size = Files.size(path);
+        }
+
+        /**
+         * Rotates the log file.
+         *
+         * @throws IOException if the log file cannot be rotated or opened
+         */
+        private void rotate() throws IOException {
+            outputStream.close();
+
+            Files.deleteIfExists(rotatedPath(count));
+
+            for (int i = count - 1; i >= 1; i--) {
+                Path rotatedPath = rotatedPath(i);
+
+                if (Files.exists(rotatedPath)) {
+                    Files.move(rotatedPath, rotatedPath(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            Files.move(path, rotatedPath(1), StandardCopyOption.REPLACE_EXISTING);
+
+            open();
+        }
+
+        /**
+         * Gets the path of a rotated log file.
+         *
+         * @param number the number of the rotated log file, starting at 1
+         * @return the path
+         */
+        private Path rotatedPath(int number) {
+            return Paths.get(path + "." + number);
+        }
+    }
+}
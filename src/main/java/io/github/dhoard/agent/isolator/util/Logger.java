@@ -16,22 +16,28 @@
 
 package io.github.dhoard.agent.isolator.util;
 
-import static java.lang.String.format;
-
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Locale;
-
 /**
  * Logger class for logging messages with timestamps and thread information.
  * <p>
- * This class provides a simple logging mechanism that formats log messages with the current date and time,
- * the name of the thread, and the class name from which the log message is generated.
+ * Messages are published to a bounded ring buffer and written by a single background writer thread, so
+ * logging does not block agent or application threads on console or file output. A message whose level
+ * is lower than the configured level is discarded before its arguments are formatted. Call sites with
+ * expensive arguments can check {@link #isEnabled(LogLevel)} first to avoid computing them.
+ * <p>
+ * Messages are written to the console, {@link LogLevel#WARN} and {@link LogLevel#ERROR} messages to
+ * standard error and all other messages to standard output, or to a log file that is rotated by size.
  */
 public class Logger {
 
-    private static final DateTimeFormatter DATE_TIME_FORMATTER =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS", Locale.getDefault());
+    private static final int BUFFER_CAPACITY = 8192;
+
+    private static final LogWriter LOG_WRITER = new LogWriter(BUFFER_CAPACITY);
+
+    private static volatile LogLevel level = LogSettings.DEFAULT.getLevel();
+
+    static {
+        LOG_WRITER.start();
+    }
 
     private final String className;
 
@@ -44,13 +50,61 @@ public class Logger {
         this.className = clazz.getName();
     }
 
+    /**
+     * Returns whether messages at a level are logged.
+     *
+     * @param logLevel Level to check
+     * @return true if messages at the level are logged, else false
+     */
+    public boolean isEnabled(LogLevel logLevel) {
+        return logLevel.compareTo(level) >= 0;
+    }
+
+    /**
+     * Logs a message at the TRACE level.
+     *
+     * @param message Message to log
+     */
+    public void trace(String message) {
+        log(LogLevel.TRACE, message, null);
+    }
+
+    /**
+     * Logs a message at the TRACE level with formatted arguments.
+     *
+     * @param format  Format string
+     * @param objects Arguments to format the message
+     */
+    public void trace(String format, Object... objects) {
+        log(LogLevel.TRACE, format, objects);
+    }
+
+    /**
+     * Logs a message at the DEBUG level.
+     *
+     * @param message Message to log
+     */
+    public void debug(String message) {
+        log(LogLevel.DEBUG, message, null);
+    }
+
+    /**
+     * Logs a message at the DEBUG level with formatted arguments.
+     *
+     * @param format  Format string
+     * @param objects Arguments to format the message
+     */
+    public void debug(String format, Object... objects) {
+        log(LogLevel.DEBUG, format, objects);
+    }
+
     /**
      * Logs a message at the INFO level.
      *
      * @param message Message to log
      */
     public void info(String message) {
-        info("%s", message);
+        log(LogLevel.INFO, message, null);
     }
 
     /**
@@ -60,36 +114,81 @@ public class Logger {
      * @param objects Arguments to format the message
      */
     public void info(String format, Object... objects) {
-        System.out.printf(
-                "%s | %s | INFO | %s | %s%n",
-                LocalDateTime.now().format(DATE_TIME_FORMATTER),
-                Thread.currentThread().getName(),
-                className,
-                format(format, objects));
+        log(LogLevel.INFO, format, objects);
+    }
+
+    /**
+     * Logs a message at the WARN level.
+     *
+     * @param message Message to log
+     */
+    public void warn(String message) {
+        log(LogLevel.WARN, message, null);
+    }
+
+    /**
+     * Logs a message at the WARN level with formatted arguments.
+     *
+     * @param format  Format string
+     * @param objects Arguments to format the message
+     */
+    public void warn(String format, Object... objects) {
+        log(LogLevel.WARN, format, objects);
     }
 
     /**
      * Logs a message at the ERROR level.
+     * <p>
+     * The message is written before this method returns.
      *
      * @param message Message to log
      */
     public void error(String message) {
-        error("%s", message);
+        log(LogLevel.ERROR, message, null);
     }
 
     /**
      * Logs a message at the ERROR level with formatted arguments.
+     * <p>
+     * The message is written before this method returns.
      *
      * @param format  Format string
      * @param objects Arguments to format the message
      */
     public void error(String format, Object... objects) {
-        System.err.printf(
-                "%s | %s | ERROR | %s | %s%n",
-                LocalDateTime.now().format(DATE_TIME_FORMATTER),
-                Thread.currentThread().getName(),
-                className,
-                format(format, objects));
+        log(LogLevel.ERROR, format, objects);
+    }
+
+    /**
+     * Publishes a message if its level is enabled.
+     *
+     * @param logLevel Level of the message
+     * @param format   Format string, or the message if there are no arguments
+     * @param objects  Arguments to format the message, or null if the format string is the message
+     */
+    private void log(LogLevel logLevel, String format, Object[] objects) {
+        if (logLevel.compareTo(level) >= 0) {
+            LOG_WRITER.publish(logLevel, className, format, objects);
+        }
+    }
+
+    /**
+     * Applies log settings to all loggers.
+     * <p>
+     * The level applies immediately, the format and log file apply to messages that have not yet been written.
+     *
+     * @param logSettings the log settings
+     */
+    public static void configure(LogSettings logSettings) {
+        level = logSettings.getLevel();
+        LOG_WRITER.configure(logSettings);
+    }
+
+    /**
+     * Waits, for at most one second, until every message logged before this call has been written.
+     */
+    public static void flush() {
+        LOG_WRITER.flush();
     }
 
     /**
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * MBeans class for registering the MBeans published by the IsolatorAgent itself.
+ * <p>
+ * MBeans are registered with the platform MBean server. A failure to register or unregister
+ * an MBean is logged, and never prevents an agent from starting.
+ */
+public class MBeans {
+
+    private static final Logger LOGGER = Logger.getLogger(MBeans.class);
+
+    /**
+     * Domain of the MBeans published by the IsolatorAgent.
+     */
+    public static final String DOMAIN = "io.github.dhoard.agent.isolator";
+
+    private static final String UNQUOTED_VALUE_RESERVED_CHARACTERS = ",=:\"*?\n";
+
+    /**
+     * Constructor
+     */
+    private MBeans() {
+        // INTENTIONALLY BLANK
+    }
+
+    /**
+     * Creates an object name in the IsolatorAgent domain, for an MBean of which there is one instance.
+     *
+     * @param type the type key property
+     * @return the object name, or null if the object name is invalid
+     */
+    public static ObjectName objectName(String type) {
+        try {
+            return new ObjectName(DOMAIN + ":type=" + type);
+        } catch (JMException e) {
+            LOGGER.error("invalid MBean type [%s], %s", type, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Creates an object name in the IsolatorAgent domain.
+     *
+     * @param type the type key property
+     * @param name the name key property, which is quoted if it contains characters that are not
+     *        allowed in an unquoted value
+     * @return the object name, or null if the object name is invalid
+     */
+    public static ObjectName objectName(String type, String name) {
+        try {
+            return new ObjectName(DOMAIN + ":type=" + type + ",name=" + quoteIfRequired(name));
+        } catch (JMException e) {
+            LOGGER.error("invalid MBean name [%s], %s", name, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Quotes an object name value if it contains characters that are not allowed in an unquoted value.
+     *
+     * @param value the value
+     * @return the value, quoted if required
+     */
+    private static String quoteIfRequired(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (UNQUOTED_VALUE_RESERVED_CHARACTERS.indexOf(value.charAt(i)) >= 0) {
+                return ObjectName.quote(value);
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Registers an MBean, replacing any MBean already registered with the object name.
+     *
+     * @param objectName the object name, or null to skip registration
+     * @param mbean the MBean
+     */
+    public static void register(ObjectName objectName, Object mbean) {
+        if (objectName == null) {
+            return;
+        }
+
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+
+            mbeanServer.registerMBean(mbean, objectName);
+        } catch (JMException e) {
+            LOGGER.error("failed to register MBean [%s], %s", objectName, e.getMessage());
+        }
+    }
+
+    /**
+     * Unregisters an MBean, if it is registered.
+     *
+     * @param objectName the object name, or null to skip unregistration
+     */
+    public static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            LOGGER.error("failed to unregister MBean [%s], %s", objectName, e.getMessage());
+        }
+    }
+
+    /**
+     * Finds the MBeans, registered by any code, whose classes were loaded by a classloader.
+     *
+     * @param classLoader the classloader
+     * @return the object names of the MBeans
+     */
+    public static List<ObjectName> findByClassLoader(ClassLoader classLoader) {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        List<ObjectName> objectNames = new ArrayList<>();
+
+        for (ObjectName objectName : mbeanServer.queryNames(null, null)) {
+            try {
+                if (mbeanServer.getClassLoaderFor(objectName) == classLoader) {
+                    objectNames.add(objectName);
+                }
+            } catch (JMException e) {
+                // The MBean was unregistered while querying
+                LOGGER.error("failed to get classloader for MBean [%s], %s", objectName, e.getMessage());
+            }
+        }
+
+        return objectNames;
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metrics in the Prometheus text exposition format (version 0.0.4), indexed by metric family.
+ * <p>
+ * The metrics are kept as the original bytes, with the positions of each family's header lines and samples,
+ * so the metrics of several endpoints can be merged by writing each metric family once, followed by the samples
+ * of every endpoint, without copying or reformatting the samples. A label is added to each sample as it is
+ * written, so samples with the same labels from different endpoints remain distinct. A label of a sample with
+ * the same name as the added label is renamed to {@code exported_<name>}, as Prometheus renames conflicting
+ * target labels.
+ */
+public class MetricsExposition {
+
+    private static final byte[] HELP_PREFIX = "# HELP ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE_PREFIX = "# TYPE ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXPORTED_PREFIX = "exported_".getBytes(StandardCharsets.US_ASCII);
+    private static final String UNTYPED = "untyped";
+    private static final byte[][] SAMPLE_SUFFIXES = {
+        "_bucket".getBytes(StandardCharsets.US_ASCII),
+        "_count".getBytes(StandardCharsets.US_ASCII),
+        "_sum".getBytes(StandardCharsets.US_ASCII),
+        "_created".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    private final byte[] bytes;
+    private final Map<String, Family> families;
+
+    /**
+     * Constructor for MetricsExposition.
+     *
+     * @param bytes the metrics
+     * @param families the metric families, in the order they first appear
+     */
+    private MetricsExposition(byte[] bytes, Map<String, Family> families) {
+        this.bytes = bytes;
+        this.families = families;
+    }
+
+    /**
+     * Gets the metric family names.
+     *
+     * @return the metric family names, in the order they first appear
+     */
+    public Set<String> getFamilyNames() {
+        return Collections.unmodifiableSet(families.keySet());
+    }
+
+    /**
+     * Gets the type of a metric family.
+     *
+     * @param familyName the metric family name
+     * @return the type of the {@code TYPE} line of the metric family, {@code untyped} if the metric family has no
+     *         {@code TYPE} line, or null if there is no metric family with the name
+     */
+    public String getType(String familyName) {
+        Family family = families.get(familyName);
+
+        if (family == null) {
+            return null;
+        }
+
+        if (family.typeStart < 0) {
+            return UNTYPED;
+        }
+
+        return new String(bytes, family.typeValueStart, family.typeEnd - family.typeValueStart, StandardCharsets.UTF_8)
+                .trim();
+    }
+
+    /**
+     * Writes the header lines of a metric family.
+     *
+     * @param familyName the metric family name
+     * @param outputStream the output stream
+     * @return true if header lines were written, false if the metric family has no header lines
+     * @throws IOException if the output stream cannot be written
+     */
+    public boolean writeHeader(String familyName, OutputStream outputStream) throws IOException {
+        Family family = families.get(familyName);
+
+        if (family == null || (family.helpStart < 0 && family.typeStart < 0)) {
+            return false;
+        }
+
+        if (family.helpStart >= 0) {
+            writeLine(outputStream, family.helpStart, family.helpEnd);
+        }
+
+        if (family.typeStart >= 0) {
+            writeLine(outputStream, family.typeStart, family.typeEnd);
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the samples of a metric family, adding a label to each sample.
+     *
+     * @param familyName the metric family name
+     * @param label the label to add, as {@code name="value"}, see {@link #label(String, String)}
+     * @param outputStream the output stream
+     * @throws IOException if the output stream cannot be written
+     */
+    public void writeSamples(String familyName, byte[] label, OutputStream outputStream) throws IOException {
+        Family family = families.get(familyName);
+
+        if (family == null) {
+            return;
+        }
+
+        byte[] labelName = Arrays.copyOf(label, Math.max(0, indexOf(label, (byte) '=', 0)));
+
+        for (int i = 0; i < family.sampleCount * 3; i += 3) {
+            int start = family.samples[i];
+            int nameEnd = family.samples[i + 1];
+            int end = family.samples[i + 2];
+
+            if (nameEnd < end && bytes[nameEnd] == '{') {
+                outputStream.write(bytes, start, nameEnd + 1 - start);
+                outputStream.write(label);
+
+                if (nameEnd + 1 < end && bytes[nameEnd + 1] != '}') {
+                    outputStream.write(',');
+                }
+
+                writeLabels(outputStream, nameEnd + 1, end, labelName);
+            } else {
+                outputStream.write(bytes, start, nameEnd - start);
+                outputStream.write('{');
+                outputStream.write(label);
+                outputStream.write('}');
+                writeLine(outputStream, nameEnd, end);
+            }
+        }
+    }
+
+    /**
+     * Writes the labels and the rest of a sample line followed by a newline, renaming the labels with the name
+     * of the added label to {@code exported_<name>}.
+     *
+     * @param outputStream the output stream
+     * @param start the position after the opening brace of the labels
+     * @param end the end position of the sample line
+     * @param labelName the name of the added label
+     * @throws IOException if the output stream cannot be written
+     */
+    private void writeLabels(OutputStream outputStream, int start, int end, byte[] labelName) throws IOException {
+        int written = start;
+        int position = start;
+
+        while (position < end && bytes[position] != '}') {
+            if (bytes[position] == ',' || bytes[position] == ' ' || bytes[position] == '\t') {
+                position++;
+                continue;
+            }
+
+            int nameStart = position;
+
+            while (position < end && bytes[position] != '=' && bytes[position] != ' ' && bytes[position] != '}') {
+                position++;
+            }
+
+            if (position - nameStart == labelName.length && startsWith(bytes, nameStart, position, labelName)) {
+                outputStream.write(bytes, written, nameStart - written);
+                outputStream.write(EXPORTED_PREFIX);
+                written = nameStart;
+            }
+
+            // Skip the quoted value, which may contain escaped quotes, braces, and commas
+            while (position < end && bytes[position] != '"' && bytes[position] != '}') {
+                position++;
+            }
+
+            if (position < end && bytes[position] == '"') {
+                position++;
+
+                while (position < end && bytes[position] != '"') {
+                    position += bytes[position] == '\\' ? 2 : 1;
+                }
+
+                position++;
+            }
+        }
+
+        writeLine(outputStream, written, end);
+    }
+
+    /**
+     * Writes part of the metrics followed by a newline.
+     *
+     * @param outputStream the output stream
+     * @param start the start position, inclusive
+     * @param end the end position, exclusive
+     * @throws IOException if the output stream cannot be written
+     */
+    private void writeLine(OutputStream outputStream, int start, int end) throws IOException {
+        outputStream.write(bytes, start, end - start);
+        outputStream.write('\n');
+    }
+
+    /**
+     * Writes the merged metrics of several endpoints, writing each metric family once, followed by the samples
+     * of every endpoint.
+     * <p>
+     * A metric family has one type, so the type of a metric family is the type of the first endpoint with the
+     * metric family, and the samples of the endpoints with another type for the metric family are not written.
+     *
+     * @param metricsExpositions the metrics of the endpoints
+     * @param labels the label to add to the samples of each endpoint, in the order of the metrics
+     * @param outputStream the output stream
+     * @throws IOException if the output stream cannot be written
+     */
+    public static void writeMerged(
+            List<MetricsExposition> metricsExpositions, List<byte[]> labels, OutputStream outputStream)
+            throws IOException {
+        Set<String> familyNames = new LinkedHashSet<>();
+
+        for (MetricsExposition metricsExposition : metricsExpositions) {
+            familyNames.addAll(metricsExposition.getFamilyNames());
+        }
+
+        for (String familyName : familyNames) {
+            String type = null;
+
+            for (MetricsExposition metricsExposition : metricsExpositions) {
+                type = metricsExposition.getType(familyName);
+
+                if (type != null) {
+                    break;
+                }
+            }
+
+            for (MetricsExposition metricsExposition : metricsExpositions) {
+                if (type.equals(metricsExposition.getType(familyName))
+                        && metricsExposition.writeHeader(familyName, outputStream)) {
+                    break;
+                }
+            }
+
+            for (int i = 0; i < metricsExpositions.size(); i++) {
+                MetricsExposition metricsExposition = metricsExpositions.get(i);
+
+                if (type.equals(metricsExposition.getType(familyName))) {
+                    metricsExposition.writeSamples(familyName, labels.get(i), outputStream);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a label in the text exposition format.
+     *
+     * @param name the label name
+     * @param value the label value, which is escaped
+     * @return the label, as {@code name="value"}
+     */
+    public static byte[] label(String name, String value) {
+        String escapedValue = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+
+        return (name + "=\"" + escapedValue + "\"").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses metrics in the text exposition format.
+     * <p>
+     * A sample belongs to the metric family of the preceding {@code HELP} or {@code TYPE} line if its name is the
+     * family name, optionally followed by a histogram or summary suffix. Otherwise it belongs to the metric family
+     * with its name, or with its name without the suffix, if there is one, for example a metric family split by
+     * the samples of another family, or else it is an untyped metric family of its own. Comments and blank lines
+     * are dropped.
+     *
+     * @param bytes the metrics
+     * @return the parsed metrics
+     */
+    public static MetricsExposition parse(byte[] bytes) {
+        Map<String, Family> families = new LinkedHashMap<>();
+        Family family = null;
+        byte[] familyNameBytes = null;
+        int position = 0;
+
+        while (position < bytes.length) {
+            int next = indexOf(bytes, (byte) '\n', position);
+            int end = next > position && bytes[next - 1] == '\r' ? next - 1 : next;
+
+            if (end > position && bytes[position] == '#') {
+                boolean help = startsWith(bytes, position, end, HELP_PREFIX);
+
+                if (help || startsWith(bytes, position, end, TYPE_PREFIX)) {
+                    int nameStart = position + HELP_PREFIX.length;
+                    int nameEnd = indexOf(bytes, (byte) ' ', nameStart);
+                    nameEnd = Math.min(nameEnd, end);
+
+                    String familyName = new String(bytes, nameStart, nameEnd - nameStart, StandardCharsets.UTF_8);
+                    family = families.computeIfAbsent(familyName, key -> new Family());
+                    familyNameBytes = familyName.getBytes(StandardCharsets.UTF_8);
+
+                    if (help) {
+                        family.helpStart = position;
+                        family.helpEnd = end;
+                    } else {
+                        family.typeStart = position;
+                        family.typeValueStart = Math.min(nameEnd + 1, end);
+                        family.typeEnd = end;
+                    }
+                }
+            } else if (end > position) {
+                int nameEnd = position;
+
+                while (nameEnd < end && bytes[nameEnd] != '{' && bytes[nameEnd] != ' ' && bytes[nameEnd] != '\t') {
+                    nameEnd++;
+                }
+
+                if (family == null || !belongsTo(bytes, position, nameEnd, familyNameBytes)) {
+                    String familyName = getFamilyName(
+                            families, new String(bytes, position, nameEnd - position, StandardCharsets.UTF_8));
+                    family = families.computeIfAbsent(familyName, key -> new Family());
+                    familyNameBytes = familyName.getBytes(StandardCharsets.UTF_8);
+                }
+
+                family.addSample(position, nameEnd, end);
+            }
+
+            position = next + 1;
+        }
+
+        return new MetricsExposition(bytes, families);
+    }
+
+    /**
+     * Gets the name of the metric family of a sample that does not belong to the preceding metric family.
+     *
+     * @param families the metric families parsed so far
+     * @param sampleName the sample name
+     * @return the sample name without its suffix, if the sample has a suffix and there is a metric family with
+     *         that name but not with the sample name, else the sample name
+     */
+    private static String getFamilyName(Map<String, Family> families, String sampleName) {
+        if (families.containsKey(sampleName)) {
+            return sampleName;
+        }
+
+        for (byte[] suffix : SAMPLE_SUFFIXES) {
+            int familyNameLength = sampleName.length() - suffix.length;
+
+            if (familyNameLength > 0
+                    && sampleName.endsWith(new String(suffix, StandardCharsets.US_ASCII))
+                    && families.containsKey(sampleName.substring(0, familyNameLength))) {
+                return sampleName.substring(0, familyNameLength);
+            }
+        }
+
+        return sampleName;
+    }
+
+    /**
+     * Returns whether a sample name belongs to a metric family.
+     *
+     * @param bytes the metrics
+     * @param start the start position of the sample name
+     * @param end the end position of the sample name
+     * @param familyNameBytes the metric family name
+     * @return true if the sample name is the family name, optionally followed by a sample suffix
+     */
+    private static boolean belongsTo(byte[] bytes, int start, int end, byte[] familyNameBytes) {
+        if (!startsWith(bytes, start, end, familyNameBytes)) {
+            return false;
+        }
+
+        int suffixStart = start + familyNameBytes.length;
+
+        if (suffixStart == end) {
+            return true;
+        }
+
+        for (byte[] suffix : SAMPLE_SUFFIXES) {
+            if (end - suffixStart == suffix.length && startsWith(bytes, suffixStart, end, suffix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns whether a region of bytes starts with a prefix.
+     *
+     * @param bytes the bytes
+     * @param start the start position of the region
+     * @param end the end position of the region
+     * @param prefix the prefix
+     * @return true if the region starts with the prefix, else false
+     */
+    private static boolean startsWith(byte[] bytes, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the position of a byte.
+     *
+     * @param bytes the bytes
+     * @param value the byte to find
+     * @param start the position to start at
+     * @return the position of the byte, or the length of the bytes if the byte is not found
+     */
+    private static int indexOf(byte[] bytes, byte value, int start) {
+        for (int i = start; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+
+        return bytes.length;
+    }
+
+    /**
+     * Positions of the header lines and samples of a metric family.
+     */
+    private static class Family {
+
+        private int helpStart = -1;
+        private int helpEnd;
+        private int typeStart = -1;
+        private int typeValueStart;
+        private int typeEnd;
+        private int[] samples = new int[24];
+        private int sampleCount;
+
+        /**
+         * Adds a sample.
+         *
+         * @param start the start position of the sample line
+         * @param nameEnd the end position of the sample name
+         * @param end the end position of the sample line
+         */
+        private void addSample(int start, int nameEnd, int end) {
+            if (sampleCount * 3 == samples.length) {
+                int[] newSamples = new int[samples.length * 2];
+                System.arraycopy(samples, 0, newSamples, 0, samples.length);
+                samples = newSamples;
+            }
+
+            samples[sampleCount * 3] = start;
+            samples[sampleCount * 3 + 1] = nameEnd;
+            samples[sampleCount * 3 + 2] = end;
+            sampleCount++;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Opens the {@code jar:} URLs of the entries of a jar nested in another jar.
+ * <p>
+ * The JDK {@code jar:} handler cannot open an entry of a nested jar, so the URLs of nested jar entries are
+ * created with this handler, which reads the entry from the nested jar's index.
+ * <p>
+ * The connections are {@link JarURLConnection} instances, whose jar file URL is the {@code jar:} URL of the
+ * nested jar and whose entry name is the name of the entry in the nested jar. A nested jar is not a file, so
+ * {@link JarURLConnection#getJarFile()} is not supported.
+ * <p>
+ * The handler is not registered with {@link URL}, so a URL created from the string form of an entry URL uses
+ * the JDK {@code jar:} handler, and cannot be opened.
+ */
+class NestedJarURLStreamHandler extends URLStreamHandler {
+
+    private final URL jarUrl;
+    private final String prefix;
+    private final JarIndex jarIndex;
+
+    /**
+     * Constructor for NestedJarURLStreamHandler.
+     *
+     * @param jarUrl the {@code jar:} URL of the nested jar
+     * @param jarIndex the index of the nested jar
+     */
+    NestedJarURLStreamHandler(URL jarUrl, JarIndex jarIndex) {
+        this.jarUrl = jarUrl;
+        this.prefix = jarUrl.getFile() + "!/";
+        this.jarIndex = jarIndex;
+    }
+
+    @Override
+    protected URLConnection openConnection(URL url) throws IOException {
+        String file = url.getFile();
+
+        if (!file.startsWith(prefix)) {
+            throw new FileNotFoundException(url.toExternalForm());
+        }
+
+        String name = decode(file.substring(prefix.length()));
+        int entry = jarIndex.find(name);
+
+        if (entry == -1) {
+            throw new FileNotFoundException(url.toExternalForm());
+        }
+
+        return new NestedJarURLConnection(url, jarUrl, name, jarIndex, entry);
+    }
+
+    /**
+     * Decodes the entry name of a URL.
+     *
+     * @param name the encoded entry name
+     * @return the entry name
+     * @throws IOException if the entry name cannot be decoded
+     */
+    private static String decode(String name) throws IOException {
+        try {
+            // Keep '+', which is not a space in a URL path
+            return URLDecoder.decode(name.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new IOException("invalid entry name " + name, e);
+        }
+    }
+
+    /**
+     * A connection to an entry of a nested jar.
+     */
+    private static class NestedJarURLConnection extends JarURLConnection {
+
+        private final URL jarUrl;
+        private final String entryName;
+        private final JarIndex jarIndex;
+        private final int entry;
+        private ByteBuffer data;
+
+        /**
+         * Constructor for NestedJarURLConnection.
+         *
+         * @param url the URL of the entry
+         * @param jarUrl the {@code jar:} URL of the nested jar
+         * @param entryName the name of the entry in the nested jar
+         * @param jarIndex the index of the nested jar
+         * @param entry the entry
+         * @throws MalformedURLException if the URL of the entry is not a {@code jar:} URL
+         */
+        private NestedJarURLConnection(URL url, URL jarUrl, String entryName, JarIndex jarIndex, int entry)
+                throws MalformedURLException {
+            super(url);
+            this.jarUrl = jarUrl;
+            this.entryName = entryName;
+            this.jarIndex = jarIndex;
+            this.entry = entry;
+        }
+
+        @Override
+        public URL getJarFileURL() {
+            return jarUrl;
+        }
+
+        @Override
+        public String getEntryName() {
+            return entryName;
+        }
+
+        @Override
+        public JarFile getJarFile() throws IOException {
+            throw new IOException("nested jar " + jarUrl + " cannot be opened as a JarFile");
+        }
+
+        @Override
+        public JarEntry getJarEntry() throws IOException {
+            connect();
+
+            JarEntry jarEntry = new JarEntry(entryName);
+            jarEntry.setSize(data.remaining());
+
+            return jarEntry;
+        }
+
+        @Override
+        public Manifest getManifest() throws IOException {
+            int manifestEntry = jarIndex.find(JarFile.MANIFEST_NAME);
+
+            if (manifestEntry == -1) {
+                return null;
+            }
+
+            try (InputStream inputStream = new ByteBufferInputStream(jarIndex.read(manifestEntry))) {
+                return new Manifest(inputStream);
+            }
+        }
+
+        @Override
+        public synchronized void connect() throws IOException {
+            if (!connected) {
+                data = jarIndex.read(entry);
+                connected = true;
+            }
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            try {
+                connect();
+            } catch (IOException e) {
+                return -1;
+            }
+
+            return data.remaining();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            connect();
+
+            return new ByteBufferInputStream(data.duplicate());
+        }
+    }
+
+    /**
+     * An input stream that reads a buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer byteBuffer;
+
+        /**
+         * Constructor for ByteBufferInputStream.
+         *
+         * @param byteBuffer the buffer to read
+         */
+        private ByteBufferInputStream(ByteBuffer byteBuffer) {
+            this.byteBuffer = byteBuffer;
+        }
+
+        @Override
+        public int read() {
+            return byteBuffer.hasRemaining() ? byteBuffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+
+            if (!byteBuffer.hasRemaining()) {
+                return -1;
+            }
+
+            int count = Math.min(length, byteBuffer.remaining());
+            byteBuffer.get(bytes, offset, count);
+
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return byteBuffer.remaining();
+        }
+    }
+}
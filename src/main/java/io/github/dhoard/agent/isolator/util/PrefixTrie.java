@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable, precompiled prefix trie used to match names against a set of prefixes.
+ * <p>
+ * Each node stores its child characters in a sorted array, so a match costs one binary search
+ * per character of the matched prefix, without allocating.
+ */
+public class PrefixTrie {
+
+    // Initialized before EMPTY, which uses it for nodes without prefix ids
+    private static final int[] NO_MATCHES = new int[0];
+
+    private static final PrefixTrie EMPTY = new PrefixTrie(new ArrayList<>());
+
+    private final char[][] nodeCharacters;
+    private final int[][] nodeChildren;
+    private final boolean[] nodeTerminal;
+    private final int[][] nodePrefixIds;
+
+    /**
+     * Constructor for PrefixTrie.
+     *
+     * @param prefixes Prefixes to match
+     */
+    private PrefixTrie(Collection<String> prefixes) {
+        // Build a mutable trie
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        Map<Integer, List<Integer>> prefixIds = new TreeMap<>();
+
+        children.add(new TreeMap<>());
+        terminal.add(Boolean.FALSE);
+
+        int prefixId = 0;
+        for (String prefix : prefixes) {
+            int node = 0;
+
+            for (int i = 0; i < prefix.length(); i++) {
+                Integer child = children.get(node).get(prefix.charAt(i));
+
+                if (child == null) {
+                    child = children.size();
+                    children.add(new TreeMap<>());
+                    terminal.add(Boolean.FALSE);
+                    children.get(node).put(prefix.charAt(i), child);
+                }
+
+                node = child;
+            }
+
+            terminal.set(node, Boolean.TRUE);
+            prefixIds.computeIfAbsent(node, key -> new ArrayList<>()).add(prefixId++);
+        }
+
+        // Compile the mutable trie into arrays
+        int nodeCount = children.size();
+
+        nodeCharacters = new char[nodeCount][];
+        nodeChildren = new int[nodeCount][];
+        nodeTerminal = new boolean[nodeCount];
+        nodePrefixIds = new int[nodeCount][];
+
+        for (int node = 0; node < nodeCount; node++) {
+            TreeMap<Character, Integer> nodeChildMap = children.get(node);
+
+            nodeCharacters[node] = new char[nodeChildMap.size()];
+            nodeChildren[node] = new int[nodeChildMap.size()];
+            nodeTerminal[node] = terminal.get(node);
+            nodePrefixIds[node] = toIntArray(prefixIds.get(node));
+
+            int i = 0;
+            for (Map.Entry<Character, Integer> entry : nodeChildMap.entrySet()) {
+                nodeCharacters[node][i] = entry.getKey();
+                nodeChildren[node][i] = entry.getValue();
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the name starts with any of the prefixes.
+     *
+     * @param name the name to match
+     * @return true if the name starts with any of the prefixes, else false
+     */
+    public boolean matches(String name) {
+        int node = 0;
+
+        if (nodeTerminal[node]) {
+            return true;
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+            int index = Arrays.binarySearch(nodeCharacters[node], name.charAt(i));
+
+            if (index < 0) {
+                return false;
+            }
+
+            node = nodeChildren[node][index];
+
+            if (nodeTerminal[node]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds the prefixes that the name starts with.
+     * <p>
+     * Prefix ids are the positions of the prefixes in the collection the trie was created from.
+     * Does not allocate if the name does not start with any of the prefixes.
+     *
+     * @param name the name to match
+     * @return the ids of the matching prefixes, shortest prefix first, or an empty array if none match
+     */
+    public int[] findMatches(String name) {
+        int node = 0;
+        int[] matches = append(NO_MATCHES, nodePrefixIds[node]);
+
+        for (int i = 0; i < name.length(); i++) {
+            int index = Arrays.binarySearch(nodeCharacters[node], name.charAt(i));
+
+            if (index < 0) {
+                break;
+            }
+
+            node = nodeChildren[node][index];
+            matches = append(matches, nodePrefixIds[node]);
+        }
+
+        return matches;
+    }
+
+    /**
+     * Returns whether the trie contains no prefixes.
+     *
+     * @return true if the trie contains no prefixes, else false
+     */
+    public boolean isEmpty() {
+        return nodeCharacters[0].length == 0 && !nodeTerminal[0];
+    }
+
+    /**
+     * Appends prefix ids to an array of prefix ids.
+     *
+     * @param matches the prefix ids
+     * @param prefixIds the prefix ids to append
+     * @return the array of prefix ids, which is only copied if there are prefix ids to append
+     */
+    private static int[] append(int[] matches, int[] prefixIds) {
+        if (prefixIds.length == 0) {
+            return matches;
+        }
+
+        int[] result = Arrays.copyOf(matches, matches.length + prefixIds.length);
+        System.arraycopy(prefixIds, 0, result, matches.length, prefixIds.length);
+
+        return result;
+    }
+
+    /**
+     * Converts a list of integers to an array.
+     *
+     * @param list the list, or null
+     * @return the array, or an empty array if the list is null
+     */
+    private static int[] toIntArray(List<Integer> list) {
+        if (list == null) {
+            return NO_MATCHES;
+        }
+
+        int[] array = new int[list.size()];
+
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+
+        return array;
+    }
+
+    /**
+     * Creates a new PrefixTrie for the specified prefixes.
+     *
+     * @param prefixes Prefixes to match
+     * @return a new PrefixTrie
+     */
+    public static PrefixTrie of(Collection<String> prefixes) {
+        return prefixes.isEmpty() ? EMPTY : new PrefixTrie(prefixes);
+    }
+
+    /**
+     * Creates a new PrefixTrie that matches classes in the specified packages and their subpackages.
+     * <p>
+     * Each package name is terminated with a {@code .}, so that {@code com.foo} does not match
+     * {@code com.foobar.Bar}.
+     *
+     * @param packageNames Package names to match
+     * @return a new PrefixTrie
+     */
+    public static PrefixTrie ofPackages(Collection<String> packageNames) {
+        List<String> prefixes = new ArrayList<>();
+
+        for (String packageName : packageNames) {
+            prefixes.add(packageName.endsWith(".") ? packageName : packageName + ".");
+        }
+
+        return of(prefixes);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A jar file shared by every classloader that loads classes from the same jar.
+ * <p>
+ * The jar file is memory-mapped once and indexed once. Each classloader still defines its own classes
+ * from the entry bytes, so sharing the jar does not affect isolation.
+ * <p>
+ * A shared jar is either a jar file or a jar nested in another jar file. A nested jar is indexed in place,
+ * inside the mapping of the outer jar file.
+ * <p>
+ * If a {@link ClassBytesCache} is configured, the bytes of compressed classes are read from the cache,
+ * and inflated and added to the cache on a cache miss.
+ */
+public class SharedJar {
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Path path;
+    private final URL url;
+    private final JarIndex jarIndex;
+    private final String entryUrlPrefix;
+    private final URLStreamHandler entryUrlStreamHandler;
+    private String contentHash;
+
+    /**
+     * Constructor for SharedJar.
+     *
+     * @param path the canonical path of the jar file, or of the outer jar file of a nested jar
+     * @param url the URL of the jar file, a {@code file:} URL, or a {@code jar:} URL for a nested jar
+     * @param jarIndex the index of the memory-mapped jar file
+     */
+    SharedJar(Path path, URL url, JarIndex jarIndex) {
+        this.path = path;
+        this.url = url;
+        this.jarIndex = jarIndex;
+
+        if ("jar".equals(url.getProtocol())) {
+            // The JDK jar: handler cannot open the entries of a nested jar
+            this.entryUrlPrefix = url.getFile() + "!/";
+            this.entryUrlStreamHandler = new NestedJarURLStreamHandler(url, jarIndex);
+        } else {
+            this.entryUrlPrefix = url.toExternalForm() + "!/";
+            this.entryUrlStreamHandler = null;
+        }
+    }
+
+    /**
+     * Gets the path.
+     *
+     * @return the canonical path of the jar file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the URL.
+     *
+     * @return the URL of the jar file
+     */
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * Gets the index.
+     *
+     * @return the index of the jar file
+     */
+    public JarIndex getJarIndex() {
+        return jarIndex;
+    }
+
+    /**
+     * Gets the content hash.
+     * <p>
+     * The content hash is a SHA-256 hash of the central directory, which contains the name, sizes,
+     * and CRC-32 of every entry, so it changes whenever the content of any entry changes.
+     *
+     * @return the hex encoded content hash of the jar file
+     */
+    public synchronized String getContentHash() {
+        if (contentHash == null) {
+            MessageDigest messageDigest;
+
+            try {
+                messageDigest = MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                // SHA-256 is required on every Java platform
+                throw new IllegalStateException(e);
+            }
+
+            messageDigest.update(jarIndex.getCentralDirectory());
+
+            byte[] digest = messageDigest.digest();
+            char[] chars = new char[digest.length * 2];
+
+            for (int i = 0; i < digest.length; i++) {
+                chars[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+                chars[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
+            }
+
+            contentHash = new String(chars);
+        }
+
+        return contentHash;
+    }
+
+    /**
+     * Reads the bytes of a class.
+     *
+     * @param className the name of the class
+     * @return a read-only buffer containing the class bytes, or null if the jar does not contain the class
+     * @throws IOException if the entry cannot be read
+     */
+    public ByteBuffer getClassBytes(String className) throws IOException {
+        int entry = jarIndex.find(className.replace('.', '/').concat(CLASS_FILE_SUFFIX));
+
+        return entry == -1 ? null : getClassBytes(className, entry);
+    }
+
+    /**
+     * Reads the bytes of a class from an entry found in the jar index.
+     *
+     * @param className the name of the class
+     * @param entry the entry of the class
+     * @return a read-only buffer containing the class bytes
+     * @throws IOException if the entry cannot be read
+     */
+    public ByteBuffer getClassBytes(String className, int entry) throws IOException {
+        ClassBytesCache classBytesCache = JarRegistry.getClassBytesCache();
+
+        // Stored entries are already read directly from the mapped jar file
+        if (classBytesCache == null || jarIndex.isStored(entry)) {
+            return jarIndex.read(entry);
+        }
+
+        ByteBuffer classBytes = classBytesCache.get(getContentHash(), className);
+
+        if (classBytes == null) {
+            classBytes = jarIndex.read(entry);
+            classBytesCache.put(getContentHash(), className, classBytes);
+        }
+
+        return classBytes;
+    }
+
+    /**
+     * Reads the bytes of an entry.
+     *
+     * @param name the name of the entry
+     * @return a read-only buffer containing the entry bytes, or null if the jar does not contain the entry
+     * @throws IOException if the entry cannot be read
+     */
+    public ByteBuffer getEntryBytes(String name) throws IOException {
+        int entry = jarIndex.find(name);
+        return entry == -1 ? null : jarIndex.read(entry);
+    }
+
+    /**
+     * Gets the {@code jar:} URL of an entry.
+     *
+     * @param name the name of the entry
+     * @return the URL of the entry, or null if the name is not a valid URL path
+     */
+    public URL getEntryUrl(String name) {
+        try {
+            // Encode the name as URLClassLoader does, so the URLs are equal
+            return new URL(
+                    "jar",
+                    "",
+                    -1,
+                    entryUrlPrefix + new URI(null, null, name, null).getRawPath(),
+                    entryUrlStreamHandler);
+        } catch (URISyntaxException | MalformedURLException e) {
+            return null;
+        }
+    }
+}
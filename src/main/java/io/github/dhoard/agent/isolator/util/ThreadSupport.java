@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+/**
+ * Creates the threads used by {@link Threads}, using Java 8 APIs.
+ * <p>
+ * The IsolatorAgent jar is a multi-release jar. On Java 21 or later, this class is replaced by the
+ * version in {@code META-INF/versions/21}, which creates control threads as virtual threads, and
+ * platform threads that do not inherit inheritable thread locals. Both versions must have the same
+ * methods.
+ */
+final class ThreadSupport {
+
+    /**
+     * Constructor
+     */
+    private ThreadSupport() {
+        // INTENTIONALLY BLANK
+    }
+
+    /**
+     * Returns whether control threads are virtual threads.
+     *
+     * @return false
+     */
+    static boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * Creates a new, unstarted, platform thread.
+     *
+     * @param threadGroup the thread group
+     * @param name the name of the thread
+     * @param runnable the runnable to execute
+     * @return a new, unstarted, platform thread
+     */
+    static Thread newPlatformThread(ThreadGroup threadGroup, String name, Runnable runnable) {
+        return new Thread(threadGroup, runnable, name);
+    }
+
+    /**
+     * Creates a new, unstarted, control thread.
+     *
+     * @param threadGroup the thread group used if control threads are platform threads
+     * @param name the name of the thread
+     * @param runnable the runnable to execute
+     * @return a new, unstarted, platform thread
+     */
+    static Thread newControlThread(ThreadGroup threadGroup, String name, Runnable runnable) {
+        return newPlatformThread(threadGroup, name, runnable);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads class for creating the threads used by the IsolatorAgent itself.
+ * <p>
+ * All threads created by this class are daemon threads so that they never prevent the JVM from exiting.
+ * <p>
+ * Threads are created in the IsolatorAgent thread group, with the IsolatorAgent classloader as the
+ * context classloader, even when they are created lazily by an agent thread, so that they are never
+ * attributed to, and never retain, an isolated agent.
+ * <p>
+ * Control threads, which mostly wait, are virtual threads on Java 21 or later. See {@code ThreadSupport}.
+ */
+@SuppressWarnings("PMD.AvoidThreadGroup")
+public class Threads {
+
+    private static final String THREAD_GROUP_NAME = "isolator-agent";
+
+    private static final ThreadGroup THREAD_GROUP = new ThreadGroup(getRootThreadGroup(), THREAD_GROUP_NAME);
+
+    /**
+     * Constructor
+     */
+    private Threads() {
+        // INTENTIONALLY BLANK
+    }
+
+    /**
+     * Creates a new daemon thread.
+     *
+     * @param name     Name of the thread
+     * @param runnable Runnable to execute
+     * @return a new, unstarted, daemon thread
+     */
+    public static Thread newDaemonThread(String name, Runnable runnable) {
+        return configure(ThreadSupport.newPlatformThread(THREAD_GROUP, name, runnable));
+    }
+
+    /**
+     * Creates a new control thread, for work that mostly waits, for example waiting for garbage collections,
+     * or serving metrics.
+     * <p>
+     * On Java 21 or later, control threads are virtual threads, else they are daemon threads.
+     * <p>
+     * Threads that start, stop, or reload agents must be daemon threads. Starting and stopping an agent loads
+     * classes and joins agent threads while holding monitors, which pins a virtual thread to its carrier
+     * thread on Java 21.
+     *
+     * @param name     Name of the thread
+     * @param runnable Runnable to execute
+     * @return a new, unstarted, control thread
+     */
+    public static Thread newControlThread(String name, Runnable runnable) {
+        return configure(ThreadSupport.newControlThread(THREAD_GROUP, name, runnable));
+    }
+
+    /**
+     * Returns whether control threads are virtual threads.
+     *
+     * @return true if control threads are virtual threads, else false
+     */
+    public static boolean isControlThreadVirtual() {
+        return ThreadSupport.isVirtual();
+    }
+
+    /**
+     * Configures a new thread as a daemon thread, with the IsolatorAgent classloader as the context classloader.
+     *
+     * @param thread the thread
+     * @return the thread
+     */
+    private static Thread configure(Thread thread) {
+        thread.setDaemon(true);
+        thread.setContextClassLoader(Threads.class.getClassLoader());
+        return thread;
+    }
+
+    /**
+     * Gets the root thread group.
+     *
+     * @return the root thread group
+     */
+    public static ThreadGroup getRootThreadGroup() {
+        ThreadGroup threadGroup = Thread.currentThread().getThreadGroup();
+
+        while (threadGroup.getParent() != null) {
+            threadGroup = threadGroup.getParent();
+        }
+
+        return threadGroup;
+    }
+
+    /**
+     * Gets all live threads.
+     *
+     * @return the live threads
+     */
+    public static Thread[] getAllThreads() {
+        ThreadGroup rootThreadGroup = getRootThreadGroup();
+        Thread[] threads = new Thread[rootThreadGroup.activeCount() + 16];
+        int count;
+
+        // Grow the array until every thread fits, since threads may be started while enumerating
+        while ((count = rootThreadGroup.enumerate(threads, true)) == threads.length) {
+            threads = new Thread[threads.length * 2];
+        }
+
+        Thread[] result = new Thread[count];
+        System.arraycopy(threads, 0, result, 0, count);
+
+        return result;
+    }
+
+    /**
+     * Returns whether a thread belongs to a thread group or one of its subgroups.
+     *
+     * @param thread the thread
+     * @param threadGroup the thread group
+     * @return true if the thread belongs to the thread group, else false
+     */
+    public static boolean isInThreadGroup(Thread thread, ThreadGroup threadGroup) {
+        // The thread group of a terminated thread is null
+        ThreadGroup current = thread.getThreadGroup();
+
+        while (current != null) {
+            if (current == threadGroup) {
+                return true;
+            }
+
+            current = current.getParent();
+        }
+
+        return false;
+    }
+
+    /**
+     * Captures a thread dump of a list of threads.
+     *
+     * @param threads the threads
+     * @return the thread dump, with the name, state, blocking lock, and stack trace of each live thread
+     */
+    public static String dump(List<Thread> threads) {
+        long[] threadIds = new long[threads.size()];
+        for (int i = 0; i < threadIds.length; i++) {
+            threadIds[i] = threads.get(i).getId();
+        }
+
+        StringBuilder stringBuilder = new StringBuilder();
+
+        for (ThreadInfo threadInfo : ManagementFactory.getThreadMXBean().getThreadInfo(threadIds, Integer.MAX_VALUE)) {
+            // The thread info of a thread that has terminated is null
+            if (threadInfo == null) {
+                continue;
+            }
+
+            stringBuilder
+                    .append('"')
+                    .append(threadInfo.getThreadName())
+                    .append("\" ")
+                    .append(threadInfo.getThreadState());
+
+            LockInfo lockInfo = threadInfo.getLockInfo();
+            if (lockInfo != null) {
+                stringBuilder.append(" on ").append(lockInfo);
+
+                if (threadInfo.getLockOwnerName() != null) {
+                    stringBuilder
+                            .append(" owned by \"")
+                            .append(threadInfo.getLockOwnerName())
+                            .append('"');
+                }
+            }
+
+            stringBuilder.append(System.lineSeparator());
+
+            for (StackTraceElement stackTraceElement : threadInfo.getStackTrace()) {
+                stringBuilder.append("    at ").append(stackTraceElement).append(System.lineSeparator());
+            }
+        }
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Creates a new fixed size thread pool using daemon threads.
+     *
+     * @param name        Name prefix of the pool threads
+     * @param threadCount Number of threads
+     * @return a new ExecutorService
+     */
+    public static ExecutorService newFixedThreadPool(String name, int threadCount) {
+        return Executors.newFixedThreadPool(threadCount, newDaemonThreadFactory(name));
+    }
+
+    /**
+     * Creates a new fixed size thread pool using control threads.
+     *
+     * @param name        Name prefix of the pool threads
+     * @param threadCount Number of threads
+     * @return a new ExecutorService
+     */
+    public static ExecutorService newControlThreadPool(String name, int threadCount) {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        return Executors.newFixedThreadPool(
+                threadCount, runnable -> newControlThread(name + "-" + threadNumber.getAndIncrement(), runnable));
+    }
+
+    /**
+     * Creates a new ThreadFactory that creates named daemon threads.
+     *
+     * @param name Name prefix of the threads
+     * @return a new ThreadFactory
+     */
+    public static ThreadFactory newDaemonThreadFactory(String name) {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        return runnable -> newDaemonThread(name + "-" + threadNumber.getAndIncrement(), runnable);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+/**
+ * Creates the threads used by {@link Threads}, using Java 21 APIs.
+ * <p>
+ * Control threads, which mostly wait, are virtual threads, so they do not reserve a platform thread
+ * stack. Virtual threads do not belong to the IsolatorAgent thread group, but are never enumerated as
+ * live threads, so they are still never attributed to an isolated agent.
+ * <p>
+ * Threads do not inherit inheritable thread locals, so a thread created lazily by an agent thread
+ * never retains values set by the agent.
+ */
+final class ThreadSupport {
+
+    /**
+     * Constructor
+     */
+    private ThreadSupport() {
+        // INTENTIONALLY BLANK
+    }
+
+    /**
+     * Returns whether control threads are virtual threads.
+     *
+     * @return true
+     */
+    static boolean isVirtual() {
+        return true;
+    }
+
+    /**
+     * Creates a new, unstarted, platform thread.
+     *
+     * @param threadGroup the thread group
+     * @param name the name of the thread
+     * @param runnable the runnable to execute
+     * @return a new, unstarted, platform thread
+     */
+    static Thread newPlatformThread(ThreadGroup threadGroup, String name, Runnable runnable) {
+        return Thread.ofPlatform()
+                .group(threadGroup)
+                .name(name)
+                .inheritInheritableThreadLocals(false)
+                .unstarted(runnable);
+    }
+
+    /**
+     * Creates a new, unstarted, control thread.
+     *
+     * @param threadGroup the thread group used if control threads are platform threads
+     * @param name the name of the thread
+     * @param runnable the runnable to execute
+     * @return a new, unstarted, virtual thread
+     */
+    static Thread newControlThread(ThreadGroup threadGroup, String name, Runnable runnable) {
+        return Thread.ofVirtual().name(name).inheritInheritableThreadLocals(false).unstarted(runnable);
+    }
+}
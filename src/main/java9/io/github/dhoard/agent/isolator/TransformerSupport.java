@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+
+/**
+ * Adapts the {@link TransformerMultiplexer} to the ClassFileTransformer API, using Java 9 APIs.
+ * <p>
+ * The JVM calls the transform method that takes a module, and the module is passed to the agent
+ * transformers, so transformers that only override that method are called, and transformers that use
+ * the module, for example to add module reads, receive it.
+ */
+final class TransformerSupport {
+
+    /**
+     * Constructor
+     */
+    private TransformerSupport() {
+        // INTENTIONALLY BLANK
+    }
+
+    /**
+     * Creates a ClassFileTransformer, to register with the JVM, that calls a transform function.
+     *
+     * @param transformFunction the transform function
+     * @return a new ClassFileTransformer, which passes the module of the class
+     */
+    static ClassFileTransformer newTransformer(TransformFunction transformFunction) {
+        return new ClassFileTransformer() {
+            @Override
+            public byte[] transform(
+                    Module module,
+                    ClassLoader loader,
+                    String className,
+                    Class<?> classBeingRedefined,
+                    ProtectionDomain protectionDomain,
+                    byte[] classfileBuffer) {
+                return transformFunction.transform(
+                        module, loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+            }
+
+            @Override
+            public byte[] transform(
+                    ClassLoader loader,
+                    String className,
+                    Class<?> classBeingRedefined,
+                    ProtectionDomain protectionDomain,
+                    byte[] classfileBuffer) {
+                return transformFunction.transform(
+                        null, loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+            }
+        };
+    }
+
+    /**
+     * Calls an agent transformer.
+     *
+     * @param classFileTransformer the agent transformer
+     * @param module the module of the class, or null if the module is not known
+     * @param loader the defining loader of the class
+     * @param className the internal name of the class
+     * @param classBeingRedefined the class being redefined or retransformed, or null
+     * @param protectionDomain the protection domain of the class
+     * @param classfileBuffer the class file bytes
+     * @return the transformed class file bytes, or null if the class was not transformed
+     * @throws IllegalClassFormatException if the transformer rejects the class file
+     */
+    static byte[] transform(
+            ClassFileTransformer classFileTransformer,
+            Object module,
+            ClassLoader loader,
+            String className,
+            Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain,
+            byte[] classfileBuffer)
+            throws IllegalClassFormatException {
+        if (module == null) {
+            return classFileTransformer.transform(
+                    loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+        }
+
+        return classFileTransformer.transform(
+                (Module) module, loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link ConfigurationSnapshot}.
+ */
+class ConfigurationSnapshotTest {
+
+    private static final String JAVA_AGENTS =
+            "javaAgents:\n  - jarPath: agent.jar\n    className: test.Agent\n    options: \"\"\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void disabledSnapshotDoesNotCreateASnapshot() throws IOException {
+        Path configurationPath = write("isolator.yaml", JAVA_AGENTS);
+
+        assertEquals(
+                1, ConfigurationSnapshot.load(configurationPath).getJavaAgents().size());
+        assertFalse(Files.exists(ConfigurationSnapshot.getSnapshotPath(configurationPath)));
+    }
+
+    @Test
+    void disabledSnapshotDeletesAPreviousSnapshot() throws IOException {
+        Path configurationPath = write("isolator.yaml", "configurationSnapshot: enabled\n" + JAVA_AGENTS);
+        Path snapshotPath = ConfigurationSnapshot.getSnapshotPath(configurationPath);
+
+        ConfigurationSnapshot.load(configurationPath);
+        assertTrue(Files.exists(snapshotPath));
+
+        write("isolator.yaml", "configurationSnapshot: disabled\n" + JAVA_AGENTS);
+        ConfigurationSnapshot.load(configurationPath);
+        assertFalse(Files.exists(snapshotPath));
+    }
+
+    @Test
+    void disabledSnapshotKeepsAFileThatIsNotASnapshot() throws IOException {
+        Path configurationPath = write("isolator.yaml", JAVA_AGENTS);
+        Path snapshotPath = write("isolator.yaml.snapshot", "not a snapshot");
+
+        ConfigurationSnapshot.load(configurationPath);
+
+        assertArrayEquals("not a snapshot".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(snapshotPath));
+    }
+
+    private Path write(String fileName, String content) throws IOException {
+        return Files.write(directory.resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
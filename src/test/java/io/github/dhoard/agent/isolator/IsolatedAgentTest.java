@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.dhoard.agent.isolator.util.TestJars;
+import io.github.dhoard.agent.isolator.util.Threads;
+import java.io.StringReader;
+import java.lang.instrument.Instrumentation;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link IsolatedAgent}.
+ */
+class IsolatedAgentTest {
+
+    private static final String STARTED_PROPERTY = "isolated-agent-test.started";
+    private static final String RELEASE_PROPERTY = "isolated-agent-test.release";
+
+    private static final String BLOCKING_AGENT_SOURCE = "package blocking;\n"
+            + "public class Agent {\n"
+            + "    public static void agentmain(String options, java.lang.instrument.Instrumentation instrumentation) {\n"
+            + "        System.setProperty(\"" + STARTED_PROPERTY + "\", \"true\");\n"
+            + "        while (!Boolean.getBoolean(\"" + RELEASE_PROPERTY + "\")) {\n"
+            + "            try {\n"
+            + "                Thread.sleep(10);\n"
+            + "            } catch (InterruptedException e) {\n"
+            + "                // Ignore the interrupt, like an agent that does not handle interrupts\n"
+            + "            }\n"
+            + "        }\n"
+            + "    }\n"
+            + "}\n";
+
+    private static final String AGENT_SOURCE = "package simple;\n"
+            + "public class Agent {\n"
+            + "    public static void agentmain(String options, java.lang.instrument.Instrumentation instrumentation) {\n"
+            + "    }\n"
+            + "}\n";
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void release() {
+        System.setProperty(RELEASE_PROPERTY, "true");
+        System.clearProperty(STARTED_PROPERTY);
+    }
+
+    @Test
+    void stopInterruptsAStartWithoutTimeout() throws Exception {
+        System.clearProperty(RELEASE_PROPERTY);
+
+        Path jar = TestJars.write(
+                directory.resolve("blocking.jar"),
+                TestJars.compile(directory, Collections.singletonMap("blocking.Agent", BLOCKING_AGENT_SOURCE)),
+                Collections.emptyMap());
+
+        // The default start timeout of 0 waits until the agent's main method returns
+        Configuration configuration = Configuration.parse(new StringReader(
+                "javaAgents:\n  - jarPath: " + jar + "\n    className: blocking.Agent\n    options: \"\"\n"));
+
+        Instrumentation instrumentation = instrumentation();
+        IsolatedAgent isolatedAgent = new IsolatedAgent(
+                1,
+                configuration.getJavaAgents().get(0),
+                configuration,
+                SharedLayer.create(configuration),
+                new TransformerMultiplexer(instrumentation),
+                null);
+
+        AtomicReference<Throwable> startFailure = new AtomicReference<>();
+        Thread startThread = new Thread(() -> {
+            try {
+                isolatedAgent.start(instrumentation);
+            } catch (Throwable t) {
+                startFailure.set(t);
+            }
+        });
+
+        startThread.start();
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.getProperty(STARTED_PROPERTY) == null) {
+            assertTrue(System.currentTimeMillis() < deadline, "agent main method was not called");
+            Thread.sleep(10);
+        }
+
+        // Stop does not wait for the start, which waits for the agent's main method
+        assertNull(assertTimeoutPreemptively(Duration.ofSeconds(5), isolatedAgent::stop));
+
+        // The start fails once the agent's threads have been interrupted
+        startThread.join(30_000);
+
+        assertFalse(startThread.isAlive());
+        assertInstanceOf(JavaAgentException.class, startFailure.get());
+        assertNull(isolatedAgent.getClassLoader());
+    }
+
+    @Test
+    void stopStopsRecordingTheClassProfile() throws Exception {
+        Path jar = TestJars.write(
+                directory.resolve("simple.jar"),
+                TestJars.compile(directory, Collections.singletonMap("simple.Agent", AGENT_SOURCE)),
+                Collections.emptyMap());
+
+        // The class profile is recorded for 60 seconds after the agent starts
+        Configuration configuration = Configuration.parse(new StringReader("cacheDirectory: "
+                + directory.resolve("cache") + "\nclassPrefetch: true\nclassProfileSeconds: 60\n"
+                + "javaAgents:\n  - jarPath: " + jar + "\n    className: simple.Agent\n    options: \"\"\n"));
+
+        Instrumentation instrumentation = instrumentation();
+        IsolatedAgent isolatedAgent = new IsolatedAgent(
+                1,
+                configuration.getJavaAgents().get(0),
+                configuration,
+                SharedLayer.create(configuration),
+                new TransformerMultiplexer(instrumentation),
+                null);
+
+        isolatedAgent.start(instrumentation);
+        assertTrue(isProfileThreadAlive());
+
+        // Stop stops the class profile thread, which references the classloader, before it returns
+        WeakReference<ClassLoader> classLoaderReference = isolatedAgent.stop();
+
+        assertNotNull(classLoaderReference);
+        assertFalse(isProfileThreadAlive());
+    }
+
+    private static boolean isProfileThreadAlive() {
+        for (Thread thread : Threads.getAllThreads()) {
+            if (thread.getName().equals("isolator-agent-profile")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static Instrumentation instrumentation() {
+        return (Instrumentation) Proxy.newProxyInstance(
+                Instrumentation.class.getClassLoader(),
+                new Class<?>[] {Instrumentation.class},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.dhoard.agent.isolator.util.TestJars;
+import java.io.StringReader;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link StartupScheduler}.
+ */
+class StartupSchedulerTest {
+
+    private static final String AGENT_SOURCE = "package simple;\n"
+            + "public class Agent {\n"
+            + "    public static void agentmain(String options, java.lang.instrument.Instrumentation instrumentation) {\n"
+            + "    }\n"
+            + "}\n";
+
+    private static final String SLOW_AGENT_SOURCE = "package slow;\n"
+            + "public class Agent {\n"
+            + "    public static void agentmain(String options, java.lang.instrument.Instrumentation instrumentation)\n"
+            + "            throws InterruptedException {\n"
+            + "        Thread.sleep(60_000);\n"
+            + "    }\n"
+            + "}\n";
+
+    @TempDir
+    Path directory;
+
+    private Path jar;
+
+    @BeforeEach
+    void writeJar() throws Exception {
+        Map<String, String> sources = new HashMap<>();
+        sources.put("simple.Agent", AGENT_SOURCE);
+        sources.put("slow.Agent", SLOW_AGENT_SOURCE);
+
+        jar = TestJars.write(
+                directory.resolve("agents.jar"), TestJars.compile(directory, sources), Collections.emptyMap());
+    }
+
+    @Test
+    void startOrderFollowsStartOrderAndDependsOn() throws Exception {
+        List<IsolatedAgent> isolatedAgents = isolatedAgents(agent("a", "startOrder: 2\n")
+                + agent("b", "startOrder: 1\n    dependsOn: [c]\n")
+                + agent("c", "startOrder: 1\n")
+                + agent("d", "startOrder: 2\n"));
+
+        StartupScheduler startupScheduler = new StartupScheduler(isolatedAgents, id -> null);
+
+        assertEquals(Arrays.asList("c", "b", "a", "d"), ids(startupScheduler.getStartOrder()));
+    }
+
+    @Test
+    void dependsOnCycleIsRejected() throws Exception {
+        List<IsolatedAgent> isolatedAgents =
+                isolatedAgents(agent("a", "dependsOn: [b]\n") + agent("b", "dependsOn: [a]\n"));
+
+        assertThrows(ConfigurationException.class, () -> new StartupScheduler(isolatedAgents, id -> null));
+    }
+
+    @Test
+    void unknownDependencyIsSkipped() throws Exception {
+        List<IsolatedAgent> isolatedAgents = isolatedAgents(agent("a", "") + agent("b", "dependsOn: [a]\n"));
+
+        // Only schedule b, and a is no longer an agent
+        new StartupScheduler(isolatedAgents.subList(1, 2), id -> null).startSequential(instrumentation());
+
+        assertEquals("pending", isolatedAgents.get(0).getStartupTimeline().getState());
+        assertEquals("skipped", isolatedAgents.get(1).getStartupTimeline().getState());
+        assertEquals(-1, isolatedAgents.get(1).getStartupTimeline().getTotalMillis());
+        assertEquals(
+                "startup [skipped] createClassLoader [n/a] loadMainClass [n/a] resolveAgentMain [n/a]"
+                        + " runAgentMain [n/a] total [n/a] definedClasses [0] definedClassBytes [0]",
+                isolatedAgents.get(1).getStartupTimeline().getSummary());
+    }
+
+    @Test
+    void skipCascadesToDependentsSequentially() throws Exception {
+        List<IsolatedAgent> isolatedAgents = isolatedAgents(failingAgent("a", "skip")
+                + agent("b", "dependsOn: [a]\n")
+                + agent("c", "dependsOn: [b]\n")
+                + agent("d", ""));
+
+        new StartupScheduler(isolatedAgents, id -> null).startSequential(instrumentation());
+
+        assertEquals(Arrays.asList("failed", "skipped", "skipped", "started"), states(isolatedAgents));
+    }
+
+    @Test
+    void skipCascadesToDependentsInParallel() throws Exception {
+        List<IsolatedAgent> isolatedAgents = isolatedAgents(failingAgent("a", "skip")
+                + agent("b", "dependsOn: [a]\n")
+                + agent("c", "dependsOn: [b]\n")
+                + agent("d", ""));
+
+        new StartupScheduler(isolatedAgents, id -> null).startParallel(instrumentation());
+
+        assertEquals(Arrays.asList("failed", "skipped", "skipped", "started"), states(isolatedAgents));
+    }
+
+    @Test
+    void skipCascadesToAgentsScheduledLater() throws Exception {
+        List<IsolatedAgent> isolatedAgents = isolatedAgents(failingAgent("a", "skip")
+                + agent("b", "dependsOn: [a]\n")
+                + agent("c", "startMode: background\n    dependsOn: [a]\n")
+                + agent("d", "startMode: background\n    dependsOn: [b]\n"));
+
+        Map<String, IsolatedAgent> isolatedAgentsById = new HashMap<>();
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            isolatedAgentsById.put(isolatedAgent.getId(), isolatedAgent);
+        }
+
+        // The foreground agents are started first, then the background agents, as separate startups
+        new StartupScheduler(isolatedAgents.subList(0, 2), isolatedAgentsById::get).startSequential(instrumentation());
+        new StartupScheduler(isolatedAgents.subList(2, 4), isolatedAgentsById::get).startParallel(instrumentation());
+
+        assertEquals(Arrays.asList("failed", "skipped", "skipped", "skipped"), states(isolatedAgents));
+    }
+
+    @Test
+    void skipSkipsTheDependentsOfAnAgentThatTimedOut() throws Exception {
+        List<IsolatedAgent> isolatedAgents = isolatedAgents("  - id: a\n    jarPath: " + jar
+                + "\n    className: slow.Agent\n    options: \"\"\n    startTimeoutSeconds: 1\n    onFailure: skip\n"
+                + agent("b", "dependsOn: [a]\n")
+                + agent("c", ""));
+
+        new StartupScheduler(isolatedAgents, id -> null).startSequential(instrumentation());
+
+        assertEquals(Arrays.asList("failed", "skipped", "started"), states(isolatedAgents));
+    }
+
+    @Test
+    void abortFailsTheStartup() throws Exception {
+        List<IsolatedAgent> isolatedAgents = isolatedAgents(failingAgent("a", "abort") + agent("b", ""));
+
+        assertThrows(JavaAgentException.class, () -> new StartupScheduler(isolatedAgents, id -> null)
+                .startSequential(instrumentation()));
+
+        assertEquals(Arrays.asList("failed", "pending"), states(isolatedAgents));
+    }
+
+    @Test
+    void skipSkipsTheDependentsOfAnAgentStoppedBeforeItStarted() throws Exception {
+        List<IsolatedAgent> isolatedAgents = isolatedAgents(failingAgent("a", "skip") + agent("b", "dependsOn: [a]\n"));
+
+        // An agent that was stopped before it started fails to start without a startup state
+        isolatedAgents.get(0).stop();
+
+        new StartupScheduler(isolatedAgents, id -> null).startSequential(instrumentation());
+
+        assertEquals(Arrays.asList("skipped", "skipped"), states(isolatedAgents));
+    }
+
+    private String agent(String id, String settings) {
+        return "  - id: " + id + "\n    jarPath: " + jar + "\n    className: simple.Agent\n    options: \"\"\n"
+                + (settings.isEmpty() ? "" : "    " + settings);
+    }
+
+    private String failingAgent(String id, String onFailure) {
+        return "  - id: " + id + "\n    jarPath: " + jar + "\n    className: missing.Agent\n    options: \"\"\n"
+                + "    onFailure: " + onFailure + "\n";
+    }
+
+    private static List<IsolatedAgent> isolatedAgents(String javaAgents) throws Exception {
+        Configuration configuration = Configuration.parse(new StringReader("javaAgents:\n" + javaAgents));
+        SharedLayer sharedLayer = SharedLayer.create(configuration);
+        TransformerMultiplexer transformerMultiplexer = new TransformerMultiplexer(instrumentation());
+
+        List<IsolatedAgent> isolatedAgents = new ArrayList<>();
+
+        for (JavaAgent javaAgent : configuration.getJavaAgents()) {
+            isolatedAgents.add(new IsolatedAgent(
+                    isolatedAgents.size() + 1, javaAgent, configuration, sharedLayer, transformerMultiplexer, null));
+        }
+
+        return isolatedAgents;
+    }
+
+    private static List<String> ids(List<IsolatedAgent> isolatedAgents) {
+        List<String> ids = new ArrayList<>();
+
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            ids.add(isolatedAgent.getId());
+        }
+
+        return ids;
+    }
+
+    private static List<String> states(List<IsolatedAgent> isolatedAgents) {
+        List<String> states = new ArrayList<>();
+
+        for (IsolatedAgent isolatedAgent : isolatedAgents) {
+            states.add(isolatedAgent.getStartupTimeline().getState());
+        }
+
+        return states;
+    }
+
+    private static Instrumentation instrumentation() {
+        return (Instrumentation) Proxy.newProxyInstance(
+                Instrumentation.class.getClassLoader(),
+                new Class<?>[] {Instrumentation.class},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
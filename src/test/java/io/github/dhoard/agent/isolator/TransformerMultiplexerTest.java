@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.github.dhoard.agent.isolator.util.PrefixTrie;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Proxy;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link TransformerMultiplexer}.
+ */
+class TransformerMultiplexerTest {
+
+    private static final byte[] CLASS_BYTES = new byte[] {0};
+
+    private final List<ClassFileTransformer> jvmTransformers = new ArrayList<>();
+    private final List<String> calls = new ArrayList<>();
+    private AgentTransforms registrationAgentTransforms;
+
+    @Test
+    void transformersWithoutPrefixesAreCalledForEveryClass() throws Exception {
+        TransformerMultiplexer transformerMultiplexer = new TransformerMultiplexer(instrumentation());
+        transformerMultiplexer.add(registration("a", Collections.emptyList(), Collections.emptyList()), false);
+
+        assertEquals(1, jvmTransformers.size());
+        assertArrayEquals(new byte[] {0, 'a'}, transform("com/foo/Bar"));
+        assertArrayEquals(new byte[] {0, 'a'}, transform(null));
+        assertEquals(Arrays.asList("a com/foo/Bar", "a null"), calls);
+    }
+
+    @Test
+    void prefixesSelectTransformersInRegistrationOrder() throws Exception {
+        TransformerMultiplexer transformerMultiplexer = new TransformerMultiplexer(instrumentation());
+        transformerMultiplexer.add(
+                registration("a", Collections.singletonList("com.foo"), Collections.emptyList()), false);
+        transformerMultiplexer.add(
+                registration("b", Collections.emptyList(), Collections.singletonList("com.foo.internal")), false);
+        transformerMultiplexer.add(
+                registration("c", Arrays.asList("com.other", "com.other.sub"), Collections.emptyList()), false);
+
+        assertArrayEquals(new byte[] {0, 'a', 'b'}, transform("com/foo/Bar"));
+        assertArrayEquals(new byte[] {0, 'a'}, transform("com/foo/internal/Baz"));
+        assertArrayEquals(new byte[] {0, 'b', 'c'}, transform("com/other/sub/Qux"));
+        assertArrayEquals(new byte[] {0, 'b'}, transform("com/foobar/Bar"));
+    }
+
+    @Test
+    void removedTransformersAreNotCalled() throws Exception {
+        TransformerMultiplexer transformerMultiplexer = new TransformerMultiplexer(instrumentation());
+        TransformerMultiplexer.Registration registration =
+                registration("a", Collections.singletonList("com.foo"), Collections.emptyList());
+        transformerMultiplexer.add(registration, false);
+
+        transformerMultiplexer.removeAll(registrationAgentTransforms);
+
+        assertNull(transform("com/foo/Bar"));
+        assertEquals(0, registrationAgentTransforms.getTransformerCount());
+    }
+
+    private TransformerMultiplexer.Registration registration(
+            String name, List<String> includePackages, List<String> excludePackages) {
+        // ClassFileTransformer has only default methods on Java 9 or later, so it is not a functional interface
+        ClassFileTransformer classFileTransformer = new ClassFileTransformer() {
+            @Override
+            public byte[] transform(
+                    ClassLoader loader,
+                    String className,
+                    Class<?> classBeingRedefined,
+                    ProtectionDomain protectionDomain,
+                    byte[] bytes) {
+                calls.add(name + " " + className);
+
+                byte[] result = Arrays.copyOf(bytes, bytes.length + 1);
+                result[bytes.length] = (byte) name.charAt(0);
+                return result;
+            }
+        };
+
+        registrationAgentTransforms = new AgentTransforms(name);
+
+        return new TransformerMultiplexer.Registration(
+                classFileTransformer,
+                TransformerMultiplexer.toInternalPrefixes(includePackages),
+                PrefixTrie.of(TransformerMultiplexer.toInternalPrefixes(excludePackages)),
+                registrationAgentTransforms);
+    }
+
+    private byte[] transform(String className) throws Exception {
+        return jvmTransformers.get(0).transform(null, className, null, null, CLASS_BYTES);
+    }
+
+    private Instrumentation instrumentation() {
+        return (Instrumentation) Proxy.newProxyInstance(
+                Instrumentation.class.getClassLoader(),
+                new Class<?>[] {Instrumentation.class},
+                (proxy, method, args) -> {
+                    if ("addTransformer".equals(method.getName())) {
+                        jvmTransformers.add((ClassFileTransformer) args[0]);
+                        return null;
+                    }
+
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link ChildFirstURLClassLoader}.
+ */
+class ChildFirstURLClassLoaderTest {
+
+    private static final int PACKAGE_COUNT = 8;
+    private static final int CLASSES_PER_PACKAGE = 16;
+    private static final int THREAD_COUNT = 16;
+    private static final int ROUNDS = 20;
+
+    @TempDir
+    static Path directory;
+
+    private static URL[] urls;
+    private static List<String> classNames;
+
+    @BeforeAll
+    static void createJar() throws Exception {
+        // Each class references a class in the next package, so defining a class loads others concurrently
+        Map<String, String> sources = new LinkedHashMap<>();
+        classNames = new ArrayList<>();
+
+        for (int p = 0; p < PACKAGE_COUNT; p++) {
+            for (int c = 0; c < CLASSES_PER_PACKAGE; c++) {
+                String next = "test.p" + ((p + 1) % PACKAGE_COUNT) + ".C" + c;
+                String className = "test.p" + p + ".C" + c;
+
+                sources.put(
+                        className,
+                        "package test.p" + p + ";\n"
+                                + "public class C" + c + " {\n"
+                                + "    public static Class<?> next() { return " + next + ".class; }\n"
+                                + "}\n");
+
+                classNames.add(className);
+            }
+        }
+
+        Path jar = TestJars.write(
+                directory.resolve("stress.jar"),
+                TestJars.compile(directory, sources),
+                Collections.<String, String>emptyMap());
+
+        urls = new URL[] {jar.toUri().toURL()};
+    }
+
+    @Test
+    void concurrentLoadingDefinesEachClassAndPackageOnce() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                try (ChildFirstURLClassLoader classLoader = new ChildFirstURLClassLoader(urls, null)) {
+                    AtomicInteger arrived = new AtomicInteger();
+                    List<Future<Map<String, Class<?>>>> futures = new ArrayList<>();
+
+                    for (int t = 0; t < THREAD_COUNT; t++) {
+                        int thread = t;
+                        Random random = new Random(round * THREAD_COUNT + t);
+
+                        futures.add(executorService.submit(() -> {
+                            Map<String, Class<?>> classes = new LinkedHashMap<>();
+
+                            for (int p = 0; p < PACKAGE_COUNT; p++) {
+                                List<String> names = new ArrayList<>(
+                                        classNames.subList(p * CLASSES_PER_PACKAGE, (p + 1) * CLASSES_PER_PACKAGE));
+                                Collections.shuffle(names, random);
+
+                                // Each thread first loads a different class of the package
+                                String first = "test.p" + p + ".C" + (thread % CLASSES_PER_PACKAGE);
+                                names.remove(first);
+                                names.add(0, first);
+
+                                // Start every thread at once, to maximize the definePackage and defineClass races
+                                await(arrived, (p + 1) * THREAD_COUNT);
+
+                                for (String name : names) {
+                                    classes.put(name, classLoader.loadClass(name));
+                                }
+                            }
+
+                            // Resolve the references between packages
+                            for (Class<?> clazz : classes.values()) {
+                                clazz.getMethod("next").invoke(null);
+                            }
+
+                            return classes;
+                        }));
+                    }
+
+                    // Any IllegalArgumentException or LinkageError fails the future
+                    List<Map<String, Class<?>>> results = new ArrayList<>();
+                    for (Future<Map<String, Class<?>>> future : futures) {
+                        results.add(future.get(60, TimeUnit.SECONDS));
+                    }
+
+                    for (String className : classNames) {
+                        Class<?> clazz = results.get(0).get(className);
+
+                        assertSame(classLoader, clazz.getClassLoader());
+                        assertNotNull(clazz.getPackage());
+
+                        for (Map<String, Class<?>> result : results) {
+                            assertSame(clazz, result.get(className));
+                        }
+                    }
+
+                    assertEquals(classNames.size(), classLoader.getDefinedClassCount());
+                    assertEquals(PACKAGE_COUNT, classLoader.getStatistics().getDefinedPackages());
+                    assertEquals(classNames.size(), classLoader.getStatistics().getChildHits());
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void cachedMissesDoNotSearchTheJarAgain() throws Exception {
+        try (ChildFirstURLClassLoader classLoader = new ChildFirstURLClassLoader(urls, null)) {
+            for (int i = 0; i < 3; i++) {
+                assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass("test.Missing"));
+            }
+
+            ClassLoaderStatistics statistics = classLoader.getStatistics();
+
+            assertEquals(1, statistics.getChildMisses());
+            assertEquals(2, statistics.getCachedChildMisses());
+            assertEquals(3, statistics.getClassNotFoundMisses());
+        }
+    }
+
+    /**
+     * Waits, spinning, until a number of threads have arrived, so that the threads are released
+     * closer together than by a blocking barrier.
+     *
+     * @param arrived the number of threads that have arrived
+     * @param count the number of threads to wait for
+     */
+    @Test
+    void nestedJarEntryUrlsOpenJarUrlConnections() throws Exception {
+        Path innerJar = TestJars.write(
+                directory.resolve("inner.jar"),
+                Collections.singletonMap("r/R.txt", "nested".getBytes(StandardCharsets.UTF_8)),
+                Collections.singletonMap("Nested-Attribute", "true"));
+        Path outerJar = TestJars.write(
+                directory.resolve("outer.jar"),
+                Collections.singletonMap("lib/inner.jar", Files.readAllBytes(innerJar)),
+                Collections.<String, String>emptyMap());
+        URL nestedJarUrl = ChildFirstURLClassLoader.toUrl(outerJar + "!/lib/inner.jar");
+
+        try (ChildFirstURLClassLoader classLoader = new ChildFirstURLClassLoader(new URL[] {nestedJarUrl}, null)) {
+            URL url = classLoader.getResource("r/R.txt");
+            assertNotNull(url);
+
+            URLConnection urlConnection = url.openConnection();
+            assertTrue(urlConnection instanceof JarURLConnection);
+
+            JarURLConnection jarUrlConnection = (JarURLConnection) urlConnection;
+            assertEquals(nestedJarUrl, jarUrlConnection.getJarFileURL());
+            assertEquals("r/R.txt", jarUrlConnection.getEntryName());
+            assertEquals("r/R.txt", jarUrlConnection.getJarEntry().getName());
+            assertEquals("true", jarUrlConnection.getMainAttributes().getValue("Nested-Attribute"));
+            assertThrows(IOException.class, jarUrlConnection::getJarFile);
+
+            try (InputStream inputStream = jarUrlConnection.getInputStream()) {
+                byte[] bytes = new byte[16];
+                int length = inputStream.read(bytes);
+                assertEquals("nested", new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void directoryResourcesStayInsideTheDirectory() throws Exception {
+        Path classes = Files.createDirectories(directory.resolve("classes"));
+        Files.write(classes.resolve("r.txt"), "inside".getBytes(StandardCharsets.UTF_8));
+        Path secret = Files.write(directory.resolve("secret.txt"), "outside".getBytes(StandardCharsets.UTF_8));
+
+        try (ChildFirstURLClassLoader classLoader =
+                new ChildFirstURLClassLoader(new URL[] {classes.toUri().toURL()}, null)) {
+            assertNotNull(classLoader.getResource("r.txt"));
+            assertNotNull(classLoader.getResource("/r.txt"));
+            assertNull(classLoader.getResource("../secret.txt"));
+            assertNull(classLoader.getResource("sub/../../secret.txt"));
+            assertNull(classLoader.getResource(secret.toAbsolutePath().toString()));
+        }
+    }
+
+    private static void await(AtomicInteger arrived, int count) {
+        arrived.incrementAndGet();
+
+        while (arrived.get() < count) {
+            Thread.yield();
+        }
+    }
+}
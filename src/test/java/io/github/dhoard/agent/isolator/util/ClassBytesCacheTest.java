@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link ClassBytesCache}.
+ */
+class ClassBytesCacheTest {
+
+    private static final String IN_USE = "in-use";
+    private static final String NOT_IN_USE = "not-in-use";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsOfJarsNotInUseAreRemovedWhenOpened() throws Exception {
+        Path path = directory.resolve("class-bytes.cache");
+
+        ClassBytesCache classBytesCache = ClassBytesCache.open(directory, null);
+        classBytesCache.put(IN_USE, "a.A", bytes("a"));
+        classBytesCache.put(NOT_IN_USE, "b.B", bytes("b"));
+
+        // Records are appended asynchronously, wait for the file header and both records
+        long size = 8 + recordSize(IN_USE + "/a.A", 1) + recordSize(NOT_IN_USE + "/b.B", 1);
+        long deadline = System.currentTimeMillis() + 10_000;
+
+        while (Files.size(path) < size) {
+            assertTrue(System.currentTimeMillis() < deadline, "records were not appended");
+            Thread.sleep(10);
+        }
+
+        ClassBytesCache compactedClassBytesCache = open(Collections.singleton(IN_USE));
+
+        assertNotNull(compactedClassBytesCache.get(IN_USE, "a.A"));
+        assertEquals("a", string(compactedClassBytesCache.get(IN_USE, "a.A")));
+        assertNull(compactedClassBytesCache.get(NOT_IN_USE, "b.B"));
+        assertEquals(8 + recordSize(IN_USE + "/a.A", 1), Files.size(path));
+
+        // The records of jars in use are kept
+        ClassBytesCache reopenedClassBytesCache = open(Collections.singleton(IN_USE));
+
+        assertEquals("a", string(reopenedClassBytesCache.get(IN_USE, "a.A")));
+    }
+
+    /**
+     * Opens the cache, waiting for the writer thread of the first cache, which holds the file lock
+     * while appending. File locks are held by the JVM, so the lock cannot be shared in a single JVM.
+     */
+    private ClassBytesCache open(Set<String> jarHashes) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+
+        while (true) {
+            try {
+                return ClassBytesCache.open(directory, jarHashes);
+            } catch (OverlappingFileLockException e) {
+                assertTrue(System.currentTimeMillis() < deadline, "file lock was not released");
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static long recordSize(String key, int dataLength) {
+        return 16 + key.getBytes(StandardCharsets.UTF_8).length + dataLength;
+    }
+
+    private static ByteBuffer bytes(String string) {
+        return ByteBuffer.wrap(string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(ByteBuffer byteBuffer) {
+        byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
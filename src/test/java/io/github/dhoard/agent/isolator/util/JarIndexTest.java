@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link JarIndex} and {@link ClasspathIndex}.
+ */
+class JarIndexTest {
+
+    private static final int RUNTIME_VERSION = getRuntimeVersion();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void multiReleaseJarResolvesVersionedEntries() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/A.txt", bytes("base"));
+        entries.put("META-INF/versions/9/a/A.txt", bytes("9"));
+        entries.put("META-INF/versions/9/a/Only9.txt", bytes("only 9"));
+        entries.put("META-INF/versions/" + (RUNTIME_VERSION + 1) + "/a/A.txt", bytes("future"));
+
+        JarIndex jarIndex = index("mr.jar", entries, Collections.singletonMap("Multi-Release", "true"));
+
+        // Java 8 ignores versioned entries, as JarFile does
+        String expected = RUNTIME_VERSION >= 9 ? "9" : "base";
+
+        assertEquals(expected, read(jarIndex, "a/A.txt"));
+        assertEquals(RUNTIME_VERSION >= 9, jarIndex.find("a/Only9.txt") != -1);
+        assertEquals("9", read(jarIndex, "META-INF/versions/9/a/A.txt"));
+
+        // The merged index resolves versioned entries in the same way
+        JarIndex otherJarIndex = index("other.jar", Collections.singletonMap("b/B.txt", bytes("b")), noAttributes());
+        ClasspathIndex classpathIndex = ClasspathIndex.of(new JarIndex[] {otherJarIndex, jarIndex});
+        long found = classpathIndex.find("a/A.txt");
+
+        assertEquals(1, (int) (found >>> 32));
+        assertEquals(expected, read(jarIndex, (int) found));
+    }
+
+    @Test
+    void versionedEntriesAreIgnoredWithoutMultiReleaseManifest() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/A.txt", bytes("base"));
+        entries.put("META-INF/versions/9/a/A.txt", bytes("9"));
+
+        JarIndex jarIndex = index("plain.jar", entries, noAttributes());
+
+        assertEquals("base", read(jarIndex, "a/A.txt"));
+    }
+
+    @Test
+    void signedJarIsDetected() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/A.txt", bytes("base"));
+
+        assertFalse(index("unsigned.jar", entries, noAttributes()).isSigned());
+
+        entries.put("META-INF/SIGNER.SF", bytes("Signature-Version: 1.0\n"));
+
+        assertTrue(index("signed.jar", entries, noAttributes()).isSigned());
+    }
+
+    @Test
+    void classpathIndexFindsEntriesInClasspathOrder() throws IOException {
+        // "Aa" and "BB" have equal hashes, so their entries share a probe sequence
+        Map<String, byte[]> firstEntries = new LinkedHashMap<>();
+        Map<String, byte[]> secondEntries = new LinkedHashMap<>();
+
+        for (int i = 0; i < 1000; i++) {
+            firstEntries.put("first/" + i + ".txt", bytes("first " + i));
+            secondEntries.put("second/" + i + ".txt", bytes("second " + i));
+        }
+
+        firstEntries.put("Aa", bytes("first Aa"));
+        secondEntries.put("BB", bytes("second BB"));
+        secondEntries.put("Aa", bytes("second Aa"));
+
+        JarIndex firstJarIndex = index("first.jar", firstEntries, noAttributes());
+        JarIndex secondJarIndex = index("second.jar", secondEntries, noAttributes());
+        ClasspathIndex classpathIndex = ClasspathIndex.of(new JarIndex[] {firstJarIndex, null, secondJarIndex});
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("first " + i, read(firstJarIndex, (int) classpathIndex.find("first/" + i + ".txt")));
+            assertEquals(2, (int) (classpathIndex.find("second/" + i + ".txt") >>> 32));
+        }
+
+        assertEquals(0, (int) (classpathIndex.find("Aa") >>> 32));
+        assertEquals("first Aa", read(firstJarIndex, (int) classpathIndex.find("Aa")));
+        assertEquals("second Aa", read(secondJarIndex, (int) classpathIndex.find("Aa", 1)));
+        assertEquals("second BB", read(secondJarIndex, (int) classpathIndex.find("BB")));
+        assertEquals("second BB", read(secondJarIndex, "BB"));
+        assertEquals(-1, classpathIndex.find("first/0.txt", 1));
+        assertEquals(-1, classpathIndex.find("missing.txt"));
+        assertEquals(-1, firstJarIndex.find("BB"));
+    }
+
+    /**
+     * Writes and indexes a jar.
+     *
+     * @param name the file name of the jar
+     * @param entries the entry bytes, keyed by entry name
+     * @param manifestAttributes additional main attributes of the manifest
+     * @return the index of the jar
+     * @throws IOException if the jar cannot be written or indexed
+     */
+    private JarIndex index(String name, Map<String, byte[]> entries, Map<String, String> manifestAttributes)
+            throws IOException {
+        Path jar = TestJars.write(directory.resolve(name), entries, manifestAttributes);
+        return JarIndex.of(ByteBuffer.wrap(Files.readAllBytes(jar)));
+    }
+
+    private static String read(JarIndex jarIndex, String name) throws IOException {
+        return read(jarIndex, jarIndex.find(name));
+    }
+
+    private static String read(JarIndex jarIndex, int entry) throws IOException {
+        ByteBuffer data = jarIndex.read(entry);
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> noAttributes() {
+        return Collections.emptyMap();
+    }
+
+    private static int getRuntimeVersion() {
+        String specificationVersion = System.getProperty("java.specification.version");
+        return specificationVersion.startsWith("1.") ? 8 : Integer.parseInt(specificationVersion);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link MetricsExposition}.
+ */
+class MetricsExpositionTest {
+
+    private static final byte[] LABEL = MetricsExposition.label("isolator_agent", "a");
+
+    @Test
+    void headerLinesInEitherOrderStartTheSameFamily() throws IOException {
+        MetricsExposition metricsExposition = MetricsExposition.parse(
+                bytes("# TYPE requests counter\n" + "# HELP requests Requests.\n" + "requests 1\n"));
+
+        assertEquals(Arrays.asList("requests"), new ArrayList<>(metricsExposition.getFamilyNames()));
+        assertEquals("counter", metricsExposition.getType("requests"));
+        assertEquals(
+                "# HELP requests Requests.\n# TYPE requests counter\nrequests{isolator_agent=\"a\"} 1\n",
+                write(metricsExposition, "requests"));
+    }
+
+    @Test
+    void familySplitByAnotherFamilyIsWrittenOnce() throws IOException {
+        MetricsExposition metricsExposition = MetricsExposition.parse(bytes("# TYPE latency histogram\n"
+                + "latency_bucket{le=\"1\"} 1\n"
+                + "# TYPE requests counter\n"
+                + "requests 2\n"
+                + "latency_bucket{le=\"+Inf\"} 3\n"
+                + "latency_count 3\n"));
+
+        assertEquals(Arrays.asList("latency", "requests"), new ArrayList<>(metricsExposition.getFamilyNames()));
+        assertEquals(
+                "# TYPE latency histogram\n"
+                        + "latency_bucket{isolator_agent=\"a\",le=\"1\"} 1\n"
+                        + "latency_bucket{isolator_agent=\"a\",le=\"+Inf\"} 3\n"
+                        + "latency_count{isolator_agent=\"a\"} 3\n",
+                write(metricsExposition, "latency"));
+    }
+
+    @Test
+    void suffixedSamplesBelongToTheirFamily() throws IOException {
+        MetricsExposition metricsExposition = MetricsExposition.parse(bytes("# TYPE latency histogram\n"
+                + "latency_bucket{le=\"+Inf\"} 2\n"
+                + "latency_count 2\n"
+                + "latency_sum 0.5\n"
+                + "latency_total 1\n"));
+
+        assertEquals(Arrays.asList("latency", "latency_total"), new ArrayList<>(metricsExposition.getFamilyNames()));
+        assertEquals("histogram", metricsExposition.getType("latency"));
+        assertEquals("untyped", metricsExposition.getType("latency_total"));
+        assertNull(metricsExposition.getType("missing"));
+        assertEquals(
+                "# TYPE latency histogram\n"
+                        + "latency_bucket{isolator_agent=\"a\",le=\"+Inf\"} 2\n"
+                        + "latency_count{isolator_agent=\"a\"} 2\n"
+                        + "latency_sum{isolator_agent=\"a\"} 0.5\n",
+                write(metricsExposition, "latency"));
+    }
+
+    @Test
+    void samplesWithoutLabelsAndWithEmptyLabelsGetTheLabel() throws IOException {
+        MetricsExposition metricsExposition = MetricsExposition.parse(bytes("a 1\nb{} 2\nc{} 3 1700000000000\n"));
+
+        assertEquals("a{isolator_agent=\"a\"} 1\n", write(metricsExposition, "a"));
+        assertEquals("b{isolator_agent=\"a\"} 2\n", write(metricsExposition, "b"));
+        assertEquals("c{isolator_agent=\"a\"} 3 1700000000000\n", write(metricsExposition, "c"));
+    }
+
+    @Test
+    void crlfLineEndingsAreWrittenAsLf() throws IOException {
+        MetricsExposition metricsExposition =
+                MetricsExposition.parse(bytes("# HELP up Up.\r\n# TYPE up gauge\r\n\r\nup{job=\"x\"} 1\r\nup 0\r\n"));
+
+        assertEquals("gauge", metricsExposition.getType("up"));
+        assertEquals(
+                "# HELP up Up.\n# TYPE up gauge\n"
+                        + "up{isolator_agent=\"a\",job=\"x\"} 1\n"
+                        + "up{isolator_agent=\"a\"} 0\n",
+                write(metricsExposition, "up"));
+    }
+
+    @Test
+    void labelValuesAreEscaped() {
+        assertArrayEquals(
+                bytes("isolator_agent=\"a\\\\b\\\"c\\nd\""), MetricsExposition.label("isolator_agent", "a\\b\"c\nd"));
+    }
+
+    @Test
+    void escapedUpstreamLabelValuesAreWrittenUnchanged() throws IOException {
+        String sample = "m{path=\"/a,isolator_agent=\\\"}\",method=\"GET\"} 1\n";
+        MetricsExposition metricsExposition = MetricsExposition.parse(bytes(sample));
+
+        assertEquals(
+                "m{isolator_agent=\"a\",path=\"/a,isolator_agent=\\\"}\",method=\"GET\"} 1\n",
+                write(metricsExposition, "m"));
+    }
+
+    @Test
+    void upstreamLabelWithTheSameNameIsRenamed() throws IOException {
+        MetricsExposition metricsExposition = MetricsExposition.parse(
+                bytes("m{isolator_agent=\"x\"} 1\nn{job=\"j\", isolator_agent=\"y\",isolator_agent_id=\"z\"} 2\n"));
+
+        assertEquals("m{isolator_agent=\"a\",exported_isolator_agent=\"x\"} 1\n", write(metricsExposition, "m"));
+        assertEquals(
+                "n{isolator_agent=\"a\",job=\"j\", exported_isolator_agent=\"y\",isolator_agent_id=\"z\"} 2\n",
+                write(metricsExposition, "n"));
+    }
+
+    @Test
+    void conflictingTypesKeepTheTypeOfTheFirstEndpoint() throws IOException {
+        MetricsExposition first = MetricsExposition.parse(bytes("# TYPE m counter\nm 1\n"));
+        MetricsExposition second = MetricsExposition.parse(bytes("# HELP m Gauge.\n# TYPE m gauge\nm 2\n"));
+        MetricsExposition third = MetricsExposition.parse(bytes("# HELP m Counter.\n# TYPE m counter\nm 3\n"));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        MetricsExposition.writeMerged(
+                Arrays.asList(first, second, third),
+                Arrays.asList(
+                        MetricsExposition.label("isolator_agent", "1"),
+                        MetricsExposition.label("isolator_agent", "2"),
+                        MetricsExposition.label("isolator_agent", "3")),
+                outputStream);
+
+        assertEquals(
+                "# TYPE m counter\nm{isolator_agent=\"1\"} 1\nm{isolator_agent=\"3\"} 3\n",
+                new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the header lines and samples of a metric family.
+     *
+     * @param metricsExposition the metrics
+     * @param familyName the metric family name
+     * @return the written metric family
+     * @throws IOException if the metric family cannot be written
+     */
+    private static String write(MetricsExposition metricsExposition, String familyName) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        metricsExposition.writeHeader(familyName, outputStream);
+        metricsExposition.writeSamples(familyName, LABEL, outputStream);
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the UTF-8 bytes of a string.
+     *
+     * @param string the string
+     * @return the bytes
+     */
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+}
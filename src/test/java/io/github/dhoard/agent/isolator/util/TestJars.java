@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2025-present Doug Hoard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.dhoard.agent.isolator.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Builds jars of generated classes for tests.
+ */
+public final class TestJars {
+
+    /**
+     * Constructor for TestJars.
+     */
+    private TestJars() {
+        // INTENTIONALLY BLANK
+    }
+
+    /**
+     * Compiles Java sources.
+     *
+     * @param directory the working directory
+     * @param sources the sources, keyed by class name
+     * @return the class file bytes, keyed by entry name
+     * @throws IOException if the sources cannot be written or compiled
+     */
+    public static Map<String, byte[]> compile(Path directory, Map<String, String> sources) throws IOException {
+        Path sourceDirectory = Files.createDirectories(directory.resolve("src"));
+        Path classesDirectory = Files.createDirectories(directory.resolve("classes"));
+        List<String> arguments = new ArrayList<>();
+
+        arguments.add("-d");
+        arguments.add(classesDirectory.toString());
+
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            Path path = sourceDirectory.resolve(source.getKey().replace('.', '/') + ".java");
+            Files.createDirectories(path.getParent());
+            Files.write(path, source.getValue().getBytes(StandardCharsets.UTF_8));
+            arguments.add(path.toString());
+        }
+
+        JavaCompiler javaCompiler = ToolProvider.getSystemJavaCompiler();
+        if (javaCompiler == null || javaCompiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+            throw new IOException("failed to compile test sources");
+        }
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+
+        try (Stream<Path> paths = Files.walk(classesDirectory)) {
+            for (Path path : paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                entries.put(classesDirectory.relativize(path).toString().replace('\\', '/'), Files.readAllBytes(path));
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Writes a jar.
+     *
+     * @param jar the path of the jar
+     * @param entries the entry bytes, keyed by entry name
+     * @param manifestAttributes additional main attributes of the manifest
+     * @return the path of the jar
+     * @throws IOException if the jar cannot be written
+     */
+    public static Path write(Path jar, Map<String, byte[]> entries, Map<String, String> manifestAttributes)
+            throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+        for (Map.Entry<String, String> attribute : manifestAttributes.entrySet()) {
+            manifest.getMainAttributes().putValue(attribute.getKey(), attribute.getValue());
+        }
+
+        try (OutputStream outputStream = Files.newOutputStream(jar);
+                JarOutputStream jarOutputStream = new JarOutputStream(outputStream, manifest)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                jarOutputStream.putNextEntry(new JarEntry(entry.getKey()));
+                jarOutputStream.write(entry.getValue());
+                jarOutputStream.closeEntry();
+            }
+        }
+
+        return jar;
+    }
+}